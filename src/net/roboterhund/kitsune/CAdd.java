@@ -39,6 +39,77 @@ abstract class CAdd {
 			// go to end
 			break;
 
+		case KProfile._DEC__DEC_:
+			if (term_1.scale == term_2.scale) {
+				if (calc.add (term_1.numerator, term_2.numerator)) {
+					result.setDecimal (
+						calc.intResult,
+						term_1.scale
+					);
+					return;
+				}
+
+			} else if (term_1.scale < term_2.scale) {
+				// align scale of operand 1
+				if (calc.multiply (
+					term_1.numerator,
+					term_2.denominator / term_1.denominator)) {
+
+					if (calc.add (calc.intResult, term_2.numerator)) {
+						result.setDecimal (
+							calc.intResult,
+							term_2.scale
+						);
+						return;
+					}
+				}
+
+			} else {
+				// align scale of operand 2
+				if (calc.multiply (
+					term_2.numerator,
+					term_1.denominator / term_2.denominator)) {
+
+					if (calc.add (term_1.numerator, calc.intResult)) {
+						result.setDecimal (
+							calc.intResult,
+							term_1.scale
+						);
+						return;
+					}
+				}
+			}
+			route = KProfile._BIG__RAT_;
+			break;
+
+		case KProfile._DEC__INT1:
+			if (calc.multiply (term_1.numerator, term_2.denominator)) {
+
+				if (calc.add (calc.intResult, term_2.numerator)) {
+					result.setDecimal (
+						calc.intResult,
+						term_2.scale
+					);
+					return;
+				}
+			}
+			route = KProfile._BIG__INT1;
+			break;
+
+		case KProfile._DEC__INT2:
+			if (calc.multiply (term_2.numerator, term_1.denominator)) {
+
+				if (calc.add (term_1.numerator, calc.intResult)) {
+					result.setDecimal (
+						calc.intResult,
+						term_1.scale
+					);
+					return;
+				}
+			}
+			route = KProfile._BIG__INT2;
+			break;
+
 		case KProfile._LONG_RAT_:
 			if (calc.multiply (term_1.numerator, term_2.denominator)) {
 				long n1_mul_d2 = calc.intResult;
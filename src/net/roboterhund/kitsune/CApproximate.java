@@ -0,0 +1,559 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
+
+import java.math.BigInteger;
+
+/**
+ * Operations:
+ * <ul>
+ * <li>Best approximation with bounded numerator and denominator.</li>
+ * <li>Simplest approximation with bounded error.</li>
+ * </ul>
+ * <p>
+ * Both are computed with continued fractions,
+ * on {@code long} values when the operands are compact.
+ */
+abstract class CApproximate {
+
+	/**
+	 * Non-positive denominator error message.
+	 */
+	public static final String ERR_MSG_NON_POSITIVE_DENOMINATOR =
+		"Maximum denominator must be positive.";
+
+	/**
+	 * Negative error message.
+	 */
+	public static final String ERR_MSG_NEGATIVE_ERROR =
+		"Maximum error must not be negative.";
+
+	/**
+	 * Get the closest fraction with denominator
+	 * not greater than {@code maxDenominator}.
+	 * <p>
+	 * If two fractions are equally close,
+	 * the one with the smallest denominator is chosen.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param maxDenominator maximum denominator.
+	 * @throws IllegalArgumentException {@code maxDenominator < 1}.
+	 */
+	public static void limitDenominator (
+		KNumRegister result,
+		KNumRegister number,
+		long maxDenominator) {
+
+		if (maxDenominator < 1) {
+			throw new IllegalArgumentException (
+				ERR_MSG_NON_POSITIVE_DENOMINATOR
+			);
+		}
+
+		limit (result, number, -1, maxDenominator, false);
+	}
+
+	/**
+	 * Check whether number fits the limits.
+	 *
+	 * @param maxNumerator maximum absolute numerator,
+	 * or {@code -1} for no limit.
+	 * @param maxDenominator maximum denominator.
+	 */
+	static boolean fits (
+		KNumRegister number,
+		long maxNumerator,
+		long maxDenominator) {
+
+		if (number.profile > KProfile.BIG_INTEGER) {
+			return (maxNumerator < 0
+				|| Math.abs (number.numerator) <= maxNumerator)
+				&& number.denominator <= maxDenominator;
+		}
+
+		return (maxNumerator < 0
+			|| number.bigNumerator.abs ().compareTo (
+			BigInteger.valueOf (maxNumerator)) <= 0)
+			&& number.bigDenominator.compareTo (
+			BigInteger.valueOf (maxDenominator)) <= 0;
+	}
+
+	/**
+	 * Get the closest fraction with
+	 * absolute numerator not greater than {@code maxNumerator}
+	 * and denominator not greater than {@code maxDenominator}.
+	 * <p>
+	 * Descending the Stern-Brocot tree towards the number,
+	 * the last two fractions inside the limits bracket the number,
+	 * and no fraction between them is inside the limits.
+	 * These are the last convergent and the best semiconvergent
+	 * of the continued fraction.
+	 * <p>
+	 * If the absolute value is greater than {@code maxNumerator},
+	 * the result is {@code maxNumerator} with the same sign,
+	 * or the unchanged number if {@code awayFromZero}.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param maxNumerator maximum absolute numerator,
+	 * or {@code -1} for no limit.
+	 * @param maxDenominator maximum denominator, at least {@code 1}.
+	 * @param awayFromZero if {@code true}, choose the bracketing fraction
+	 * farthest from zero, instead of the closest to the number.
+	 */
+	static void limit (
+		KNumRegister result,
+		KNumRegister number,
+		long maxNumerator,
+		long maxDenominator,
+		boolean awayFromZero) {
+
+		if (fits (number, maxNumerator, maxDenominator)) {
+			if (result != number) {
+				result.copy (number);
+			}
+			return;
+		}
+
+		if (number.profile > KProfile.BIG_INTEGER) {
+			limit (
+				result,
+				number.numerator,
+				number.denominator,
+				maxNumerator < 0 ? Long.MAX_VALUE : maxNumerator,
+				maxDenominator,
+				awayFromZero
+			);
+
+		} else {
+			limit (
+				result,
+				number.bigNumerator,
+				number.bigDenominator,
+				maxNumerator < 0 ? null : BigInteger.valueOf (maxNumerator),
+				BigInteger.valueOf (maxDenominator),
+				awayFromZero
+			);
+		}
+	}
+
+	/**
+	 * Limit compact fraction.
+	 * <p>
+	 * Convergent numerators are not greater than {@code |numerator|},
+	 * and denominators not greater than {@code denominator}:
+	 * no overflow is possible.
+	 */
+	private static void limit (
+		KNumRegister result,
+		long numerator,
+		long denominator,
+		long maxNumerator,
+		long maxDenominator,
+		boolean awayFromZero) {
+
+		boolean negative = numerator < 0;
+
+		// remainders: |n * q0 - p0 * d| == num, |n * q1 - p1 * d| == den
+		long num = Math.abs (numerator);
+		long den = denominator;
+
+		// last two convergents
+		long p0 = 0;
+		long q0 = 1;
+		long p1 = 1;
+		long q1 = 0;
+		// p1 / q1 greater than |n / d|
+		boolean convergentAbove = true;
+
+		while (den != 0) {
+			long a = num / den;
+			if ((q1 != 0 && a > (maxDenominator - q0) / q1)
+				|| (p1 != 0 && a > (maxNumerator - p0) / p1)) {
+				// next convergent outside limits
+				break;
+			}
+
+			long p2 = p0 + a * p1;
+			long q2 = q0 + a * q1;
+			p0 = p1;
+			q0 = q1;
+			p1 = p2;
+			q1 = q2;
+			convergentAbove = !convergentAbove;
+
+			long remainder = num - a * den;
+			num = den;
+			den = remainder;
+		}
+
+		long p;
+		long q;
+		if (den == 0) {
+			// exact: fraction was not reduced
+			p = p1;
+			q = q1;
+
+		} else {
+			// best semiconvergent, on the other side
+			long k = Long.MAX_VALUE;
+			if (p1 != 0) {
+				k = (maxNumerator - p0) / p1;
+			}
+			if (q1 != 0) {
+				k = Math.min (k, (maxDenominator - q0) / q1);
+			}
+			long pk = p0 + k * p1;
+			long qk = q0 + k * q1;
+
+			// either may be infinity (denominator 0)
+			boolean chooseConvergent;
+			if (awayFromZero) {
+				chooseConvergent = convergentAbove;
+
+			} else if (q1 == 0) {
+				chooseConvergent = false;
+
+			} else if (qk == 0) {
+				chooseConvergent = true;
+
+			} else {
+				// convergent at least as close
+				chooseConvergent = CCompare.compareProducts (
+					den, qk,
+					num - k * den, q1
+				) <= 0;
+			}
+
+			if (chooseConvergent) {
+				p = p1;
+				q = q1;
+			} else {
+				p = pk;
+				q = qk;
+			}
+
+			if (q == 0) {
+				// nothing inside limits is farther from zero
+				result.setValue (numerator, denominator);
+				return;
+			}
+		}
+
+		result.setValue (negative ? -p : p, q);
+	}
+
+	/**
+	 * Limit big fraction.
+	 *
+	 * @param maxNumerator {@code null} for no limit.
+	 */
+	private static void limit (
+		KNumRegister result,
+		BigInteger bigNumerator,
+		BigInteger bigDenominator,
+		BigInteger maxNumerator,
+		BigInteger maxDenominator,
+		boolean awayFromZero) {
+
+		boolean negative = bigNumerator.signum () < 0;
+
+		BigInteger num = bigNumerator.abs ();
+		BigInteger den = bigDenominator;
+
+		BigInteger p0 = BigInteger.ZERO;
+		BigInteger q0 = BigInteger.ONE;
+		BigInteger p1 = BigInteger.ONE;
+		BigInteger q1 = BigInteger.ZERO;
+		boolean convergentAbove = true;
+
+		while (den.signum () != 0) {
+			BigInteger[] quotientAndRemainder = num.divideAndRemainder (den);
+			BigInteger a = quotientAndRemainder[0];
+			BigInteger p2 = p0.add (a.multiply (p1));
+			BigInteger q2 = q0.add (a.multiply (q1));
+			if (q2.compareTo (maxDenominator) > 0
+				|| maxNumerator != null && p2.compareTo (maxNumerator) > 0) {
+				break;
+			}
+
+			p0 = p1;
+			q0 = q1;
+			p1 = p2;
+			q1 = q2;
+			convergentAbove = !convergentAbove;
+
+			num = den;
+			den = quotientAndRemainder[1];
+		}
+
+		BigInteger p;
+		BigInteger q;
+		if (den.signum () == 0) {
+			p = p1;
+			q = q1;
+
+		} else {
+			BigInteger k = null;
+			if (maxNumerator != null && p1.signum () != 0) {
+				k = maxNumerator.subtract (p0).divide (p1);
+			}
+			if (q1.signum () != 0) {
+				BigInteger kDenominator = maxDenominator.subtract (q0).divide (q1);
+				k = k == null ? kDenominator : k.min (kDenominator);
+			}
+			BigInteger pk = p0.add (k.multiply (p1));
+			BigInteger qk = q0.add (k.multiply (q1));
+
+			boolean chooseConvergent;
+			if (awayFromZero) {
+				chooseConvergent = convergentAbove;
+
+			} else if (q1.signum () == 0) {
+				chooseConvergent = false;
+
+			} else if (qk.signum () == 0) {
+				chooseConvergent = true;
+
+			} else {
+				chooseConvergent = den.multiply (qk).compareTo (
+					num.subtract (k.multiply (den)).multiply (q1)) <= 0;
+			}
+
+			if (chooseConvergent) {
+				p = p1;
+				q = q1;
+			} else {
+				p = pk;
+				q = qk;
+			}
+
+			if (q.signum () == 0) {
+				result.setValue (bigNumerator, bigDenominator);
+				return;
+			}
+		}
+
+		result.setValue (negative ? p.negate () : p, q);
+	}
+
+	/**
+	 * Get the simplest fraction in
+	 * {@code [number - maxError, number + maxError]}.
+	 * <p>
+	 * The simplest fraction has the smallest denominator,
+	 * and then the smallest absolute numerator.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param maxError maximum absolute error.
+	 * @throws IllegalArgumentException {@code maxError < 0}.
+	 */
+	public static void limitError (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister number,
+		KNumRegister maxError) {
+
+		int errorSign = CCompare.getSign (maxError);
+		if (errorSign < 0) {
+			throw new IllegalArgumentException (
+				ERR_MSG_NEGATIVE_ERROR
+			);
+		}
+		if (errorSign == 0) {
+			if (result != number) {
+				result.copy (number);
+			}
+			return;
+		}
+
+		KNumRegisterPool regPool = calc.regPool;
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		KNumRegister low = cont_1.reg;
+		KNumRegister high = cont_2.reg;
+
+		CSubtract.subtract (calc, low, number, maxError);
+		CAdd.add (calc, high, number, maxError);
+
+		boolean negative = false;
+		if (CCompare.getSign (low) <= 0) {
+			if (CCompare.getSign (high) >= 0) {
+				// interval contains zero
+				result.setZeroValue ();
+
+				regPool.discard (cont_1);
+				regPool.discard (cont_2);
+				return;
+			}
+
+			// [low, high] == -[-high, -low]
+			negative = true;
+			CInvert.negate (low, low);
+			CInvert.negate (high, high);
+			KNumRegister swap = low;
+			low = high;
+			high = swap;
+		}
+
+		if (low.profile <= KProfile.BIG_INTEGER
+			|| high.profile <= KProfile.BIG_INTEGER
+			|| !simplestBetween (
+			calc,
+			result,
+			low.numerator,
+			low.denominator,
+			high.numerator,
+			high.denominator)) {
+
+			low.setBigIntegers ();
+			high.setBigIntegers ();
+			simplestBetween (
+				result,
+				low.bigNumerator,
+				low.bigDenominator,
+				high.bigNumerator,
+				high.bigDenominator
+			);
+		}
+
+		if (negative) {
+			CInvert.negate (result, result);
+		}
+
+		regPool.discard (cont_1);
+		regPool.discard (cont_2);
+	}
+
+	/**
+	 * Simplest fraction in {@code [ln / ld, hn / hd]},
+	 * where {@code 0 < ln / ld <= hn / hd}.
+	 *
+	 * @return {@code false} if aborted due to overflow.
+	 */
+	private static boolean simplestBetween (
+		KCalculator calc,
+		KNumRegister result,
+		long ln,
+		long ld,
+		long hn,
+		long hd) {
+
+		long p0 = 0;
+		long q0 = 1;
+		long p1 = 1;
+		long q1 = 0;
+
+		while (true) {
+			long a = ln / ld;
+			// smallest integer not less than low
+			long t = ln % ld == 0 ? a : a + 1;
+			if (t <= hn / hd) {
+				// last term
+				a = t;
+			}
+
+			if (!calc.multiply (a, p1)
+				|| !calc.add (calc.intResult, p0)) {
+				return false;
+			}
+			long p2 = calc.intResult;
+			if (!calc.multiply (a, q1)
+				|| !calc.add (calc.intResult, q0)) {
+				return false;
+			}
+			long q2 = calc.intResult;
+
+			if (a == t) {
+				result.setValue (p2, q2);
+				return true;
+			}
+
+			p0 = p1;
+			q0 = q1;
+			p1 = p2;
+			q1 = q2;
+
+			// [l, h] in (a, a + 1) => next: [1 / (h - a), 1 / (l - a)]
+			long nextLn = hd;
+			long nextLd = hn - a * hd;
+			long nextHn = ld;
+			long nextHd = ln - a * ld;
+			ln = nextLn;
+			ld = nextLd;
+			hn = nextHn;
+			hd = nextHd;
+		}
+	}
+
+	/**
+	 * Simplest fraction in {@code [ln / ld, hn / hd]},
+	 * where {@code 0 < ln / ld <= hn / hd}.
+	 */
+	private static void simplestBetween (
+		KNumRegister result,
+		BigInteger ln,
+		BigInteger ld,
+		BigInteger hn,
+		BigInteger hd) {
+
+		BigInteger p0 = BigInteger.ZERO;
+		BigInteger q0 = BigInteger.ONE;
+		BigInteger p1 = BigInteger.ONE;
+		BigInteger q1 = BigInteger.ZERO;
+
+		while (true) {
+			BigInteger[] quotientAndRemainder = ln.divideAndRemainder (ld);
+			BigInteger a = quotientAndRemainder[0];
+			BigInteger t = quotientAndRemainder[1].signum () == 0 ?
+				a :
+				a.add (BigInteger.ONE);
+			boolean last = t.compareTo (hn.divide (hd)) <= 0;
+			if (last) {
+				a = t;
+			}
+
+			BigInteger p2 = a.multiply (p1).add (p0);
+			BigInteger q2 = a.multiply (q1).add (q0);
+
+			if (last) {
+				result.setValue (p2, q2);
+				return;
+			}
+
+			p0 = p1;
+			q0 = q1;
+			p1 = p2;
+			q1 = q2;
+
+			BigInteger nextLn = hd;
+			BigInteger nextLd = hn.subtract (a.multiply (hd));
+			BigInteger nextHn = ld;
+			BigInteger nextHd = quotientAndRemainder[1];
+			ln = nextLn;
+			ld = nextLd;
+			hn = nextHn;
+			hd = nextHd;
+		}
+	}
+
+}
@@ -0,0 +1,399 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Operations:
+ * <ul>
+ * <li>Fraction-free (Bareiss) elimination of matrix rows.</li>
+ * </ul>
+ * <p>
+ * Each row is first multiplied by the least common multiple
+ * of its denominators, so that all entries are integers.
+ * Elimination step {@code k} then updates each entry below the pivot as
+ * <pre>
+ * a[i][j] = (a[k][k] * a[i][j] - a[i][k] * a[k][j]) / previousPivot
+ * </pre>
+ * where the division is exact,
+ * so entries stay integers (minors of the scaled matrix),
+ * with no gcd computations.
+ * Entries that fit in {@code long} are updated with guarded
+ * {@code long} arithmetic.
+ * <p>
+ * The rows below the pivot are independent:
+ * large steps are split across threads of the common fork/join pool.
+ */
+abstract class CBareiss {
+
+	/**
+	 * Minimum number of entries updated in a step
+	 * to update rows in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 12;
+
+	/**
+	 * Minimum number of entries updated by a parallel task.
+	 */
+	private static final int TASK_SIZE = 1 << 10;
+
+	/**
+	 * Result of elimination.
+	 */
+	static class Elimination {
+
+		/**
+		 * Rows in echelon form (integer entries).
+		 */
+		final KNumColumn[] rows;
+
+		/**
+		 * Number of pivots.
+		 */
+		int rank;
+
+		/**
+		 * {@code -1} if an odd number of rows were swapped,
+		 * {@code 1} otherwise.
+		 */
+		int sign = 1;
+
+		/**
+		 * Column of each pivot.
+		 */
+		final int[] pivotColumns;
+
+		/**
+		 * Product of the factors applied to the rows.
+		 */
+		final KNumRegister scale = new KNumRegister ();
+
+		Elimination (KNumColumn[] rows) {
+			this.rows = rows;
+			this.pivotColumns = new int[rows.length];
+		}
+
+	}
+
+	/**
+	 * Copy rows, scaled to integers, and eliminate.
+	 *
+	 * @param rows rows of the matrix (not modified).
+	 * @param columns number of columns of each row.
+	 * @param pivotLimit pivots are searched
+	 * in columns {@code [0, pivotLimit)}.
+	 * @return the echelon form.
+	 */
+	static Elimination eliminate (
+		KNumColumn[] rows,
+		int columns,
+		int pivotLimit) {
+
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+
+		Elimination elimination = new Elimination (new KNumColumn[rows.length]);
+		elimination.scale.setValue (1);
+		for (int i = 0; i < rows.length; i++) {
+			elimination.rows[i] = integerRow (
+				calc,
+				rows[i],
+				columns,
+				elimination.scale
+			);
+		}
+
+		KNumColumn[] work = elimination.rows;
+		KNumRegister value = new KNumRegister ();
+		KNumRegister previous = new KNumRegister ();
+		previous.setValue (1);
+
+		int rank = 0;
+		for (int k = 0; k < pivotLimit && rank < work.length; k++) {
+			// first non-zero entry in column
+			int pivotRow = -1;
+			for (int i = rank; i < work.length; i++) {
+				work[i].get (k, value);
+				if (CCompare.getSign (value) != 0) {
+					pivotRow = i;
+					break;
+				}
+			}
+			if (pivotRow < 0) {
+				continue;
+			}
+
+			if (pivotRow != rank) {
+				KNumColumn swap = work[pivotRow];
+				work[pivotRow] = work[rank];
+				work[rank] = swap;
+				elimination.sign = -elimination.sign;
+			}
+
+			int below = work.length - rank - 1;
+			int cells = below * (columns - k);
+			RowUpdate update = new RowUpdate (
+				work,
+				rank,
+				k,
+				columns,
+				previous,
+				rank + 1,
+				work.length
+			);
+			if (cells >= PARALLEL_THRESHOLD && below > 1) {
+				ForkJoinPool.commonPool ().invoke (update);
+			} else {
+				update.compute ();
+			}
+
+			work[rank].get (k, previous);
+			elimination.pivotColumns[rank] = k;
+			rank++;
+		}
+
+		elimination.rank = rank;
+		return elimination;
+	}
+
+	/**
+	 * Copy row, multiplied by the least common multiple
+	 * of its denominators.
+	 *
+	 * @param scale multiplied by the factor.
+	 */
+	private static KNumColumn integerRow (
+		KCalculator calc,
+		KNumColumn row,
+		int columns,
+		KNumRegister scale) {
+
+		KNumRegister value = new KNumRegister ();
+		KNumRegister factor = new KNumRegister ();
+
+		// least common multiple of denominators
+		factor.setValue (1);
+		for (int j = 0; j < columns; j++) {
+			getReduced (row, j, value);
+			lcmDenominator (calc, factor, value);
+		}
+
+		KNumColumn integerRow = new KNumColumn (columns);
+		for (int j = 0; j < columns; j++) {
+			getReduced (row, j, value);
+			CMultiply.multiply (calc, value, value, factor);
+			integerRow.set (j, value);
+		}
+
+		CMultiply.multiply (calc, scale, scale, factor);
+		return integerRow;
+	}
+
+	/**
+	 * Read entry, converting decimals to reduced fractions,
+	 * so that integer results have integer profiles.
+	 */
+	static void getReduced (
+		KNumColumn row,
+		int column,
+		KNumRegister value) {
+
+		row.get (column, value);
+		if (value.profile == KProfile.LONG_DECIMAL) {
+			value.setValue (value.numerator, value.denominator);
+		}
+	}
+
+	/**
+	 * Set {@code lcm} (a positive integer)
+	 * to the least common multiple of itself
+	 * and the denominator of {@code value}.
+	 */
+	static void lcmDenominator (
+		KCalculator calc,
+		KNumRegister lcm,
+		KNumRegister value) {
+
+		if (lcm.profile > KProfile.BIG_INTEGER
+			&& value.profile > KProfile.BIG_INTEGER) {
+
+			long gcd = KNumRegister.gcd (lcm.numerator, value.denominator);
+			if (calc.multiply (lcm.numerator / gcd, value.denominator)) {
+				lcm.setValue (calc.intResult);
+				return;
+			}
+		}
+
+		lcm.setBigIntegers ();
+		value.setBigIntegers ();
+		BigInteger bigLcm = lcm.bigNumerator;
+		lcm.setValue (
+			bigLcm.divide (bigLcm.gcd (value.bigDenominator))
+				.multiply (value.bigDenominator)
+		);
+	}
+
+	/**
+	 * Update entry:
+	 * {@code result = (pivot * value - factor * pivotValue) / previous}.
+	 * <p>
+	 * All operands must be integers, and the division exact.
+	 */
+	static void update (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister pivot,
+		KNumRegister value,
+		KNumRegister factor,
+		KNumRegister pivotValue,
+		KNumRegister previous) {
+
+		if (pivot.profile > KProfile.BIG_INTEGER
+			&& value.profile > KProfile.BIG_INTEGER
+			&& factor.profile > KProfile.BIG_INTEGER
+			&& pivotValue.profile > KProfile.BIG_INTEGER
+			&& previous.profile > KProfile.BIG_INTEGER
+			&& calc.multiply (pivot.numerator, value.numerator)) {
+
+			long product = calc.intResult;
+			if (calc.multiply (factor.numerator, pivotValue.numerator)
+				&& calc.subtract (product, calc.intResult)) {
+
+				result.setValue (calc.intResult / previous.numerator);
+				return;
+			}
+		}
+
+		// big
+		pivot.setBigIntegers ();
+		value.setBigIntegers ();
+		factor.setBigIntegers ();
+		pivotValue.setBigIntegers ();
+		previous.setBigIntegers ();
+		result.setValue (
+			pivot.bigNumerator.multiply (value.bigNumerator)
+				.subtract (factor.bigNumerator.multiply (pivotValue.bigNumerator))
+				.divide (previous.bigNumerator)
+		);
+	}
+
+	/**
+	 * Update of rows {@code [from, to)} in one elimination step.
+	 */
+	private static class RowUpdate extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * All rows.
+		 */
+		private final KNumColumn[] rows;
+
+		/**
+		 * Row of pivot.
+		 */
+		private final int pivotRow;
+
+		/**
+		 * Column of pivot.
+		 */
+		private final int pivotColumn;
+
+		/**
+		 * Number of columns.
+		 */
+		private final int columns;
+
+		/**
+		 * Previous pivot (read only: copied by each task).
+		 */
+		private final KNumRegister previous;
+
+		/**
+		 * First row to update.
+		 */
+		private final int from;
+
+		/**
+		 * End of rows to update (exclusive).
+		 */
+		private final int to;
+
+		RowUpdate (
+			KNumColumn[] rows,
+			int pivotRow,
+			int pivotColumn,
+			int columns,
+			KNumRegister previous,
+			int from,
+			int to) {
+
+			this.rows = rows;
+			this.pivotRow = pivotRow;
+			this.pivotColumn = pivotColumn;
+			this.columns = columns;
+			this.previous = previous;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute () {
+			int width = columns - pivotColumn;
+			if (to - from > 1 && (to - from) * width >= 2 * TASK_SIZE) {
+				int middle = (from + to) >>> 1;
+				invokeAll (
+					new RowUpdate (rows, pivotRow, pivotColumn, columns,
+						previous, from, middle),
+					new RowUpdate (rows, pivotRow, pivotColumn, columns,
+						previous, middle, to)
+				);
+				return;
+			}
+
+			// registers not shared between tasks
+			KCalculator calc = new KCalculator (new KNumRegisterPool ());
+			KNumRegister pivot = new KNumRegister ();
+			KNumRegister previousCopy = new KNumRegister ();
+			KNumRegister factor = new KNumRegister ();
+			KNumRegister value = new KNumRegister ();
+			KNumRegister pivotValue = new KNumRegister ();
+
+			KNumColumn pivotEntries = rows[pivotRow];
+			pivotEntries.get (pivotColumn, pivot);
+			previousCopy.copy (previous);
+
+			for (int i = from; i < to; i++) {
+				KNumColumn row = rows[i];
+				row.get (pivotColumn, factor);
+
+				for (int j = pivotColumn + 1; j < columns; j++) {
+					row.get (j, value);
+					pivotEntries.get (j, pivotValue);
+					update (calc, value, pivot, value, factor, pivotValue, previousCopy);
+					row.set (j, value);
+				}
+
+				value.setZeroValue ();
+				row.set (pivotColumn, value);
+			}
+		}
+
+	}
+
+}
@@ -15,6 +15,8 @@
  */
 package net.roboterhund.kitsune;
 
+import java.math.BigInteger;
+
 /**
  * Operations:
  * <ul>
@@ -23,6 +25,16 @@ package net.roboterhund.kitsune;
  */
 abstract class CCompare {
 
+	/**
+	 * Bound for the relative error of the mantissas
+	 * compared by {@link #compareBig}.
+	 * <p>
+	 * Each mantissa accumulates at most three roundings
+	 * (two conversions and one division) and one truncation,
+	 * each one below {@code 2^-52}.
+	 */
+	static final double APPROX_ERROR = 0x1p-48;
+
 	/**
 	 * Compare two numbers.
 	 * <p>
@@ -48,45 +60,44 @@ abstract class CCompare {
 			// go to end
 			break;
 
-		case KProfile._LONG_RAT_:
-			if (calc.multiply (number_1.numerator, number_2.denominator)) {
-				long n1_mul_n2 = calc.intResult;
-
-				if (calc.multiply (number_2.numerator, number_1.denominator)) {
-
-					if (calc.subtract (n1_mul_n2, calc.intResult)) {
-						return calc.intResult;
-					}
-				}
+		case KProfile._DEC__DEC_:
+			if (number_1.scale == number_2.scale) {
+				return Long.compare (number_1.numerator, number_2.numerator);
 			}
-			route = KProfile._BIG__RAT_;
-			break;
+			// same as rational
+			return compareProducts (
+				number_1.numerator, number_2.denominator,
+				number_2.numerator, number_1.denominator
+			);
 
-		case KProfile._LONG_INT1:
-			if (calc.multiply (number_1.numerator, number_2.denominator)) {
+		case KProfile._LONG_RAT_:
+			return compareProducts (
+				number_1.numerator, number_2.denominator,
+				number_2.numerator, number_1.denominator
+			);
 
-				if (calc.subtract (calc.intResult, number_2.numerator)) {
-					return calc.intResult;
-				}
-			}
-			route = KProfile._BIG__INT1;
-			break;
+		case KProfile._DEC__INT1:
+		case KProfile._LONG_INT1:
+			return compareProducts (
+				number_1.numerator, number_2.denominator,
+				number_2.numerator, 1
+			);
 
+		case KProfile._DEC__INT2:
 		case KProfile._LONG_INT2:
-			if (calc.multiply (number_2.numerator, number_1.denominator)) {
-
-				if (calc.subtract (number_1.numerator, calc.intResult)) {
-					return calc.intResult;
-				}
-			}
-			route = KProfile._BIG__INT2;
-			break;
+			return compareProducts (
+				number_1.numerator, 1,
+				number_2.numerator, number_1.denominator
+			);
 
 		case KProfile._INT__RAT_:
 			return number_1.numerator * number_2.denominator
 				- number_2.numerator * number_1.denominator;
 
 		case KProfile._LONG_INT_:
+			// difference may overflow
+			return Long.compare (number_1.numerator, number_2.numerator);
+
 		case KProfile._INT__INT_:
 			return number_1.numerator - number_2.numerator;
 		}
@@ -113,30 +124,181 @@ abstract class CCompare {
 
 		switch (route) {
 		case KProfile._BIG__RAT_:
-			return
-				number_1.bigNumerator.multiply (number_2.bigDenominator)
-					.compareTo (
-						number_2.bigNumerator.multiply (number_1.bigDenominator)
-					);
-
 		case KProfile._BIG__INT1:
-			return
-				number_1.bigNumerator.multiply (number_2.bigDenominator)
-					.compareTo (
-						number_2.bigNumerator
-					);
-
 		case KProfile._BIG__INT2:
-			return
-				number_1.bigNumerator
-					.compareTo (
-						number_2.bigNumerator.multiply (number_1.bigDenominator)
-					);
+			return compareBig (
+				number_1.bigNumerator,
+				number_1.bigDenominator,
+				number_2.bigNumerator,
+				number_2.bigDenominator
+			);
 		}
 
 		throw new RuntimeException ("CCompare.compareTo: Invalid route.");
 	}
 
+	/**
+	 * Compare {@code factor_1 * factor_2}
+	 * with {@code factor_3 * factor_4}.
+	 * <p>
+	 * The products are compared as 128-bit integers,
+	 * so they never overflow.
+	 *
+	 * @return A negative, zero or positive number,
+	 * as in {@link #compare}.
+	 */
+	static int compareProducts (
+		long factor_1,
+		long factor_2,
+		long factor_3,
+		long factor_4) {
+
+		long high_1 = Math.multiplyHigh (factor_1, factor_2);
+		long high_2 = Math.multiplyHigh (factor_3, factor_4);
+
+		if (high_1 != high_2) {
+			// high words are signed
+			return high_1 < high_2 ? -1 : 1;
+		}
+
+		// low words are unsigned
+		return Long.compareUnsigned (
+			factor_1 * factor_2,
+			factor_3 * factor_4
+		);
+	}
+
+	/**
+	 * Compare two fractions with the same sign.
+	 * <p>
+	 * Stages, from cheapest to most expensive:
+	 * <ol>
+	 * <li>Bit length: estimate of {@code log2 (|n| / d)}.</li>
+	 * <li>{@code double} approximation, with error bound.</li>
+	 * <li>Exact cross multiplication.</li>
+	 * </ol>
+	 * Each stage is only used if the previous one was inconclusive.
+	 */
+	static int compareBig (
+		BigInteger bigNumerator_1,
+		BigInteger bigDenominator_1,
+		BigInteger bigNumerator_2,
+		BigInteger bigDenominator_2) {
+
+		int sign = bigNumerator_1.signum ();
+		if (sign == 0) {
+			// both zero
+			return 0;
+		}
+
+		// 2^(exp - 1) < |n| / d <= 2^(exp + 1)
+		int exponent_1 =
+			bigNumerator_1.bitLength () - bigDenominator_1.bitLength ();
+		int exponent_2 =
+			bigNumerator_2.bitLength () - bigDenominator_2.bitLength ();
+
+		if (exponent_1 - exponent_2 >= 2) {
+			// |n1 / d1| > |n2 / d2|
+			return sign;
+		}
+		if (exponent_2 - exponent_1 >= 2) {
+			// |n1 / d1| < |n2 / d2|
+			return -sign;
+		}
+
+		// |n / d| / 2^exp, in (1/2, 2)
+		double mantissa_1 =
+			scaledMagnitude (bigNumerator_1)
+				/ scaledMagnitude (bigDenominator_1);
+		double mantissa_2 =
+			scaledMagnitude (bigNumerator_2)
+				/ scaledMagnitude (bigDenominator_2);
+
+		// exponents differ by at most 1
+		mantissa_1 = Math.scalb (mantissa_1, exponent_1 - exponent_2);
+
+		if (mantissa_1 > mantissa_2 * (1 + APPROX_ERROR)) {
+			return sign;
+		}
+		if (mantissa_1 < mantissa_2 * (1 - APPROX_ERROR)) {
+			return -sign;
+		}
+
+		// too close, compare exactly
+		return bigNumerator_1.multiply (bigDenominator_2)
+			.compareTo (
+				bigNumerator_2.multiply (bigDenominator_1)
+			);
+	}
+
+	/**
+	 * Get {@code double} approximation of number.
+	 * <p>
+	 * The relative error is below {@link #APPROX_ERROR},
+	 * unless the value is outside the range of normal {@code double} values.
+	 * Values too large for a {@code double} are approximated as infinite.
+	 * <p>
+	 * Unlike {@link KConverter#toDouble}, this method does not
+	 * convert big values through {@code BigDecimal}.
+	 */
+	static double approximate (KNumRegister number) {
+		switch (number.profile) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			return approximate (
+				number.bigNumerator,
+				number.bigDenominator
+			);
+
+		default:
+			return (double) number.numerator / number.denominator;
+		}
+	}
+
+	/**
+	 * Get {@code double} approximation of fraction.
+	 *
+	 * @see #approximate(KNumRegister)
+	 */
+	static double approximate (
+		BigInteger bigNumerator,
+		BigInteger bigDenominator) {
+
+		double mantissa =
+			scaledMagnitude (bigNumerator)
+				/ scaledMagnitude (bigDenominator);
+
+		return Math.copySign (
+			Math.scalb (
+				mantissa,
+				bigNumerator.bitLength () - bigDenominator.bitLength ()
+			),
+			bigNumerator.signum ()
+		);
+	}
+
+	/**
+	 * Get {@code |value| / 2^bitLength}, in {@code [1/2, 1]}.
+	 * <p>
+	 * Only values too large for a {@code double}
+	 * are shifted before conversion.
+	 */
+	static double scaledMagnitude (BigInteger value) {
+		int bitLength = value.bitLength ();
+		if (bitLength < Double.MAX_EXPONENT) {
+			return Math.abs (Math.scalb (value.doubleValue (), -bitLength));
+		}
+
+		// too large for double: keep only the highest bits
+		int shift = bitLength - Long.SIZE;
+		return Math.abs (
+			Math.scalb (
+				value.shiftRight (shift).doubleValue (),
+				-Long.SIZE
+			)
+		);
+	}
+
 	/**
 	 * Get sign of number.
 	 *
@@ -15,17 +15,40 @@
  */
 package net.roboterhund.kitsune;
 
-import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
+import java.math.BigInteger;
 
 /**
  * Operations:
  * <ul>
  * <li>Division.</li>
  * <li>Modulo.</li>
+ * <li>Floor division and modulo.</li>
+ * <li>Euclidean modulo.</li>
+ * <li>Divisibility test.</li>
  * </ul>
  */
 abstract class CDivide {
 
+	/**
+	 * Integer division mode:
+	 * quotient rounded towards zero,
+	 * remainder has the sign of the dividend.
+	 */
+	static final int TRUNCATE = 0;
+
+	/**
+	 * Integer division mode:
+	 * quotient rounded towards negative infinity,
+	 * remainder has the sign of the divisor.
+	 */
+	static final int FLOOR = 1;
+
+	/**
+	 * Integer division mode:
+	 * remainder is never negative.
+	 */
+	static final int EUCLIDEAN = 2;
+
 	/**
 	 * Divide two numbers.
 	 */
@@ -42,21 +65,30 @@ abstract class CDivide {
 			// go to end
 			break;
 
+		case KProfile._DEC__DEC_:
+			if (dividend.scale == divisor.scale) {
+				// denominators cancel out
+				result.setValue (
+					dividend.numerator,
+					divisor.numerator
+				);
+				return;
+			}
+			// same as rational
+			if (divideRational (calc, result, dividend, divisor)) {
+				return;
+			}
+			route = KProfile._BIG__RAT_;
+			break;
+
 		case KProfile._LONG_RAT_:
-			if (calc.multiply (dividend.numerator, divisor.denominator)) {
-				long numerator = calc.intResult;
-
-				if (calc.multiply (divisor.numerator, dividend.denominator)) {
-					result.setValue (
-						numerator,
-						calc.intResult
-					);
-					return;
-				}
+			if (divideRational (calc, result, dividend, divisor)) {
+				return;
 			}
 			route = KProfile._BIG__RAT_;
 			break;
 
+		case KProfile._DEC__INT1:
 		case KProfile._LONG_INT1:
 			if (calc.multiply (dividend.numerator, divisor.denominator)) {
 				result.setValue (
@@ -68,6 +100,7 @@ abstract class CDivide {
 			route = KProfile._BIG__INT1;
 			break;
 
+		case KProfile._DEC__INT2:
 		case KProfile._LONG_INT2:
 			if (calc.multiply (divisor.numerator, dividend.denominator)) {
 				result.setValue (
@@ -137,6 +170,32 @@ abstract class CDivide {
 		}
 	}
 
+	/**
+	 * Divide compact rationals with {@code long} products.
+	 *
+	 * @return {@code false} if a product overflows
+	 * ({@code result} not set).
+	 */
+	private static boolean divideRational (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		if (calc.multiply (dividend.numerator, divisor.denominator)) {
+			long numerator = calc.intResult;
+
+			if (calc.multiply (divisor.numerator, dividend.denominator)) {
+				result.setValue (
+					numerator,
+					calc.intResult
+				);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Get {@code dividend % divisor}.
 	 */
@@ -146,44 +205,54 @@ abstract class CDivide {
 		KNumRegister dividend,
 		KNumRegister divisor) {
 
-		int route = KProfile.route[dividend.profile][divisor.profile];
+		integerDivision (calc, null, result, dividend, divisor, TRUNCATE);
+	}
 
-		switch (route) {
-		default:
-			// go to end
-			break;
+	/**
+	 * Get {@code floor (dividend / divisor)}.
+	 */
+	public static void floorDivide (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
 
-		case KProfile._BIG__INT_:
-			dividend.setBigIntegers ();
-			divisor.setBigIntegers ();
-			result.setValue (
-				dividend.bigNumerator.mod (divisor.bigNumerator)
-			);
-			break;
+		integerDivision (calc, result, null, dividend, divisor, FLOOR);
+	}
 
-		case KProfile._LONG_INT_:
-		case KProfile._INT__INT_:
-			result.setValue (
-				dividend.numerator % divisor.numerator
-			);
-			return;
-		}
+	/**
+	 * Get {@code dividend - divisor * floor (dividend / divisor)}.
+	 */
+	public static void floorModulo (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
 
-		// fallback
+		integerDivision (calc, null, result, dividend, divisor, FLOOR);
+	}
 
-		KNumRegisterPool regPool = calc.regPool;
+	/**
+	 * Get non-negative remainder of {@code dividend / divisor}.
+	 */
+	public static void euclideanModulo (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
 
-		KRegCont cont_1 = regPool.get ();
-		KNumRegister temp_1 = cont_1.reg;
+		integerDivision (calc, null, result, dividend, divisor, EUCLIDEAN);
+	}
 
-		// a % b
-		// = a - (b * int (a / b))
-		CDivide.divide (calc, temp_1, dividend, divisor);
-		CRound.truncate (temp_1, temp_1);
-		CMultiply.multiply (calc, temp_1, temp_1, divisor);
-		CSubtract.subtract (calc, result, dividend, temp_1);
+	/**
+	 * Check whether {@code dividend / divisor} is an integer.
+	 */
+	public static boolean isDivisible (
+		KCalculator calc,
+		KNumRegister dividend,
+		KNumRegister divisor) {
 
-		regPool.discard (cont_1);
+		return integerDivision (calc, null, null, dividend, divisor, TRUNCATE);
 	}
 
 	/**
@@ -198,31 +267,247 @@ abstract class CDivide {
 		KNumRegister dividend,
 		KNumRegister divisor) {
 
-		KNumRegisterPool regPool = calc.regPool;
+		integerDivision (calc, result, remainder, dividend, divisor, TRUNCATE);
+	}
 
-		KRegCont cont_1 = regPool.get ();
-		KNumRegister temp_1 = cont_1.reg;
+	/**
+	 * Integer division and remainder.
+	 * <p>
+	 * With {@code dividend = n1 / d1}, {@code divisor = n2 / d2}
+	 * and {@code l = lcm (d1, d2)}:
+	 * <pre>
+	 * x = n1 (l / d1)
+	 * y = n2 (l / d2)
+	 * quotient = x / y
+	 * remainder = (x % y) / l
+	 * </pre>
+	 * then the quotient is decremented (for a positive divisor)
+	 * or incremented (for a negative one) if the mode
+	 * requires a remainder with a different sign.
+	 * <p>
+	 * Operands are read before results are written,
+	 * so results may be the same registers as operands.
+	 *
+	 * @param quotient if not {@code null}, overwritten with the quotient.
+	 * @param remainder if not {@code null}, overwritten with the remainder.
+	 * @param mode {@link #TRUNCATE}, {@link #FLOOR} or {@link #EUCLIDEAN}.
+	 * @return {@code true} if the remainder is zero.
+	 */
+	private static boolean integerDivision (
+		KCalculator calc,
+		KNumRegister quotient,
+		KNumRegister remainder,
+		KNumRegister dividend,
+		KNumRegister divisor,
+		int mode) {
 
-		KRegCont cont_2 = regPool.get ();
-		KNumRegister temp_2 = cont_2.reg;
+		int route = KProfile.route[dividend.profile][divisor.profile];
 
-		// a // b
-		// = int (a / b)
-		CDivide.divide (calc, temp_1, dividend, divisor);
-		CRound.truncate (temp_1, temp_1);
+		long x;
+		long y;
+		long l;
+		// scale of decimal remainder, or -1
+		int scale = -1;
 
-		if (remainder != null) {
-			// a % b
-			// = a - (b * int (a / b))
-			// = a - (b * a // b)
-			CMultiply.multiply (calc, temp_2, temp_1, divisor);
-			CSubtract.subtract (calc, remainder, dividend, temp_2);
+		// decimal operands: remainder keeps the larger scale,
+		// values follow the long routes (lcm of powers of ten)
+		switch (route) {
+		case KProfile._DEC__DEC_:
+			scale = Math.max (dividend.scale, divisor.scale);
+			route = KProfile._LONG_RAT_;
+			break;
+
+		case KProfile._DEC__INT1:
+			scale = divisor.scale;
+			route = KProfile._LONG_INT1;
+			break;
+
+		case KProfile._DEC__INT2:
+			scale = dividend.scale;
+			route = KProfile._LONG_INT2;
+			break;
+		}
+
+		switch (route) {
+		default:
+			x = y = l = 0;
+			break;
+
+		case KProfile._LONG_RAT_:
+			long gcd = KNumRegister.gcd (dividend.denominator, divisor.denominator);
+			if (calc.multiply (dividend.numerator, divisor.denominator / gcd)) {
+				x = calc.intResult;
+				if (calc.multiply (divisor.numerator, dividend.denominator / gcd)) {
+					y = calc.intResult;
+					if (calc.multiply (dividend.denominator / gcd, divisor.denominator)) {
+						l = calc.intResult;
+						break;
+					}
+				}
+			}
+			route = KProfile._BIG__RAT_;
+			x = y = l = 0;
+			break;
+
+		case KProfile._LONG_INT1:
+			if (calc.multiply (dividend.numerator, divisor.denominator)) {
+				x = calc.intResult;
+				y = divisor.numerator;
+				l = divisor.denominator;
+				break;
+			}
+			route = KProfile._BIG__INT1;
+			x = y = l = 0;
+			break;
+
+		case KProfile._LONG_INT2:
+			if (calc.multiply (divisor.numerator, dividend.denominator)) {
+				x = dividend.numerator;
+				y = calc.intResult;
+				l = dividend.denominator;
+				break;
+			}
+			route = KProfile._BIG__INT2;
+			x = y = l = 0;
+			break;
+
+		case KProfile._INT__RAT_:
+			// int products fit in long
+			gcd = KNumRegister.gcd (dividend.denominator, divisor.denominator);
+			x = dividend.numerator * (divisor.denominator / gcd);
+			y = divisor.numerator * (dividend.denominator / gcd);
+			l = dividend.denominator / gcd * divisor.denominator;
+			break;
+
+		case KProfile._LONG_INT_:
+		case KProfile._INT__INT_:
+			x = dividend.numerator;
+			y = divisor.numerator;
+			l = 1;
+			break;
+		}
+
+		if (route > KProfile._BIG__INT_) {
+			// long route: throws if y is zero
+			long r = x % y;
+			if (quotient == null && remainder == null) {
+				return r == 0;
+			}
+
+			// adjustment of truncated quotient
+			int step = 0;
+			if (r != 0) {
+				if (mode == FLOOR && (r ^ y) < 0) {
+					step = -1;
+				} else if (mode == EUCLIDEAN && r < 0) {
+					step = y > 0 ? -1 : 1;
+				}
+			}
+			if (step != 0) {
+				// |r| < |y|: no overflow
+				r -= step * y;
+			}
+
+			if (quotient != null) {
+				if (x == Long.MIN_VALUE && y == -1) {
+					quotient.setValue (BigInteger.valueOf (x).negate ());
+				} else {
+					// quotient is not Long.MIN_VALUE when r != 0
+					quotient.setValue (x / y + step);
+				}
+			}
+			if (remainder != null) {
+				if (scale >= 0) {
+					remainder.setDecimal (r, scale);
+				} else if (l == 1) {
+					remainder.setValue (r);
+				} else {
+					remainder.setValue (r, l);
+				}
+			}
+			return r == 0;
 		}
 
-		result.copy (temp_1);
+		// fallback
+
+		dividend.setBigIntegers ();
+		divisor.setBigIntegers ();
+
+		BigInteger bigX;
+		BigInteger bigY;
+		BigInteger bigL;
 
-		regPool.discard (cont_1);
-		regPool.discard (cont_2);
+		switch (route) {
+		default:
+		case KProfile._BIG__RAT_:
+			bigX = dividend.bigNumerator.multiply (divisor.bigDenominator);
+			bigY = divisor.bigNumerator.multiply (dividend.bigDenominator);
+			bigL = dividend.bigDenominator.multiply (divisor.bigDenominator);
+			break;
+
+		case KProfile._BIG__INT1:
+			bigX = dividend.bigNumerator.multiply (divisor.bigDenominator);
+			bigY = divisor.bigNumerator;
+			bigL = divisor.bigDenominator;
+			break;
+
+		case KProfile._BIG__INT2:
+			bigX = dividend.bigNumerator;
+			bigY = divisor.bigNumerator.multiply (dividend.bigDenominator);
+			bigL = dividend.bigDenominator;
+			break;
+
+		case KProfile._BIG__INT_:
+			bigX = dividend.bigNumerator;
+			bigY = divisor.bigNumerator;
+			bigL = BigInteger.ONE;
+			break;
+		}
+
+		// throws if y is zero
+		BigInteger bigQuotient = null;
+		BigInteger bigRemainder;
+		if (quotient != null) {
+			BigInteger[] division = bigX.divideAndRemainder (bigY);
+			bigQuotient = division[0];
+			bigRemainder = division[1];
+		} else {
+			bigRemainder = bigX.remainder (bigY);
+		}
+
+		int remainderSign = bigRemainder.signum ();
+		if (quotient == null && remainder == null) {
+			return remainderSign == 0;
+		}
+
+		// adjustment of truncated quotient
+		int step = 0;
+		if (remainderSign != 0) {
+			if (mode == FLOOR && remainderSign != bigY.signum ()) {
+				step = -1;
+			} else if (mode == EUCLIDEAN && remainderSign < 0) {
+				step = bigY.signum () > 0 ? -1 : 1;
+			}
+		}
+		if (step != 0) {
+			bigRemainder = step < 0
+				? bigRemainder.add (bigY) : bigRemainder.subtract (bigY);
+			if (bigQuotient != null) {
+				bigQuotient = bigQuotient.add (BigInteger.valueOf (step));
+			}
+		}
+
+		if (quotient != null) {
+			quotient.setValue (bigQuotient);
+		}
+		if (remainder != null) {
+			if (bigL.equals (BigInteger.ONE)) {
+				remainder.setValue (bigRemainder);
+			} else {
+				remainder.setValue (bigRemainder, bigL);
+			}
+		}
+		return remainderSign == 0;
 	}
 
 }
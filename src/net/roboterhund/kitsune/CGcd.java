@@ -0,0 +1,724 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+
+/**
+ * Operations:
+ * <ul>
+ * <li>Reduction of big fractions.</li>
+ * </ul>
+ * <p>
+ * Euclid's algorithm on {@code (a, b)} produces a sequence of quotients.
+ * The product {@code M} of the matrices {@code [[q, 1], [1, 0]]}
+ * satisfies {@code (a, b) = M (g, 0)}, where {@code g = gcd (a, b)}.
+ * So the first column of {@code M} is {@code (a / g, b / g)}:
+ * the reduced fraction is obtained without dividing by the gcd.
+ * <p>
+ * Small operands are reduced with {@link BigInteger#gcd(BigInteger)}.
+ * Larger operands are reduced with Lehmer's algorithm:
+ * several quotients are computed from the leading bits,
+ * and applied at once to mutable limb arrays.
+ * Even larger operands are first halved with a recursive half-gcd,
+ * which uses the subquadratic multiplication of {@code BigInteger}.
+ */
+abstract class CGcd {
+
+	/**
+	 * Minimum bit length of both operands to use Lehmer's algorithm.
+	 */
+	static final int LEHMER_THRESHOLD = 256;
+
+	/**
+	 * Minimum bit length of the smallest operand
+	 * to use the half-gcd algorithm.
+	 */
+	static final int HALF_GCD_THRESHOLD = 131072;
+
+	/**
+	 * Minimum bit length of the shortest factor
+	 * to split unbalanced multiplications.
+	 */
+	static final int UNBALANCED_THRESHOLD = 8192;
+
+	/**
+	 * Maximum absolute value of cofactors in a Lehmer step.
+	 * <p>
+	 * Two products of a cofactor and a 32-bit limb,
+	 * plus a carry, fit in {@code long}.
+	 */
+	private static final long MAX_COFACTOR = 1L << 30;
+
+	/**
+	 * Bits of the leading part used in a Lehmer step.
+	 */
+	private static final int LEADING_BITS = 62;
+
+	/**
+	 * Mask for unsigned conversion of limbs.
+	 */
+	private static final long MASK = 0xFFFFFFFFL;
+
+	/**
+	 * Reduce fraction.
+	 *
+	 * @param bigNumerator numerator.
+	 * @param bigDenominator denominator.
+	 * @return numerator and denominator divided by their
+	 * greatest common divisor (signs are kept).
+	 */
+	static BigInteger[] reduce (
+		BigInteger bigNumerator,
+		BigInteger bigDenominator) {
+
+		if (bigNumerator.bitLength () < LEHMER_THRESHOLD
+			|| bigDenominator.bitLength () < LEHMER_THRESHOLD) {
+			// one operand is small: one division reduces the other
+			BigInteger gcd = bigNumerator.gcd (bigDenominator);
+			if (!gcd.equals (BigInteger.ONE)) {
+				bigNumerator = bigNumerator.divide (gcd);
+				bigDenominator = bigDenominator.divide (gcd);
+			}
+			return new BigInteger[] {bigNumerator, bigDenominator};
+		}
+
+		BigInteger a = bigNumerator.abs ();
+		BigInteger b = bigDenominator.abs ();
+
+		// (a, b) = M (u, v)
+		Reduction total = new Reduction (a, b);
+		if (a.compareTo (b) < 0) {
+			total.swap ();
+		}
+
+		while (total.b.bitLength () >= HALF_GCD_THRESHOLD) {
+			Reduction half = halfGcd (total.a, total.b);
+			if (half.isIdentity ()) {
+				// no progress
+				break;
+			}
+			total.multiply (half);
+		}
+
+		Lehmer lehmer = new Lehmer (total.a, total.b);
+		lehmer.reduce (0);
+
+		// (u, v) = L (g, 0) => (a, b) = M L (g, 0)
+		BigInteger l00 = lehmer.m00.toBigInteger ();
+		BigInteger l10 = lehmer.m10.toBigInteger ();
+		BigInteger reducedNumerator =
+			total.m00.multiply (l00).add (total.m01.multiply (l10));
+		BigInteger reducedDenominator =
+			total.m10.multiply (l00).add (total.m11.multiply (l10));
+
+		return new BigInteger[] {
+			bigNumerator.signum () < 0 ?
+				reducedNumerator.negate () :
+				reducedNumerator,
+			bigDenominator.signum () < 0 ?
+				reducedDenominator.negate () :
+				reducedDenominator
+		};
+	}
+
+	/**
+	 * Reduce {@code (a, b)}, where {@code a >= b >= 0},
+	 * until {@code b} has about half the bits of {@code a}.
+	 */
+	static Reduction halfGcd (
+		BigInteger a,
+		BigInteger b) {
+
+		int n = a.bitLength ();
+		int s = n / 2 + 1;
+		if (b.bitLength () <= s) {
+			return new Reduction (a, b);
+		}
+
+		if (n < HALF_GCD_THRESHOLD) {
+			Lehmer lehmer = new Lehmer (a, b);
+			lehmer.reduce (s);
+			return lehmer.toReduction ();
+		}
+
+		// reduce leading half: result has about 3/4 of the bits
+		int p = n / 2;
+		Reduction reduction = new Reduction (a, b);
+		reduction.apply (halfGcd (a.shiftRight (p), b.shiftRight (p)));
+		if (reduction.b.bitLength () <= s) {
+			return reduction;
+		}
+
+		// one division step
+		reduction.divide ();
+		if (reduction.b.bitLength () <= s) {
+			return reduction;
+		}
+
+		// reduce leading part again: about 1/2 of the bits
+		int p2 = Math.max (0, 2 * s - reduction.a.bitLength ());
+		reduction.apply (halfGcd (
+			reduction.a.shiftRight (p2),
+			reduction.b.shiftRight (p2)
+		));
+
+		if (reduction.b.bitLength () > s) {
+			// leading parts did not suffice
+			Lehmer lehmer = new Lehmer (reduction.a, reduction.b);
+			lehmer.reduce (s);
+			reduction.multiply (lehmer.toReduction ());
+		}
+
+		return reduction;
+	}
+
+	/**
+	 * Multiply {@code small} by a much longer number.
+	 * <p>
+	 * {@code BigInteger} splits unbalanced operands by the longest one,
+	 * which is slow; splitting the long operand in pieces
+	 * of the same length as the short one is faster.
+	 */
+	static BigInteger multiplyUnbalanced (
+		BigInteger small,
+		BigInteger large) {
+
+		int pieceBits = small.bitLength ();
+		if (pieceBits < UNBALANCED_THRESHOLD
+			|| large.bitLength () < 2 * pieceBits) {
+			return small.multiply (large);
+		}
+
+		BigInteger mask = BigInteger.ONE.shiftLeft (pieceBits)
+			.subtract (BigInteger.ONE);
+		BigInteger product = BigInteger.ZERO;
+		for (int shift = (large.bitLength () - 1) / pieceBits * pieceBits;
+			shift >= 0;
+			shift -= pieceBits) {
+
+			BigInteger piece = large.shiftRight (shift).and (mask);
+			product = product.shiftLeft (pieceBits)
+				.add (small.multiply (piece));
+		}
+		return product;
+	}
+
+	/**
+	 * Pair {@code (a, b)} reduced by matrix {@code M},
+	 * where {@code (a0, b0) = M (a, b)} for the original pair.
+	 * <p>
+	 * The entries of {@code M} are not negative,
+	 * and its determinant is {@code 1} or {@code -1}.
+	 */
+	static class Reduction {
+
+		BigInteger m00 = BigInteger.ONE;
+		BigInteger m01 = BigInteger.ZERO;
+		BigInteger m10 = BigInteger.ZERO;
+		BigInteger m11 = BigInteger.ONE;
+
+		/**
+		 * Determinant of {@code M}.
+		 */
+		int determinant = 1;
+
+		BigInteger a;
+		BigInteger b;
+
+		/**
+		 * Identity reduction.
+		 */
+		Reduction (
+			BigInteger a,
+			BigInteger b) {
+
+			this.a = a;
+			this.b = b;
+		}
+
+		/**
+		 * Check whether {@code M} is the identity.
+		 */
+		boolean isIdentity () {
+			return m01.signum () == 0 && m10.signum () == 0;
+		}
+
+		/**
+		 * Swap {@code a} and {@code b}.
+		 */
+		void swap () {
+			BigInteger temp = a;
+			a = b;
+			b = temp;
+
+			// M [[0, 1], [1, 0]]
+			temp = m00;
+			m00 = m01;
+			m01 = temp;
+			temp = m10;
+			m10 = m11;
+			m11 = temp;
+			determinant = -determinant;
+		}
+
+		/**
+		 * One step of Euclid's algorithm.
+		 */
+		void divide () {
+			BigInteger[] quotientAndRemainder = a.divideAndRemainder (b);
+			BigInteger q = quotientAndRemainder[0];
+			a = b;
+			b = quotientAndRemainder[1];
+
+			// M [[q, 1], [1, 0]]
+			BigInteger temp = m00;
+			m00 = q.multiply (m00).add (m01);
+			m01 = temp;
+			temp = m10;
+			m10 = q.multiply (m10).add (m11);
+			m11 = temp;
+			determinant = -determinant;
+		}
+
+		/**
+		 * Apply reduction computed on the leading bits of {@code (a, b)}.
+		 * <p>
+		 * The reduction is discarded if it is not valid
+		 * for the complete numbers.
+		 */
+		void apply (Reduction leading) {
+			if (leading.isIdentity ()) {
+				return;
+			}
+
+			// (a', b') = N^-1 (a, b)
+			// N^-1 = det [[n11, -n01], [-n10, n00]]
+			BigInteger reducedA = multiplyUnbalanced (leading.m11, a)
+				.subtract (multiplyUnbalanced (leading.m01, b));
+			BigInteger reducedB = multiplyUnbalanced (leading.m00, b)
+				.subtract (multiplyUnbalanced (leading.m10, a));
+			if (leading.determinant < 0) {
+				reducedA = reducedA.negate ();
+				reducedB = reducedB.negate ();
+			}
+
+			if (reducedB.signum () < 0
+				|| reducedA.compareTo (reducedB) <= 0) {
+				// quotients of leading bits were wrong
+				return;
+			}
+
+			multiplyMatrix (leading);
+			a = reducedA;
+			b = reducedB;
+		}
+
+		/**
+		 * Continue with a reduction of the current pair.
+		 */
+		void multiply (Reduction next) {
+			multiplyMatrix (next);
+			a = next.a;
+			b = next.b;
+		}
+
+		/**
+		 * {@code M = M N}.
+		 */
+		private void multiplyMatrix (Reduction next) {
+			BigInteger n00 = m00.multiply (next.m00).add (m01.multiply (next.m10));
+			BigInteger n01 = m00.multiply (next.m01).add (m01.multiply (next.m11));
+			BigInteger n10 = m10.multiply (next.m00).add (m11.multiply (next.m10));
+			BigInteger n11 = m10.multiply (next.m01).add (m11.multiply (next.m11));
+			m00 = n00;
+			m01 = n01;
+			m10 = n10;
+			m11 = n11;
+			determinant *= next.determinant;
+		}
+
+	}
+
+	/**
+	 * Lehmer's algorithm on mutable limbs.
+	 * <p>
+	 * Keeps {@code (u, v)}, with {@code u > v},
+	 * and the matrix {@code M}, with {@code (a, b) = M (u, v)}.
+	 */
+	static class Lehmer {
+
+		Limbs u;
+		Limbs v;
+
+		Limbs m00;
+		Limbs m01;
+		Limbs m10;
+		Limbs m11;
+
+		/**
+		 * Determinant of {@code M}.
+		 */
+		int determinant = 1;
+
+		// buffers for the next values
+		private Limbs nextU;
+		private Limbs nextV;
+		private Limbs next0;
+		private Limbs next1;
+
+		/**
+		 * Start with {@code (a, b)}, where {@code a >= b >= 0}.
+		 */
+		Lehmer (
+			BigInteger a,
+			BigInteger b) {
+
+			u = new Limbs (a);
+			v = new Limbs (b);
+			int length = u.length + 1;
+			nextU = new Limbs (length);
+			nextV = new Limbs (length);
+
+			m00 = new Limbs (length);
+			m01 = new Limbs (length);
+			m10 = new Limbs (length);
+			m11 = new Limbs (length);
+			next0 = new Limbs (length);
+			next1 = new Limbs (length);
+			m00.setOne ();
+			m11.setOne ();
+		}
+
+		/**
+		 * Reduce until {@code v < 2^stopBits}.
+		 */
+		void reduce (int stopBits) {
+			while (v.bitLength () > stopBits) {
+				if (!step (stopBits)) {
+					divide ();
+				}
+			}
+		}
+
+		/**
+		 * Apply the quotients that can be computed
+		 * from the leading bits.
+		 * <p>
+		 * Algorithm L (Knuth, TAOCP vol. 2, 4.5.2),
+		 * with leading parts of 62 bits
+		 * and cofactors not greater than {@code 2^30}.
+		 *
+		 * @return {@code false} if no quotient could be computed.
+		 */
+		private boolean step (int stopBits) {
+			int shift = Math.max (0, u.bitLength () - LEADING_BITS);
+			long uHat = u.bits (shift);
+			long vHat = v.bits (shift);
+			// exact values: no need to check quotients
+			boolean exact = shift == 0;
+			// step allowed while v >= 2^stopBits
+			int minBits = stopBits - shift;
+			long minVHat = minBits <= 0 ? 1 : 1L << minBits;
+
+			// (u', v') = [[A, B], [C, D]] (u, v)
+			long A = 1;
+			long B = 0;
+			long C = 0;
+			long D = 1;
+
+			while (vHat >= minVHat) {
+				long q;
+				if (exact) {
+					q = uHat / vHat;
+
+				} else {
+					if (vHat + C == 0 || vHat + D == 0) {
+						break;
+					}
+					q = (uHat + A) / (vHat + C);
+					if (q != (uHat + B) / (vHat + D)) {
+						break;
+					}
+				}
+
+				// cofactors have alternating signs: magnitudes add
+				if (q > MAX_COFACTOR
+					|| Math.abs (A) + q * Math.abs (C) > MAX_COFACTOR
+					|| Math.abs (B) + q * Math.abs (D) > MAX_COFACTOR) {
+					break;
+				}
+
+				long temp = A - q * C;
+				A = C;
+				C = temp;
+				temp = B - q * D;
+				B = D;
+				D = temp;
+				temp = uHat - q * vHat;
+				uHat = vHat;
+				vHat = temp;
+			}
+
+			if (B == 0) {
+				return false;
+			}
+
+			nextU.combine (A, u, B, v);
+			nextV.combine (C, u, D, v);
+			Limbs temp = u;
+			u = nextU;
+			nextU = temp;
+			temp = v;
+			v = nextV;
+			nextV = temp;
+
+			// M = M L, where L = [[A, B], [C, D]]^-1 = [[|D|, |B|], [|C|, |A|]]
+			multiplyMatrix (Math.abs (D), Math.abs (B), Math.abs (C), Math.abs (A));
+			determinant *= (int) (A * D - B * C);
+			return true;
+		}
+
+		/**
+		 * One step of Euclid's algorithm,
+		 * for quotients too large for {@link #step(int)}.
+		 */
+		private void divide () {
+			BigInteger[] quotientAndRemainder =
+				u.toBigInteger ().divideAndRemainder (v.toBigInteger ());
+			BigInteger q = quotientAndRemainder[0];
+
+			Limbs temp = u;
+			u = v;
+			v = temp;
+			v.set (quotientAndRemainder[1]);
+
+			// M = M [[q, 1], [1, 0]]
+			if (q.bitLength () < Long.SIZE && q.longValue () <= MAX_COFACTOR) {
+				multiplyMatrix (q.longValue (), 1, 1, 0);
+
+			} else {
+				BigInteger n00 = m00.toBigInteger ();
+				BigInteger n10 = m10.toBigInteger ();
+				m00.set (q.multiply (n00).add (m01.toBigInteger ()));
+				m10.set (q.multiply (n10).add (m11.toBigInteger ()));
+				m01.set (n00);
+				m11.set (n10);
+			}
+			determinant = -determinant;
+		}
+
+		/**
+		 * {@code M = M [[l00, l01], [l10, l11]]}
+		 * where all entries are not negative.
+		 */
+		private void multiplyMatrix (
+			long l00,
+			long l01,
+			long l10,
+			long l11) {
+
+			next0.combine (l00, m00, l10, m01);
+			next1.combine (l01, m00, l11, m01);
+			Limbs temp = m00;
+			m00 = next0;
+			next0 = temp;
+			temp = m01;
+			m01 = next1;
+			next1 = temp;
+
+			next0.combine (l00, m10, l10, m11);
+			next1.combine (l01, m10, l11, m11);
+			temp = m10;
+			m10 = next0;
+			next0 = temp;
+			temp = m11;
+			m11 = next1;
+			next1 = temp;
+		}
+
+		/**
+		 * Get current state as {@code BigInteger} values.
+		 */
+		Reduction toReduction () {
+			Reduction reduction = new Reduction (
+				u.toBigInteger (),
+				v.toBigInteger ()
+			);
+			reduction.m00 = m00.toBigInteger ();
+			reduction.m01 = m01.toBigInteger ();
+			reduction.m10 = m10.toBigInteger ();
+			reduction.m11 = m11.toBigInteger ();
+			reduction.determinant = determinant;
+			return reduction;
+		}
+
+	}
+
+	/**
+	 * Non-negative integer stored as little-endian 32-bit limbs.
+	 */
+	static class Limbs {
+
+		/**
+		 * Limbs, least significant first.
+		 * May be longer than {@link #length}.
+		 */
+		int[] limbs;
+
+		/**
+		 * Number of significant limbs.
+		 */
+		int length;
+
+		/**
+		 * Zero with initial capacity.
+		 */
+		Limbs (int capacity) {
+			limbs = new int[Math.max (1, capacity)];
+		}
+
+		/**
+		 * Copy of non-negative {@code BigInteger}.
+		 */
+		Limbs (BigInteger value) {
+			this (0);
+			set (value);
+		}
+
+		/**
+		 * Set value to {@code 1}.
+		 */
+		void setOne () {
+			limbs[0] = 1;
+			length = 1;
+		}
+
+		/**
+		 * Set value from non-negative {@code BigInteger}.
+		 */
+		void set (BigInteger value) {
+			byte[] bytes = value.toByteArray ();
+			int count = (bytes.length + 3) / 4;
+			if (limbs.length < count) {
+				limbs = new int[count];
+			}
+
+			// big-endian bytes to little-endian limbs
+			int index = bytes.length;
+			for (int i = 0; i < count; i++) {
+				int limb = 0;
+				for (int shift = 0; shift < 32 && index > 0; shift += 8) {
+					limb |= (bytes[--index] & 0xFF) << shift;
+				}
+				limbs[i] = limb;
+			}
+			length = count;
+			normalize ();
+		}
+
+		/**
+		 * Get value as {@code BigInteger}.
+		 */
+		BigInteger toBigInteger () {
+			byte[] bytes = new byte[length * 4];
+			int index = bytes.length;
+			for (int i = 0; i < length; i++) {
+				int limb = limbs[i];
+				bytes[--index] = (byte) limb;
+				bytes[--index] = (byte) (limb >>> 8);
+				bytes[--index] = (byte) (limb >>> 16);
+				bytes[--index] = (byte) (limb >>> 24);
+			}
+			return new BigInteger (1, bytes);
+		}
+
+		/**
+		 * Get number of bits.
+		 */
+		int bitLength () {
+			if (length == 0) {
+				return 0;
+			}
+			return (length - 1) * 32
+				+ 32 - Integer.numberOfLeadingZeros (limbs[length - 1]);
+		}
+
+		/**
+		 * Get {@code value >> shift},
+		 * which must be less than {@code 2^63}.
+		 */
+		long bits (int shift) {
+			int index = shift >>> 5;
+			int offset = shift & 31;
+			long low = limb (index);
+			long middle = limb (index + 1);
+			if (offset == 0) {
+				return low | middle << 32;
+			}
+			long high = limb (index + 2);
+			return low >>> offset
+				| middle << (32 - offset)
+				| high << (64 - offset);
+		}
+
+		/**
+		 * Get unsigned limb, or zero past the end.
+		 */
+		private long limb (int index) {
+			return index < length ? limbs[index] & MASK : 0;
+		}
+
+		/**
+		 * Set value to {@code p x + q y}.
+		 * <p>
+		 * {@code |p|, |q| <= 2^30}, and the result
+		 * must not be negative.
+		 */
+		void combine (
+			long p,
+			Limbs x,
+			long q,
+			Limbs y) {
+
+			int count = Math.max (x.length, y.length);
+			if (limbs.length <= count) {
+				limbs = new int[count + 1 + (count >>> 3)];
+			}
+
+			long carry = 0;
+			for (int i = 0; i < count; i++) {
+				long value = p * x.limb (i) + q * y.limb (i) + carry;
+				limbs[i] = (int) value;
+				carry = value >> 32;
+			}
+			limbs[count] = (int) carry;
+			length = count + 1;
+			normalize ();
+		}
+
+		/**
+		 * Remove leading zero limbs.
+		 */
+		private void normalize () {
+			while (length > 0 && limbs[length - 1] == 0) {
+				length--;
+			}
+		}
+
+	}
+
+}
@@ -44,14 +44,26 @@ abstract class CInvert {
 			break;
 
 		case KProfile.LONG_RATIONAL:
-		case KProfile.LONG_INTEGER:
 		case KProfile.INT_RATIONAL:
-		case KProfile.INT_INTEGER:
 			result.setIrreducibleFraction (
 				Math.abs (number.numerator),
 				number.denominator
 			);
 			break;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			result.setInteger (
+				Math.abs (number.numerator)
+			);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			result.setDecimalValue (
+				Math.abs (number.numerator),
+				number.scale
+			);
+			break;
 		}
 	}
 
@@ -71,14 +83,26 @@ abstract class CInvert {
 			break;
 
 		case KProfile.LONG_RATIONAL:
-		case KProfile.LONG_INTEGER:
 		case KProfile.INT_RATIONAL:
-		case KProfile.INT_INTEGER:
 			result.setIrreducibleFraction (
 				-number.numerator,
 				number.denominator
 			);
 			break;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			result.setInteger (
+				-number.numerator
+			);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			result.setDecimalValue (
+				-number.numerator,
+				number.scale
+			);
+			break;
 		}
 	}
 
@@ -108,6 +132,14 @@ abstract class CInvert {
 				number.numerator
 			);
 			break;
+
+		case KProfile.LONG_DECIMAL:
+			// not reduced
+			result.setValue (
+				number.denominator,
+				number.numerator
+			);
+			break;
 		}
 	}
 
@@ -0,0 +1,433 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Operations:
+ * <ul>
+ * <li>Exact matrix product.</li>
+ * </ul>
+ * <p>
+ * Each row of the left matrix and each column of the right matrix
+ * is multiplied by the least common multiple of its denominators,
+ * so that every output cell is an integer dot product
+ * divided by the product of two scale factors.
+ * The dot product is accumulated without normalisation:
+ * a {@code long} sum, with overflows carried into a {@code BigInteger}.
+ * The cell is reduced once, when the sum is complete.
+ * <p>
+ * Lines whose integer entries all fit in {@code int}
+ * need no overflow check on the products.
+ * <p>
+ * The output is computed in tiles,
+ * iterating over blocks of the inner dimension;
+ * bands of rows are split across threads of the common fork/join pool.
+ */
+abstract class CMatrixProduct {
+
+	/**
+	 * Rows and columns of an output tile.
+	 */
+	static final int TILE = 64;
+
+	/**
+	 * Length of a block of the inner dimension.
+	 */
+	static final int BLOCK = 256;
+
+	/**
+	 * Minimum number of multiplications
+	 * to compute tiles in parallel.
+	 */
+	static final long PARALLEL_THRESHOLD = 1L << 15;
+
+	/**
+	 * Rows or columns of a matrix, scaled to integers.
+	 */
+	static class IntegerLines {
+
+		/**
+		 * Entries that fit in {@code long} (zero otherwise).
+		 */
+		final long[][] values;
+
+		/**
+		 * Entries that do not fit in {@code long}
+		 * ({@code null} for lines without such entries,
+		 * and for entries in {@link #values}).
+		 */
+		final BigInteger[][] bigValues;
+
+		/**
+		 * {@code true} for lines whose entries all fit in {@code int}.
+		 */
+		final boolean[] intLines;
+
+		/**
+		 * Factor each line was multiplied by.
+		 */
+		final KNumRegister[] scales;
+
+		IntegerLines (int count) {
+			values = new long[count][];
+			bigValues = new BigInteger[count][];
+			intLines = new boolean[count];
+			scales = new KNumRegister[count];
+		}
+	}
+
+	/**
+	 * Compute {@code a b}.
+	 *
+	 * @param a left matrix.
+	 * @param b right matrix ({@code b.rows == a.columns}).
+	 * @return product.
+	 */
+	static KMatrix multiply (
+		KMatrix a,
+		KMatrix b) {
+
+		IntegerLines left = integerLines (a.entries, a.rows, a.columns, false);
+		IntegerLines right = integerLines (b.entries, b.columns, b.rows, true);
+
+		KMatrix product = new KMatrix (a.rows, b.columns);
+		TileProduct task = new TileProduct (left, right, product, 0, a.rows);
+		long work = (long) a.rows * b.columns * a.columns;
+		if (work >= PARALLEL_THRESHOLD && a.rows > TILE) {
+			ForkJoinPool.commonPool ().invoke (task);
+		} else {
+			task.compute ();
+		}
+		return product;
+	}
+
+	/**
+	 * Scale rows (or columns) of a matrix to integers.
+	 *
+	 * @param rows matrix rows.
+	 * @param count number of lines.
+	 * @param length entries per line.
+	 * @param columns {@code true} to read columns instead of rows.
+	 */
+	static IntegerLines integerLines (
+		KNumColumn[] rows,
+		int count,
+		int length,
+		boolean columns) {
+
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister value = new KNumRegister ();
+		IntegerLines lines = new IntegerLines (count);
+
+		for (int line = 0; line < count; line++) {
+			KNumRegister scale = new KNumRegister ();
+			scale.setValue (1);
+			for (int k = 0; k < length; k++) {
+				getEntry (rows, line, k, columns, value);
+				CBareiss.lcmDenominator (calc, scale, value);
+			}
+
+			long[] values = new long[length];
+			BigInteger[] bigValues = null;
+			boolean intLine = true;
+			for (int k = 0; k < length; k++) {
+				getEntry (rows, line, k, columns, value);
+				CMultiply.multiply (calc, value, value, scale);
+				if (value.profile > KProfile.BIG_INTEGER) {
+					values[k] = value.numerator;
+					intLine &= value.numerator == (int) value.numerator;
+				} else {
+					if (bigValues == null) {
+						bigValues = new BigInteger[length];
+					}
+					value.setBigIntegers ();
+					bigValues[k] = value.bigNumerator;
+					intLine = false;
+				}
+			}
+
+			lines.values[line] = values;
+			lines.bigValues[line] = bigValues;
+			lines.intLines[line] = intLine;
+			lines.scales[line] = scale;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Read entry {@code k} of a row or a column.
+	 */
+	private static void getEntry (
+		KNumColumn[] rows,
+		int line,
+		int k,
+		boolean columns,
+		KNumRegister value) {
+
+		if (columns) {
+			CBareiss.getReduced (rows[k], line, value);
+		} else {
+			CBareiss.getReduced (rows[line], k, value);
+		}
+	}
+
+	/**
+	 * Accumulate {@code a[k] * b[k]} for {@code k} in {@code [from, to)},
+	 * where all entries fit in {@code int}:
+	 * the products cannot overflow.
+	 */
+	static void accumulateInt (
+		long[] sums,
+		BigInteger[] carries,
+		int cell,
+		long[] a,
+		long[] b,
+		int from,
+		int to) {
+
+		long sum = sums[cell];
+		for (int k = from; k < to; k++) {
+			long product = a[k] * b[k];
+			long next = sum + product;
+			if (((sum ^ next) & (product ^ next)) < 0) {
+				carries[cell] = carry (carries[cell], sum);
+				next = product;
+			}
+			sum = next;
+		}
+		sums[cell] = sum;
+	}
+
+	/**
+	 * Accumulate {@code a[k] * b[k]} for {@code k} in {@code [from, to)},
+	 * where {@code bigA} and {@code bigB} may hold entries
+	 * that do not fit in {@code long}.
+	 */
+	static void accumulate (
+		long[] sums,
+		BigInteger[] carries,
+		int cell,
+		long[] a,
+		BigInteger[] bigA,
+		long[] b,
+		BigInteger[] bigB,
+		int from,
+		int to) {
+
+		long sum = sums[cell];
+		for (int k = from; k < to; k++) {
+			if ((bigA != null && bigA[k] != null)
+				|| (bigB != null && bigB[k] != null)) {
+
+				BigInteger x = bigA != null && bigA[k] != null
+					? bigA[k] : BigInteger.valueOf (a[k]);
+				BigInteger y = bigB != null && bigB[k] != null
+					? bigB[k] : BigInteger.valueOf (b[k]);
+				BigInteger carried = carries[cell];
+				carries[cell] = carried == null
+					? x.multiply (y) : carried.add (x.multiply (y));
+				continue;
+			}
+
+			long product = a[k] * b[k];
+			if (Math.multiplyHigh (a[k], b[k]) != (product >> 63)) {
+				carries[cell] = carry (carries[cell],
+					BigInteger.valueOf (a[k]).multiply (BigInteger.valueOf (b[k])));
+				continue;
+			}
+
+			long next = sum + product;
+			if (((sum ^ next) & (product ^ next)) < 0) {
+				carries[cell] = carry (carries[cell], sum);
+				next = product;
+			}
+			sum = next;
+		}
+		sums[cell] = sum;
+	}
+
+	/**
+	 * Add {@code value} to carry.
+	 */
+	private static BigInteger carry (
+		BigInteger carried,
+		long value) {
+
+		return carry (carried, BigInteger.valueOf (value));
+	}
+
+	/**
+	 * Add {@code value} to carry.
+	 */
+	private static BigInteger carry (
+		BigInteger carried,
+		BigInteger value) {
+
+		return carried == null ? value : carried.add (value);
+	}
+
+	/**
+	 * Set {@code result} to {@code (carried + sum) / (leftScale rightScale)}.
+	 */
+	static void normalize (
+		KCalculator calc,
+		KNumRegister result,
+		long sum,
+		BigInteger carried,
+		KNumRegister leftScale,
+		KNumRegister rightScale) {
+
+		if (carried == null
+			&& leftScale.profile > KProfile.BIG_INTEGER
+			&& rightScale.profile > KProfile.BIG_INTEGER
+			&& calc.multiply (leftScale.numerator, rightScale.numerator)) {
+
+			result.setValue (sum, calc.intResult);
+			return;
+		}
+
+		BigInteger numerator = BigInteger.valueOf (sum);
+		if (carried != null) {
+			numerator = numerator.add (carried);
+		}
+		leftScale.setBigIntegers ();
+		rightScale.setBigIntegers ();
+		result.setValue (
+			numerator,
+			leftScale.bigNumerator.multiply (rightScale.bigNumerator)
+		);
+	}
+
+	/**
+	 * Product rows {@code [from, to)}.
+	 */
+	private static class TileProduct extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Rows of the left matrix.
+		 */
+		private final IntegerLines left;
+
+		/**
+		 * Columns of the right matrix.
+		 */
+		private final IntegerLines right;
+
+		/**
+		 * Output matrix (each task writes its own rows).
+		 */
+		private final KMatrix product;
+
+		/**
+		 * First row.
+		 */
+		private final int from;
+
+		/**
+		 * End of rows (exclusive).
+		 */
+		private final int to;
+
+		TileProduct (
+			IntegerLines left,
+			IntegerLines right,
+			KMatrix product,
+			int from,
+			int to) {
+
+			this.left = left;
+			this.right = right;
+			this.product = product;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute () {
+			if (to - from > TILE) {
+				int middle = from + ((to - from) / TILE / 2) * TILE;
+				if (middle == from) {
+					middle += TILE;
+				}
+				invokeAll (
+					new TileProduct (left, right, product, from, middle),
+					new TileProduct (left, right, product, middle, to)
+				);
+				return;
+			}
+
+			// registers not shared between tasks
+			KCalculator calc = new KCalculator (new KNumRegisterPool ());
+			KNumRegister value = new KNumRegister ();
+			KNumRegister leftScale = new KNumRegister ();
+			KNumRegister rightScale = new KNumRegister ();
+
+			int columns = product.columns;
+			int inner = left.values.length == 0 ? 0
+				: left.values[from].length;
+			long[] sums = new long[TILE * TILE];
+			BigInteger[] carries = new BigInteger[TILE * TILE];
+
+			for (int j0 = 0; j0 < columns; j0 += TILE) {
+				int j1 = Math.min (j0 + TILE, columns);
+				Arrays.fill (sums, 0);
+				Arrays.fill (carries, null);
+
+				for (int k0 = 0; k0 < inner; k0 += BLOCK) {
+					int k1 = Math.min (k0 + BLOCK, inner);
+					for (int i = from; i < to; i++) {
+						long[] a = left.values[i];
+						BigInteger[] bigA = left.bigValues[i];
+						boolean intA = left.intLines[i];
+						int cell = (i - from) * TILE;
+						for (int j = j0; j < j1; j++) {
+							if (intA && right.intLines[j]) {
+								accumulateInt (sums, carries, cell + j - j0,
+									a, right.values[j], k0, k1);
+							} else {
+								accumulate (sums, carries, cell + j - j0,
+									a, bigA, right.values[j], right.bigValues[j],
+									k0, k1);
+							}
+						}
+					}
+				}
+
+				for (int i = from; i < to; i++) {
+					int cell = (i - from) * TILE;
+					for (int j = j0; j < j1; j++) {
+						// scales are copied: setBigIntegers is not thread-safe
+						leftScale.copy (left.scales[i]);
+						rightScale.copy (right.scales[j]);
+						normalize (calc, value,
+							sums[cell + j - j0], carries[cell + j - j0],
+							leftScale, rightScale);
+						product.entries[i].set (j, value);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -17,6 +17,9 @@ package net.roboterhund.kitsune;
 
 import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
 
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
 /**
  * Operations:
  * <ul>
@@ -31,6 +34,18 @@ abstract class CMultiply {
 	public static final String ERR_MSG_NEGATIVE_BASE =
 		"Roots of negative numbers not supported.";
 
+	/**
+	 * Zero base error message.
+	 */
+	public static final String ERR_MSG_ZERO_NEGATIVE_EXPONENT =
+		"Zero raised to negative exponent.";
+
+	/**
+	 * Integer exponent error message.
+	 */
+	public static final String ERR_MSG_EXPONENT_TOO_LARGE =
+		"Exponent too large.";
+
 	/**
 	 * Multiply two numbers.
 	 */
@@ -47,6 +62,40 @@ abstract class CMultiply {
 			// go to end
 			break;
 
+		case KProfile._DEC__DEC_:
+			if (factor_1.scale + factor_2.scale <= KConverter.MAX_DECIMALS
+				&& calc.multiply (factor_1.numerator, factor_2.numerator)) {
+				result.setDecimal (
+					calc.intResult,
+					factor_1.scale + factor_2.scale
+				);
+				return;
+			}
+			route = KProfile._BIG__RAT_;
+			break;
+
+		case KProfile._DEC__INT1:
+			if (calc.multiply (factor_1.numerator, factor_2.numerator)) {
+				result.setDecimal (
+					calc.intResult,
+					factor_2.scale
+				);
+				return;
+			}
+			route = KProfile._BIG__INT1;
+			break;
+
+		case KProfile._DEC__INT2:
+			if (calc.multiply (factor_1.numerator, factor_2.numerator)) {
+				result.setDecimal (
+					calc.intResult,
+					factor_1.scale
+				);
+				return;
+			}
+			route = KProfile._BIG__INT2;
+			break;
+
 		case KProfile._LONG_RAT_:
 			if (calc.multiply (factor_1.numerator, factor_2.numerator)) {
 				long numerator = calc.intResult;
@@ -154,110 +203,315 @@ abstract class CMultiply {
 		KNumRegister maxError) {
 
 		switch (exponent.profile) {
+		case KProfile.LONG_DECIMAL:
+			if (exponent.numerator % exponent.denominator == 0) {
+				// integer exponent
+				exponential (result, base, exponent);
+			} else {
+				rationalPower (calc, result, base, exponent, maxError);
+			}
+			break;
+
 		case KProfile.BIG_RATIONAL:
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
-			// rational exponent
-			if (base.profile == KProfile.INT_RATIONAL
-				&& base.numerator == 0) {
-				// 0
-				result.setZeroValue ();
-				return;
-			}
-
-			KNumRegisterPool regPool = calc.regPool;
-
-			KRegCont cont_1 = regPool.get ();
-			KRegCont cont_2 = regPool.get ();
-			KRegCont cont_3 = regPool.get ();
-
-			KNumRegister raiseExponent = cont_1.reg;
-			KNumRegister rootExponent = cont_2.reg;
-			KNumRegister temp_1 = cont_3.reg;
-
-			// TODO implement "timeout" mechanism
-			CRound.split (raiseExponent, rootExponent, exponent);
-			CMultiply.exponential (calc, temp_1, base, raiseExponent);
-			CMultiply.principalRoot (calc, result, temp_1, rootExponent, maxError);
-
-			regPool.discard (cont_1);
-			regPool.discard (cont_2);
-			regPool.discard (cont_3);
+			rationalPower (calc, result, base, exponent, maxError);
 			break;
 
 		case KProfile.BIG_INTEGER:
 		case KProfile.LONG_INTEGER:
 		case KProfile.INT_INTEGER:
 			// integer exponent
-			exponential (calc, result, base, exponent);
+			exponential (result, base, exponent);
 			break;
 		}
 	}
 
 	/**
-	 * Raise base to integer root.
+	 * Exponentiation with rational exponent:
+	 * raise to numerator, then root of denominator.
 	 */
-	private static void exponential (
+	private static void rationalPower (
 		KCalculator calc,
 		KNumRegister result,
 		KNumRegister base,
-		KNumRegister exponent) {
+		KNumRegister exponent,
+		KNumRegister maxError) {
+
+		if (base.profile == KProfile.INT_RATIONAL
+			&& base.numerator == 0) {
+			// 0
+			result.setZeroValue ();
+			return;
+		}
 
 		KNumRegisterPool regPool = calc.regPool;
 
 		KRegCont cont_1 = regPool.get ();
 		KRegCont cont_2 = regPool.get ();
 		KRegCont cont_3 = regPool.get ();
-		KRegCont cont_4 = regPool.get ();
-		KRegCont cont_5 = regPool.get ();
-		KRegCont cont_6 = regPool.get ();
 
-		KNumRegister one = cont_1.reg;
-		KNumRegister two = cont_2.reg;
-		KNumRegister raised = cont_3.reg;
-		KNumRegister exp = cont_4.reg;
-		KNumRegister multiplier = cont_5.reg;
-		KNumRegister expModulo = cont_6.reg;
+		KNumRegister raiseExponent = cont_1.reg;
+		KNumRegister rootExponent = cont_2.reg;
+		KNumRegister temp_1 = cont_3.reg;
 
-		one.setValue (1);
-		two.setValue (2);
+		// TODO implement "timeout" mechanism
+		CRound.split (raiseExponent, rootExponent, exponent);
+		CMultiply.exponential (temp_1, base, raiseExponent);
+		CMultiply.principalRoot (calc, result, temp_1, rootExponent, maxError);
 
-		raised.setValue (1);
+		regPool.discard (cont_1);
+		regPool.discard (cont_2);
+		regPool.discard (cont_3);
+	}
 
-		boolean expNegative = CCompare.getSign (exponent) == -1;
+	/**
+	 * Raise base to integer exponent.
+	 * <p>
+	 * The bits of the exponent are read directly.
+	 * Numerator and denominator are raised separately:
+	 * powers of coprime integers are coprime,
+	 * so the result is not reduced.
+	 *
+	 * @throws ArithmeticException zero raised to negative exponent,
+	 * or result too large.
+	 */
+	private static void exponential (
+		KNumRegister result,
+		KNumRegister base,
+		KNumRegister exponent) {
+
+		if (exponent.profile == KProfile.BIG_INTEGER) {
+			// |exponent| > Long.MAX_VALUE
+			raiseUnit (
+				result,
+				base,
+				exponent.bigNumerator.signum () < 0,
+				exponent.bigNumerator.testBit (0)
+			);
+			return;
+		}
+
+		long exp = exponent.profile == KProfile.LONG_DECIMAL ?
+			exponent.numerator / exponent.denominator :
+			exponent.numerator;
+
+		// never Long.MIN_VALUE
+		boolean expNegative = exp < 0;
 		if (expNegative) {
-			CInvert.negate (exp, exponent);
+			exp = -exp;
+		}
+
+		if (exp == 0) {
+			result.setValue (1);
+
+		} else if (exp > Integer.MAX_VALUE) {
+			raiseUnit (result, base, expNegative, (exp & 1) != 0);
+
 		} else {
-			exp.copy (exponent);
+			raise (result, base, (int) exp, expNegative);
 		}
+	}
 
-		multiplier.copy (base);
+	/**
+	 * Raise base to exponent {@code +-exp}, where {@code exp > 0}.
+	 * <p>
+	 * The result profile is predicted from the bit lengths
+	 * of numerator and denominator.
+	 */
+	private static void raise (
+		KNumRegister result,
+		KNumRegister base,
+		int exp,
+		boolean expNegative) {
 
-		if (CCompare.getSign (exp) > 0) {
-			while (true) {
-				CDivide.divideRemainder (calc, exp, expModulo, exp, two);
-				if (CCompare.getSign (expModulo) != 0) {
-					CMultiply.multiply (calc, raised, raised, multiplier);
-				}
-				if (CCompare.getSign (exp) == 0) {
-					break;
-				}
-				CMultiply.multiply (calc, multiplier, multiplier, multiplier);
+		long numerator;
+		long denominator;
+
+		switch (base.profile) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			// result at least as large as base: still big
+			BigInteger bigNumerator = base.bigNumerator.pow (exp);
+			BigInteger bigDenominator = base.bigDenominator.pow (exp);
+			if (expNegative) {
+				result.setIrreducibleValue (bigDenominator, bigNumerator, false);
+			} else {
+				result.setIrreducibleValue (bigNumerator, bigDenominator, false);
+			}
+			return;
+
+		case KProfile.LONG_DECIMAL:
+			if (!expNegative
+				&& (long) base.scale * exp <= KConverter.MAX_DECIMALS
+				&& powerFitsLong (base.numerator, exp)) {
+				// keep decimal, as in repeated multiplication
+				result.setDecimal (
+					power (base.numerator, exp),
+					base.scale * exp
+				);
+				return;
 			}
+			// decimals are not reduced
+			long gcd = KNumRegister.gcd (base.numerator, base.denominator);
+			numerator = base.numerator / gcd;
+			denominator = base.denominator / gcd;
+			break;
+
+		default:
+			numerator = base.numerator;
+			denominator = base.denominator;
+			break;
+		}
+
+		if (numerator == 0) {
+			if (expNegative) {
+				throw new ArithmeticException (
+					ERR_MSG_ZERO_NEGATIVE_EXPONENT
+				);
+			}
+			result.setZeroValue ();
+			return;
 		}
 
 		if (expNegative) {
-			CInvert.inverse (result, raised);
+			// sign normalized when set
+			long swap = numerator;
+			numerator = denominator;
+			denominator = swap;
+		}
+
+		if (powerFitsLong (numerator, exp)
+			&& powerFitsLong (denominator, exp)) {
+			result.setIrreducibleValue (
+				power (numerator, exp),
+				power (denominator, exp)
+			);
+
 		} else {
-			result.copy (raised);
+			result.setIrreducibleValue (
+				bigPower (numerator, exp),
+				bigPower (denominator, exp),
+				true
+			);
 		}
+	}
 
-		regPool.discard (cont_1);
-		regPool.discard (cont_2);
-		regPool.discard (cont_3);
-		regPool.discard (cont_4);
-		regPool.discard (cont_5);
-		regPool.discard (cont_6);
+	/**
+	 * Raise base to an exponent larger than {@code Integer.MAX_VALUE}.
+	 * <p>
+	 * Only {@code 0}, {@code 1} and {@code -1}
+	 * can be raised to such exponents.
+	 *
+	 * @throws ArithmeticException zero raised to negative exponent,
+	 * or result too large.
+	 */
+	private static void raiseUnit (
+		KNumRegister result,
+		KNumRegister base,
+		boolean expNegative,
+		boolean expOdd) {
+
+		if (base.profile > KProfile.BIG_INTEGER) {
+			if (base.numerator == 0) {
+				if (expNegative) {
+					throw new ArithmeticException (
+						ERR_MSG_ZERO_NEGATIVE_EXPONENT
+					);
+				}
+				result.setZeroValue ();
+				return;
+			}
+			if (base.numerator == base.denominator) {
+				result.setValue (1);
+				return;
+			}
+			if (base.numerator == -base.denominator) {
+				result.setValue (expOdd ? -1 : 1);
+				return;
+			}
+		}
+
+		throw new ArithmeticException (
+			ERR_MSG_EXPONENT_TOO_LARGE
+		);
+	}
+
+	/**
+	 * Check whether {@code value ^ exp} fits in {@code long}
+	 * (and is not {@code Long.MIN_VALUE}).
+	 */
+	private static boolean powerFitsLong (
+		long value,
+		int exp) {
+
+		long magnitude = Math.abs (value);
+		if (magnitude <= 1) {
+			return true;
+		}
+
+		// magnitude < 2^bits
+		int bits = Long.SIZE - Long.numberOfLeadingZeros (magnitude);
+		if ((magnitude & (magnitude - 1)) == 0) {
+			// magnitude = 2^(bits - 1)
+			return (long) (bits - 1) * exp < Long.SIZE - 1;
+		}
+		return (long) bits * exp < Long.SIZE;
+	}
+
+	/**
+	 * Raise {@code long} to positive exponent.
+	 * <p>
+	 * The result must fit:
+	 * see {@link #powerFitsLong(long, int)}.
+	 */
+	private static long power (
+		long value,
+		int exp) {
+
+		long magnitude = Math.abs (value);
+		if ((magnitude & (magnitude - 1)) == 0) {
+			// 0, 1 or power of two
+			int shift = Long.numberOfTrailingZeros (magnitude) * exp;
+			long raised = magnitude == 0 ? 0 : 1L << shift;
+			return value < 0 && (exp & 1) != 0 ? -raised : raised;
+		}
+		if (magnitude <= CPowers.MAX_BASE) {
+			long raised = CPowers.longPower ((int) magnitude, exp);
+			return value < 0 && (exp & 1) != 0 ? -raised : raised;
+		}
+
+		// square and multiply
+		long raised = 1;
+		while (true) {
+			if ((exp & 1) != 0) {
+				raised *= value;
+			}
+			exp >>>= 1;
+			if (exp == 0) {
+				return raised;
+			}
+			value *= value;
+		}
+	}
+
+	/**
+	 * Raise {@code long} to positive exponent,
+	 * with {@code BigInteger} result.
+	 * <p>
+	 * Powers of small values are cached.
+	 */
+	private static BigInteger bigPower (
+		long value,
+		int exp) {
+
+		long magnitude = Math.abs (value);
+		if (magnitude < 2 || magnitude > CPowers.MAX_BASE) {
+			return BigInteger.valueOf (value).pow (exp);
+		}
+
+		BigInteger raised = CPowers.bigPower ((int) magnitude, exp);
+		return value < 0 && (exp & 1) != 0 ? raised.negate () : raised;
 	}
 
 	/**
@@ -313,7 +567,7 @@ abstract class CMultiply {
 			// = estimated root
 			CDivide.divide (calc, approx, approx, two);
 			// estimated root ^ exponent
-			CMultiply.exponential (calc, error, approx, rootIndex);
+			CMultiply.exponential (error, approx, rootIndex);
 			// (estimated root ^ exponent) - base
 			CSubtract.subtract (calc, error, error, base);
 			sign = CCompare.getSign (error);
@@ -340,11 +594,13 @@ abstract class CMultiply {
 		}
 
 		// rounding
-		CDivide.divide (calc, approx, approx, error);
-		CRound.truncate (approx, approx);
-		CMultiply.multiply (calc, approx, approx, error);
-
-		result.copy (approx);
+		CRound.roundToMultiple (
+			calc,
+			result,
+			approx,
+			error,
+			RoundingMode.DOWN
+		);
 
 		regPool.discard (cont_1);
 		regPool.discard (cont_2);
@@ -0,0 +1,187 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Operations:
+ * <ul>
+ * <li>Powers of small bases.</li>
+ * </ul>
+ * <p>
+ * Powers that fit in {@code long} are computed once, when loaded.
+ * Big powers are cached as they are requested:
+ * each table is grown by copying, and published atomically,
+ * so lookups do not lock.
+ */
+abstract class CPowers {
+
+	/**
+	 * Largest base with cached powers.
+	 */
+	static final int MAX_BASE = 16;
+
+	/**
+	 * Largest cached exponent of big powers.
+	 * <p>
+	 * Larger powers are computed on each request.
+	 */
+	static final int MAX_CACHED_EXPONENT = 1024;
+
+	/**
+	 * Powers of each base that fit in {@code long}.
+	 * <p>
+	 * Indexed by base, then by exponent.
+	 */
+	private static final long[][] LONG_POWERS;
+
+	/**
+	 * Powers of ten that fit in {@code long}:
+	 * {@code 10^0} to {@code 10^18}.
+	 * <p>
+	 * Must not be modified.
+	 */
+	static final long[] TENS;
+
+	// compute powers that fit in long
+	static {
+		LONG_POWERS = new long[MAX_BASE + 1][];
+		for (int base = 2; base <= MAX_BASE; base++) {
+			long[] powers = new long[Long.SIZE];
+			int length = 0;
+			long power = 1;
+			while (true) {
+				powers[length++] = power;
+				if (power > Long.MAX_VALUE / base) {
+					break;
+				}
+				power *= base;
+			}
+			LONG_POWERS[base] = Arrays.copyOf (powers, length);
+		}
+		TENS = LONG_POWERS[10];
+	}
+
+	/**
+	 * Big powers of each base computed so far.
+	 * <p>
+	 * Indexed by base.
+	 */
+	private static final AtomicReferenceArray<BigInteger[]> BIG_POWERS =
+		new AtomicReferenceArray<> (MAX_BASE + 1);
+
+	/**
+	 * Get largest exponent such that
+	 * {@code base^exponent} fits in {@code long}.
+	 *
+	 * @param base from {@code 2} to {@link #MAX_BASE}.
+	 */
+	static int maxLongExponent (int base) {
+		return LONG_POWERS[base].length - 1;
+	}
+
+	/**
+	 * Get {@code base^exponent} as {@code long}.
+	 *
+	 * @param base from {@code 2} to {@link #MAX_BASE}.
+	 * @param exponent from {@code 0} to {@link #maxLongExponent(int)}.
+	 */
+	static long longPower (
+		int base,
+		int exponent) {
+
+		return LONG_POWERS[base][exponent];
+	}
+
+	/**
+	 * Get {@code base^exponent} as {@link BigInteger}.
+	 *
+	 * @param base from {@code 2} to {@link #MAX_BASE}.
+	 * @param exponent non-negative exponent.
+	 */
+	static BigInteger bigPower (
+		int base,
+		int exponent) {
+
+		if (exponent < LONG_POWERS[base].length) {
+			// no need to cache
+			return BigInteger.valueOf (LONG_POWERS[base][exponent]);
+		}
+		if (base == 2) {
+			return BigInteger.ONE.shiftLeft (exponent);
+		}
+		if (exponent > MAX_CACHED_EXPONENT) {
+			return BigInteger.valueOf (base).pow (exponent);
+		}
+
+		BigInteger[] powers = BIG_POWERS.get (base);
+		if (powers == null || exponent >= powers.length) {
+			powers = grow (base, exponent);
+		}
+		return powers[exponent];
+	}
+
+	/**
+	 * Get {@code 10^exponent} as {@link BigInteger}.
+	 *
+	 * @param exponent non-negative exponent.
+	 */
+	static BigInteger bigPowerOfTen (int exponent) {
+		return bigPower (10, exponent);
+	}
+
+	/**
+	 * Extend table of big powers of base
+	 * to include exponent (at least).
+	 *
+	 * @return the new table.
+	 */
+	private static synchronized BigInteger[] grow (
+		int base,
+		int exponent) {
+
+		BigInteger[] powers = BIG_POWERS.get (base);
+		if (powers != null && exponent < powers.length) {
+			// grown by another thread
+			return powers;
+		}
+
+		int oldLength = powers == null ? 0 : powers.length;
+		int length = Math.min (
+			MAX_CACHED_EXPONENT + 1,
+			Math.max (exponent + 1, oldLength * 2)
+		);
+
+		BigInteger[] grown = powers == null ?
+			new BigInteger[length] :
+			Arrays.copyOf (powers, length);
+		if (powers == null) {
+			grown[0] = BigInteger.ONE;
+			oldLength = 1;
+		}
+		BigInteger bigBase = BigInteger.valueOf (base);
+		for (int i = oldLength; i < length; i++) {
+			grown[i] = grown[i - 1].multiply (bigBase);
+		}
+
+		BIG_POWERS.set (base, grown);
+		return grown;
+	}
+
+}
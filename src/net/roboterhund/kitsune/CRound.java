@@ -16,6 +16,7 @@
 package net.roboterhund.kitsune;
 
 import java.math.BigInteger;
+import java.math.RoundingMode;
 
 /**
  * Operations:
@@ -23,11 +24,27 @@ import java.math.BigInteger;
  * <li>Integer.</li>
  * <li>Floor.</li>
  * <li>Ceiling.</li>
+ * <li>Round to scale.</li>
+ * <li>Round to multiple.</li>
  * <li>Split into numerator and denominator.</li>
  * </ul>
  */
 abstract class CRound {
 
+	/**
+	 * Non-positive step error message.
+	 */
+	public static final String ERR_MSG_NON_POSITIVE_STEP =
+		"Rounding step must be positive.";
+
+	/**
+	 * Rounding necessary error message.
+	 * <p>
+	 * Same as {@link java.math.BigDecimal}.
+	 */
+	public static final String ERR_MSG_ROUNDING_NECESSARY =
+		"Rounding necessary";
+
 	/**
 	 * Get the integer part of a number.
 	 *
@@ -40,14 +57,12 @@ abstract class CRound {
 
 		switch (number.profile) {
 		case KProfile.BIG_RATIONAL:
-			number.setBigIntegers ();
-			result.setValue (
-				number.bigNumerator.divide (number.bigDenominator)
-			);
+			setQuotient (result, number, 0);
 			break;
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
+		case KProfile.LONG_DECIMAL:
 			result.setValue (
 				number.numerator / number.denominator
 			);
@@ -73,21 +88,26 @@ abstract class CRound {
 
 		switch (number.profile) {
 		case KProfile.BIG_RATIONAL:
-			number.setBigIntegers ();
-			BigInteger bigValue =
-				number.bigNumerator.divide (number.bigDenominator);
-			if (bigValue.signum () < 0) {
-				bigValue = bigValue.subtract (BigInteger.ONE);
+			// not integer: rounded down if negative
+			setQuotient (result, number, number.bigNumerator.signum () < 0 ? -1 : 0);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			// may be integer
+			long quotient = number.numerator / number.denominator;
+			if (number.numerator % number.denominator < 0) {
+				--quotient;
 			}
 			result.setValue (
-				bigValue
+				quotient
 			);
 			break;
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
+			// not integer: sign of numerator, not of truncated value
 			long longValue = number.numerator / number.denominator;
-			if (longValue < 0) {
+			if (number.numerator < 0) {
 				--longValue;
 			}
 			result.setValue (
@@ -115,21 +135,26 @@ abstract class CRound {
 
 		switch (number.profile) {
 		case KProfile.BIG_RATIONAL:
-			number.setBigIntegers ();
-			BigInteger bigValue =
-				number.bigNumerator.divide (number.bigDenominator);
-			if (bigValue.signum () > 0) {
-				bigValue = bigValue.add (BigInteger.ONE);
+			// not integer: rounded up if positive
+			setQuotient (result, number, number.bigNumerator.signum () > 0 ? 1 : 0);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			// may be integer
+			long quotient = number.numerator / number.denominator;
+			if (number.numerator % number.denominator > 0) {
+				++quotient;
 			}
 			result.setValue (
-				bigValue
+				quotient
 			);
 			break;
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
+			// not integer: sign of numerator, not of truncated value
 			long longValue = number.numerator / number.denominator;
-			if (longValue > 0) {
+			if (number.numerator > 0) {
 				++longValue;
 			}
 			result.setValue (
@@ -145,6 +170,310 @@ abstract class CRound {
 		}
 	}
 
+	/**
+	 * Set {@code result} to the truncated quotient
+	 * of a big rational number, plus {@code adjustment}.
+	 * <p>
+	 * The number is reduced and not integer,
+	 * so the remainder is never zero and has the sign of the numerator:
+	 * a single division is enough.
+	 * Quotients that fit in {@code long} are adjusted
+	 * and stored without further allocations.
+	 *
+	 * @param adjustment {@code -1}, {@code 0} or {@code 1}.
+	 */
+	private static void setQuotient (
+		KNumRegister result,
+		KNumRegister number,
+		int adjustment) {
+
+		BigInteger quotient =
+			number.bigNumerator.divide (number.bigDenominator);
+
+		// |quotient| < 2^62: adjusted value fits in long
+		if (quotient.bitLength () < 63) {
+			result.setValue (quotient.longValue () + adjustment);
+		} else if (adjustment == 0) {
+			result.setValue (quotient);
+		} else {
+			result.setValue (quotient.add (BigInteger.valueOf (adjustment)));
+		}
+	}
+
+	/**
+	 * Round number to a multiple of {@code 10^-scale}.
+	 * <p>
+	 * If {@code 1 <= scale <= 18},
+	 * the result is a decimal with the given scale
+	 * (see {@link KNumRegister#setDecimal(long, int)}).
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param scale number of decimal digits to keep.
+	 * May be negative.
+	 * @param roundingMode how to round discarded digits.
+	 * @throws ArithmeticException {@code roundingMode} is
+	 * {@link RoundingMode#UNNECESSARY} and the number has more digits.
+	 */
+	public static void roundToScale (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister number,
+		int scale,
+		RoundingMode roundingMode) {
+
+		if (number.profile > KProfile.BIG_INTEGER) {
+			long numerator = number.numerator;
+			long denominator = number.denominator;
+
+			if (scale >= 0) {
+				if (number.profile == KProfile.LONG_DECIMAL
+					&& number.scale >= scale) {
+					// drop digits: no multiplication needed
+					result.setDecimal (
+						roundQuotient (
+							numerator,
+							CPowers.TENS[number.scale - scale],
+							roundingMode),
+						scale
+					);
+					return;
+				}
+
+				if (scale <= KConverter.MAX_DECIMALS
+					&& calc.multiply (
+					numerator,
+					CPowers.TENS[scale])) {
+
+					result.setDecimal (
+						roundQuotient (calc.intResult, denominator, roundingMode),
+						scale
+					);
+					return;
+				}
+
+			} else if (-scale <= KConverter.MAX_DECIMALS) {
+				long step = CPowers.TENS[-scale];
+				if (calc.multiply (denominator, step)) {
+					long quotient = roundQuotient (
+						numerator,
+						calc.intResult,
+						roundingMode
+					);
+					if (calc.multiply (quotient, step)) {
+						result.setValue (calc.intResult);
+						return;
+					}
+				}
+			}
+		}
+
+		// big
+		number.setBigIntegers ();
+		BigInteger bigNumerator = number.bigNumerator;
+		BigInteger bigDenominator = number.bigDenominator;
+		if (scale >= 0) {
+			BigInteger quotient = roundQuotient (
+				bigNumerator.multiply (CPowers.bigPowerOfTen (scale)),
+				bigDenominator,
+				roundingMode
+			);
+			if (quotient.bitLength () < Long.SIZE) {
+				result.setDecimal (quotient.longValue (), scale);
+			} else {
+				result.setValue (quotient, CPowers.bigPowerOfTen (scale));
+			}
+
+		} else {
+			BigInteger step = CPowers.bigPowerOfTen (-scale);
+			result.setValue (
+				roundQuotient (
+					bigNumerator,
+					bigDenominator.multiply (step),
+					roundingMode
+				).multiply (step)
+			);
+		}
+	}
+
+	/**
+	 * Round number to a multiple of {@code step}.
+	 * <p>
+	 * If {@code step} is a decimal, the result has the same scale.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param step positive number.
+	 * @param roundingMode how to round {@code number / step}.
+	 * @throws IllegalArgumentException {@code step} is not positive.
+	 * @throws ArithmeticException {@code roundingMode} is
+	 * {@link RoundingMode#UNNECESSARY} and the number
+	 * is not a multiple of {@code step}.
+	 */
+	public static void roundToMultiple (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister number,
+		KNumRegister step,
+		RoundingMode roundingMode) {
+
+		if (CCompare.getSign (step) <= 0) {
+			throw new IllegalArgumentException (
+				ERR_MSG_NON_POSITIVE_STEP
+			);
+		}
+
+		if (number.profile > KProfile.BIG_INTEGER
+			&& step.profile > KProfile.BIG_INTEGER) {
+			// number / step == (n1 * d2) / (d1 * n2)
+			long n1 = number.numerator;
+			long d1 = number.denominator;
+			long n2 = step.numerator;
+			long d2 = step.denominator;
+
+			long dividend;
+			long divisor;
+			if (calc.multiply (n1, d2)) {
+				dividend = calc.intResult;
+				if (calc.multiply (d1, n2)) {
+					divisor = calc.intResult;
+
+					long quotient =
+						roundQuotient (dividend, divisor, roundingMode);
+					if (calc.multiply (quotient, n2)) {
+						if (step.profile == KProfile.LONG_DECIMAL) {
+							result.setDecimal (calc.intResult, step.scale);
+						} else {
+							result.setValue (calc.intResult, d2);
+						}
+						return;
+					}
+				}
+			}
+		}
+
+		// big
+		number.setBigIntegers ();
+		step.setBigIntegers ();
+		BigInteger quotient = roundQuotient (
+			number.bigNumerator.multiply (step.bigDenominator),
+			number.bigDenominator.multiply (step.bigNumerator),
+			roundingMode
+		);
+		result.setValue (
+			quotient.multiply (step.bigNumerator),
+			step.bigDenominator
+		);
+	}
+
+	/**
+	 * Rounded {@code dividend / divisor},
+	 * where {@code divisor > 0}.
+	 */
+	static long roundQuotient (
+		long dividend,
+		long divisor,
+		RoundingMode roundingMode) {
+
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+
+		// |remainder| < divisor => no overflow
+		long absRemainder = Math.abs (remainder);
+		int sign = remainder < 0 ? -1 : 1;
+		if (roundAway (
+			roundingMode,
+			sign,
+			Long.compare (absRemainder, divisor - absRemainder),
+			(quotient & 1) != 0)) {
+
+			// divisor > 1 => |quotient| < Long.MAX_VALUE
+			quotient += sign;
+		}
+		return quotient;
+	}
+
+	/**
+	 * Rounded {@code dividend / divisor},
+	 * where {@code divisor > 0}.
+	 */
+	static BigInteger roundQuotient (
+		BigInteger dividend,
+		BigInteger divisor,
+		RoundingMode roundingMode) {
+
+		BigInteger[] quotientAndRemainder =
+			dividend.divideAndRemainder (divisor);
+		BigInteger quotient = quotientAndRemainder[0];
+		BigInteger remainder = quotientAndRemainder[1];
+		int sign = remainder.signum ();
+		if (sign == 0) {
+			return quotient;
+		}
+
+		BigInteger absRemainder = remainder.abs ();
+		if (roundAway (
+			roundingMode,
+			sign,
+			absRemainder.compareTo (divisor.subtract (absRemainder)),
+			quotient.testBit (0))) {
+
+			quotient = sign > 0 ?
+				quotient.add (BigInteger.ONE) :
+				quotient.subtract (BigInteger.ONE);
+		}
+		return quotient;
+	}
+
+	/**
+	 * Decide whether an inexact quotient
+	 * must be rounded away from zero.
+	 *
+	 * @param sign sign of the exact quotient.
+	 * @param half comparison of the discarded fraction
+	 * to one half (negative if less).
+	 * @param odd whether the truncated quotient is odd.
+	 * @throws ArithmeticException rounding mode is
+	 * {@link RoundingMode#UNNECESSARY}.
+	 */
+	private static boolean roundAway (
+		RoundingMode roundingMode,
+		int sign,
+		int half,
+		boolean odd) {
+
+		switch (roundingMode) {
+		case UP:
+			return true;
+
+		case DOWN:
+			return false;
+
+		case CEILING:
+			return sign > 0;
+
+		case FLOOR:
+			return sign < 0;
+
+		case HALF_UP:
+			return half >= 0;
+
+		case HALF_DOWN:
+			return half > 0;
+
+		case HALF_EVEN:
+			return half > 0 || (half == 0 && odd);
+
+		default:
+			throw new ArithmeticException (
+				ERR_MSG_ROUNDING_NECESSARY
+			);
+		}
+	}
+
 	/**
 	 * Split number into numerator and denominator.
 	 */
@@ -163,6 +492,14 @@ abstract class CRound {
 			resultDenominator.setValue (bigDenominator);
 			break;
 
+		case KProfile.LONG_DECIMAL:
+			// reduce
+			long gcd = KNumRegister.gcd (number.numerator, number.denominator);
+
+			resultNumerator.setInteger (number.numerator / gcd);
+			resultDenominator.setInteger (number.denominator / gcd);
+			break;
+
 		default:
 			long numerator = number.numerator;
 			long denominator = number.denominator;
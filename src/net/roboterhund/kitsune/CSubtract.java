@@ -39,6 +39,77 @@ abstract class CSubtract {
 			// go to end
 			break;
 
+		case KProfile._DEC__DEC_:
+			if (minuend.scale == subtrahend.scale) {
+				if (calc.subtract (minuend.numerator, subtrahend.numerator)) {
+					result.setDecimal (
+						calc.intResult,
+						minuend.scale
+					);
+					return;
+				}
+
+			} else if (minuend.scale < subtrahend.scale) {
+				// align scale of operand 1
+				if (calc.multiply (
+					minuend.numerator,
+					subtrahend.denominator / minuend.denominator)) {
+
+					if (calc.subtract (calc.intResult, subtrahend.numerator)) {
+						result.setDecimal (
+							calc.intResult,
+							subtrahend.scale
+						);
+						return;
+					}
+				}
+
+			} else {
+				// align scale of operand 2
+				if (calc.multiply (
+					subtrahend.numerator,
+					minuend.denominator / subtrahend.denominator)) {
+
+					if (calc.subtract (minuend.numerator, calc.intResult)) {
+						result.setDecimal (
+							calc.intResult,
+							minuend.scale
+						);
+						return;
+					}
+				}
+			}
+			route = KProfile._BIG__RAT_;
+			break;
+
+		case KProfile._DEC__INT1:
+			if (calc.multiply (minuend.numerator, subtrahend.denominator)) {
+
+				if (calc.subtract (calc.intResult, subtrahend.numerator)) {
+					result.setDecimal (
+						calc.intResult,
+						subtrahend.scale
+					);
+					return;
+				}
+			}
+			route = KProfile._BIG__INT1;
+			break;
+
+		case KProfile._DEC__INT2:
+			if (calc.multiply (subtrahend.numerator, minuend.denominator)) {
+
+				if (calc.subtract (minuend.numerator, calc.intResult)) {
+					result.setDecimal (
+						calc.intResult,
+						minuend.scale
+					);
+					return;
+				}
+			}
+			route = KProfile._BIG__INT2;
+			break;
+
 		case KProfile._LONG_RAT_:
 			if (calc.multiply (minuend.numerator, subtrahend.denominator)) {
 				long n1_mul_d2 = calc.intResult;
@@ -0,0 +1,714 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates {@link ETrace} classes from {@link KExpression} programs.
+ * <p>
+ * Each program instruction is translated into
+ * straight-line {@code long} arithmetic on local variables,
+ * specialised for the kind of each value
+ * (integers have no denominator).
+ * Overflows are detected by the {@code Math.*Exact} methods.
+ * The generated method has no branches,
+ * so the class file needs no stack map frames.
+ * <p>
+ * The class is defined as a hidden class in this package.
+ */
+class ECodeGenerator {
+
+	/**
+	 * Maximum number of program instructions to translate.
+	 */
+	static final int MAX_INSTRUCTIONS = 256;
+
+	/**
+	 * Maximum integer exponent of a traced power.
+	 * Greater exponents overflow, except for trivial bases.
+	 */
+	static final long MAX_EXPONENT = 63;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup ();
+
+	private static final String THIS_CLASS = "net/roboterhund/kitsune/ETrace$Code";
+	private static final String TRACE_CLASS = "net/roboterhund/kitsune/ETrace";
+	private static final String REGISTER_CLASS = "net/roboterhund/kitsune/KNumRegister";
+	private static final String MATH_CLASS = "java/lang/Math";
+	private static final String RUN_DESCRIPTOR =
+		"([L" + REGISTER_CLASS + ";[L" + REGISTER_CLASS + ";)V";
+
+	/**
+	 * Local variable standing for the denominator of integers.
+	 */
+	private static final int ONE = -1;
+
+	// opcodes
+
+	private static final int LCONST_1 = 0x0a;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC2_W = 0x14;
+	private static final int LLOAD = 0x16;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int AALOAD = 0x32;
+	private static final int LSTORE = 0x37;
+	private static final int LDIV = 0x6d;
+	private static final int LREM = 0x71;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+
+	/* */
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream ();
+	private final DataOutputStream pool = new DataOutputStream (poolBytes);
+	private final Map<String, Integer> poolIndices = new HashMap<> ();
+	private int poolCount = 1;
+
+	private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream ();
+	private final DataOutputStream out = new DataOutputStream (codeBytes);
+
+	/**
+	 * Number of {@code long} local variables.
+	 */
+	private int localCount;
+
+	/**
+	 * Local variable holding the numerator of each frame slot.
+	 */
+	private int[] numerators;
+
+	/**
+	 * Local variable holding the denominator of each frame slot,
+	 * or {@link #ONE} for integers.
+	 */
+	private int[] denominators;
+
+	private ECodeGenerator () {
+	}
+
+	/**
+	 * Generate trace.
+	 *
+	 * @param code program.
+	 * @param variableCount number of inputs.
+	 * @param constants constants, following the inputs in the frame.
+	 * @param frameSize number of slots of the frame.
+	 * @param resultCount number of results, in the last slots of the frame.
+	 * @param signature kinds of the inputs.
+	 * @return the trace, or {@code null} if the program
+	 * cannot be traced (or code generation is not available).
+	 */
+	static ETrace generate (
+		int[] code,
+		int variableCount,
+		KNumRegister[] constants,
+		int frameSize,
+		int resultCount,
+		long signature) {
+
+		if (code.length > MAX_INSTRUCTIONS * EOp.SIZE
+			|| signature == ETrace.UNTRACEABLE) {
+			return null;
+		}
+
+		try {
+			byte[] classFile = new ECodeGenerator ().translate (
+				code,
+				variableCount,
+				constants,
+				frameSize,
+				resultCount,
+				signature
+			);
+			if (classFile == null) {
+				return null;
+			}
+
+			Class<?> traceClass = LOOKUP
+				.defineHiddenClass (classFile, true)
+				.lookupClass ();
+			return (ETrace) traceClass.getDeclaredConstructor ().newInstance ();
+
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			// fall back to interpreter
+			return null;
+		}
+	}
+
+	/**
+	 * Translate program into class file.
+	 *
+	 * @return class file, or {@code null} if unsupported.
+	 */
+	private byte[] translate (
+		int[] code,
+		int variableCount,
+		KNumRegister[] constants,
+		int frameSize,
+		int resultCount,
+		long signature) throws IOException {
+
+		numerators = new int[frameSize];
+		denominators = new int[frameSize];
+
+		// load inputs
+		for (int i = 0; i < variableCount; i++) {
+			int kind = (int) (signature >>> (2 * i)) & 3;
+			numerators[i] = loadInput (i, "numerator");
+			denominators[i] = kind == ETrace.INTEGER ?
+				ONE :
+				loadInput (i, "denominator");
+		}
+
+		// load constants
+		for (int i = 0; i < constants.length; i++) {
+			KNumRegister constant = constants[i];
+			int kind = ETrace.kind (constant.profile);
+			if (kind == 0) {
+				return null;
+			}
+			int slot = variableCount + i;
+			numerators[slot] = loadConstant (constant.numerator);
+			denominators[slot] = kind == ETrace.INTEGER ?
+				ONE :
+				loadConstant (constant.denominator);
+		}
+
+		for (int pc = 0; pc < code.length; pc += EOp.SIZE) {
+			if (!translate (
+				code[pc],
+				code[pc + 1],
+				code[pc + 2],
+				code[pc + 3],
+				variableCount,
+				constants)) {
+				return null;
+			}
+		}
+
+		// write results
+		for (int i = 0; i < resultCount; i++) {
+			int result = frameSize - resultCount + i;
+			out.writeByte (ALOAD_1);
+			pushIndex (i);
+			out.writeByte (AALOAD);
+			load (numerators[result]);
+			if (denominators[result] == ONE) {
+				invoke (INVOKEVIRTUAL, REGISTER_CLASS, "setValue", "(J)V");
+			} else {
+				load (denominators[result]);
+				invoke (INVOKEVIRTUAL, REGISTER_CLASS, "setValue", "(JJ)V");
+			}
+		}
+		out.writeByte (RETURN);
+
+		return classFile ();
+	}
+
+	/**
+	 * Translate instruction.
+	 *
+	 * @return {@code false} if unsupported.
+	 */
+	private boolean translate (
+		int op,
+		int dst,
+		int src_1,
+		int src_2,
+		int variableCount,
+		KNumRegister[] constants) throws IOException {
+
+		int n1 = numerators[src_1];
+		int d1 = denominators[src_1];
+		int n2 = src_2 < 0 ? 0 : numerators[src_2];
+		int d2 = src_2 < 0 ? 0 : denominators[src_2];
+		int n;
+		int d;
+
+		switch (op) {
+		case EOp.COPY:
+			n = n1;
+			d = d1;
+			break;
+
+		case EOp.ADD:
+		case EOp.SUBTRACT:
+			// n1 / d1 +- n2 / d2
+			// = (n1 * d2 +- n2 * d1) / (d1 * d2)
+			push (n1, d2);
+			push (n2, d1);
+			invoke (
+				INVOKESTATIC,
+				MATH_CLASS,
+				op == EOp.ADD ? "addExact" : "subtractExact",
+				"(JJ)J"
+			);
+			n = store ();
+			d = product (d1, d2);
+			break;
+
+		case EOp.MULTIPLY:
+			n = product (n1, n2);
+			d = product (d1, d2);
+			break;
+
+		case EOp.DIVIDE:
+			n = product (n1, d2);
+			d = product (d1, n2);
+			// normalize sign (also checks for zero)
+			load (d);
+			invoke (INVOKESTATIC, TRACE_CLASS, "sign", "(J)J");
+			int sign = store ();
+			n = product (n, sign);
+			d = product (d, sign);
+			break;
+
+		case EOp.MODULO:
+			if (d1 == ONE && d2 == ONE) {
+				load (n1);
+				load (n2);
+				out.writeByte (LREM);
+				n = store ();
+				d = ONE;
+				break;
+			}
+
+			// a % b
+			// = a - (b * int (a / b))
+			int dividend = product (n1, d2);
+			load (dividend);
+			push (d1, n2);
+			invoke (INVOKESTATIC, TRACE_CLASS, "quotient", "(JJ)J");
+			int quotient = store ();
+			load (dividend);
+			push (quotient, n2);
+			if (d1 != ONE) {
+				load (d1);
+				invoke (INVOKESTATIC, MATH_CLASS, "multiplyExact", "(JJ)J");
+			}
+			invoke (INVOKESTATIC, MATH_CLASS, "subtractExact", "(JJ)J");
+			n = store ();
+			d = product (d1, d2);
+			break;
+
+		case EOp.POWER:
+			// only constant exponents
+			int constant = src_2 - variableCount;
+			if (constant < 0
+				|| constant >= constants.length
+				|| ETrace.kind (constants[constant].profile) != ETrace.INTEGER
+				|| constants[constant].numerator < 0
+				|| constants[constant].numerator > MAX_EXPONENT) {
+				return false;
+			}
+			n = power (n1, n2);
+			d = d1 == ONE ? ONE : power (d1, n2);
+			break;
+
+		case EOp.NEGATE:
+			n = call (n1, MATH_CLASS, "negateExact");
+			d = d1;
+			break;
+
+		case EOp.ABS:
+			n = call (n1, MATH_CLASS, "absExact");
+			d = d1;
+			break;
+
+		case EOp.INVERSE:
+			sign = call (n1, TRACE_CLASS, "sign");
+			n = product (d1, sign);
+			d = product (n1, sign);
+			break;
+
+		case EOp.TRUNCATE:
+		case EOp.FLOOR:
+		case EOp.CEILING:
+			d = ONE;
+			if (d1 == ONE) {
+				n = n1;
+				break;
+			}
+
+			if (op == EOp.TRUNCATE) {
+				load (n1);
+				load (d1);
+				out.writeByte (LDIV);
+				n = store ();
+
+			} else if (op == EOp.FLOOR) {
+				load (n1);
+				load (d1);
+				invoke (INVOKESTATIC, MATH_CLASS, "floorDiv", "(JJ)J");
+				n = store ();
+
+			} else {
+				// ceiling (x) = -floor (-x)
+				load (n1);
+				invoke (INVOKESTATIC, MATH_CLASS, "negateExact", "(J)J");
+				load (d1);
+				invoke (INVOKESTATIC, MATH_CLASS, "floorDiv", "(JJ)J");
+				invoke (INVOKESTATIC, MATH_CLASS, "negateExact", "(J)J");
+				n = store ();
+			}
+			break;
+
+		default:
+			return false;
+		}
+
+		numerators[dst] = n;
+		denominators[dst] = d;
+		return true;
+	}
+
+	/**
+	 * Emit {@code inputs[index].field}, stored in new local.
+	 */
+	private int loadInput (
+		int index,
+		String field) throws IOException {
+
+		out.writeByte (ALOAD_2);
+		pushIndex (index);
+		out.writeByte (AALOAD);
+		out.writeByte (GETFIELD);
+		out.writeShort (fieldRef (REGISTER_CLASS, field, "J"));
+		return store ();
+	}
+
+	/**
+	 * Emit array index.
+	 */
+	private void pushIndex (int index) throws IOException {
+		if (index < 128) {
+			out.writeByte (BIPUSH);
+			out.writeByte (index);
+		} else {
+			out.writeByte (SIPUSH);
+			out.writeShort (index);
+		}
+	}
+
+	/**
+	 * Emit constant, stored in new local.
+	 */
+	private int loadConstant (long value) throws IOException {
+		out.writeByte (LDC2_W);
+		out.writeShort (longConstant (value));
+		return store ();
+	}
+
+	/**
+	 * Emit product, stored in new local.
+	 * <p>
+	 * Multiplication by {@link #ONE} emits no code.
+	 *
+	 * @return local holding the product (may be an operand).
+	 */
+	private int product (
+		int local_1,
+		int local_2) throws IOException {
+
+		if (local_1 == ONE) {
+			return local_2;
+		}
+		if (local_2 == ONE) {
+			return local_1;
+		}
+		push (local_1, local_2);
+		return store ();
+	}
+
+	/**
+	 * Emit product, left on the operand stack.
+	 */
+	private void push (
+		int local_1,
+		int local_2) throws IOException {
+
+		if (local_1 == ONE) {
+			load (local_2);
+		} else if (local_2 == ONE) {
+			load (local_1);
+		} else {
+			load (local_1);
+			load (local_2);
+			invoke (INVOKESTATIC, MATH_CLASS, "multiplyExact", "(JJ)J");
+		}
+	}
+
+	/**
+	 * Emit power, stored in new local.
+	 */
+	private int power (
+		int base,
+		int exponent) throws IOException {
+
+		load (base);
+		load (exponent);
+		invoke (INVOKESTATIC, TRACE_CLASS, "power", "(JJ)J");
+		return store ();
+	}
+
+	/**
+	 * Emit call of unary {@code long} method, stored in new local.
+	 */
+	private int call (
+		int local,
+		String owner,
+		String name) throws IOException {
+
+		load (local);
+		invoke (INVOKESTATIC, owner, name, "(J)J");
+		return store ();
+	}
+
+	private void load (int local) throws IOException {
+		if (local == ONE) {
+			out.writeByte (LCONST_1);
+		} else {
+			localInstruction (LLOAD, local);
+		}
+	}
+
+	/**
+	 * Store top of stack in new local.
+	 */
+	private int store () throws IOException {
+		int local = localCount++;
+		localInstruction (LSTORE, local);
+		return local;
+	}
+
+	private void localInstruction (
+		int opcode,
+		int local) throws IOException {
+
+		// slots 0 to 2 are this, result, inputs
+		int index = 3 + 2 * local;
+		if (index < 256) {
+			out.writeByte (opcode);
+			out.writeByte (index);
+		} else {
+			out.writeByte (WIDE);
+			out.writeByte (opcode);
+			out.writeShort (index);
+		}
+	}
+
+	private void invoke (
+		int opcode,
+		String owner,
+		String name,
+		String descriptor) throws IOException {
+
+		out.writeByte (opcode);
+		out.writeShort (methodRef (owner, name, descriptor));
+	}
+
+	// class file
+
+	private byte[] classFile () throws IOException {
+		int thisClass = classRef (THIS_CLASS);
+		int superClass = classRef (TRACE_CLASS);
+		int initName = utf8 ("<init>");
+		int initDescriptor = utf8 ("()V");
+		int superInit = methodRef (TRACE_CLASS, "<init>", "()V");
+		int runName = utf8 ("run");
+		int runDescriptor = utf8 (RUN_DESCRIPTOR);
+		int codeName = utf8 ("Code");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		DataOutputStream file = new DataOutputStream (bytes);
+
+		file.writeInt (0xCAFEBABE);
+		file.writeShort (0);
+		// Java 8
+		file.writeShort (52);
+
+		file.writeShort (poolCount);
+		file.write (poolBytes.toByteArray ());
+
+		// final, super
+		file.writeShort (0x0030);
+		file.writeShort (thisClass);
+		file.writeShort (superClass);
+		// interfaces, fields
+		file.writeShort (0);
+		file.writeShort (0);
+
+		// methods
+		file.writeShort (2);
+
+		// public constructor
+		byte[] init = {
+			(byte) ALOAD_0,
+			(byte) INVOKESPECIAL,
+			(byte) (superInit >> 8),
+			(byte) superInit,
+			(byte) RETURN
+		};
+		file.writeShort (0x0001);
+		file.writeShort (initName);
+		file.writeShort (initDescriptor);
+		writeCode (file, codeName, 1, 1, init);
+
+		// run
+		file.writeShort (0x0000);
+		file.writeShort (runName);
+		file.writeShort (runDescriptor);
+		writeCode (file, codeName, 16, 3 + 2 * localCount, codeBytes.toByteArray ());
+
+		// attributes
+		file.writeShort (0);
+
+		return bytes.toByteArray ();
+	}
+
+	private static void writeCode (
+		DataOutputStream file,
+		int codeName,
+		int maxStack,
+		int maxLocals,
+		byte[] code) throws IOException {
+
+		// one attribute: Code
+		file.writeShort (1);
+		file.writeShort (codeName);
+		file.writeInt (12 + code.length);
+		file.writeShort (maxStack);
+		file.writeShort (maxLocals);
+		file.writeInt (code.length);
+		file.write (code);
+		// exception table, attributes
+		file.writeShort (0);
+		file.writeShort (0);
+	}
+
+	// constant pool
+
+	private int utf8 (String value) throws IOException {
+		String key = "U" + value;
+		Integer index = poolIndices.get (key);
+		if (index == null) {
+			pool.writeByte (1);
+			pool.writeUTF (value);
+			index = addEntry (key, 1);
+		}
+		return index;
+	}
+
+	private int longConstant (long value) throws IOException {
+		String key = "J" + value;
+		Integer index = poolIndices.get (key);
+		if (index == null) {
+			pool.writeByte (5);
+			pool.writeLong (value);
+			// longs take two entries
+			index = addEntry (key, 2);
+		}
+		return index;
+	}
+
+	private int classRef (String name) throws IOException {
+		String key = "C" + name;
+		Integer index = poolIndices.get (key);
+		if (index == null) {
+			int nameIndex = utf8 (name);
+			pool.writeByte (7);
+			pool.writeShort (nameIndex);
+			index = addEntry (key, 1);
+		}
+		return index;
+	}
+
+	private int nameAndType (
+		String name,
+		String descriptor) throws IOException {
+
+		String key = "N" + name + ' ' + descriptor;
+		Integer index = poolIndices.get (key);
+		if (index == null) {
+			int nameIndex = utf8 (name);
+			int descriptorIndex = utf8 (descriptor);
+			pool.writeByte (12);
+			pool.writeShort (nameIndex);
+			pool.writeShort (descriptorIndex);
+			index = addEntry (key, 1);
+		}
+		return index;
+	}
+
+	private int fieldRef (
+		String owner,
+		String name,
+		String descriptor) throws IOException {
+
+		return memberRef (9, owner, name, descriptor);
+	}
+
+	private int methodRef (
+		String owner,
+		String name,
+		String descriptor) throws IOException {
+
+		return memberRef (10, owner, name, descriptor);
+	}
+
+	private int memberRef (
+		int tag,
+		String owner,
+		String name,
+		String descriptor) throws IOException {
+
+		String key = "R" + tag + owner + '.' + name + ' ' + descriptor;
+		Integer index = poolIndices.get (key);
+		if (index == null) {
+			int classIndex = classRef (owner);
+			int nameAndTypeIndex = nameAndType (name, descriptor);
+			pool.writeByte (tag);
+			pool.writeShort (classIndex);
+			pool.writeShort (nameAndTypeIndex);
+			index = addEntry (key, 1);
+		}
+		return index;
+	}
+
+	private int addEntry (
+		String key,
+		int size) {
+
+		int index = poolCount;
+		poolCount += size;
+		poolIndices.put (key, index);
+		return index;
+	}
+
+}
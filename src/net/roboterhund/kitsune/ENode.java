@@ -0,0 +1,161 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+/**
+ * Node of an expression tree.
+ * <p>
+ * After compilation, identical subexpressions are merged,
+ * and the tree becomes a directed acyclic graph.
+ * Such nodes are <i>unique</i>:
+ * no other node of the graph is equal to them.
+ *
+ * @see EParser
+ */
+class ENode {
+
+	/**
+	 * Operation code.
+	 *
+	 * @see EOp
+	 */
+	final int op;
+
+	/**
+	 * First operand, or {@code null} for leaves.
+	 */
+	final ENode operand_1;
+
+	/**
+	 * Second operand, or {@code null} for unary operations and leaves.
+	 */
+	final ENode operand_2;
+
+	/**
+	 * Index of variable ({@link EOp#VARIABLE} only).
+	 */
+	final int variable;
+
+	/**
+	 * Value of constant ({@link EOp#CONSTANT} only).
+	 */
+	final KNumRegister constant;
+
+	/**
+	 * Creation order of unique nodes,
+	 * or {@code -1} if not unique.
+	 */
+	int id = -1;
+
+	/**
+	 * Number of pending uses of the value of the node
+	 * (compilation state).
+	 */
+	int uses;
+
+	/**
+	 * Frame slot holding the value of the node,
+	 * or {@code -1} if not computed yet
+	 * (compilation state).
+	 */
+	int slot = -1;
+
+	/**
+	 * Operation node.
+	 */
+	ENode (
+		int op,
+		ENode operand_1,
+		ENode operand_2) {
+
+		this.op = op;
+		this.operand_1 = operand_1;
+		this.operand_2 = operand_2;
+		this.variable = -1;
+		this.constant = null;
+	}
+
+	/**
+	 * Variable leaf.
+	 */
+	ENode (int variable) {
+		this.op = EOp.VARIABLE;
+		this.operand_1 = null;
+		this.operand_2 = null;
+		this.variable = variable;
+		this.constant = null;
+	}
+
+	/**
+	 * Constant leaf.
+	 */
+	ENode (KNumRegister constant) {
+		this.op = EOp.CONSTANT;
+		this.operand_1 = null;
+		this.operand_2 = null;
+		this.variable = -1;
+		this.constant = constant;
+	}
+
+	/**
+	 * Check whether node is a leaf.
+	 */
+	boolean isLeaf () {
+		return op == EOp.VARIABLE || op == EOp.CONSTANT;
+	}
+
+	/**
+	 * Check whether nodes are equal.
+	 * <p>
+	 * Operands are compared by identity:
+	 * the result is only meaningful for nodes with unique operands.
+	 * Constants are compared by value.
+	 */
+	@Override
+	public boolean equals (Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof ENode)) {
+			return false;
+		}
+
+		ENode node = (ENode) object;
+		return op == node.op
+			&& operand_1 == node.operand_1
+			&& operand_2 == node.operand_2
+			&& variable == node.variable
+			&& (constant == null ?
+			node.constant == null :
+			constant.equals (node.constant));
+	}
+
+	/**
+	 * Get hash code.
+	 *
+	 * @see #equals(Object)
+	 */
+	@Override
+	public int hashCode () {
+		int hash = op;
+		hash = 31 * hash + (operand_1 == null ? 0 : operand_1.id);
+		hash = 31 * hash + (operand_2 == null ? 0 : operand_2.id);
+		hash = 31 * hash + variable;
+		hash = 31 * hash + (constant == null ? 0 : constant.hashCode ());
+		return hash;
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+/**
+ * Operation codes of compiled expressions.
+ * <p>
+ * Each instruction of a {@link KExpression} program
+ * is stored as {@link #SIZE} consecutive {@code int} values:
+ * operation code, destination slot, operand 1 slot, operand 2 slot.
+ * Slots are indices in the register frame of the program.
+ * Unary operations set operand 2 slot to {@code -1}.
+ */
+abstract class EOp {
+
+	/**
+	 * Number of {@code int} values per instruction.
+	 */
+	static final int SIZE = 4;
+
+	// instructions
+
+	/**
+	 * Copy operand 1.
+	 */
+	static final int COPY = 0;
+
+	/**
+	 * {@link CAdd#add}.
+	 */
+	static final int ADD = 1;
+
+	/**
+	 * {@link CSubtract#subtract}.
+	 */
+	static final int SUBTRACT = 2;
+
+	/**
+	 * {@link CMultiply#multiply}.
+	 */
+	static final int MULTIPLY = 3;
+
+	/**
+	 * {@link CDivide#divide}.
+	 */
+	static final int DIVIDE = 4;
+
+	/**
+	 * {@link CDivide#modulo}.
+	 */
+	static final int MODULO = 5;
+
+	/**
+	 * {@link CMultiply#power}, integer exponent.
+	 */
+	static final int POWER = 6;
+
+	/**
+	 * {@link CInvert#negate}.
+	 */
+	static final int NEGATE = 7;
+
+	/**
+	 * {@link CInvert#abs}.
+	 */
+	static final int ABS = 8;
+
+	/**
+	 * {@link CInvert#inverse}.
+	 */
+	static final int INVERSE = 9;
+
+	/**
+	 * {@link CRound#truncate}.
+	 */
+	static final int TRUNCATE = 10;
+
+	/**
+	 * {@link CRound#floor}.
+	 */
+	static final int FLOOR = 11;
+
+	/**
+	 * {@link CRound#ceiling}.
+	 */
+	static final int CEILING = 12;
+
+	/* */
+
+	// expression tree leaves (never emitted)
+
+	/**
+	 * Input variable.
+	 */
+	static final int VARIABLE = 13;
+
+	/**
+	 * Constant.
+	 */
+	static final int CONSTANT = 14;
+
+	/* */
+
+	/**
+	 * Function names accepted by the parser,
+	 * and the corresponding unary operations.
+	 */
+	static final String[] FUNCTION_NAMES = {
+		"neg", "negate",
+		"abs",
+		"inv", "inverse",
+		"trunc", "truncate",
+		"floor",
+		"ceil", "ceiling"
+	};
+
+	/**
+	 * @see #FUNCTION_NAMES
+	 */
+	static final int[] FUNCTIONS = {
+		NEGATE, NEGATE,
+		ABS,
+		INVERSE, INVERSE,
+		TRUNCATE, TRUNCATE,
+		FLOOR,
+		CEILING, CEILING
+	};
+
+	/**
+	 * Check whether the operation has two operands.
+	 */
+	static boolean isBinary (int op) {
+		return op >= ADD && op <= POWER;
+	}
+
+	/**
+	 * Check whether the operands can be swapped.
+	 */
+	static boolean isCommutative (int op) {
+		return op == ADD || op == MULTIPLY;
+	}
+
+}
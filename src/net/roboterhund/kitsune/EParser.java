@@ -0,0 +1,247 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+/**
+ * Recursive descent parser of expressions.
+ * <p>
+ * Grammar:
+ * <pre>
+ * expression = term {('+' | '-') term}
+ * term       = unary {('*' | '/' | '%') unary}
+ * unary      = ('+' | '-') unary | power
+ * power      = primary ['^' unary]
+ * primary    = number | variable | function '(' expression ')'
+ *            | '(' expression ')'
+ * number     = digit {digit} ['.' digit {digit}]
+ * </pre>
+ * Function names are listed in {@link EOp#FUNCTION_NAMES}.
+ */
+class EParser {
+
+	/**
+	 * Expression being parsed.
+	 */
+	private final String source;
+
+	/**
+	 * Variable names.
+	 * The position of each name is the variable index.
+	 */
+	private final String[] variables;
+
+	/**
+	 * Converter for number literals.
+	 */
+	private final KConverter converter = new KConverter ();
+
+	/**
+	 * Current position in {@link #source}.
+	 */
+	private int position;
+
+	/**
+	 * Get parser.
+	 *
+	 * @param source expression.
+	 * @param variables variable names.
+	 */
+	EParser (
+		String source,
+		String[] variables) {
+
+		this.source = source;
+		this.variables = variables;
+	}
+
+	/**
+	 * Parse whole expression.
+	 *
+	 * @return expression tree.
+	 * @throws IllegalArgumentException syntax error.
+	 */
+	ENode parse () {
+		ENode node = expression ();
+		skipSpaces ();
+		if (position < source.length ()) {
+			throw newSyntaxException ("Unexpected character");
+		}
+		return node;
+	}
+
+	private ENode expression () {
+		ENode node = term ();
+		while (true) {
+			if (accept ('+')) {
+				node = new ENode (EOp.ADD, node, term ());
+			} else if (accept ('-')) {
+				node = new ENode (EOp.SUBTRACT, node, term ());
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private ENode term () {
+		ENode node = unary ();
+		while (true) {
+			if (accept ('*')) {
+				node = new ENode (EOp.MULTIPLY, node, unary ());
+			} else if (accept ('/')) {
+				node = new ENode (EOp.DIVIDE, node, unary ());
+			} else if (accept ('%')) {
+				node = new ENode (EOp.MODULO, node, unary ());
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private ENode unary () {
+		if (accept ('+')) {
+			return unary ();
+		} else if (accept ('-')) {
+			return new ENode (EOp.NEGATE, unary (), null);
+		} else {
+			return power ();
+		}
+	}
+
+	private ENode power () {
+		ENode node = primary ();
+		if (accept ('^')) {
+			// right associative
+			node = new ENode (EOp.POWER, node, unary ());
+		}
+		return node;
+	}
+
+	private ENode primary () {
+		skipSpaces ();
+		if (position == source.length ()) {
+			throw newSyntaxException ("Unexpected end");
+		}
+
+		char c = source.charAt (position);
+
+		if (accept ('(')) {
+			ENode node = expression ();
+			expect (')');
+			return node;
+		}
+
+		if (Character.isDigit (c)) {
+			return number ();
+		}
+
+		if (Character.isJavaIdentifierStart (c)) {
+			int start = position;
+			while (position < source.length ()
+				&& Character.isJavaIdentifierPart (source.charAt (position))) {
+				position++;
+			}
+			String name = source.substring (start, position);
+
+			if (accept ('(')) {
+				// function
+				for (int i = 0; i < EOp.FUNCTION_NAMES.length; i++) {
+					if (EOp.FUNCTION_NAMES[i].equals (name)) {
+						ENode node = new ENode (EOp.FUNCTIONS[i], expression (), null);
+						expect (')');
+						return node;
+					}
+				}
+				position = start;
+				throw newSyntaxException ("Unknown function '" + name + "'");
+			}
+
+			for (int i = 0; i < variables.length; i++) {
+				if (variables[i].equals (name)) {
+					return new ENode (i);
+				}
+			}
+			position = start;
+			throw newSyntaxException ("Unknown variable '" + name + "'");
+		}
+
+		throw newSyntaxException ("Unexpected character");
+	}
+
+	private ENode number () {
+		int start = position;
+		while (position < source.length ()
+			&& Character.isDigit (source.charAt (position))) {
+			position++;
+		}
+		if (position + 1 < source.length ()
+			&& source.charAt (position) == '.'
+			&& Character.isDigit (source.charAt (position + 1))) {
+			position++;
+			while (position < source.length ()
+				&& Character.isDigit (source.charAt (position))) {
+				position++;
+			}
+		}
+
+		KNumRegister constant = new KNumRegister ();
+		converter.fromString (constant, source.substring (start, position));
+		return new ENode (constant);
+	}
+
+	/**
+	 * Skip spaces and consume character, if present.
+	 *
+	 * @return {@code true} iff character was consumed.
+	 */
+	private boolean accept (char c) {
+		skipSpaces ();
+		if (position < source.length ()
+			&& source.charAt (position) == c) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Consume character, which must be present.
+	 */
+	private void expect (char c) {
+		if (!accept (c)) {
+			throw newSyntaxException ("Expected '" + c + "'");
+		}
+	}
+
+	private void skipSpaces () {
+		while (position < source.length ()
+			&& Character.isWhitespace (source.charAt (position))) {
+			position++;
+		}
+	}
+
+	/**
+	 * Convenience method to throw exception.
+	 */
+	private IllegalArgumentException newSyntaxException (String message) {
+		return new IllegalArgumentException (
+			message
+				+ " at position "
+				+ position
+				+ ": "
+				+ source);
+	}
+
+}
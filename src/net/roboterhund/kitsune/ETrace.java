@@ -0,0 +1,173 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+/**
+ * Specialised code of a {@link KExpression},
+ * generated by {@link ECodeGenerator}.
+ * <p>
+ * A trace assumes that every input has the profile kind
+ * recorded in its signature (see {@link KExpression}),
+ * and computes the expression with {@code long} arithmetic.
+ * Fractions are not reduced until the result is written.
+ * <p>
+ * Intermediate values are kept in local variables:
+ * the result registers are only written at the end.
+ * If an operation overflows (or divides by zero),
+ * an {@link ArithmeticException} is thrown before anything is written,
+ * and the expression must be evaluated again by the interpreter.
+ * <p>
+ * The static methods are helpers called by the generated code.
+ */
+abstract class ETrace {
+
+	/**
+	 * Maximum number of inputs of a trace.
+	 */
+	static final int MAX_INPUTS = 31;
+
+	/**
+	 * Signature of inputs that cannot be traced.
+	 */
+	static final long UNTRACEABLE = -1;
+
+	/**
+	 * Kind of compact rational values.
+	 * <p>
+	 * Represented as a numerator and a positive denominator.
+	 */
+	static final int RATIONAL = 1;
+
+	/**
+	 * Kind of compact integer values.
+	 * <p>
+	 * Represented as a numerator only.
+	 */
+	static final int INTEGER = 2;
+
+	/**
+	 * Get signature of inputs.
+	 * <p>
+	 * The signature holds the kind of each input,
+	 * {@link #RATIONAL} or {@link #INTEGER},
+	 * in two bits per input.
+	 *
+	 * @return signature, or {@link #UNTRACEABLE}
+	 * if any input is big, or there are too many inputs.
+	 */
+	static long signature (KNumRegister[] inputs) {
+		if (inputs.length > MAX_INPUTS) {
+			return UNTRACEABLE;
+		}
+
+		long signature = 0;
+		for (int i = 0; i < inputs.length; i++) {
+			int kind = kind (inputs[i].profile);
+			if (kind == 0) {
+				return UNTRACEABLE;
+			}
+			signature |= (long) kind << (2 * i);
+		}
+		return signature;
+	}
+
+	/**
+	 * Get kind of profile.
+	 *
+	 * @return {@link #RATIONAL}, {@link #INTEGER},
+	 * or {@code 0} for big profiles and decimals
+	 * (traces do not keep the scale).
+	 */
+	static int kind (int profile) {
+		switch (profile) {
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			return RATIONAL;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			return INTEGER;
+
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Evaluate expressions.
+	 *
+	 * @param results overwritten with the results.
+	 * @param inputs values of the variables.
+	 * @throws ArithmeticException overflow or division by zero:
+	 * the results are unchanged.
+	 */
+	abstract void run (
+		KNumRegister[] results,
+		KNumRegister[] inputs);
+
+	/**
+	 * Get sign of divisor.
+	 * <p>
+	 * Multiplying numerator and denominator by the sign
+	 * normalizes the fraction.
+	 *
+	 * @throws ArithmeticException zero or {@code Long.MIN_VALUE}.
+	 */
+	static long sign (long divisor) {
+		if (divisor == 0 || divisor == Long.MIN_VALUE) {
+			throw new ArithmeticException ();
+		}
+		return divisor < 0 ? -1 : 1;
+	}
+
+	/**
+	 * Get truncated quotient.
+	 *
+	 * @throws ArithmeticException overflow or division by zero.
+	 */
+	static long quotient (
+		long dividend,
+		long divisor) {
+
+		if (divisor == -1) {
+			return Math.negateExact (dividend);
+		}
+		return dividend / divisor;
+	}
+
+	/**
+	 * Raise to non-negative integer exponent.
+	 *
+	 * @throws ArithmeticException overflow.
+	 */
+	static long power (
+		long base,
+		long exponent) {
+
+		long result = 1;
+		while (exponent != 0) {
+			if ((exponent & 1) != 0) {
+				result = Math.multiplyExact (result, base);
+			}
+			exponent >>= 1;
+			if (exponent != 0) {
+				base = Math.multiplyExact (base, base);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
+
+/**
+ * Calculator that bounds the size of results.
+ * <p>
+ * When the result of an addition, subtraction, multiplication or division
+ * has a numerator or denominator longer than the maximum bit length,
+ * it is replaced by the closest fraction that fits
+ * (see {@link KCalculator#approximate(KNumRegister, KNumRegister, long)}).
+ * With bit lengths up to 62, results stay in compact profiles,
+ * so later operations keep taking the {@code long} routes.
+ * <p>
+ * The absolute rounding errors are added to an error register,
+ * which is kept in compact profiles by rounding it up if necessary.
+ * The error register is an upper bound of the sum of the errors
+ * introduced by rounding; it does not account for the propagation
+ * of earlier errors through later operations.
+ * <p>
+ * Other operations, and operations performed internally
+ * (for example, by {@link KExpression}), are exact.
+ */
+public class KApproximateCalculator extends KCalculator {
+
+	/**
+	 * Invalid bit length error message.
+	 */
+	public static final String ERR_MSG_BIT_LENGTH =
+		"Maximum bit length must be between 1 and 63.";
+
+	/**
+	 * Maximum absolute numerator.
+	 */
+	private final long maxNumerator;
+
+	/**
+	 * Maximum denominator.
+	 */
+	private final long maxDenominator;
+
+	/**
+	 * Accumulated rounding error.
+	 */
+	private final KNumRegister error;
+
+	/**
+	 * Get new calculator.
+	 *
+	 * @param regPool register pool.
+	 * @param maxNumeratorBits maximum bit length of
+	 * the absolute value of numerators.
+	 * @param maxDenominatorBits maximum bit length of denominators.
+	 * @throws IllegalArgumentException bit length not in range
+	 * {@code [1, 63]}.
+	 */
+	public KApproximateCalculator (
+		KNumRegisterPool regPool,
+		int maxNumeratorBits,
+		int maxDenominatorBits) {
+
+		super (regPool);
+
+		if (maxNumeratorBits < 1 || maxNumeratorBits >= Long.SIZE
+			|| maxDenominatorBits < 1 || maxDenominatorBits >= Long.SIZE) {
+			throw new IllegalArgumentException (ERR_MSG_BIT_LENGTH);
+		}
+
+		maxNumerator = Long.MAX_VALUE >>> (Long.SIZE - 1 - maxNumeratorBits);
+		maxDenominator = Long.MAX_VALUE >>> (Long.SIZE - 1 - maxDenominatorBits);
+
+		error = new KNumRegister ();
+	}
+
+	/**
+	 * Add two numbers, rounding the result if too large.
+	 *
+	 * @param result overwritten with the result.
+	 * @param term_1 first term.
+	 * @param term_2 second term.
+	 */
+	@Override
+	public void add (
+		KNumRegister result,
+		KNumRegister term_1,
+		KNumRegister term_2) {
+
+		CAdd.add (this, result, term_1, term_2);
+		bound (result);
+	}
+
+	/**
+	 * Subtract two numbers, rounding the result if too large.
+	 *
+	 * @param result overwritten with the result.
+	 * @param minuend number subtracted from (does not change).
+	 * @param subtrahend number to subtract.
+	 */
+	@Override
+	public void subtract (
+		KNumRegister result,
+		KNumRegister minuend,
+		KNumRegister subtrahend) {
+
+		CSubtract.subtract (this, result, minuend, subtrahend);
+		bound (result);
+	}
+
+	/**
+	 * Multiply two numbers, rounding the result if too large.
+	 *
+	 * @param result overwritten with the result.
+	 * @param factor_1 first factor.
+	 * @param factor_2 second factor.
+	 */
+	@Override
+	public void multiply (
+		KNumRegister result,
+		KNumRegister factor_1,
+		KNumRegister factor_2) {
+
+		CMultiply.multiply (this, result, factor_1, factor_2);
+		bound (result);
+	}
+
+	/**
+	 * Divide two numbers, rounding the result if too large.
+	 *
+	 * @param result overwritten with the result.
+	 * @param dividend number that is divided (does not change).
+	 * @param divisor number by which to divide.
+	 * @throws java.lang.ArithmeticException division by zero.
+	 */
+	@Override
+	public void divide (
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		CDivide.divide (this, result, dividend, divisor);
+		bound (result);
+	}
+
+	/**
+	 * Get accumulated rounding error.
+	 *
+	 * @param result overwritten with the sum of
+	 * the absolute rounding errors since the last reset.
+	 */
+	public void getError (KNumRegister result) {
+		result.copy (error);
+	}
+
+	/**
+	 * Set accumulated rounding error to zero.
+	 */
+	public void resetError () {
+		error.setZeroValue ();
+	}
+
+	/**
+	 * Round number to the closest fraction within the limits,
+	 * and add rounding error.
+	 */
+	private void bound (KNumRegister number) {
+		if (CApproximate.fits (number, maxNumerator, maxDenominator)) {
+			return;
+		}
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		KNumRegister rounded = cont_1.reg;
+		KNumRegister difference = cont_2.reg;
+
+		CApproximate.limit (
+			rounded,
+			number,
+			maxNumerator,
+			maxDenominator,
+			false
+		);
+
+		CSubtract.subtract (this, difference, rounded, number);
+		CInvert.abs (difference, difference);
+		CAdd.add (this, error, error, difference);
+		// keep the error compact, rounding up
+		CApproximate.limit (
+			error,
+			error,
+			Long.MAX_VALUE,
+			Long.MAX_VALUE,
+			true
+		);
+
+		number.copy (rounded);
+
+		regPool.discard (cont_1);
+		regPool.discard (cont_2);
+	}
+
+}
@@ -0,0 +1,665 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of registers.
+ * <p>
+ * Each value is encoded as a tag byte (the {@link KProfile}),
+ * followed by:
+ * <ul>
+ * <li>integers: the numerator, as a zig-zag varint;</li>
+ * <li>rationals: the numerator, as a zig-zag varint,
+ * and the denominator, as a varint
+ * (always positive, so not zig-zag encoded);</li>
+ * <li>decimals: the unscaled value, as a zig-zag varint,
+ * and the scale, as one byte;</li>
+ * <li>big integers: the numerator,
+ * as a length-prefixed two's-complement byte array;</li>
+ * <li>big rationals: the numerator and the denominator,
+ * as length-prefixed two's-complement byte arrays.</li>
+ * </ul>
+ * Varints store 7 bits per byte, least significant first.
+ * The high bit of each byte is set if more bytes follow.
+ * <p>
+ * Compact values are encoded and decoded without allocating objects.
+ * <p>
+ * Decoded rationals are not reduced:
+ * the input must have been written by this class.
+ */
+public abstract class KBinaryCodec {
+
+	/**
+	 * Invalid tag error message.
+	 */
+	public static final String ERR_MSG_INVALID_TAG =
+		"Invalid tag.";
+
+	/**
+	 * Invalid varint error message.
+	 */
+	public static final String ERR_MSG_INVALID_VARINT =
+		"Invalid varint.";
+
+	/**
+	 * Invalid length error message.
+	 */
+	public static final String ERR_MSG_INVALID_LENGTH =
+		"Invalid length.";
+
+	/**
+	 * Invalid fraction error message.
+	 */
+	public static final String ERR_MSG_INVALID_FRACTION =
+		"Invalid fraction.";
+
+	/**
+	 * Maximum length of an encoded compact value.
+	 * <p>
+	 * Tag, 64-bit zig-zag numerator (10 bytes)
+	 * and 63-bit denominator (9 bytes).
+	 */
+	public static final int MAX_COMPACT_SIZE = 20;
+
+	/**
+	 * Get length of encoded value.
+	 *
+	 * @param number the value.
+	 * @return number of bytes written by {@code encode}.
+	 */
+	public static int encodedSize (KNumRegister number) {
+		switch (number.profile) {
+		case KProfile.BIG_RATIONAL:
+			return 1
+				+ bigSize (number.bigNumerator)
+				+ bigSize (number.bigDenominator);
+
+		case KProfile.BIG_INTEGER:
+			return 1 + bigSize (number.bigNumerator);
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			return 1
+				+ varintSize (zigZag (number.numerator))
+				+ varintSize (number.denominator);
+
+		case KProfile.LONG_DECIMAL:
+			return 2 + varintSize (zigZag (number.numerator));
+
+		default:
+			return 1 + varintSize (zigZag (number.numerator));
+		}
+	}
+
+	/**
+	 * Encode value into byte array.
+	 *
+	 * @param number the value.
+	 * @return new array, of length {@link #encodedSize(KNumRegister)}.
+	 */
+	public static byte[] encode (KNumRegister number) {
+		byte[] buffer = new byte[encodedSize (number)];
+		encode (number, buffer, 0);
+		return buffer;
+	}
+
+	/**
+	 * Encode value into byte array.
+	 *
+	 * @param number the value.
+	 * @param buffer destination.
+	 * @param offset position of first byte written.
+	 * @return position after last byte written.
+	 * @throws ArrayIndexOutOfBoundsException not enough space.
+	 */
+	public static int encode (
+		KNumRegister number,
+		byte[] buffer,
+		int offset) {
+
+		buffer[offset++] = (byte) number.profile;
+
+		switch (number.profile) {
+		case KProfile.BIG_RATIONAL:
+			offset = writeBig (number.bigNumerator, buffer, offset);
+			return writeBig (number.bigDenominator, buffer, offset);
+
+		case KProfile.BIG_INTEGER:
+			return writeBig (number.bigNumerator, buffer, offset);
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			offset = writeVarint (zigZag (number.numerator), buffer, offset);
+			return writeVarint (number.denominator, buffer, offset);
+
+		case KProfile.LONG_DECIMAL:
+			offset = writeVarint (zigZag (number.numerator), buffer, offset);
+			buffer[offset++] = (byte) number.scale;
+			return offset;
+
+		default:
+			return writeVarint (zigZag (number.numerator), buffer, offset);
+		}
+	}
+
+	/**
+	 * Encode value into buffer, at its position.
+	 *
+	 * @param number the value.
+	 * @param buffer destination.
+	 * @throws java.nio.BufferOverflowException not enough space.
+	 */
+	public static void encode (
+		KNumRegister number,
+		ByteBuffer buffer) {
+
+		buffer.put ((byte) number.profile);
+
+		switch (number.profile) {
+		case KProfile.BIG_RATIONAL:
+			writeBig (number.bigNumerator, buffer);
+			writeBig (number.bigDenominator, buffer);
+			break;
+
+		case KProfile.BIG_INTEGER:
+			writeBig (number.bigNumerator, buffer);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			writeVarint (zigZag (number.numerator), buffer);
+			writeVarint (number.denominator, buffer);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			writeVarint (zigZag (number.numerator), buffer);
+			buffer.put ((byte) number.scale);
+			break;
+
+		default:
+			writeVarint (zigZag (number.numerator), buffer);
+			break;
+		}
+	}
+
+	/**
+	 * Encode value into stream.
+	 *
+	 * @param number the value.
+	 * @param output destination.
+	 * @throws IOException error writing to stream.
+	 */
+	public static void encode (
+		KNumRegister number,
+		DataOutput output) throws IOException {
+
+		output.writeByte (number.profile);
+
+		switch (number.profile) {
+		case KProfile.BIG_RATIONAL:
+			writeBig (number.bigNumerator, output);
+			writeBig (number.bigDenominator, output);
+			break;
+
+		case KProfile.BIG_INTEGER:
+			writeBig (number.bigNumerator, output);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			writeVarint (zigZag (number.numerator), output);
+			writeVarint (number.denominator, output);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			writeVarint (zigZag (number.numerator), output);
+			output.writeByte (number.scale);
+			break;
+
+		default:
+			writeVarint (zigZag (number.numerator), output);
+			break;
+		}
+	}
+
+	/**
+	 * Decode value from byte array.
+	 *
+	 * @param result overwritten with the value.
+	 * @param buffer source.
+	 * @param offset position of first byte read.
+	 * @return position after last byte read.
+	 * @throws IllegalArgumentException invalid encoding.
+	 * @throws ArrayIndexOutOfBoundsException truncated encoding.
+	 */
+	public static int decode (
+		KNumRegister result,
+		byte[] buffer,
+		int offset) {
+
+		int tag = buffer[offset++];
+
+		long numerator;
+		long denominator;
+
+		switch (tag) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			long length = readVarint (buffer, offset);
+			offset += varintSize (length);
+			BigInteger bigNumerator = readBig (buffer, offset, length);
+			offset += (int) length;
+
+			BigInteger bigDenominator = BigInteger.ONE;
+			if (tag == KProfile.BIG_RATIONAL) {
+				length = readVarint (buffer, offset);
+				offset += varintSize (length);
+				bigDenominator = readBig (buffer, offset, length);
+				offset += (int) length;
+			}
+			setBig (result, bigNumerator, bigDenominator);
+			return offset;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			numerator = readVarint (buffer, offset);
+			offset += varintSize (numerator);
+			denominator = readVarint (buffer, offset);
+			offset += varintSize (denominator);
+			setFraction (result, unZigZag (numerator), denominator);
+			return offset;
+
+		case KProfile.LONG_DECIMAL:
+			numerator = readVarint (buffer, offset);
+			offset += varintSize (numerator);
+			result.setDecimal (unZigZag (numerator), buffer[offset++]);
+			return offset;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			numerator = readVarint (buffer, offset);
+			offset += varintSize (numerator);
+			result.setValue (unZigZag (numerator));
+			return offset;
+
+		default:
+			throw new IllegalArgumentException (ERR_MSG_INVALID_TAG);
+		}
+	}
+
+	/**
+	 * Decode value from buffer, at its position.
+	 *
+	 * @param result overwritten with the value.
+	 * @param buffer source.
+	 * @throws IllegalArgumentException invalid encoding.
+	 * @throws java.nio.BufferUnderflowException truncated encoding.
+	 */
+	public static void decode (
+		KNumRegister result,
+		ByteBuffer buffer) {
+
+		int tag = buffer.get ();
+
+		switch (tag) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			BigInteger bigNumerator = readBig (buffer);
+			BigInteger bigDenominator = tag == KProfile.BIG_RATIONAL ?
+				readBig (buffer) :
+				BigInteger.ONE;
+			setBig (result, bigNumerator, bigDenominator);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			long numerator = unZigZag (readVarint (buffer));
+			setFraction (result, numerator, readVarint (buffer));
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			long unscaledValue = unZigZag (readVarint (buffer));
+			result.setDecimal (unscaledValue, buffer.get ());
+			break;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			result.setValue (unZigZag (readVarint (buffer)));
+			break;
+
+		default:
+			throw new IllegalArgumentException (ERR_MSG_INVALID_TAG);
+		}
+	}
+
+	/**
+	 * Decode value from stream.
+	 *
+	 * @param result overwritten with the value.
+	 * @param input source.
+	 * @throws IllegalArgumentException invalid encoding.
+	 * @throws IOException error reading from stream
+	 * (including {@link java.io.EOFException}).
+	 */
+	public static void decode (
+		KNumRegister result,
+		DataInput input) throws IOException {
+
+		int tag = input.readByte ();
+
+		switch (tag) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			BigInteger bigNumerator = readBig (input);
+			BigInteger bigDenominator = tag == KProfile.BIG_RATIONAL ?
+				readBig (input) :
+				BigInteger.ONE;
+			setBig (result, bigNumerator, bigDenominator);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			long numerator = unZigZag (readVarint (input));
+			setFraction (result, numerator, readVarint (input));
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			long unscaledValue = unZigZag (readVarint (input));
+			result.setDecimal (unscaledValue, input.readByte ());
+			break;
+
+		case KProfile.LONG_INTEGER:
+		case KProfile.INT_INTEGER:
+			result.setValue (unZigZag (readVarint (input)));
+			break;
+
+		default:
+			throw new IllegalArgumentException (ERR_MSG_INVALID_TAG);
+		}
+	}
+
+	/**
+	 * Set decoded irreducible fraction,
+	 * where {@code denominator > 1}.
+	 */
+	private static void setFraction (
+		KNumRegister result,
+		long numerator,
+		long denominator) {
+
+		if (denominator <= 1
+			|| numerator == Long.MIN_VALUE) {
+			throw new IllegalArgumentException (
+				ERR_MSG_INVALID_FRACTION
+			);
+		}
+		result.setIrreducibleFraction (numerator, denominator);
+	}
+
+	/**
+	 * Set decoded irreducible big fraction.
+	 */
+	private static void setBig (
+		KNumRegister result,
+		BigInteger bigNumerator,
+		BigInteger bigDenominator) {
+
+		if (bigDenominator.signum () <= 0) {
+			throw new IllegalArgumentException (
+				ERR_MSG_INVALID_FRACTION
+			);
+		}
+		result.setIrreducibleValue (bigNumerator, bigDenominator, true);
+	}
+
+	/**
+	 * Map signed value to unsigned value,
+	 * so that small magnitudes have few significant bits.
+	 */
+	static long zigZag (long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Inverse of {@link #zigZag(long)}.
+	 */
+	static long unZigZag (long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Get number of bytes of varint.
+	 */
+	static int varintSize (long value) {
+		// 1 byte for 0
+		int bits = Long.SIZE - Long.numberOfLeadingZeros (value | 1);
+		return (bits + 6) / 7;
+	}
+
+	/**
+	 * Get number of bytes of length-prefixed {@code BigInteger}.
+	 */
+	private static int bigSize (BigInteger value) {
+		int length = value.bitLength () / 8 + 1;
+		return varintSize (length) + length;
+	}
+
+	/**
+	 * Write varint to byte array.
+	 *
+	 * @return position after last byte written.
+	 */
+	private static int writeVarint (
+		long value,
+		byte[] buffer,
+		int offset) {
+
+		while ((value & ~0x7FL) != 0) {
+			buffer[offset++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Write varint to buffer.
+	 */
+	private static void writeVarint (
+		long value,
+		ByteBuffer buffer) {
+
+		while ((value & ~0x7FL) != 0) {
+			buffer.put ((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put ((byte) value);
+	}
+
+	/**
+	 * Write varint to stream.
+	 */
+	private static void writeVarint (
+		long value,
+		DataOutput output) throws IOException {
+
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte ((int) (value | 0x80));
+			value >>>= 7;
+		}
+		output.writeByte ((int) value);
+	}
+
+	/**
+	 * Read varint from byte array.
+	 * <p>
+	 * The number of bytes read is
+	 * {@link #varintSize(long)} of the result.
+	 */
+	private static long readVarint (
+		byte[] buffer,
+		int offset) {
+
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = buffer[offset++];
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return checkVarint (value, shift, b);
+			}
+		}
+		throw new IllegalArgumentException (ERR_MSG_INVALID_VARINT);
+	}
+
+	/**
+	 * Read varint from buffer.
+	 */
+	private static long readVarint (ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = buffer.get ();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return checkVarint (value, shift, b);
+			}
+		}
+		throw new IllegalArgumentException (ERR_MSG_INVALID_VARINT);
+	}
+
+	/**
+	 * Read varint from stream.
+	 */
+	private static long readVarint (DataInput input) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = input.readByte ();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return checkVarint (value, shift, b);
+			}
+		}
+		throw new IllegalArgumentException (ERR_MSG_INVALID_VARINT);
+	}
+
+	/**
+	 * Reject overlong varints, so that the number of bytes read
+	 * is always {@link #varintSize(long)} of the value,
+	 * and varints longer than 64 bits.
+	 *
+	 * @param shift position of last 7-bit group.
+	 * @param last last byte.
+	 */
+	private static long checkVarint (
+		long value,
+		int shift,
+		byte last) {
+
+		if ((shift > 0 && varintSize (value) * 7 != shift + 7)
+			|| (shift == 63 && last > 1)) {
+			throw new IllegalArgumentException (ERR_MSG_INVALID_VARINT);
+		}
+		return value;
+	}
+
+	/**
+	 * Write length-prefixed {@code BigInteger} to byte array.
+	 *
+	 * @return position after last byte written.
+	 */
+	private static int writeBig (
+		BigInteger value,
+		byte[] buffer,
+		int offset) {
+
+		byte[] bytes = value.toByteArray ();
+		offset = writeVarint (bytes.length, buffer, offset);
+		System.arraycopy (bytes, 0, buffer, offset, bytes.length);
+		return offset + bytes.length;
+	}
+
+	/**
+	 * Write length-prefixed {@code BigInteger} to buffer.
+	 */
+	private static void writeBig (
+		BigInteger value,
+		ByteBuffer buffer) {
+
+		byte[] bytes = value.toByteArray ();
+		writeVarint (bytes.length, buffer);
+		buffer.put (bytes);
+	}
+
+	/**
+	 * Write length-prefixed {@code BigInteger} to stream.
+	 */
+	private static void writeBig (
+		BigInteger value,
+		DataOutput output) throws IOException {
+
+		byte[] bytes = value.toByteArray ();
+		writeVarint (bytes.length, output);
+		output.write (bytes);
+	}
+
+	/**
+	 * Read {@code BigInteger} of known length from byte array.
+	 */
+	private static BigInteger readBig (
+		byte[] buffer,
+		int offset,
+		long length) {
+
+		if (length <= 0 || length > buffer.length - offset) {
+			throw new IllegalArgumentException (ERR_MSG_INVALID_LENGTH);
+		}
+		byte[] bytes = new byte[(int) length];
+		System.arraycopy (buffer, offset, bytes, 0, bytes.length);
+		return new BigInteger (bytes);
+	}
+
+	/**
+	 * Read length-prefixed {@code BigInteger} from buffer.
+	 */
+	private static BigInteger readBig (ByteBuffer buffer) {
+		long length = readVarint (buffer);
+		if (length <= 0 || length > buffer.remaining ()) {
+			throw new IllegalArgumentException (ERR_MSG_INVALID_LENGTH);
+		}
+		byte[] bytes = new byte[(int) length];
+		buffer.get (bytes);
+		return new BigInteger (bytes);
+	}
+
+	/**
+	 * Read length-prefixed {@code BigInteger} from stream.
+	 */
+	private static BigInteger readBig (DataInput input) throws IOException {
+		long length = readVarint (input);
+		if (length <= 0 || length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException (ERR_MSG_INVALID_LENGTH);
+		}
+		byte[] bytes = new byte[(int) length];
+		input.readFully (bytes);
+		return new BigInteger (bytes);
+	}
+
+}
@@ -15,6 +15,10 @@
  */
 package net.roboterhund.kitsune;
 
+import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
+
+import java.math.RoundingMode;
+
 /**
  * Perform calculations with
  * {@link KNumRegister} objects.
@@ -143,6 +147,73 @@ public class KCalculator {
 		CDivide.modulo (this, result, dividend, divisor);
 	}
 
+	/**
+	 * Get {@code floor (dividend / divisor)}.
+	 *
+	 * @param result overwritten with the result.
+	 * @param dividend number that is divided.
+	 * @param divisor number by which to divide.
+	 * @throws java.lang.ArithmeticException divisor is zero.
+	 */
+	public void floorDiv (
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		CDivide.floorDivide (this, result, dividend, divisor);
+	}
+
+	/**
+	 * Get {@code dividend - divisor * floor (dividend / divisor)}.
+	 * <p>
+	 * The result is zero or has the sign of the divisor.
+	 *
+	 * @param result overwritten with the result.
+	 * @param dividend number that is divided.
+	 * @param divisor number by which to divide.
+	 * @throws java.lang.ArithmeticException divisor is zero.
+	 */
+	public void floorMod (
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		CDivide.floorModulo (this, result, dividend, divisor);
+	}
+
+	/**
+	 * Get remainder of {@code dividend / divisor}
+	 * in {@code [0, |divisor|)}.
+	 *
+	 * @param result overwritten with the result.
+	 * @param dividend number that is divided.
+	 * @param divisor number by which to divide.
+	 * @throws java.lang.ArithmeticException divisor is zero.
+	 */
+	public void euclideanMod (
+		KNumRegister result,
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		CDivide.euclideanModulo (this, result, dividend, divisor);
+	}
+
+	/**
+	 * Check whether {@code dividend / divisor} is an integer.
+	 *
+	 * @param dividend number that is divided.
+	 * @param divisor number by which to divide.
+	 * @return {@code true} if {@code dividend} is
+	 * an integer multiple of {@code divisor}.
+	 * @throws java.lang.ArithmeticException divisor is zero.
+	 */
+	public boolean isDivisibleBy (
+		KNumRegister dividend,
+		KNumRegister divisor) {
+
+		return CDivide.isDivisible (this, dividend, divisor);
+	}
+
 	/**
 	 * Get base raised to exponent.
 	 *
@@ -198,6 +269,89 @@ public class KCalculator {
 		CRound.ceiling (result, number);
 	}
 
+	/**
+	 * Round number to a multiple of {@code 10^-scale}.
+	 * <p>
+	 * If {@code 1 <= scale <= 18},
+	 * the result is a decimal with the given scale.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param scale number of decimal digits to keep.
+	 * May be negative.
+	 * @param roundingMode how to round discarded digits.
+	 * @throws ArithmeticException {@code roundingMode} is
+	 * {@link RoundingMode#UNNECESSARY} and the number has more digits.
+	 */
+	public void roundToScale (
+		KNumRegister result,
+		KNumRegister number,
+		int scale,
+		RoundingMode roundingMode) {
+
+		CRound.roundToScale (this, result, number, scale, roundingMode);
+	}
+
+	/**
+	 * Round number to a multiple of {@code step}.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param step positive number.
+	 * @param roundingMode how to round {@code number / step}.
+	 * @throws IllegalArgumentException {@code step} is not positive.
+	 * @throws ArithmeticException {@code roundingMode} is
+	 * {@link RoundingMode#UNNECESSARY} and the number
+	 * is not a multiple of {@code step}.
+	 */
+	public void roundToMultiple (
+		KNumRegister result,
+		KNumRegister number,
+		KNumRegister step,
+		RoundingMode roundingMode) {
+
+		CRound.roundToMultiple (this, result, number, step, roundingMode);
+	}
+
+	/**
+	 * Get the closest fraction with denominator
+	 * not greater than {@code maxDenominator}.
+	 * <p>
+	 * Useful to keep long iterative computations
+	 * in compact profiles.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param maxDenominator maximum denominator.
+	 * @throws IllegalArgumentException {@code maxDenominator < 1}.
+	 */
+	public void approximate (
+		KNumRegister result,
+		KNumRegister number,
+		long maxDenominator) {
+
+		CApproximate.limitDenominator (result, number, maxDenominator);
+	}
+
+	/**
+	 * Get the simplest fraction
+	 * (smallest denominator, then smallest absolute numerator)
+	 * whose distance to {@code number}
+	 * is not greater than {@code maxError}.
+	 *
+	 * @param result overwritten with the result.
+	 * @param number the number.
+	 * @param maxError maximum absolute error.
+	 * @throws IllegalArgumentException {@code maxError < 0}.
+	 */
+	public void approximate (
+		KNumRegister result,
+		KNumRegister number,
+		KNumRegister maxError) {
+
+		CApproximate.limitError (this, result, number, maxError);
+	}
+
 	/**
 	 * Get absolute value of number.
 	 *
@@ -264,6 +418,130 @@ public class KCalculator {
 		return CCompare.compare (this, number_1, number_2);
 	}
 
+	/**
+	 * Add two numbers stored in a register file.
+	 * <p>
+	 * Compact values are processed without allocating objects.
+	 *
+	 * @param file the register file.
+	 * @param result index of the result.
+	 * @param term_1 index of the first term.
+	 * @param term_2 index of the second term.
+	 * @see #add(KNumRegister, KNumRegister, KNumRegister)
+	 */
+	public void add (
+		KNumRegisterFile file,
+		int result,
+		int term_1,
+		int term_2) {
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		try {
+			file.get (term_1, cont_1.reg);
+			file.get (term_2, cont_2.reg);
+			add (cont_1.reg, cont_1.reg, cont_2.reg);
+			file.set (result, cont_1.reg);
+		} finally {
+			regPool.discard (cont_1);
+			regPool.discard (cont_2);
+		}
+	}
+
+	/**
+	 * Subtract two numbers stored in a register file.
+	 * <p>
+	 * Compact values are processed without allocating objects.
+	 *
+	 * @param file the register file.
+	 * @param result index of the result.
+	 * @param minuend index of the number to subtract from.
+	 * @param subtrahend index of the number to subtract.
+	 * @see #subtract(KNumRegister, KNumRegister, KNumRegister)
+	 */
+	public void subtract (
+		KNumRegisterFile file,
+		int result,
+		int minuend,
+		int subtrahend) {
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		try {
+			file.get (minuend, cont_1.reg);
+			file.get (subtrahend, cont_2.reg);
+			subtract (cont_1.reg, cont_1.reg, cont_2.reg);
+			file.set (result, cont_1.reg);
+		} finally {
+			regPool.discard (cont_1);
+			regPool.discard (cont_2);
+		}
+	}
+
+	/**
+	 * Multiply two numbers stored in a register file.
+	 * <p>
+	 * Compact values are processed without allocating objects.
+	 *
+	 * @param file the register file.
+	 * @param result index of the result.
+	 * @param factor_1 index of the first factor.
+	 * @param factor_2 index of the second factor.
+	 * @see #multiply(KNumRegister, KNumRegister, KNumRegister)
+	 */
+	public void multiply (
+		KNumRegisterFile file,
+		int result,
+		int factor_1,
+		int factor_2) {
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		try {
+			file.get (factor_1, cont_1.reg);
+			file.get (factor_2, cont_2.reg);
+			multiply (cont_1.reg, cont_1.reg, cont_2.reg);
+			file.set (result, cont_1.reg);
+		} finally {
+			regPool.discard (cont_1);
+			regPool.discard (cont_2);
+		}
+	}
+
+	/**
+	 * Divide two numbers stored in a register file.
+	 * <p>
+	 * Compact values are processed without allocating objects.
+	 *
+	 * @param file the register file.
+	 * @param result index of the result.
+	 * @param dividend index of the number to divide.
+	 * @param divisor index of the number to divide by.
+	 * @see #divide(KNumRegister, KNumRegister, KNumRegister)
+	 */
+	public void divide (
+		KNumRegisterFile file,
+		int result,
+		int dividend,
+		int divisor) {
+
+		KRegCont cont_1 = regPool.get ();
+		KRegCont cont_2 = regPool.get ();
+
+		try {
+			file.get (dividend, cont_1.reg);
+			file.get (divisor, cont_2.reg);
+			divide (cont_1.reg, cont_1.reg, cont_2.reg);
+			file.set (result, cont_1.reg);
+		} finally {
+			regPool.discard (cont_1);
+			regPool.discard (cont_2);
+		}
+	}
+
 	/**
 	 * Primitive addition, guarded against {@code long} overflow.
 	 * <p>
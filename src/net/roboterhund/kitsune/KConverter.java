@@ -19,6 +19,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Conversion of other data types to and from
@@ -35,23 +36,12 @@ public class KConverter {
 	/**
 	 * Maximum number of decimals accepted in a string to convert.
 	 */
-	private static final int MAX_DECIMALS = 18;
+	static final int MAX_DECIMALS = 18;
 
 	/**
-	 * Denominator corresponding to each number of decimals.
+	 * {@code log2 (5)}.
 	 */
-	private static final long[] DENOMINATORS;
-
-	// compute denominator for each number of decimals
-	static {
-		final int numDenominators = MAX_DECIMALS + 1;
-		DENOMINATORS = new long[numDenominators];
-		long exponent = 1;
-		for (int i = 1; i < numDenominators; i++) {
-			exponent *= 10;
-			DENOMINATORS[i] = exponent;
-		}
-	}
+	private static final double LOG2_5 = Math.log (5) / Math.log (2);
 
 	/**
 	 * Default precision of numbers with infinite decimal expansion.
@@ -150,13 +140,14 @@ public class KConverter {
 			break;
 
 		case KProfile.LONG_RATIONAL:
+		case KProfile.LONG_DECIMAL:
 			long longValue =
 				fromRegister.numerator / fromRegister.denominator;
 
 			if (longValue <= Integer.MAX_VALUE
 				&& longValue >= Integer.MIN_VALUE) {
 
-				lastConversionStatus = KConversionStatus.INEXACT;
+				setDivisionStatus (fromRegister);
 				return (int) longValue;
 
 			} else {
@@ -215,7 +206,8 @@ public class KConverter {
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
-			lastConversionStatus = KConversionStatus.INEXACT;
+		case KProfile.LONG_DECIMAL:
+			setDivisionStatus (fromRegister);
 			return
 				fromRegister.numerator / fromRegister.denominator;
 
@@ -255,6 +247,7 @@ public class KConverter {
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
+		case KProfile.LONG_DECIMAL:
 			lastConversionStatus = KConversionStatus.INEXACT;
 			return
 				(double) fromRegister.numerator / fromRegister.denominator;
@@ -304,7 +297,8 @@ public class KConverter {
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
-			lastConversionStatus = KConversionStatus.INEXACT;
+		case KProfile.LONG_DECIMAL:
+			setDivisionStatus (fromRegister);
 
 			return BigInteger.valueOf (
 				fromRegister.numerator / fromRegister.denominator
@@ -341,24 +335,30 @@ public class KConverter {
 	 * {@code fromRegister} as possible.
 	 */
 	public BigDecimal toBigDecimal (KNumRegister fromRegister) {
-		BigDecimal bigNumerator;
-		BigDecimal bigDenominator;
-
 		switch (fromRegister.profile) {
 		case KProfile.BIG_RATIONAL:
 			fromRegister.setBigIntegers ();
 
-			bigNumerator = new BigDecimal (fromRegister.bigNumerator);
-			bigDenominator = new BigDecimal (fromRegister.bigDenominator);
-
-			return divideFraction (bigNumerator, bigDenominator);
+			return bigFractionToBigDecimal (
+				fromRegister.bigNumerator,
+				fromRegister.bigDenominator
+			);
 
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
-			bigNumerator = BigDecimal.valueOf (fromRegister.numerator);
-			bigDenominator = BigDecimal.valueOf (fromRegister.denominator);
+			return fractionToBigDecimal (
+				fromRegister.numerator,
+				fromRegister.denominator
+			);
 
-			return divideFraction (bigNumerator, bigDenominator);
+		case KProfile.LONG_DECIMAL:
+			lastConversionStatus = KConversionStatus.OK;
+
+			// scale is kept
+			return BigDecimal.valueOf (
+				fromRegister.numerator,
+				fromRegister.scale
+			);
 
 		case KProfile.BIG_INTEGER:
 			lastConversionStatus = KConversionStatus.OK;
@@ -376,9 +376,122 @@ public class KConverter {
 		}
 	}
 
+	/**
+	 * Convert reduced compact fraction to {@code BigDecimal}.
+	 * <p>
+	 * If the denominator is {@code 2^a 5^b},
+	 * the value is {@code numerator 5^(a - b) / 10^a} (if {@code a >= b})
+	 * or {@code numerator 2^(b - a) / 10^b}:
+	 * no division is needed.
+	 * Otherwise, the decimal expansion is infinite.
+	 * <p>
+	 * Set {@link #lastConversionStatus}.
+	 */
+	private BigDecimal fractionToBigDecimal (
+		long numerator,
+		long denominator) {
+
+		int twos = Long.numberOfTrailingZeros (denominator);
+		long odd = denominator >>> twos;
+		int fives = 0;
+		while (odd % 5 == 0) {
+			odd /= 5;
+			fives++;
+		}
+
+		if (odd != 1) {
+			return divideFraction (
+				BigDecimal.valueOf (numerator),
+				BigDecimal.valueOf (denominator)
+			);
+		}
+
+		lastConversionStatus = KConversionStatus.OK;
+
+		int scale = Math.max (twos, fives);
+		int base = twos >= fives ? 5 : 2;
+		int exponent = scale - Math.min (twos, fives);
+		if (exponent <= CPowers.maxLongExponent (base)) {
+			long factor = CPowers.longPower (base, exponent);
+			long unscaledValue = numerator * factor;
+			if (Math.multiplyHigh (numerator, factor) == (unscaledValue >> 63)) {
+				return BigDecimal.valueOf (unscaledValue, scale);
+			}
+		}
+
+		return new BigDecimal (
+			BigInteger.valueOf (numerator)
+				.multiply (CPowers.bigPower (base, exponent)),
+			scale
+		);
+	}
+
+	/**
+	 * Convert reduced big fraction to {@code BigDecimal}.
+	 * <p>
+	 * Same as {@link #fractionToBigDecimal(long, long)}.
+	 * <p>
+	 * Set {@link #lastConversionStatus}.
+	 */
+	private BigDecimal bigFractionToBigDecimal (
+		BigInteger numerator,
+		BigInteger denominator) {
+
+		int twos = denominator.getLowestSetBit ();
+		BigInteger odd = denominator.shiftRight (twos);
+
+		// odd = 5^fives has fives * log2 (5) < bitLength <= fives * log2 (5) + 1
+		int fives = (int) ((odd.bitLength () - 1) / LOG2_5);
+		if (!isPowerOfFive (odd, fives)) {
+			fives++;
+			if (!isPowerOfFive (odd, fives)) {
+				return divideFraction (
+					new BigDecimal (numerator),
+					new BigDecimal (denominator)
+				);
+			}
+		}
+
+		lastConversionStatus = KConversionStatus.OK;
+
+		int scale = Math.max (twos, fives);
+		if (twos >= fives) {
+			numerator = numerator.multiply (CPowers.bigPower (5, twos - fives));
+		} else {
+			numerator = numerator.shiftLeft (fives - twos);
+		}
+		return new BigDecimal (numerator, scale);
+	}
+
+	/**
+	 * Check whether {@code value == 5^exponent}.
+	 * <p>
+	 * The lowest 64 bits are compared first,
+	 * so that most other values are rejected
+	 * without computing the power.
+	 */
+	private static boolean isPowerOfFive (
+		BigInteger value,
+		int exponent) {
+
+		// 5^exponent mod 2^64
+		long lowBits = 1;
+		long square = 5;
+		for (int e = exponent; e != 0; e >>>= 1) {
+			if ((e & 1) != 0) {
+				lowBits *= square;
+			}
+			square *= square;
+		}
+
+		return value.longValue () == lowBits
+			&& value.equals (CPowers.bigPower (5, exponent));
+	}
+
 	/**
 	 * Divide numerator and denominator
-	 * to get a single {@code BigDecimal}.
+	 * with infinite decimal expansion,
+	 * to get a single rounded {@code BigDecimal}.
 	 * <p>
 	 * Set {@link #lastConversionStatus}.
 	 */
@@ -386,24 +499,25 @@ public class KConverter {
 		BigDecimal bigNumerator,
 		BigDecimal bigDenominator) {
 
-		BigDecimal bigDecimal;
-		try {
-			lastConversionStatus = KConversionStatus.OK;
-			bigDecimal =
-				bigNumerator.divide (
-					bigDenominator,
-					exactMathContext
-				);
+		lastConversionStatus = KConversionStatus.INEXACT;
+		return bigNumerator.divide (
+			bigDenominator,
+			inexactMathContext
+		).stripTrailingZeros ();
+	}
 
-		} catch (ArithmeticException e) {
-			lastConversionStatus = KConversionStatus.INEXACT;
-			bigDecimal =
-				bigNumerator.divide (
-					bigDenominator,
-					inexactMathContext
-				);
-		}
-		return bigDecimal.stripTrailingZeros ();
+	/**
+	 * Set {@link #lastConversionStatus}
+	 * after truncating compact fraction to integer.
+	 * <p>
+	 * Only decimals can be exact, because they are not reduced.
+	 */
+	private void setDivisionStatus (KNumRegister fromRegister) {
+		lastConversionStatus =
+			fromRegister.profile == KProfile.LONG_DECIMAL
+				&& fromRegister.numerator % fromRegister.denominator == 0 ?
+				KConversionStatus.OK :
+				KConversionStatus.INEXACT;
 	}
 
 	/**
@@ -419,6 +533,7 @@ public class KConverter {
 		case KProfile.BIG_RATIONAL:
 		case KProfile.LONG_RATIONAL:
 		case KProfile.INT_RATIONAL:
+		case KProfile.LONG_DECIMAL:
 			return toBigDecimal (fromRegister)
 				.toPlainString ();
 
@@ -520,7 +635,207 @@ public class KConverter {
 		KNumRegister toRegister,
 		BigDecimal value) {
 
-		fromString (toRegister, value.toPlainString ());
+		int scale = value.scale ();
+		int precision = value.precision ();
+
+		if (precision <= MAX_DECIMALS) {
+			// unscaled value fits in long
+			// (scaleByPowerOfTen keeps the compact value: no BigInteger)
+			long unscaledValue = value.scaleByPowerOfTen (scale).longValue ();
+
+			if (scale <= 0) {
+				if (precision - scale <= MAX_DECIMALS) {
+					toRegister.setValue (unscaledValue * CPowers.TENS[-scale]);
+					return;
+				}
+			} else if (scale <= MAX_DECIMALS) {
+				toRegister.setValue (unscaledValue, CPowers.TENS[scale]);
+				return;
+			}
+		}
+
+		BigInteger unscaledValue = value.unscaledValue ();
+		if (scale <= 0) {
+			toRegister.setValue (
+				unscaledValue.multiply (CPowers.bigPowerOfTen (-scale))
+			);
+		} else {
+			toRegister.setValue (
+				unscaledValue,
+				CPowers.bigPowerOfTen (scale)
+			);
+		}
+	}
+
+	/**
+	 * Read decimal value from {@code BigDecimal}, keeping its scale.
+	 * <p>
+	 * If the unscaled value fits in {@code long}
+	 * and the scale is not greater than 18,
+	 * the value is stored as a decimal.
+	 * Otherwise, the result is the same as
+	 * {@link #fromBigDecimal(KNumRegister, BigDecimal)}.
+	 *
+	 * @param toRegister register where to write number value.
+	 * @param value new numeric value.
+	 * @see KNumRegister#setDecimal(long, int)
+	 */
+	public void fromDecimal (
+		KNumRegister toRegister,
+		BigDecimal value) {
+
+		BigInteger unscaledValue = value.unscaledValue ();
+		if (unscaledValue.bitLength () < Long.SIZE
+			&& value.scale () <= MAX_DECIMALS) {
+
+			toRegister.setDecimal (unscaledValue.longValue (), value.scale ());
+		} else {
+			fromBigDecimal (toRegister, value);
+		}
+	}
+
+	/**
+	 * Read decimal value from {@code String}, keeping its scale.
+	 * <p>
+	 * The scale is the number of digits after the point,
+	 * including trailing zeros
+	 * ({@code "1.50"} has scale 2).
+	 *
+	 * @param toRegister register where to write number value.
+	 * @param value string in format
+	 * {@code ['+'|'-'] {0..9}+ ['.' {0..9}+] }
+	 * (signed or unsigned integer, may be followed by point and decimals).
+	 * @throws NumberFormatException unable to parse string.
+	 * @see #fromDecimal(KNumRegister, BigDecimal)
+	 */
+	public void fromDecimal (
+		KNumRegister toRegister,
+		String value) {
+
+		parseDecimal (toRegister, value, null, 0, value.length ());
+	}
+
+	/**
+	 * Read decimal value from ASCII bytes, keeping its scale.
+	 * <p>
+	 * Same as {@link #fromDecimal(KNumRegister, String)},
+	 * without allocating objects unless the value is too large
+	 * for {@code long}.
+	 *
+	 * @param toRegister register where to write number value.
+	 * @param bytes text in the format of
+	 * {@link #fromDecimal(KNumRegister, String)}.
+	 * @param from position of first byte.
+	 * @param to position after last byte.
+	 * @throws NumberFormatException unable to parse text.
+	 */
+	public void fromDecimal (
+		KNumRegister toRegister,
+		byte[] bytes,
+		int from,
+		int to) {
+
+		parseDecimal (toRegister, null, bytes, from, to);
+	}
+
+	/**
+	 * Parse decimal text from either a {@code String} or ASCII bytes.
+	 *
+	 * @param text source text, or {@code null} to read {@code bytes}.
+	 * @param bytes source bytes, if {@code text} is {@code null}.
+	 * @param from position of first character.
+	 * @param to position after last character.
+	 * @throws NumberFormatException unable to parse text.
+	 */
+	private void parseDecimal (
+		KNumRegister toRegister,
+		String text,
+		byte[] bytes,
+		int from,
+		int to) {
+
+		int position = from;
+		boolean negative = false;
+		if (position < to) {
+			char sign = charAt (text, bytes, position);
+			if (sign == '-' || sign == '+') {
+				negative = sign == '-';
+				position++;
+			}
+		}
+
+		// accumulate negated, to reach Long.MIN_VALUE
+		long unscaledValue = 0;
+		int scale = -1;
+		int digits = 0;
+		boolean overflow = false;
+		for (; position < to; position++) {
+			char c = charAt (text, bytes, position);
+			if (c == '.' && scale < 0 && digits > 0) {
+				scale = 0;
+				continue;
+			}
+
+			int digit = c - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException (
+					text != null ? text : asciiString (bytes, from, to)
+				);
+			}
+			if (unscaledValue < (Long.MIN_VALUE + digit) / 10) {
+				overflow = true;
+			}
+			unscaledValue = unscaledValue * 10 - digit;
+			digits++;
+			if (scale >= 0) {
+				scale++;
+			}
+		}
+
+		if (digits == 0 || scale == 0) {
+			// no digits, or no digits after point
+			throw new NumberFormatException (
+				text != null ? text : asciiString (bytes, from, to)
+			);
+		}
+
+		if (overflow || (!negative && unscaledValue == Long.MIN_VALUE)) {
+			fromDecimal (
+				toRegister,
+				new BigDecimal (text != null ? text : asciiString (bytes, from, to))
+			);
+			return;
+		}
+
+		toRegister.setDecimal (
+			negative ? unscaledValue : -unscaledValue,
+			scale < 0 ? 0 : scale
+		);
+	}
+
+	/**
+	 * Character of {@code text}, or byte of {@code bytes}
+	 * if {@code text} is {@code null}.
+	 */
+	private static char charAt (
+		String text,
+		byte[] bytes,
+		int position) {
+
+		return text != null
+			? text.charAt (position)
+			: (char) (bytes[position] & 0xff);
+	}
+
+	/**
+	 * Decode ASCII bytes.
+	 */
+	private static String asciiString (
+		byte[] bytes,
+		int from,
+		int to) {
+
+		return new String (bytes, from, to - from, StandardCharsets.US_ASCII);
 	}
 
 	/**
@@ -598,7 +913,7 @@ public class KConverter {
 
 			// get denominator as power of 10
 			BigInteger bigDenominator =
-				BigInteger.TEN.pow (decimalValue.length ());
+				CPowers.bigPowerOfTen (decimalValue.length ());
 
 			// multiply numerator by power of 10
 			BigInteger bigNumerator =
@@ -660,7 +975,7 @@ public class KConverter {
 				// too many decimals
 				return false;
 			}
-			long denominator = DENOMINATORS[numDecimals];
+			long denominator = CPowers.TENS[numDecimals];
 
 			// multiply numerator by power of 10
 			if (numerator > Long.MAX_VALUE / denominator
@@ -0,0 +1,668 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Group-by sum and count of a column of a delimited text file
+ * (CSV, TSV...).
+ * <p>
+ * Each line is split at the delimiter.
+ * One field is the group key (compared as raw bytes),
+ * another is the value, parsed with
+ * {@link KConverter#fromDecimal(KNumRegister, byte[], int, int)}.
+ * Quoted fields are not supported.
+ * <p>
+ * The file is split into ranges on line boundaries,
+ * and each range is processed by one thread:
+ * it is read through a channel in large chunks,
+ * into per-thread exact accumulators,
+ * which are merged at the end.
+ * <p>
+ * Lines with missing fields or invalid values are not aggregated:
+ * they are counted in {@link #rejectedLines()}.
+ * Empty lines are ignored.
+ * <p>
+ * After {@link #aggregate(File, int)} returns,
+ * groups are numbered from zero,
+ * in order of first appearance in the file.
+ */
+public class KDelimitedAggregator {
+
+	/**
+	 * Non-ASCII delimiter error message.
+	 */
+	public static final String ERR_MSG_DELIMITER =
+		"Delimiter must be an ASCII character other than line feed.";
+
+	/**
+	 * Negative column error message.
+	 */
+	public static final String ERR_MSG_COLUMN =
+		"Column index must not be negative.";
+
+	/**
+	 * Size of read chunks.
+	 */
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Field delimiter.
+	 */
+	private final byte delimiter;
+
+	/**
+	 * Index of group key field.
+	 */
+	private final int groupColumn;
+
+	/**
+	 * Index of value field.
+	 */
+	private final int valueColumn;
+
+	/**
+	 * If {@code true}, the first line is skipped.
+	 */
+	private final boolean header;
+
+	/**
+	 * Groups of last aggregation.
+	 */
+	private Groups groups = new Groups ();
+
+	/**
+	 * Lines rejected in last aggregation.
+	 */
+	private long rejectedLines;
+
+	/**
+	 * Bytes read in last aggregation.
+	 */
+	private long bytesRead;
+
+	/**
+	 * Duration of last aggregation, in nanoseconds.
+	 */
+	private long elapsedNanos;
+
+	/**
+	 * Aggregator of delimited files.
+	 *
+	 * @param delimiter field delimiter (ASCII),
+	 * for example {@code ','} or {@code '\t'}.
+	 * @param groupColumn index of the group key field, starting from zero.
+	 * @param valueColumn index of the value field, starting from zero.
+	 * @param header if {@code true}, the first line is skipped.
+	 */
+	public KDelimitedAggregator (
+		char delimiter,
+		int groupColumn,
+		int valueColumn,
+		boolean header) {
+
+		if (delimiter > 127 || delimiter == '\n') {
+			throw new IllegalArgumentException (ERR_MSG_DELIMITER);
+		}
+		if (groupColumn < 0 || valueColumn < 0) {
+			throw new IllegalArgumentException (ERR_MSG_COLUMN);
+		}
+
+		this.delimiter = (byte) delimiter;
+		this.groupColumn = groupColumn;
+		this.valueColumn = valueColumn;
+		this.header = header;
+	}
+
+	/**
+	 * Aggregate file.
+	 * <p>
+	 * Results of previous aggregations are discarded.
+	 *
+	 * @param file the file.
+	 * @param threads number of threads (at least one).
+	 * @throws IOException error reading the file.
+	 */
+	public void aggregate (
+		File file,
+		int threads) throws IOException {
+
+		long startTime = System.nanoTime ();
+		long size = file.length ();
+
+		// at least 1 MB per thread
+		int numRanges = (int) Math.max (
+			1,
+			Math.min (threads, size / CHUNK_SIZE)
+		);
+
+		List<Worker> workers = new ArrayList<> ();
+		for (int range = 0; range < numRanges; range++) {
+			workers.add (new Worker (
+				file,
+				size * range / numRanges,
+				size * (range + 1) / numRanges
+			));
+		}
+
+		if (numRanges == 1) {
+			workers.get (0).call ();
+
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool (numRanges);
+			try {
+				List<Future<Void>> futures = executor.invokeAll (workers);
+				for (Future<Void> future : futures) {
+					future.get ();
+				}
+
+			} catch (InterruptedException e) {
+				Thread.currentThread ().interrupt ();
+				throw new IOException (e);
+
+			} catch (ExecutionException e) {
+				if (e.getCause () instanceof IOException) {
+					throw (IOException) e.getCause ();
+				}
+				if (e.getCause () instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause ();
+				}
+				throw new IOException (e.getCause ());
+
+			} finally {
+				executor.shutdown ();
+			}
+		}
+
+		// merge in range order: keeps order of first appearance
+		KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+		Groups merged = new Groups ();
+		long rejected = 0;
+		for (Worker worker : workers) {
+			Groups partial = worker.groups;
+			for (int index = 0; index < partial.size; index++) {
+				int group = merged.put (
+					partial.keyBytes,
+					partial.keyOffsets[index],
+					partial.keyOffsets[index + 1],
+					partial.hashes[index]
+				);
+				calculator.add (
+					merged.sums[group],
+					merged.sums[group],
+					partial.sums[index]
+				);
+				merged.counts[group] += partial.counts[index];
+			}
+			rejected += worker.rejectedLines;
+		}
+
+		groups = merged;
+		rejectedLines = rejected;
+		bytesRead = size;
+		elapsedNanos = System.nanoTime () - startTime;
+	}
+
+	/**
+	 * Get number of groups.
+	 *
+	 * @return number of distinct keys.
+	 */
+	public int groupCount () {
+		return groups.size;
+	}
+
+	/**
+	 * Get group key.
+	 *
+	 * @param index group number.
+	 * @return key field, decoded as UTF-8.
+	 */
+	public String getGroup (int index) {
+		checkIndex (index);
+		return new String (
+			groups.keyBytes,
+			groups.keyOffsets[index],
+			groups.keyOffsets[index + 1] - groups.keyOffsets[index],
+			StandardCharsets.UTF_8
+		);
+	}
+
+	/**
+	 * Get sum of values of group.
+	 *
+	 * @param index group number.
+	 * @param result overwritten with the sum.
+	 */
+	public void getSum (
+		int index,
+		KNumRegister result) {
+
+		checkIndex (index);
+		result.copy (groups.sums[index]);
+	}
+
+	/**
+	 * Get number of values of group.
+	 *
+	 * @param index group number.
+	 * @return number of aggregated lines of group.
+	 */
+	public long getCount (int index) {
+		checkIndex (index);
+		return groups.counts[index];
+	}
+
+	/**
+	 * Get number of lines not aggregated,
+	 * because of missing fields or invalid values.
+	 *
+	 * @return rejected lines in last aggregation.
+	 */
+	public long rejectedLines () {
+		return rejectedLines;
+	}
+
+	/**
+	 * Get throughput of last aggregation.
+	 *
+	 * @return megabytes (10^6 bytes) per second.
+	 */
+	public double throughput () {
+		if (elapsedNanos == 0) {
+			return 0;
+		}
+		return bytesRead * 1000.0 / elapsedNanos;
+	}
+
+	/**
+	 * Check group number.
+	 */
+	private void checkIndex (int index) {
+		if (index < 0 || index >= groups.size) {
+			throw new IndexOutOfBoundsException (
+				"Index: " + index + ", size: " + groups.size + ".");
+		}
+	}
+
+	/**
+	 * Hash code of key bytes.
+	 */
+	private static int hash (
+		byte[] bytes,
+		int from,
+		int to) {
+
+		int hash = 1;
+		for (int position = from; position < to; position++) {
+			hash = 31 * hash + bytes[position];
+		}
+		return hash;
+	}
+
+	/**
+	 * Groups, with inline byte keys, and their accumulators.
+	 * <p>
+	 * Open addressing with linear probing, as in {@link KNumIndexMap}.
+	 */
+	private static class Groups {
+
+		/**
+		 * Hash table: {@code index + 1} of each key, or {@code 0}.
+		 */
+		int[] table = new int[32];
+
+		/**
+		 * Shift applied to the mixed hash to get a slot.
+		 */
+		int shift = 27;
+
+		/**
+		 * Bytes of all keys, in insertion order.
+		 */
+		byte[] keyBytes = new byte[256];
+
+		/**
+		 * Start of each key in {@link #keyBytes},
+		 * followed by the end of the last key.
+		 */
+		int[] keyOffsets = new int[17];
+
+		/**
+		 * Hash code of each key.
+		 */
+		int[] hashes = new int[16];
+
+		/**
+		 * Sum of each group.
+		 */
+		KNumRegister[] sums = new KNumRegister[16];
+
+		/**
+		 * Count of each group.
+		 */
+		long[] counts = new long[16];
+
+		/**
+		 * Number of groups.
+		 */
+		int size;
+
+		/**
+		 * Get index of key, inserting it if not present.
+		 */
+		int put (
+			byte[] bytes,
+			int from,
+			int to,
+			int hash) {
+
+			int mask = table.length - 1;
+			int slot = (hash * 0x9E3779B9) >>> shift;
+
+			while (true) {
+				int entry = table[slot];
+				if (entry == 0) {
+					break;
+				}
+				int index = entry - 1;
+				if (hashes[index] == hash && keyEquals (index, bytes, from, to)) {
+					return index;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			// insert
+			int index = size;
+			if (index == hashes.length) {
+				grow ();
+				return put (bytes, from, to, hash);
+			}
+
+			int offset = keyOffsets[index];
+			int length = to - from;
+			if (offset + length > keyBytes.length) {
+				keyBytes = Arrays.copyOf (
+					keyBytes,
+					Math.max (keyBytes.length * 2, offset + length)
+				);
+			}
+			System.arraycopy (bytes, from, keyBytes, offset, length);
+			keyOffsets[index + 1] = offset + length;
+
+			hashes[index] = hash;
+			sums[index] = new KNumRegister ();
+			sums[index].setZeroValue ();
+			table[slot] = index + 1;
+			size++;
+
+			return index;
+		}
+
+		/**
+		 * Compare stored key with bytes.
+		 */
+		private boolean keyEquals (
+			int index,
+			byte[] bytes,
+			int from,
+			int to) {
+
+			int offset = keyOffsets[index];
+			if (keyOffsets[index + 1] - offset != to - from) {
+				return false;
+			}
+			for (int position = from; position < to; position++) {
+				if (keyBytes[offset++] != bytes[position]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Double capacity and rehash.
+		 */
+		private void grow () {
+			int capacity = hashes.length * 2;
+
+			keyOffsets = Arrays.copyOf (keyOffsets, capacity + 1);
+			hashes = Arrays.copyOf (hashes, capacity);
+			sums = Arrays.copyOf (sums, capacity);
+			counts = Arrays.copyOf (counts, capacity);
+
+			// load factor at most 1/2
+			table = new int[capacity * 2];
+			shift--;
+			int mask = table.length - 1;
+			for (int index = 0; index < size; index++) {
+				int slot = (hashes[index] * 0x9E3779B9) >>> shift;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = index + 1;
+			}
+		}
+
+	}
+
+	/**
+	 * Aggregation of the lines that start in a range of the file.
+	 */
+	private class Worker implements Callable<Void> {
+
+		/**
+		 * The file.
+		 */
+		private final File file;
+
+		/**
+		 * First byte of range.
+		 */
+		private final long start;
+
+		/**
+		 * End of range (exclusive).
+		 */
+		private final long end;
+
+		/**
+		 * Partial groups.
+		 */
+		final Groups groups = new Groups ();
+
+		/**
+		 * Rejected lines in range.
+		 */
+		long rejectedLines;
+
+		/**
+		 * Parsed value.
+		 */
+		private final KNumRegister value = new KNumRegister ();
+
+		/**
+		 * Converter (not shared: it has state).
+		 */
+		private final KConverter converter = new KConverter ();
+
+		/**
+		 * Calculator (not shared: it has state).
+		 */
+		private final KCalculator calculator =
+			new KCalculator (new KNumRegisterPool ());
+
+		Worker (
+			File file,
+			long start,
+			long end) {
+
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Void call () throws IOException {
+			try (FileChannel channel = FileChannel.open (
+				file.toPath (),
+				StandardOpenOption.READ)) {
+
+				read (channel);
+			}
+			return null;
+		}
+
+		/**
+		 * Read lines that start in range.
+		 */
+		private void read (FileChannel channel) throws IOException {
+			byte[] buffer = new byte[CHUNK_SIZE];
+
+			// a line starts in range iff the previous byte is a line feed:
+			// read previous byte, and skip up to first line feed
+			long filePosition = start > 0 ? start - 1 : 0;
+			boolean skip = start > 0 || header;
+
+			// file position of buffer[0]
+			long bufferPosition = filePosition;
+			int limit = 0;
+
+			while (true) {
+				int read = channel.read (
+					ByteBuffer.wrap (buffer, limit, buffer.length - limit),
+					filePosition
+				);
+				if (read > 0) {
+					limit += read;
+					filePosition += read;
+				}
+
+				// complete lines
+				int lineStart = 0;
+				for (int position = 0; position < limit; position++) {
+					if (buffer[position] != '\n') {
+						continue;
+					}
+					if (skip) {
+						skip = false;
+					} else if (bufferPosition + lineStart >= end) {
+						return;
+					} else {
+						line (buffer, lineStart, position);
+					}
+					lineStart = position + 1;
+				}
+
+				if (read < 0) {
+					// last line, without line feed
+					if (!skip && lineStart < limit
+						&& bufferPosition + lineStart < end) {
+
+						line (buffer, lineStart, limit);
+					}
+					return;
+				}
+
+				// keep incomplete line
+				limit -= lineStart;
+				System.arraycopy (buffer, lineStart, buffer, 0, limit);
+				bufferPosition += lineStart;
+				if (limit == buffer.length) {
+					// line longer than buffer
+					buffer = Arrays.copyOf (buffer, buffer.length * 2);
+				}
+			}
+		}
+
+		/**
+		 * Aggregate line {@code [from, to)}, without line feed.
+		 */
+		private void line (
+			byte[] buffer,
+			int from,
+			int to) {
+
+			if (to > from && buffer[to - 1] == '\r') {
+				to--;
+			}
+			if (to == from) {
+				// empty line
+				return;
+			}
+
+			int groupFrom = -1;
+			int groupTo = -1;
+			int valueFrom = -1;
+			int valueTo = -1;
+
+			int column = 0;
+			int fieldStart = from;
+			for (int position = from; position <= to; position++) {
+				if (position < to && buffer[position] != delimiter) {
+					continue;
+				}
+				if (column == groupColumn) {
+					groupFrom = fieldStart;
+					groupTo = position;
+				}
+				if (column == valueColumn) {
+					valueFrom = fieldStart;
+					valueTo = position;
+				}
+				column++;
+				fieldStart = position + 1;
+			}
+
+			if (groupFrom < 0 || valueFrom < 0) {
+				rejectedLines++;
+				return;
+			}
+
+			try {
+				converter.fromDecimal (value, buffer, valueFrom, valueTo);
+			} catch (NumberFormatException e) {
+				rejectedLines++;
+				return;
+			}
+
+			int group = groups.put (
+				buffer,
+				groupFrom,
+				groupTo,
+				hash (buffer, groupFrom, groupTo)
+			);
+			calculator.add (groups.sums[group], groups.sums[group], value);
+			groups.counts[group]++;
+		}
+
+	}
+
+}
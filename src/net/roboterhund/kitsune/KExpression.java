@@ -0,0 +1,913 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import net.roboterhund.kitsune.KNumRegisterPool.KRegCont;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled arithmetic expressions.
+ * <p>
+ * A formula like {@code "a - trunc(a / b) * b"}
+ * is parsed and compiled into a flat program of register operations,
+ * which call the same static operations as {@link KCalculator}.
+ * <p>
+ * Several formulas sharing the same variables
+ * can be compiled into a single program, with one result per formula.
+ * Identical subexpressions (within a formula or across formulas)
+ * are computed once per evaluation,
+ * and subexpressions without variables are computed at compilation.
+ * <p>
+ * Temporary registers are assigned by the compiler:
+ * a temporary is reused as soon as its value is no longer needed.
+ * At evaluation, the temporaries are taken from the register pool
+ * of the calculator, and returned to the pool afterwards.
+ * <p>
+ * The result registers are only written after all the inputs have been read.
+ * Therefore, a result register can be the same object as any input.
+ * <p>
+ * Supported syntax:
+ * <ul>
+ * <li>Binary operators {@code + - * / % ^}, with the usual precedence.
+ * {@code ^} is right associative, and its exponent must be an integer
+ * at evaluation time.</li>
+ * <li>Unary {@code -} and {@code +}.</li>
+ * <li>Functions {@code neg}, {@code abs}, {@code inv},
+ * {@code trunc}, {@code floor}, {@code ceil}.</li>
+ * <li>Decimal number literals, like {@code 12} or {@code 0.25}.</li>
+ * <li>Variables, declared at compilation.</li>
+ * </ul>
+ * <p>
+ * When an expression is evaluated repeatedly
+ * with inputs of the same compact profiles,
+ * specialised code is generated for those profiles
+ * (see {@link ECodeGenerator}).
+ * The specialised code uses {@code long} arithmetic directly,
+ * without the dispatch on profiles of the register operations.
+ * If the profiles of the inputs change,
+ * or if the specialised code overflows,
+ * the program is interpreted as usual.
+ * <p>
+ * A compiled expression keeps work arrays between evaluations.
+ * It is not thread-safe.
+ */
+public class KExpression {
+
+	/**
+	 * Integer exponent error message.
+	 */
+	public static final String ERR_MSG_RATIONAL_EXPONENT =
+		"Exponent must be an integer.";
+
+	/**
+	 * Division by zero error message.
+	 */
+	public static final String ERR_MSG_DIVISION_BY_ZERO =
+		"Division by zero.";
+
+	/**
+	 * Input count error message.
+	 */
+	public static final String ERR_MSG_INPUT_COUNT =
+		"Number of inputs does not match number of variables.";
+
+	/**
+	 * Result count error message.
+	 */
+	public static final String ERR_MSG_RESULT_COUNT =
+		"Number of results does not match number of formulas.";
+
+	/**
+	 * Column length error message.
+	 */
+	public static final String ERR_MSG_COLUMN_LENGTH =
+		"Columns must have the same length.";
+
+	/**
+	 * Default number of consecutive evaluations
+	 * with the same input profiles
+	 * after which specialised code is generated.
+	 */
+	public static final int DEFAULT_TRACE_THRESHOLD = 32;
+
+	/**
+	 * Number of consecutive overflows
+	 * after which specialised code is discarded.
+	 */
+	private static final int DEOPT_LIMIT = 8;
+
+	/**
+	 * Maximum number of times specialised code is generated.
+	 */
+	private static final int TRACE_LIMIT = 4;
+
+	/**
+	 * Program.
+	 *
+	 * @see EOp
+	 */
+	private final int[] code;
+
+	/**
+	 * Number of variables.
+	 * <p>
+	 * Inputs occupy the first slots of the frame.
+	 */
+	private final int variableCount;
+
+	/**
+	 * Constants.
+	 * <p>
+	 * Constants occupy the slots following the inputs.
+	 */
+	private final KNumRegister[] constants;
+
+	/**
+	 * Number of temporary registers.
+	 * <p>
+	 * Temporaries occupy the slots following the constants.
+	 */
+	private final int tempCount;
+
+	/**
+	 * Number of results.
+	 * <p>
+	 * Results occupy the last slots of the frame.
+	 */
+	private final int resultCount;
+
+	/**
+	 * Register frame, reused between evaluations.
+	 */
+	private final KNumRegister[] frame;
+
+	/**
+	 * Pool containers of temporaries, reused between evaluations.
+	 */
+	private final KRegCont[] tempConts;
+
+	/**
+	 * Result array for single result evaluations.
+	 */
+	private final KNumRegister[] singleResult = new KNumRegister[1];
+
+	/**
+	 * Number of evaluations after which specialised code is generated.
+	 * Tracing is disabled if not positive.
+	 */
+	private int traceThreshold = DEFAULT_TRACE_THRESHOLD;
+
+	/**
+	 * Specialised code, or {@code null}.
+	 */
+	ETrace trace;
+
+	/**
+	 * Input signature of {@link #trace}.
+	 *
+	 * @see ETrace#signature(KNumRegister[])
+	 */
+	private long traceSignature;
+
+	/**
+	 * Input signature of the last evaluation.
+	 */
+	private long hotSignature = ETrace.UNTRACEABLE;
+
+	/**
+	 * Number of consecutive evaluations with {@link #hotSignature}.
+	 */
+	private int hotCount;
+
+	/**
+	 * Number of consecutive overflows of {@link #trace}.
+	 */
+	private int deoptCount;
+
+	/**
+	 * Number of times specialised code was generated.
+	 */
+	private int traceCount;
+
+	/**
+	 * Constructor used by {@link #compile(String[], String...)}.
+	 */
+	private KExpression (
+		int[] code,
+		int variableCount,
+		KNumRegister[] constants,
+		int tempCount,
+		int resultCount) {
+
+		this.code = code;
+		this.variableCount = variableCount;
+		this.constants = constants;
+		this.tempCount = tempCount;
+		this.resultCount = resultCount;
+
+		frame = new KNumRegister[
+			variableCount + constants.length + tempCount + resultCount];
+		System.arraycopy (constants, 0, frame, variableCount, constants.length);
+		tempConts = new KRegCont[tempCount];
+	}
+
+	/**
+	 * Compile expression.
+	 *
+	 * @param formula the expression.
+	 * @param variables names of the variables in the expression,
+	 * in the order in which the inputs are passed to
+	 * {@link #evaluate(KCalculator, KNumRegister, KNumRegister...)}.
+	 * @return compiled expression.
+	 * @throws IllegalArgumentException syntax error.
+	 */
+	public static KExpression compile (
+		String formula,
+		String... variables) {
+
+		return compile (new String[] { formula }, variables);
+	}
+
+	/**
+	 * Compile several expressions into one program.
+	 *
+	 * @param formulas the expressions.
+	 * @param variables names of the variables in the expressions,
+	 * in the order in which the inputs are passed to
+	 * {@link #evaluate(KCalculator, KNumRegister[], KNumRegister...)}.
+	 * @return compiled expressions.
+	 * @throws IllegalArgumentException syntax error.
+	 */
+	public static KExpression compile (
+		String[] formulas,
+		String... variables) {
+
+		ENode[] roots = new ENode[formulas.length];
+		for (int i = 0; i < formulas.length; i++) {
+			roots[i] = new EParser (formulas[i], variables).parse ();
+		}
+		return new Compiler (variables.length).compile (roots);
+	}
+
+	/**
+	 * Get number of variables.
+	 *
+	 * @return number of inputs expected by
+	 * {@link #evaluate(KCalculator, KNumRegister[], KNumRegister...)}.
+	 */
+	public int getVariableCount () {
+		return variableCount;
+	}
+
+	/**
+	 * Get number of results.
+	 *
+	 * @return number of compiled formulas.
+	 */
+	public int getResultCount () {
+		return resultCount;
+	}
+
+	/**
+	 * Get number of instructions of the program.
+	 * <p>
+	 * Shared and constant subexpressions take no instructions.
+	 *
+	 * @return program length.
+	 */
+	public int getInstructionCount () {
+		return code.length / EOp.SIZE;
+	}
+
+	/**
+	 * Set number of consecutive evaluations with the same input profiles
+	 * after which specialised code is generated.
+	 *
+	 * @param traceThreshold number of evaluations,
+	 * or {@code 0} to disable specialised code.
+	 */
+	public void setTraceThreshold (int traceThreshold) {
+		this.traceThreshold = traceThreshold;
+		if (traceThreshold <= 0) {
+			trace = null;
+		}
+		hotCount = 0;
+	}
+
+	/**
+	 * Evaluate single expression.
+	 *
+	 * @param calc calculator, provides the register pool.
+	 * @param result overwritten with the result.
+	 * Can be the same object as any input.
+	 * @param inputs values of the variables, in declaration order.
+	 * They do not change.
+	 * @throws IllegalArgumentException wrong number of inputs or results,
+	 * or rational exponent.
+	 * @throws ArithmeticException division by zero.
+	 */
+	public void evaluate (
+		KCalculator calc,
+		KNumRegister result,
+		KNumRegister... inputs) {
+
+		singleResult[0] = result;
+		try {
+			evaluate (calc, singleResult, inputs);
+		} finally {
+			singleResult[0] = null;
+		}
+	}
+
+	/**
+	 * Evaluate expressions.
+	 *
+	 * @param calc calculator, provides the register pool.
+	 * @param results overwritten with the results, in formula order.
+	 * Can be the same objects as any inputs.
+	 * @param inputs values of the variables, in declaration order.
+	 * They do not change.
+	 * @throws IllegalArgumentException wrong number of inputs or results,
+	 * or rational exponent.
+	 * @throws ArithmeticException division by zero.
+	 */
+	public void evaluate (
+		KCalculator calc,
+		KNumRegister[] results,
+		KNumRegister... inputs) {
+
+		if (inputs.length != variableCount) {
+			throw new IllegalArgumentException (ERR_MSG_INPUT_COUNT);
+		}
+		if (results.length != resultCount) {
+			throw new IllegalArgumentException (ERR_MSG_RESULT_COUNT);
+		}
+
+		if (traceThreshold > 0) {
+			long signature = ETrace.signature (inputs);
+
+			if (trace != null && signature == traceSignature) {
+				try {
+					trace.run (results, inputs);
+					deoptCount = 0;
+					return;
+
+				} catch (ArithmeticException e) {
+					// deoptimize: results unchanged, interpret
+					if (++deoptCount >= DEOPT_LIMIT) {
+						trace = null;
+					}
+				}
+
+			} else {
+				profile (signature);
+			}
+		}
+
+		interpret (calc, results, inputs);
+	}
+
+	/**
+	 * Evaluate expressions on each row of a set of columns.
+	 *
+	 * @param calc calculator, provides the register pool.
+	 * @param results overwritten with the results, in formula order.
+	 * Can be the same objects as any inputs.
+	 * @param inputs values of the variables, in declaration order.
+	 * They do not change.
+	 * @throws IllegalArgumentException wrong number of inputs or results,
+	 * columns of different length, or rational exponent.
+	 * @throws ArithmeticException division by zero.
+	 */
+	public void evaluate (
+		KCalculator calc,
+		KNumColumn[] results,
+		KNumColumn... inputs) {
+
+		if (inputs.length != variableCount) {
+			throw new IllegalArgumentException (ERR_MSG_INPUT_COUNT);
+		}
+		if (results.length != resultCount) {
+			throw new IllegalArgumentException (ERR_MSG_RESULT_COUNT);
+		}
+		if (resultCount == 0) {
+			return;
+		}
+
+		int length = results[0].length;
+		for (KNumColumn column : inputs) {
+			if (column.length != length) {
+				throw new IllegalArgumentException (ERR_MSG_COLUMN_LENGTH);
+			}
+		}
+		for (KNumColumn column : results) {
+			if (column.length != length) {
+				throw new IllegalArgumentException (ERR_MSG_COLUMN_LENGTH);
+			}
+		}
+
+		KNumRegisterPool regPool = calc.regPool;
+		KRegCont[] conts = new KRegCont[variableCount + resultCount];
+		KNumRegister[] inputRegs = new KNumRegister[variableCount];
+		KNumRegister[] resultRegs = new KNumRegister[resultCount];
+		for (int i = 0; i < conts.length; i++) {
+			conts[i] = regPool.get ();
+		}
+		for (int i = 0; i < variableCount; i++) {
+			inputRegs[i] = conts[i].reg;
+		}
+		for (int i = 0; i < resultCount; i++) {
+			resultRegs[i] = conts[variableCount + i].reg;
+		}
+
+		try {
+			for (int row = 0; row < length; row++) {
+				for (int i = 0; i < variableCount; i++) {
+					inputs[i].get (row, inputRegs[i]);
+				}
+				evaluate (calc, resultRegs, inputRegs);
+				for (int i = 0; i < resultCount; i++) {
+					results[i].set (row, resultRegs[i]);
+				}
+			}
+
+		} finally {
+			for (KRegCont cont : conts) {
+				regPool.discard (cont);
+			}
+		}
+	}
+
+	/**
+	 * Count evaluations with same input signature,
+	 * and generate specialised code when threshold is reached.
+	 */
+	private void profile (long signature) {
+		if (signature == ETrace.UNTRACEABLE
+			|| traceCount >= TRACE_LIMIT) {
+			return;
+		}
+
+		if (signature != hotSignature) {
+			hotSignature = signature;
+			hotCount = 0;
+		}
+		if (++hotCount < traceThreshold) {
+			return;
+		}
+
+		hotCount = 0;
+		traceCount++;
+
+		ETrace generated = ECodeGenerator.generate (
+			code,
+			variableCount,
+			constants,
+			frame.length,
+			resultCount,
+			signature
+		);
+		if (generated == null) {
+			// program not supported: do not try again
+			traceCount = TRACE_LIMIT;
+			return;
+		}
+
+		trace = generated;
+		traceSignature = signature;
+		deoptCount = 0;
+	}
+
+	/**
+	 * Interpret program.
+	 */
+	private void interpret (
+		KCalculator calc,
+		KNumRegister[] results,
+		KNumRegister[] inputs) {
+
+		KNumRegister[] frame = this.frame;
+		System.arraycopy (inputs, 0, frame, 0, variableCount);
+
+		KNumRegisterPool regPool = calc.regPool;
+		int tempStart = variableCount + constants.length;
+		for (int i = 0; i < tempCount; i++) {
+			KRegCont cont = regPool.get ();
+			tempConts[i] = cont;
+			frame[tempStart + i] = cont.reg;
+		}
+		System.arraycopy (
+			results, 0, frame, frame.length - resultCount, resultCount);
+
+		try {
+			int[] code = this.code;
+			for (int pc = 0; pc < code.length; pc += EOp.SIZE) {
+				execute (
+					calc,
+					code[pc],
+					frame[code[pc + 1]],
+					frame[code[pc + 2]],
+					code[pc + 3] < 0 ? null : frame[code[pc + 3]]
+				);
+			}
+
+		} finally {
+			for (int i = 0; i < tempCount; i++) {
+				regPool.discard (tempConts[i]);
+				tempConts[i] = null;
+			}
+			// do not retain caller registers
+			Arrays.fill (frame, 0, variableCount, null);
+			Arrays.fill (frame, tempStart, frame.length, null);
+		}
+	}
+
+	/**
+	 * Throw if divisor is zero
+	 * (the register operations would produce a zero denominator).
+	 * <p>
+	 * Big values are never zero.
+	 */
+	private static void checkNotZero (KNumRegister divisor) {
+		if (divisor.profile > KProfile.BIG_INTEGER && divisor.numerator == 0) {
+			throw new ArithmeticException (ERR_MSG_DIVISION_BY_ZERO);
+		}
+	}
+
+	/**
+	 * Execute instruction.
+	 */
+	private static void execute (
+		KCalculator calc,
+		int op,
+		KNumRegister dst,
+		KNumRegister src_1,
+		KNumRegister src_2) {
+
+		switch (op) {
+		case EOp.COPY:
+			if (dst != src_1) {
+				dst.copy (src_1);
+			}
+			break;
+
+		case EOp.ADD:
+			CAdd.add (calc, dst, src_1, src_2);
+			break;
+
+		case EOp.SUBTRACT:
+			CSubtract.subtract (calc, dst, src_1, src_2);
+			break;
+
+		case EOp.MULTIPLY:
+			CMultiply.multiply (calc, dst, src_1, src_2);
+			break;
+
+		case EOp.DIVIDE:
+			checkNotZero (src_2);
+			CDivide.divide (calc, dst, src_1, src_2);
+			break;
+
+		case EOp.MODULO:
+			CDivide.modulo (calc, dst, src_1, src_2);
+			break;
+
+		case EOp.POWER:
+			if (src_2.profile != KProfile.INT_INTEGER
+				&& src_2.profile != KProfile.LONG_INTEGER
+				&& src_2.profile != KProfile.BIG_INTEGER
+				&& !(src_2.profile == KProfile.LONG_DECIMAL
+				&& src_2.numerator % src_2.denominator == 0)) {
+				throw new IllegalArgumentException (
+					ERR_MSG_RATIONAL_EXPONENT);
+			}
+			CMultiply.power (calc, dst, src_1, src_2, null);
+			break;
+
+		case EOp.NEGATE:
+			CInvert.negate (dst, src_1);
+			break;
+
+		case EOp.ABS:
+			CInvert.abs (dst, src_1);
+			break;
+
+		case EOp.INVERSE:
+			checkNotZero (src_1);
+			CInvert.inverse (dst, src_1);
+			break;
+
+		case EOp.TRUNCATE:
+			CRound.truncate (dst, src_1);
+			break;
+
+		case EOp.FLOOR:
+			CRound.floor (dst, src_1);
+			break;
+
+		case EOp.CEILING:
+			CRound.ceiling (dst, src_1);
+			break;
+		}
+	}
+
+	/**
+	 * Translates expression trees into program.
+	 * <p>
+	 * First, the trees are merged into a directed acyclic graph:
+	 * equal nodes are replaced by a unique node (hash consing),
+	 * and operations on constants are replaced by their result.
+	 * <p>
+	 * Then, instructions are emitted in post-order.
+	 * Each node is computed once,
+	 * and its temporary is freed after its last use;
+	 * the instruction of the last use can write to the freed slot.
+	 */
+	private static class Compiler {
+
+		/**
+		 * Marks slots of temporaries during compilation,
+		 * before the final frame layout is known.
+		 */
+		private static final int TEMP_BASE = 1 << 24;
+
+		/**
+		 * Marks slots of results during compilation.
+		 */
+		private static final int RESULT_BASE = 1 << 28;
+
+		private final int variableCount;
+
+		/**
+		 * Unique nodes.
+		 */
+		private final Map<ENode, ENode> nodes = new HashMap<> ();
+
+		/**
+		 * Calculator used to fold constants.
+		 */
+		private final KCalculator calc = new KCalculator (new KNumRegisterPool ());
+
+		private int[] code = new int[EOp.SIZE * 8];
+
+		private int codeLength;
+
+		private KNumRegister[] constants = new KNumRegister[4];
+
+		private int constantCount;
+
+		/**
+		 * Free temporaries (stack).
+		 */
+		private int[] free = new int[8];
+
+		private int freeCount;
+
+		private int tempCount;
+
+		Compiler (int variableCount) {
+			this.variableCount = variableCount;
+		}
+
+		KExpression compile (ENode[] roots) {
+			for (int i = 0; i < roots.length; i++) {
+				roots[i] = unique (roots[i]);
+				countUses (roots[i]);
+			}
+
+			if (roots.length == 1 && !roots[0].isLeaf ()) {
+				// last instruction writes result directly
+				emit (roots[0], RESULT_BASE);
+
+			} else {
+				// results may alias inputs:
+				// compute all values before writing any result
+				int[] values = new int[roots.length];
+				for (int i = 0; i < roots.length; i++) {
+					values[i] = value (roots[i]);
+					if (roots[i].op == EOp.VARIABLE && roots.length > 1) {
+						int temp = allocate ();
+						emit (EOp.COPY, temp, values[i], -1);
+						values[i] = temp;
+					}
+				}
+				for (int i = 0; i < roots.length; i++) {
+					emit (EOp.COPY, RESULT_BASE + i, values[i], -1);
+				}
+			}
+
+			// resolve slots
+			int tempBase = variableCount + constantCount;
+			int resultBase = tempBase + tempCount;
+			for (int pc = 0; pc < codeLength; pc += EOp.SIZE) {
+				for (int i = pc + 1; i < pc + EOp.SIZE; i++) {
+					int slot = code[i];
+					if (slot >= RESULT_BASE) {
+						code[i] = resultBase + slot - RESULT_BASE;
+					} else if (slot >= TEMP_BASE) {
+						code[i] = tempBase + slot - TEMP_BASE;
+					}
+				}
+			}
+
+			return new KExpression (
+				Arrays.copyOf (code, codeLength),
+				variableCount,
+				Arrays.copyOf (constants, constantCount),
+				tempCount,
+				roots.length
+			);
+		}
+
+		/**
+		 * Get unique node equal to tree,
+		 * after merging and folding operands.
+		 */
+		private ENode unique (ENode node) {
+			if (!node.isLeaf ()) {
+				ENode operand_1 = unique (node.operand_1);
+				ENode operand_2 = node.operand_2 == null ?
+					null :
+					unique (node.operand_2);
+
+				if (operand_1.op == EOp.CONSTANT
+					&& (operand_2 == null || operand_2.op == EOp.CONSTANT)) {
+					ENode folded = fold (node.op, operand_1, operand_2);
+					if (folded != null) {
+						return unique (folded);
+					}
+				}
+
+				if (EOp.isCommutative (node.op)
+					&& operand_1.id > operand_2.id) {
+					// canonical order
+					ENode swap = operand_1;
+					operand_1 = operand_2;
+					operand_2 = swap;
+				}
+
+				node = new ENode (node.op, operand_1, operand_2);
+			}
+
+			ENode unique = nodes.get (node);
+			if (unique == null) {
+				unique = node;
+				unique.id = nodes.size ();
+				nodes.put (unique, unique);
+			}
+			return unique;
+		}
+
+		/**
+		 * Compute operation on constants.
+		 *
+		 * @return constant node,
+		 * or {@code null} if the operation fails
+		 * (the error is left for evaluation time).
+		 */
+		private ENode fold (
+			int op,
+			ENode operand_1,
+			ENode operand_2) {
+
+			KNumRegister value = new KNumRegister ();
+			try {
+				execute (
+					calc,
+					op,
+					value,
+					operand_1.constant,
+					operand_2 == null ? null : operand_2.constant
+				);
+			} catch (ArithmeticException | IllegalArgumentException e) {
+				return null;
+			}
+			return new ENode (value);
+		}
+
+		/**
+		 * Count uses of each unique node.
+		 */
+		private void countUses (ENode node) {
+			if (node.uses++ == 0 && !node.isLeaf ()) {
+				countUses (node.operand_1);
+				if (node.operand_2 != null) {
+					countUses (node.operand_2);
+				}
+			}
+		}
+
+		/**
+		 * Get slot holding value of node,
+		 * emitting its instructions if needed.
+		 */
+		private int value (ENode node) {
+			if (node.slot >= 0) {
+				return node.slot;
+			}
+
+			switch (node.op) {
+			case EOp.VARIABLE:
+				node.slot = node.variable;
+				break;
+
+			case EOp.CONSTANT:
+				if (constantCount == constants.length) {
+					constants = Arrays.copyOf (constants, constantCount * 2);
+				}
+				constants[constantCount] = node.constant;
+				node.slot = variableCount + constantCount++;
+				break;
+
+			default:
+				node.slot = emit (node, -1);
+				break;
+			}
+			return node.slot;
+		}
+
+		/**
+		 * Emit instructions of operation node.
+		 *
+		 * @param dst destination slot,
+		 * or {@code -1} to allocate a temporary.
+		 * @return slot holding the value of the node.
+		 */
+		private int emit (
+			ENode node,
+			int dst) {
+
+			int src_1 = value (node.operand_1);
+			int src_2 = node.operand_2 == null ? -1 : value (node.operand_2);
+
+			// operands may be dead after this instruction
+			release (node.operand_1);
+			if (node.operand_2 != null) {
+				release (node.operand_2);
+			}
+
+			if (dst < 0) {
+				dst = allocate ();
+			}
+			emit (node.op, dst, src_1, src_2);
+			return dst;
+		}
+
+		private int allocate () {
+			if (freeCount > 0) {
+				return free[--freeCount];
+			}
+			return TEMP_BASE + tempCount++;
+		}
+
+		/**
+		 * Consume one use of node,
+		 * and free its temporary after the last use.
+		 */
+		private void release (ENode node) {
+			if (--node.uses == 0
+				&& node.slot >= TEMP_BASE
+				&& node.slot < RESULT_BASE) {
+
+				if (freeCount == free.length) {
+					free = Arrays.copyOf (free, freeCount * 2);
+				}
+				free[freeCount++] = node.slot;
+			}
+		}
+
+		private void emit (
+			int op,
+			int dst,
+			int src_1,
+			int src_2) {
+
+			if (codeLength == code.length) {
+				code = Arrays.copyOf (code, codeLength * 2);
+			}
+			code[codeLength] = op;
+			code[codeLength + 1] = dst;
+			code[codeLength + 2] = src_1;
+			code[codeLength + 3] = src_2;
+			codeLength += EOp.SIZE;
+		}
+
+	}
+
+}
@@ -0,0 +1,344 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+
+/**
+ * Matrix of rational numbers.
+ * <p>
+ * Each row is stored in a {@link KNumColumn}.
+ * <p>
+ * Determinant, rank and linear systems are computed
+ * with fraction-free elimination:
+ * after scaling each row to integers,
+ * no fractions are created until the final result
+ * (see {@link CBareiss}).
+ * <p>
+ * Products accumulate each entry as an integer dot product,
+ * reduced once (see {@link CMatrixProduct}).
+ * <p>
+ * The matrix is not modified by these operations.
+ */
+public class KMatrix {
+
+	/**
+	 * Non-square matrix error message.
+	 */
+	public static final String ERR_MSG_NOT_SQUARE =
+		"Matrix is not square.";
+
+	/**
+	 * Singular matrix error message.
+	 */
+	public static final String ERR_MSG_SINGULAR =
+		"Matrix is singular.";
+
+	/**
+	 * Dimension mismatch error message.
+	 */
+	public static final String ERR_MSG_DIMENSIONS =
+		"Matrix dimensions do not match.";
+
+	/**
+	 * Number of rows.
+	 */
+	final int rows;
+
+	/**
+	 * Number of columns.
+	 */
+	final int columns;
+
+	/**
+	 * Values of each row.
+	 */
+	final KNumColumn[] entries;
+
+	/**
+	 * Matrix with all values set to zero.
+	 *
+	 * @param rows number of rows.
+	 * @param columns number of columns.
+	 */
+	public KMatrix (
+		int rows,
+		int columns) {
+
+		this.rows = rows;
+		this.columns = columns;
+
+		entries = new KNumColumn[rows];
+		for (int i = 0; i < rows; i++) {
+			entries[i] = new KNumColumn (columns);
+		}
+	}
+
+	/**
+	 * Identity matrix.
+	 *
+	 * @param size number of rows and columns.
+	 * @return new matrix.
+	 */
+	public static KMatrix identity (int size) {
+		KMatrix identity = new KMatrix (size, size);
+		KNumRegister one = new KNumRegister ();
+		one.setValue (1);
+		for (int i = 0; i < size; i++) {
+			identity.entries[i].set (i, one);
+		}
+		return identity;
+	}
+
+	/**
+	 * Get number of rows.
+	 *
+	 * @return number of rows.
+	 */
+	public int rows () {
+		return rows;
+	}
+
+	/**
+	 * Get number of columns.
+	 *
+	 * @return number of columns.
+	 */
+	public int columns () {
+		return columns;
+	}
+
+	/**
+	 * Read value.
+	 *
+	 * @param row row index.
+	 * @param column column index.
+	 * @param result overwritten with the value.
+	 */
+	public void get (
+		int row,
+		int column,
+		KNumRegister result) {
+
+		entries[row].get (column, result);
+	}
+
+	/**
+	 * Write value.
+	 *
+	 * @param row row index.
+	 * @param column column index.
+	 * @param value the value.
+	 */
+	public void set (
+		int row,
+		int column,
+		KNumRegister value) {
+
+		entries[row].set (column, value);
+	}
+
+	/**
+	 * Compute determinant.
+	 *
+	 * @param result overwritten with the determinant.
+	 * @throws IllegalArgumentException matrix not square.
+	 */
+	public void determinant (KNumRegister result) {
+		if (rows != columns) {
+			throw new IllegalArgumentException (ERR_MSG_NOT_SQUARE);
+		}
+		if (rows == 0) {
+			result.setValue (1);
+			return;
+		}
+
+		CBareiss.Elimination elimination =
+			CBareiss.eliminate (entries, columns, columns);
+		if (elimination.rank < rows) {
+			result.setZeroValue ();
+			return;
+		}
+
+		// last pivot: determinant of scaled matrix
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		elimination.rows[rows - 1].get (columns - 1, result);
+		if (elimination.sign < 0) {
+			CInvert.negate (result, result);
+		}
+		CDivide.divide (calc, result, result, elimination.scale);
+	}
+
+	/**
+	 * Compute rank.
+	 *
+	 * @return number of linearly independent rows.
+	 */
+	public int rank () {
+		return CBareiss.eliminate (entries, columns, columns).rank;
+	}
+
+	/**
+	 * Solve linear system {@code A X = B},
+	 * where {@code A} is this matrix.
+	 *
+	 * @param rightHandSide matrix {@code B}.
+	 * @return matrix {@code X}.
+	 * @throws IllegalArgumentException matrix not square,
+	 * or {@code B} has a different number of rows.
+	 * @throws ArithmeticException matrix is singular.
+	 */
+	public KMatrix solve (KMatrix rightHandSide) {
+		if (rows != columns) {
+			throw new IllegalArgumentException (ERR_MSG_NOT_SQUARE);
+		}
+		if (rightHandSide.rows != rows) {
+			throw new IllegalArgumentException (ERR_MSG_DIMENSIONS);
+		}
+
+		int n = rows;
+		int width = n + rightHandSide.columns;
+		KNumRegister value = new KNumRegister ();
+
+		// augmented matrix [A | B]
+		KNumColumn[] augmented = new KNumColumn[n];
+		for (int i = 0; i < n; i++) {
+			augmented[i] = new KNumColumn (width);
+			for (int j = 0; j < n; j++) {
+				entries[i].get (j, value);
+				augmented[i].set (j, value);
+			}
+			for (int j = n; j < width; j++) {
+				rightHandSide.entries[i].get (j - n, value);
+				augmented[i].set (j, value);
+			}
+		}
+
+		CBareiss.Elimination elimination =
+			CBareiss.eliminate (augmented, width, n);
+		if (elimination.rank < n) {
+			throw new ArithmeticException (ERR_MSG_SINGULAR);
+		}
+		KNumColumn[] work = elimination.rows;
+
+		KMatrix solution = new KMatrix (n, rightHandSide.columns);
+		if (n == 0) {
+			return solution;
+		}
+
+		// back substitution on y = d x, which is integer (Cramer's rule)
+		BigInteger determinant = bigEntry (work[n - 1], n - 1, value);
+		BigInteger[] y = new BigInteger[n];
+		for (int c = n; c < width; c++) {
+			for (int i = n - 1; i >= 0; i--) {
+				BigInteger sum = determinant.multiply (bigEntry (work[i], c, value));
+				for (int j = i + 1; j < n; j++) {
+					sum = sum.subtract (bigEntry (work[i], j, value).multiply (y[j]));
+				}
+				y[i] = sum.divide (bigEntry (work[i], i, value));
+			}
+
+			for (int i = 0; i < n; i++) {
+				value.setValue (y[i], determinant);
+				solution.entries[i].set (c - n, value);
+			}
+		}
+
+		return solution;
+	}
+
+	/**
+	 * Compute product {@code A B},
+	 * where {@code A} is this matrix.
+	 *
+	 * @param other matrix {@code B}.
+	 * @return new matrix.
+	 * @throws IllegalArgumentException {@code B} has a number of rows
+	 * different from the number of columns of this matrix.
+	 */
+	public KMatrix multiply (KMatrix other) {
+		if (other.rows != columns) {
+			throw new IllegalArgumentException (ERR_MSG_DIMENSIONS);
+		}
+
+		return CMatrixProduct.multiply (this, other);
+	}
+
+	/**
+	 * Raise to integer power, by repeated squaring.
+	 * <p>
+	 * Negative exponents raise the inverse.
+	 *
+	 * @param exponent the exponent.
+	 * @return new matrix.
+	 * @throws IllegalArgumentException matrix not square.
+	 * @throws ArithmeticException exponent is negative
+	 * and the matrix is singular.
+	 */
+	public KMatrix power (int exponent) {
+		if (rows != columns) {
+			throw new IllegalArgumentException (ERR_MSG_NOT_SQUARE);
+		}
+
+		KMatrix base = this;
+		long remaining = exponent;
+		if (remaining < 0) {
+			base = solve (identity (rows));
+			remaining = -remaining;
+		}
+
+		KMatrix result = null;
+		while (remaining != 0) {
+			if ((remaining & 1) != 0) {
+				result = result == null ? base : result.multiply (base);
+			}
+			remaining >>= 1;
+			if (remaining != 0) {
+				base = base.multiply (base);
+			}
+		}
+
+		if (result == null) {
+			return identity (rows);
+		}
+		if (result == this) {
+			// never share the receiver
+			result = new KMatrix (rows, columns);
+			KNumRegister value = new KNumRegister ();
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < columns; j++) {
+					entries[i].get (j, value);
+					result.entries[i].set (j, value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read integer entry as {@code BigInteger}.
+	 */
+	private static BigInteger bigEntry (
+		KNumColumn row,
+		int column,
+		KNumRegister value) {
+
+		row.get (column, value);
+		value.setBigIntegers ();
+		return value.bigNumerator;
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Fixed-length columnar store of rational numbers.
+ * <p>
+ * Values are stored in parallel primitive arrays:
+ * one for profiles, one for numerators and one for denominators.
+ * Big values are stored in a pair of {@link BigInteger} arrays,
+ * which are only allocated when the first big value is stored.
+ * <p>
+ * Compared to an array of {@link KNumRegister},
+ * a column uses less memory and has better locality
+ * for values that fit in {@code long}.
+ * <p>
+ * Values are read into registers and written from registers:
+ * the registers passed as arguments are not retained.
+ */
+public class KNumColumn {
+
+	/**
+	 * Number of values.
+	 */
+	final int length;
+
+	/**
+	 * Profile of each value.
+	 *
+	 * @see KNumRegister#profile
+	 */
+	final byte[] profiles;
+
+	/**
+	 * Numerator of each value.
+	 */
+	final long[] numerators;
+
+	/**
+	 * Denominator of each value.
+	 */
+	final long[] denominators;
+
+	/**
+	 * Numerator of each big value.
+	 * <p>
+	 * {@code null} until a big value is stored.
+	 */
+	BigInteger[] bigNumerators;
+
+	/**
+	 * Denominator of each big value.
+	 * <p>
+	 * {@code null} until a big value is stored.
+	 */
+	BigInteger[] bigDenominators;
+
+	/**
+	 * Column with all values set to zero.
+	 *
+	 * @param length number of values.
+	 */
+	public KNumColumn (int length) {
+		this.length = length;
+
+		profiles = new byte[length];
+		numerators = new long[length];
+		denominators = new long[length];
+
+		for (int index = 0; index < length; index++) {
+			profiles[index] = KProfile.INT_INTEGER;
+			denominators[index] = 1;
+		}
+	}
+
+	/**
+	 * Get number of values.
+	 *
+	 * @return column length.
+	 */
+	public int length () {
+		return length;
+	}
+
+	/**
+	 * Read value.
+	 *
+	 * @param index position in column.
+	 * @param result overwritten with the value.
+	 */
+	public void get (
+		int index,
+		KNumRegister result) {
+
+		switch (profiles[index]) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			result.setIrreducibleValue (
+				bigNumerators[index],
+				bigDenominators[index],
+				false
+			);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			result.setIrreducibleFraction (
+				numerators[index],
+				denominators[index]
+			);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			// denominator is a power of ten: recover scale
+			result.setDecimalValue (
+				numerators[index],
+				Arrays.binarySearch (
+					CPowers.TENS,
+					denominators[index]
+				)
+			);
+			break;
+
+		default:
+			result.setInteger (numerators[index]);
+			break;
+		}
+	}
+
+	/**
+	 * Write value.
+	 *
+	 * @param index position in column.
+	 * @param value the value.
+	 */
+	public void set (
+		int index,
+		KNumRegister value) {
+
+		profiles[index] = (byte) value.profile;
+
+		switch (value.profile) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			if (bigNumerators == null) {
+				bigNumerators = new BigInteger[length];
+				bigDenominators = new BigInteger[length];
+			}
+			bigNumerators[index] = value.bigNumerator;
+			bigDenominators[index] = value.bigDenominator;
+			numerators[index] = 0;
+			denominators[index] = 0;
+			break;
+
+		default:
+			numerators[index] = value.numerator;
+			denominators[index] = value.denominator;
+			if (bigNumerators != null) {
+				// release references
+				bigNumerators[index] = null;
+				bigDenominators[index] = null;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Get {@code double} approximation of value.
+	 *
+	 * @see CCompare#approximate(KNumRegister)
+	 */
+	double approximate (int index) {
+		switch (profiles[index]) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			return CCompare.approximate (
+				bigNumerators[index],
+				bigDenominators[index]
+			);
+
+		default:
+			return (double) numerators[index] / denominators[index];
+		}
+	}
+
+	/**
+	 * Reorder values in place, following the cycles of the permutation.
+	 * <p>
+	 * After the call, the value at {@code from + i}
+	 * is the value that was at {@code from + order[i]}.
+	 *
+	 * @param visited work array of at least {@code count} elements
+	 * (overwritten).
+	 */
+	void permute (
+		int from,
+		int[] order,
+		int[] visited,
+		int count) {
+
+		Arrays.fill (visited, 0, count, 0);
+
+		for (int start = 0; start < count; start++) {
+			if (visited[start] != 0 || order[start] == start) {
+				continue;
+			}
+
+			// first value of the cycle is overwritten first
+			int position = from + start;
+			byte profile = profiles[position];
+			long numerator = numerators[position];
+			long denominator = denominators[position];
+			BigInteger bigNumerator = null;
+			BigInteger bigDenominator = null;
+			if (bigNumerators != null) {
+				bigNumerator = bigNumerators[position];
+				bigDenominator = bigDenominators[position];
+			}
+
+			int i = start;
+			while (true) {
+				visited[i] = 1;
+				int next = order[i];
+				if (next == start) {
+					break;
+				}
+				move (from + next, from + i);
+				i = next;
+			}
+
+			position = from + i;
+			profiles[position] = profile;
+			numerators[position] = numerator;
+			denominators[position] = denominator;
+			if (bigNumerators != null) {
+				bigNumerators[position] = bigNumerator;
+				bigDenominators[position] = bigDenominator;
+			}
+		}
+	}
+
+	/**
+	 * Copy value between positions.
+	 */
+	private void move (
+		int source,
+		int target) {
+
+		profiles[target] = profiles[source];
+		numerators[target] = numerators[source];
+		denominators[target] = denominators[source];
+		if (bigNumerators != null) {
+			bigNumerators[target] = bigNumerators[source];
+			bigDenominators[target] = bigDenominators[source];
+		}
+	}
+
+}
@@ -0,0 +1,392 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only column of rational numbers, mapped from a file.
+ * <p>
+ * The file has the same layout as {@link KNumColumn}:
+ * <ul>
+ * <li>a header:
+ * magic number, version, number of values and heap size;</li>
+ * <li>a column of profile bytes, padded to a multiple of 8;</li>
+ * <li>a column of {@code long} numerators;</li>
+ * <li>a column of {@code long} denominators;</li>
+ * <li>a heap with big values, encoded by {@link KBinaryCodec}.
+ * The numerator of a big value is its offset in the heap.</li>
+ * </ul>
+ * All numbers are big-endian.
+ * <p>
+ * Opening a file maps it into memory: no values are read.
+ * Values are read when requested,
+ * one at a time or in bulk into a {@link KNumColumn}.
+ * <p>
+ * Values can be read concurrently by several threads.
+ */
+public class KNumColumnFile implements Closeable {
+
+	/**
+	 * Invalid file error message.
+	 */
+	public static final String ERR_MSG_INVALID_FILE =
+		"Not a column file.";
+
+	/**
+	 * Unsupported version error message.
+	 */
+	public static final String ERR_MSG_VERSION =
+		"Unsupported column file version.";
+
+	/**
+	 * Maximum number of values in a file.
+	 * <p>
+	 * Each section is mapped in one buffer,
+	 * which can hold at most {@code Integer.MAX_VALUE} bytes.
+	 */
+	public static final int MAX_LENGTH = Integer.MAX_VALUE / 8;
+
+	/**
+	 * First bytes of file: {@code "KNUM"}.
+	 */
+	private static final int MAGIC = 0x4B4E554D;
+
+	/**
+	 * Current format version.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Size of header in bytes.
+	 */
+	private static final int HEADER_SIZE = 24;
+
+	/**
+	 * Number of values.
+	 */
+	private final int length;
+
+	/**
+	 * File channel, kept open until closed.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Profile of each value.
+	 */
+	private final ByteBuffer profiles;
+
+	/**
+	 * Numerator of each value,
+	 * or position in heap if big.
+	 */
+	private final LongBuffer numerators;
+
+	/**
+	 * Denominator of each value.
+	 */
+	private final LongBuffer denominators;
+
+	/**
+	 * Big values.
+	 */
+	private final ByteBuffer heap;
+
+	/**
+	 * Map column file.
+	 *
+	 * @param file the file.
+	 * @throws IOException error reading the file,
+	 * or the file is not a column file.
+	 */
+	public KNumColumnFile (File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile (file, "r");
+		channel = randomAccessFile.getChannel ();
+
+		try {
+			long fileSize = channel.size ();
+			if (fileSize < HEADER_SIZE) {
+				throw new IOException (ERR_MSG_INVALID_FILE);
+			}
+
+			MappedByteBuffer header = channel.map (
+				FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt () != MAGIC) {
+				throw new IOException (ERR_MSG_INVALID_FILE);
+			}
+			if (header.getInt () != VERSION) {
+				throw new IOException (ERR_MSG_VERSION);
+			}
+			long longLength = header.getLong ();
+			long heapSize = header.getLong ();
+
+			long profilesSize = paddedLength (longLength);
+			if (longLength < 0 || longLength > MAX_LENGTH
+				|| heapSize < 0 || heapSize > Integer.MAX_VALUE
+				|| fileSize != HEADER_SIZE
+				+ profilesSize + 16 * longLength + heapSize) {
+
+				throw new IOException (ERR_MSG_INVALID_FILE);
+			}
+			length = (int) longLength;
+
+			long position = HEADER_SIZE;
+			profiles = channel.map (
+				FileChannel.MapMode.READ_ONLY, position, length);
+			position += profilesSize;
+			numerators = channel.map (
+				FileChannel.MapMode.READ_ONLY, position, 8L * length)
+				.asLongBuffer ();
+			position += 8L * length;
+			denominators = channel.map (
+				FileChannel.MapMode.READ_ONLY, position, 8L * length)
+				.asLongBuffer ();
+			position += 8L * length;
+			heap = channel.map (
+				FileChannel.MapMode.READ_ONLY, position, heapSize);
+
+		} catch (IOException | RuntimeException e) {
+			channel.close ();
+			throw e;
+		}
+	}
+
+	/**
+	 * Write column to file.
+	 * <p>
+	 * The file is overwritten.
+	 *
+	 * @param column the values.
+	 * @param file the file.
+	 * @throws IOException error writing the file.
+	 */
+	public static void write (
+		KNumColumn column,
+		File file) throws IOException {
+
+		int length = column.length;
+		if (length > MAX_LENGTH) {
+			throw new IOException (ERR_MSG_INVALID_FILE);
+		}
+
+		// position of each big value in heap
+		long[] heapPositions = null;
+		long heapSize = 0;
+		if (column.bigNumerators != null) {
+			KNumRegister register = new KNumRegister ();
+			heapPositions = new long[length];
+			for (int index = 0; index < length; index++) {
+				if (column.profiles[index] <= KProfile.BIG_INTEGER) {
+					column.get (index, register);
+					heapPositions[index] = heapSize;
+					heapSize += KBinaryCodec.encodedSize (register);
+				}
+			}
+			if (heapSize > Integer.MAX_VALUE) {
+				throw new IOException (ERR_MSG_INVALID_FILE);
+			}
+		}
+
+		try (DataOutputStream output = new DataOutputStream (
+			new BufferedOutputStream (new FileOutputStream (file), 1 << 16))) {
+
+			output.writeInt (MAGIC);
+			output.writeInt (VERSION);
+			output.writeLong (length);
+			output.writeLong (heapSize);
+
+			output.write (column.profiles, 0, length);
+			for (long i = length; i < paddedLength (length); i++) {
+				output.writeByte (0);
+			}
+
+			for (int index = 0; index < length; index++) {
+				output.writeLong (
+					column.profiles[index] <= KProfile.BIG_INTEGER ?
+						heapPositions[index] :
+						column.numerators[index]
+				);
+			}
+			for (int index = 0; index < length; index++) {
+				output.writeLong (column.denominators[index]);
+			}
+
+			if (heapPositions != null) {
+				KNumRegister register = new KNumRegister ();
+				for (int index = 0; index < length; index++) {
+					if (column.profiles[index] <= KProfile.BIG_INTEGER) {
+						column.get (index, register);
+						KBinaryCodec.encode (register, output);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get number of values.
+	 *
+	 * @return column length.
+	 */
+	public int length () {
+		return length;
+	}
+
+	/**
+	 * Read value.
+	 *
+	 * @param index position in column.
+	 * @param result overwritten with the value.
+	 */
+	public void get (
+		int index,
+		KNumRegister result) {
+
+		long numerator = numerators.get (index);
+
+		switch (profiles.get (index)) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			readBig (numerator, result);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			result.setIrreducibleFraction (
+				numerator,
+				denominators.get (index)
+			);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			// denominator is a power of ten: recover scale
+			result.setDecimalValue (
+				numerator,
+				Arrays.binarySearch (
+					CPowers.TENS,
+					denominators.get (index)
+				)
+			);
+			break;
+
+		default:
+			result.setInteger (numerator);
+			break;
+		}
+	}
+
+	/**
+	 * Read values into column.
+	 *
+	 * @param from position of first value in file.
+	 * @param column destination.
+	 * @param to position of first value in column.
+	 * @param count number of values.
+	 */
+	public void load (
+		int from,
+		KNumColumn column,
+		int to,
+		int count) {
+
+		if (from < 0 || count < 0 || from > length - count) {
+			throw new IndexOutOfBoundsException (
+				"From: " + from + ", count: " + count
+					+ ", length: " + length + ".");
+		}
+
+		// bulk copies (duplicates: positions are not shared)
+		ByteBuffer profileView = profiles.duplicate ();
+		profileView.position (from);
+		profileView.get (column.profiles, to, count);
+		LongBuffer numeratorView = numerators.duplicate ();
+		numeratorView.position (from);
+		numeratorView.get (column.numerators, to, count);
+		LongBuffer denominatorView = denominators.duplicate ();
+		denominatorView.position (from);
+		denominatorView.get (column.denominators, to, count);
+
+		KNumRegister register = null;
+		for (int index = to; index < to + count; index++) {
+			if (column.profiles[index] <= KProfile.BIG_INTEGER) {
+				if (register == null) {
+					register = new KNumRegister ();
+				}
+				readBig (column.numerators[index], register);
+				column.set (index, register);
+
+			} else if (column.bigNumerators != null) {
+				// release references
+				column.bigNumerators[index] = null;
+				column.bigDenominators[index] = null;
+			}
+		}
+	}
+
+	/**
+	 * Read all values into new column.
+	 *
+	 * @return column with the values of the file.
+	 */
+	public KNumColumn load () {
+		KNumColumn column = new KNumColumn (length);
+		load (0, column, 0, length);
+		return column;
+	}
+
+	/**
+	 * Close file.
+	 * <p>
+	 * The mapped memory is released when this object is collected.
+	 */
+	@Override
+	public void close () throws IOException {
+		channel.close ();
+	}
+
+	/**
+	 * Decode big value at heap position.
+	 */
+	private void readBig (
+		long position,
+		KNumRegister result) {
+
+		ByteBuffer entry = heap.duplicate ();
+		entry.position ((int) position);
+		KBinaryCodec.decode (result, entry);
+	}
+
+	/**
+	 * Get size of profile column, padded to a multiple of 8,
+	 * so that the {@code long} columns are aligned.
+	 */
+	private static long paddedLength (long length) {
+		return (length + 7) & ~7L;
+	}
+
+}
@@ -0,0 +1,390 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Hash map from rational numbers to {@code int} indices.
+ * <p>
+ * Each distinct key is assigned an index when inserted,
+ * starting from zero, in insertion order.
+ * The indices can be used to address arrays of accumulators
+ * (for example, in group-by aggregations).
+ * <p>
+ * Keys are stored inline, as
+ * (profile, numerator, denominator) triples in primitive arrays.
+ * Decimal keys are stored reduced,
+ * so that they are equal to the same rational value.
+ * Big keys are spilled to a side array,
+ * and the position in the side array is stored
+ * in place of the numerator.
+ * <p>
+ * The map uses open addressing with linear probing.
+ * No objects are allocated to insert or look up keys
+ * that fit in {@code long}, except when the map grows.
+ * <p>
+ * Keys are copied when inserted:
+ * the registers passed as arguments can be overwritten afterwards.
+ */
+public class KNumIndexMap {
+
+	/**
+	 * Capacity too large error message.
+	 */
+	public static final String ERR_MSG_CAPACITY =
+		"Capacity too large.";
+
+	/**
+	 * Map full error message.
+	 */
+	public static final String ERR_MSG_FULL =
+		"Map is full.";
+
+	/**
+	 * Maximum number of keys
+	 * (hash table length at most {@code 2^30}).
+	 */
+	public static final int MAX_CAPACITY = 1 << 28;
+
+	/**
+	 * Default number of keys that fit without growing.
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Hash table.
+	 * <p>
+	 * Stores {@code index + 1} of each key,
+	 * or {@code 0} if the slot is empty.
+	 */
+	private int[] table;
+
+	/**
+	 * Shift applied to the mixed hash to get a slot.
+	 * <p>
+	 * {@code table.length == 1 << (32 - shift)}.
+	 */
+	private int shift;
+
+	/**
+	 * Hash code of each key.
+	 */
+	private int[] hashes;
+
+	/**
+	 * Profile of each key.
+	 */
+	private int[] profiles;
+
+	/**
+	 * Numerator of each key,
+	 * or position in the side arrays if the key is big.
+	 */
+	private long[] numerators;
+
+	/**
+	 * Denominator of each key.
+	 */
+	private long[] denominators;
+
+	/**
+	 * Side array: numerators of big keys.
+	 */
+	private BigInteger[] bigNumerators;
+
+	/**
+	 * Side array: denominators of big keys.
+	 */
+	private BigInteger[] bigDenominators;
+
+	/**
+	 * Number of big keys.
+	 */
+	private int bigSize;
+
+	/**
+	 * Number of keys.
+	 */
+	private int size;
+
+	/**
+	 * Map with default capacity.
+	 */
+	public KNumIndexMap () {
+		this (DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Map with specified capacity.
+	 *
+	 * @param capacity number of keys that fit without growing.
+	 * @throws IllegalArgumentException capacity greater than
+	 * {@link #MAX_CAPACITY}.
+	 */
+	public KNumIndexMap (int capacity) {
+		if (capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException (ERR_MSG_CAPACITY);
+		}
+		if (capacity < 1) {
+			capacity = 1;
+		}
+
+		hashes = new int[capacity];
+		profiles = new int[capacity];
+		numerators = new long[capacity];
+		denominators = new long[capacity];
+
+		bigNumerators = new BigInteger[0];
+		bigDenominators = new BigInteger[0];
+
+		// load factor at most 1/2
+		int tableLength = Integer.highestOneBit (capacity) << 2;
+		table = new int[tableLength];
+		shift = Integer.numberOfLeadingZeros (tableLength) + 1;
+	}
+
+	/**
+	 * Get number of keys.
+	 *
+	 * @return number of keys in map.
+	 */
+	public int size () {
+		return size;
+	}
+
+	/**
+	 * Remove all keys.
+	 */
+	public void clear () {
+		Arrays.fill (table, 0);
+		Arrays.fill (bigNumerators, 0, bigSize, null);
+		Arrays.fill (bigDenominators, 0, bigSize, null);
+		bigSize = 0;
+		size = 0;
+	}
+
+	/**
+	 * Get index of key.
+	 *
+	 * @param key the key.
+	 * @return index of key, or {@code -1} if not present.
+	 */
+	public int get (KNumRegister key) {
+		int hash = key.hashCode ();
+		int mask = table.length - 1;
+		int slot = (hash * 0x9E3779B9) >>> shift;
+
+		while (true) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return -1;
+			}
+			int index = entry - 1;
+			if (hashes[index] == hash && keyEquals (index, key)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Get index of key, inserting it if not present.
+	 *
+	 * @param key the key.
+	 * @return index of key.
+	 * If the key was not present, the new index is
+	 * the previous {@link #size()}.
+	 * @throws IllegalStateException map already holds
+	 * {@link #MAX_CAPACITY} keys.
+	 */
+	public int put (KNumRegister key) {
+		int hash = key.hashCode ();
+		int mask = table.length - 1;
+		int slot = (hash * 0x9E3779B9) >>> shift;
+
+		while (true) {
+			int entry = table[slot];
+			if (entry == 0) {
+				break;
+			}
+			int index = entry - 1;
+			if (hashes[index] == hash && keyEquals (index, key)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// insert
+		int index = size;
+		if (index == hashes.length) {
+			grow ();
+			return put (key);
+		}
+
+		hashes[index] = hash;
+		profiles[index] = key.profile;
+		if (key.profile == KProfile.LONG_DECIMAL) {
+			long gcd = KNumRegister.gcd (key.numerator, key.denominator);
+			profiles[index] = KProfile.LONG_RATIONAL;
+			numerators[index] = key.numerator / gcd;
+			denominators[index] = key.denominator / gcd;
+
+		} else if (key.profile > KProfile.BIG_INTEGER) {
+			numerators[index] = key.numerator;
+			denominators[index] = key.denominator;
+
+		} else {
+			// spill to side array
+			if (bigSize == bigNumerators.length) {
+				int length = Math.max (DEFAULT_CAPACITY, bigSize * 2);
+				bigNumerators = Arrays.copyOf (bigNumerators, length);
+				bigDenominators = Arrays.copyOf (bigDenominators, length);
+			}
+			bigNumerators[bigSize] = key.bigNumerator;
+			bigDenominators[bigSize] = key.bigDenominator;
+			numerators[index] = bigSize;
+			denominators[index] = 0;
+			bigSize++;
+		}
+
+		table[slot] = index + 1;
+		size++;
+
+		return index;
+	}
+
+	/**
+	 * Get key corresponding to index.
+	 *
+	 * @param index index returned by {@link #put(KNumRegister)}.
+	 * @param result overwritten with the key.
+	 * @throws IndexOutOfBoundsException index not assigned.
+	 */
+	public void getKey (
+		int index,
+		KNumRegister result) {
+
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException (
+				"Index: " + index + ", size: " + size + ".");
+		}
+
+		if (profiles[index] > KProfile.BIG_INTEGER) {
+			if (denominators[index] == 1) {
+				result.setInteger (numerators[index]);
+			} else {
+				result.setIrreducibleFraction (
+					numerators[index],
+					denominators[index]
+				);
+			}
+
+		} else {
+			int big = (int) numerators[index];
+			result.setIrreducibleValue (
+				bigNumerators[big],
+				bigDenominators[big],
+				false
+			);
+		}
+	}
+
+	/**
+	 * Check whether stored key is equal to register value.
+	 */
+	private boolean keyEquals (
+		int index,
+		KNumRegister key) {
+
+		if (profiles[index] > KProfile.BIG_INTEGER) {
+			if (key.profile == KProfile.LONG_DECIMAL) {
+				long gcd = KNumRegister.gcd (key.numerator, key.denominator);
+				return numerators[index] == key.numerator / gcd
+					&& denominators[index] == key.denominator / gcd;
+			}
+			if (key.profile > KProfile.BIG_INTEGER) {
+				return numerators[index] == key.numerator
+					&& denominators[index] == key.denominator;
+			}
+
+			return fitsLong (key.bigNumerator, key.bigDenominator)
+				&& numerators[index] == key.bigNumerator.longValue ()
+				&& denominators[index] == key.bigDenominator.longValue ();
+		}
+
+		int big = (int) numerators[index];
+
+		if (key.profile > KProfile.BIG_INTEGER) {
+			// stored reduced: reduce decimal key
+			long numerator = key.numerator;
+			long denominator = key.denominator;
+			if (key.profile == KProfile.LONG_DECIMAL) {
+				long gcd = KNumRegister.gcd (numerator, denominator);
+				numerator /= gcd;
+				denominator /= gcd;
+			}
+			return fitsLong (bigNumerators[big], bigDenominators[big])
+				&& bigNumerators[big].longValue () == numerator
+				&& bigDenominators[big].longValue () == denominator;
+		}
+
+		return bigNumerators[big].equals (key.bigNumerator)
+			&& bigDenominators[big].equals (key.bigDenominator);
+	}
+
+	/**
+	 * Check whether numerator and denominator fit in {@code long}.
+	 */
+	private static boolean fitsLong (
+		BigInteger bigNumerator,
+		BigInteger bigDenominator) {
+
+		return bigNumerator.bitLength () < Long.SIZE
+			&& bigDenominator.bitLength () < Long.SIZE;
+	}
+
+	/**
+	 * Double capacity and rehash.
+	 */
+	private void grow () {
+		if (table.length > MAX_CAPACITY * 2) {
+			// table length would overflow
+			throw new IllegalStateException (ERR_MSG_FULL);
+		}
+		int capacity = hashes.length * 2;
+
+		hashes = Arrays.copyOf (hashes, capacity);
+		profiles = Arrays.copyOf (profiles, capacity);
+		numerators = Arrays.copyOf (numerators, capacity);
+		denominators = Arrays.copyOf (denominators, capacity);
+
+		int tableLength = table.length * 2;
+		table = new int[tableLength];
+		shift--;
+
+		int mask = tableLength - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = (hashes[index] * 0x9E3779B9) >>> shift;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = index + 1;
+		}
+	}
+
+}
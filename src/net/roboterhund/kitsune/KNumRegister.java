@@ -61,6 +61,14 @@ public class KNumRegister {
 	 */
 	long denominator;
 
+	/**
+	 * Number of decimal digits
+	 * ({@link KProfile#LONG_DECIMAL} only).
+	 * <p>
+	 * {@code denominator == 10^scale}.
+	 */
+	int scale;
+
 	/**
 	 * Big values fallback numerator.
 	 */
@@ -170,6 +178,7 @@ public class KNumRegister {
 		profile = register.profile;
 		numerator = register.numerator;
 		denominator = register.denominator;
+		scale = register.scale;
 		bigNumerator = register.bigNumerator;
 		bigDenominator = register.bigDenominator;
 	}
@@ -278,6 +287,65 @@ public class KNumRegister {
 		}
 	}
 
+	/**
+	 * Set decimal value {@code unscaledValue / 10^scale}.
+	 * <p>
+	 * Unlike other values, decimal values are not reduced:
+	 * the scale is kept, as in {@link java.math.BigDecimal}.
+	 * Operations on decimals with the same scale are faster.
+	 * <p>
+	 * If the scale is not in the range {@code [1, 18]},
+	 * the value is stored as a normalized fraction instead.
+	 *
+	 * @param unscaledValue unscaled value.
+	 * @param scale number of decimal digits.
+	 */
+	public void setDecimal (
+		long unscaledValue,
+		int scale) {
+
+		if (scale == 0) {
+			setValue (unscaledValue);
+
+		} else if (scale < 0) {
+			setValue (
+				BigInteger.valueOf (unscaledValue)
+					.multiply (CPowers.bigPowerOfTen (-scale))
+			);
+
+		} else if (scale > KConverter.MAX_DECIMALS
+			|| unscaledValue == Long.MIN_VALUE) {
+			// Long.MIN_VALUE not allowed to avoid overflows
+			setValue (
+				BigInteger.valueOf (unscaledValue),
+				CPowers.bigPowerOfTen (scale)
+			);
+
+		} else {
+			setDecimalValue (unscaledValue, scale);
+		}
+	}
+
+	/**
+	 * Set decimal value, where
+	 * {@code 1 <= scale <= 18}
+	 * and {@code unscaledValue != Long.MIN_VALUE}.
+	 */
+	void setDecimalValue (
+		long unscaledValue,
+		int scale) {
+
+		this.numerator = unscaledValue;
+		this.denominator = CPowers.TENS[scale];
+		this.scale = scale;
+
+		profile = KProfile.LONG_DECIMAL;
+
+		// invalidated
+		this.bigNumerator = null;
+		this.bigDenominator = null;
+	}
+
 	/**
 	 * Set {@code BigInteger} value.
 	 *
@@ -313,16 +381,10 @@ public class KNumRegister {
 		BigInteger bigNumerator,
 		BigInteger bigDenominator) {
 
-		// find greatest common divisor
-		BigInteger gcd = bigNumerator.gcd (bigDenominator);
-
-		if (!gcd.equals (BigInteger.ONE)) {
-			// simplify fraction
-			bigNumerator = bigNumerator.divide (gcd);
-			bigDenominator = bigDenominator.divide (gcd);
-		}
+		// simplify fraction
+		BigInteger[] reduced = CGcd.reduce (bigNumerator, bigDenominator);
 
-		setIrreducibleValue (bigNumerator, bigDenominator, true);
+		setIrreducibleValue (reduced[0], reduced[1], true);
 	}
 
 	/**
@@ -443,6 +505,136 @@ public class KNumRegister {
 		this.bigDenominator = null;
 	}
 
+	/**
+	 * Compare numeric values.
+	 * <p>
+	 * Two registers are equal iff they hold the same rational number,
+	 * regardless of the profile used to store it.
+	 * <p>
+	 * <b>Note</b>: registers are mutable.
+	 * Do not modify a register while it is used as a key
+	 * in a hash-based collection.
+	 *
+	 * @param object object to compare with.
+	 * @return {@code true} iff {@code object} is a register
+	 * with the same numeric value.
+	 */
+	@Override
+	public boolean equals (Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof KNumRegister)) {
+			return false;
+		}
+
+		KNumRegister register = (KNumRegister) object;
+
+		if (profile == KProfile.LONG_DECIMAL
+			|| register.profile == KProfile.LONG_DECIMAL) {
+			// decimals are not reduced
+			if (profile > KProfile.BIG_INTEGER
+				&& register.profile > KProfile.BIG_INTEGER) {
+				return CCompare.compareProducts (
+					numerator, register.denominator,
+					register.numerator, denominator
+				) == 0;
+			}
+
+			setBigIntegers ();
+			register.setBigIntegers ();
+
+			return bigNumerator.multiply (register.bigDenominator)
+				.equals (register.bigNumerator.multiply (bigDenominator));
+		}
+
+		if (profile > KProfile.BIG_INTEGER
+			&& register.profile > KProfile.BIG_INTEGER) {
+			// both compact
+			return numerator == register.numerator
+				&& denominator == register.denominator;
+		}
+
+		setBigIntegers ();
+		register.setBigIntegers ();
+
+		return bigNumerator.equals (register.bigNumerator)
+			&& bigDenominator.equals (register.bigDenominator);
+	}
+
+	/**
+	 * Get hash code of numeric value.
+	 * <p>
+	 * The hash code only depends on the value,
+	 * not on the profile used to store it.
+	 *
+	 * @return hash code.
+	 * @see #equals(Object)
+	 */
+	@Override
+	public int hashCode () {
+		if (profile == KProfile.LONG_DECIMAL) {
+			long gcd = gcd (numerator, denominator);
+			return hashCode (numerator / gcd, denominator / gcd);
+		} else if (profile > KProfile.BIG_INTEGER) {
+			return hashCode (numerator, denominator);
+		} else {
+			return hashCode (bigNumerator, bigDenominator);
+		}
+	}
+
+	/**
+	 * Hash code of irreducible fraction.
+	 */
+	static int hashCode (
+		long numerator,
+		long denominator) {
+
+		int hash = (int) (numerator ^ (numerator >>> 32));
+		return 31 * hash + (int) (denominator ^ (denominator >>> 32));
+	}
+
+	/**
+	 * Hash code of irreducible fraction.
+	 * <p>
+	 * Consistent with {@link #hashCode(long, long)}
+	 * for values that fit in {@code long}.
+	 */
+	static int hashCode (
+		BigInteger bigNumerator,
+		BigInteger bigDenominator) {
+
+		if (bigNumerator.bitLength () < Long.SIZE
+			&& bigDenominator.bitLength () < Long.SIZE) {
+			return hashCode (
+				bigNumerator.longValue (),
+				bigDenominator.longValue ()
+			);
+		}
+
+		return 31 * bigNumerator.hashCode () + bigDenominator.hashCode ();
+	}
+
+	/**
+	 * Greatest common divisor, with Euclid's algorithm.
+	 * <p>
+	 * {@code denominator} must be positive.
+	 */
+	static long gcd (
+		long numerator,
+		long denominator) {
+
+		long gcd = numerator;
+		long div = denominator;
+		long modulo;
+		while (div != 0) {
+			modulo = gcd % div;
+			gcd = div;
+			div = modulo;
+		}
+		return Math.abs (gcd);
+	}
+
 	/**
 	 * Convert current numerator, denominator to
 	 * a pair of {@link BigInteger} instances.
@@ -0,0 +1,268 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed-length file of registers, stored off the Java heap.
+ * <p>
+ * Each value takes a slot of three {@code long} values
+ * in direct memory: profile and scale, numerator, denominator.
+ * Direct memory is not scanned by the garbage collector,
+ * so large files do not make collections slower.
+ * <p>
+ * Big values are kept in a side store on the heap,
+ * and the numerator of the slot is the position in the side store.
+ * Positions are reused when big values are overwritten.
+ * <p>
+ * Values are read into registers and written from registers,
+ * and {@link KCalculator} can operate on slots by index.
+ * Compact values are read and written without allocating objects.
+ * <p>
+ * The direct memory is released when the file is collected.
+ * A file must not be used by several threads at once.
+ */
+public class KNumRegisterFile {
+
+	/**
+	 * Bits of slot index within page.
+	 */
+	private static final int PAGE_BITS = 16;
+
+	/**
+	 * Mask of slot index within page.
+	 */
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+	/**
+	 * Bytes per slot.
+	 */
+	private static final int SLOT_SIZE = 3 * 8;
+
+	/**
+	 * Number of values.
+	 */
+	private final int length;
+
+	/**
+	 * Direct buffers with {@code 2^PAGE_BITS} slots each
+	 * (the last one may be shorter).
+	 */
+	private final ByteBuffer[] pages;
+
+	/**
+	 * Side store: numerators of big values.
+	 */
+	private BigInteger[] bigNumerators;
+
+	/**
+	 * Side store: denominators of big values.
+	 */
+	private BigInteger[] bigDenominators;
+
+	/**
+	 * Number of side store positions in use or freed.
+	 */
+	private int bigSize;
+
+	/**
+	 * Freed side store positions.
+	 */
+	private int[] freeBig;
+
+	/**
+	 * Number of freed side store positions.
+	 */
+	private int freeBigSize;
+
+	/**
+	 * File with all values set to zero.
+	 *
+	 * @param length number of values.
+	 */
+	public KNumRegisterFile (int length) {
+		this.length = length;
+
+		int numPages = (int) (((long) length + PAGE_MASK) >>> PAGE_BITS);
+		pages = new ByteBuffer[numPages];
+		for (int page = 0; page < numPages; page++) {
+			int slots = Math.min (PAGE_MASK + 1, length - (page << PAGE_BITS));
+			ByteBuffer buffer = ByteBuffer.allocateDirect (slots * SLOT_SIZE)
+				.order (ByteOrder.nativeOrder ());
+			for (int offset = 0; offset < slots * SLOT_SIZE; offset += SLOT_SIZE) {
+				buffer.putLong (offset, KProfile.INT_INTEGER);
+				buffer.putLong (offset + 16, 1);
+			}
+			pages[page] = buffer;
+		}
+
+		bigNumerators = new BigInteger[0];
+		bigDenominators = new BigInteger[0];
+		freeBig = new int[0];
+	}
+
+	/**
+	 * Get number of values.
+	 *
+	 * @return file length.
+	 */
+	public int length () {
+		return length;
+	}
+
+	/**
+	 * Read value.
+	 *
+	 * @param index position in file.
+	 * @param result overwritten with the value.
+	 */
+	public void get (
+		int index,
+		KNumRegister result) {
+
+		ByteBuffer page = page (index);
+		int offset = (index & PAGE_MASK) * SLOT_SIZE;
+
+		long header = page.getLong (offset);
+		long numerator = page.getLong (offset + 8);
+
+		switch ((int) header & 0xFF) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			result.setIrreducibleValue (
+				bigNumerators[(int) numerator],
+				bigDenominators[(int) numerator],
+				false
+			);
+			break;
+
+		case KProfile.LONG_RATIONAL:
+		case KProfile.INT_RATIONAL:
+			result.setIrreducibleFraction (
+				numerator,
+				page.getLong (offset + 16)
+			);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			result.setDecimalValue (numerator, (int) (header >>> 8));
+			break;
+
+		default:
+			result.setInteger (numerator);
+			break;
+		}
+	}
+
+	/**
+	 * Write value.
+	 *
+	 * @param index position in file.
+	 * @param value the value.
+	 */
+	public void set (
+		int index,
+		KNumRegister value) {
+
+		ByteBuffer page = page (index);
+		int offset = (index & PAGE_MASK) * SLOT_SIZE;
+
+		int oldProfile = (int) page.getLong (offset) & 0xFF;
+		int big;
+		if (oldProfile <= KProfile.BIG_INTEGER) {
+			// reuse position
+			big = (int) page.getLong (offset + 8);
+			if (value.profile > KProfile.BIG_INTEGER) {
+				freeBig (big);
+			}
+		} else {
+			big = -1;
+		}
+
+		switch (value.profile) {
+		case KProfile.BIG_RATIONAL:
+		case KProfile.BIG_INTEGER:
+			if (big < 0) {
+				big = allocateBig ();
+			}
+			bigNumerators[big] = value.bigNumerator;
+			bigDenominators[big] = value.bigDenominator;
+			page.putLong (offset, value.profile);
+			page.putLong (offset + 8, big);
+			page.putLong (offset + 16, 0);
+			break;
+
+		case KProfile.LONG_DECIMAL:
+			page.putLong (offset, value.profile | (long) value.scale << 8);
+			page.putLong (offset + 8, value.numerator);
+			page.putLong (offset + 16, value.denominator);
+			break;
+
+		default:
+			page.putLong (offset, value.profile);
+			page.putLong (offset + 8, value.numerator);
+			page.putLong (offset + 16, value.denominator);
+			break;
+		}
+	}
+
+	/**
+	 * Get page of slot.
+	 *
+	 * @throws IndexOutOfBoundsException index out of range.
+	 */
+	private ByteBuffer page (int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException (
+				"Index: " + index + ", length: " + length + ".");
+		}
+		return pages[index >>> PAGE_BITS];
+	}
+
+	/**
+	 * Get free position in side store.
+	 */
+	private int allocateBig () {
+		if (freeBigSize > 0) {
+			return freeBig[--freeBigSize];
+		}
+		if (bigSize == bigNumerators.length) {
+			int capacity = Math.max (16, bigSize * 2);
+			bigNumerators = Arrays.copyOf (bigNumerators, capacity);
+			bigDenominators = Arrays.copyOf (bigDenominators, capacity);
+		}
+		return bigSize++;
+	}
+
+	/**
+	 * Release position in side store.
+	 */
+	private void freeBig (int big) {
+		// release references
+		bigNumerators[big] = null;
+		bigDenominators[big] = null;
+
+		if (freeBigSize == freeBig.length) {
+			freeBig = Arrays.copyOf (freeBig, Math.max (16, freeBigSize * 2));
+		}
+		freeBig[freeBigSize++] = big;
+	}
+
+}
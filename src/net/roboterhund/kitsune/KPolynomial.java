@@ -0,0 +1,362 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.math.BigInteger;
+
+/**
+ * Polynomial with rational coefficients.
+ * <p>
+ * Coefficients are stored as integers over a common denominator
+ * (the least common multiple of their denominators).
+ * A point {@code p / q} is evaluated with the homogeneous Horner scheme
+ * <pre>
+ * s = a[d]
+ * s = s p + a[i] q^(d - i)   (i = d - 1 ... 0)
+ * P(p / q) = s / (denominator q^d)
+ * </pre>
+ * which stays in integer arithmetic, with a single reduction at the end.
+ * <p>
+ * The magnitude of {@code s} is bounded by
+ * {@code max |a[i]| (|p| + q)^d}:
+ * when this bound fits in {@code long}, no overflow checks are needed;
+ * otherwise, {@code long} arithmetic is checked at each step,
+ * falling back to {@code BigInteger} on overflow.
+ */
+public class KPolynomial {
+
+	/**
+	 * Different number of points and results error message.
+	 */
+	public static final String ERR_MSG_LENGTHS =
+		"Number of points and results differ.";
+
+	/**
+	 * Maximum number of bits of a {@code long} computation
+	 * that needs no overflow check.
+	 */
+	private static final int LONG_BITS = 62;
+
+	/**
+	 * Degree ({@code -1} for the zero polynomial).
+	 */
+	private final int degree;
+
+	/**
+	 * Integer coefficients, by power
+	 * ({@code null} if some coefficient does not fit in {@code long}).
+	 */
+	private final long[] coefficients;
+
+	/**
+	 * Integer coefficients, by power.
+	 */
+	private final BigInteger[] bigCoefficients;
+
+	/**
+	 * Bits of the largest integer coefficient magnitude.
+	 */
+	private final int coefficientBits;
+
+	/**
+	 * Common denominator.
+	 */
+	private final KNumRegister denominator;
+
+	/**
+	 * Common denominator.
+	 */
+	private final BigInteger bigDenominator;
+
+	/**
+	 * Polynomial from coefficients.
+	 *
+	 * @param coefficients coefficient of each power,
+	 * starting with the constant term.
+	 */
+	public KPolynomial (KNumRegister... coefficients) {
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister value = new KNumRegister ();
+
+		int degree = coefficients.length - 1;
+		while (degree >= 0 && coefficients[degree].profile > KProfile.BIG_INTEGER
+			&& coefficients[degree].numerator == 0) {
+
+			degree--;
+		}
+		this.degree = degree;
+
+		// common denominator
+		denominator = new KNumRegister ();
+		denominator.setValue (1);
+		for (int i = 0; i <= degree; i++) {
+			reduced (coefficients[i], value);
+			CBareiss.lcmDenominator (calc, denominator, value);
+		}
+		denominator.setBigIntegers ();
+		bigDenominator = denominator.bigNumerator;
+
+		long[] longCoefficients = new long[degree + 1];
+		boolean allLong = true;
+		bigCoefficients = new BigInteger[degree + 1];
+		int bits = 0;
+		for (int i = 0; i <= degree; i++) {
+			reduced (coefficients[i], value);
+			CMultiply.multiply (calc, value, value, denominator);
+			if (value.profile > KProfile.BIG_INTEGER) {
+				longCoefficients[i] = value.numerator;
+			} else {
+				allLong = false;
+			}
+			value.setBigIntegers ();
+			bigCoefficients[i] = value.bigNumerator;
+			bits = Math.max (bits, value.bigNumerator.abs ().bitLength ());
+		}
+		this.coefficients = allLong ? longCoefficients : null;
+		coefficientBits = bits;
+	}
+
+	/**
+	 * Get degree.
+	 *
+	 * @return degree, or {@code -1} for the zero polynomial.
+	 */
+	public int degree () {
+		return degree;
+	}
+
+	/**
+	 * Read coefficient.
+	 *
+	 * @param power power of the term.
+	 * @param result overwritten with the coefficient.
+	 */
+	public void getCoefficient (
+		int power,
+		KNumRegister result) {
+
+		if (power > degree) {
+			result.setZeroValue ();
+			return;
+		}
+		result.setValue (bigCoefficients[power], bigDenominator);
+	}
+
+	/**
+	 * Evaluate at one point.
+	 *
+	 * @param result overwritten with the value.
+	 * @param point the point.
+	 */
+	public void evaluate (
+		KNumRegister result,
+		KNumRegister point) {
+
+		if (degree < 0) {
+			result.setZeroValue ();
+			return;
+		}
+
+		if (point.profile > KProfile.BIG_INTEGER && coefficients != null) {
+			long p = point.numerator;
+			long q = point.denominator;
+			if (point.profile == KProfile.LONG_DECIMAL) {
+				long gcd = KNumRegister.gcd (p, q);
+				p /= gcd;
+				q /= gcd;
+			}
+
+			int pointBits = 65 - Long.numberOfLeadingZeros (Math.abs (p) | q);
+			if (coefficientBits + (long) degree * pointBits <= LONG_BITS) {
+				evaluateLong (result, p, q);
+				return;
+			}
+			if (evaluateChecked (result, p, q)) {
+				return;
+			}
+		}
+
+		point.setBigIntegers ();
+		evaluateBig (result, point.bigNumerator, point.bigDenominator);
+	}
+
+	/**
+	 * Evaluate at several points.
+	 *
+	 * @param results overwritten with the values.
+	 * @param points the points.
+	 * @throws IllegalArgumentException arrays have different lengths.
+	 */
+	public void evaluate (
+		KNumRegister[] results,
+		KNumRegister[] points) {
+
+		if (results.length != points.length) {
+			throw new IllegalArgumentException (ERR_MSG_LENGTHS);
+		}
+
+		for (int i = 0; i < points.length; i++) {
+			evaluate (results[i], points[i]);
+		}
+	}
+
+	/**
+	 * Evaluate at several points.
+	 *
+	 * @param results overwritten with the values.
+	 * @param points the points.
+	 * @throws IllegalArgumentException columns have different lengths.
+	 */
+	public void evaluate (
+		KNumColumn results,
+		KNumColumn points) {
+
+		if (results.length () != points.length ()) {
+			throw new IllegalArgumentException (ERR_MSG_LENGTHS);
+		}
+
+		KNumRegister point = new KNumRegister ();
+		KNumRegister result = new KNumRegister ();
+		for (int i = 0; i < points.length (); i++) {
+			points.get (i, point);
+			evaluate (result, point);
+			results.set (i, result);
+		}
+	}
+
+	/**
+	 * Evaluate with {@code long} arithmetic
+	 * (no overflow: bound checked by caller).
+	 */
+	private void evaluateLong (
+		KNumRegister result,
+		long p,
+		long q) {
+
+		long s = coefficients[degree];
+		if (q == 1) {
+			for (int i = degree - 1; i >= 0; i--) {
+				s = s * p + coefficients[i];
+			}
+		} else {
+			long qPower = 1;
+			for (int i = degree - 1; i >= 0; i--) {
+				qPower *= q;
+				s = s * p + coefficients[i] * qPower;
+			}
+		}
+
+		setResult (result, s, q);
+	}
+
+	/**
+	 * Evaluate with {@code long} arithmetic, checking each step.
+	 *
+	 * @return {@code false} on overflow ({@code result} not set).
+	 */
+	private boolean evaluateChecked (
+		KNumRegister result,
+		long p,
+		long q) {
+
+		long s = coefficients[degree];
+		long qPower = 1;
+		for (int i = degree - 1; i >= 0; i--) {
+			long high = Math.multiplyHigh (qPower, q);
+			qPower *= q;
+			if (high != 0 || qPower < 0) {
+				return false;
+			}
+
+			long product = s * p;
+			if (Math.multiplyHigh (s, p) != (product >> 63)) {
+				return false;
+			}
+			long term = coefficients[i] * qPower;
+			if (Math.multiplyHigh (coefficients[i], qPower) != (term >> 63)) {
+				return false;
+			}
+			s = product + term;
+			if (((product ^ s) & (term ^ s)) < 0 || s == Long.MIN_VALUE) {
+				return false;
+			}
+		}
+
+		setResult (result, s, q);
+		return true;
+	}
+
+	/**
+	 * Set {@code result} to {@code s / (denominator q^d)}.
+	 */
+	private void setResult (
+		KNumRegister result,
+		long s,
+		long q) {
+
+		if (denominator.profile > KProfile.BIG_INTEGER) {
+			long d = denominator.numerator;
+			int i = q == 1 ? degree : 0;
+			for (; i < degree; i++) {
+				long high = Math.multiplyHigh (d, q);
+				d *= q;
+				if (high != 0 || d < 0) {
+					break;
+				}
+			}
+			if (i == degree) {
+				result.setValue (s, d);
+				return;
+			}
+		}
+
+		result.setValue (
+			BigInteger.valueOf (s),
+			bigDenominator.multiply (BigInteger.valueOf (q).pow (degree))
+		);
+	}
+
+	/**
+	 * Evaluate with {@code BigInteger} arithmetic.
+	 */
+	private void evaluateBig (
+		KNumRegister result,
+		BigInteger p,
+		BigInteger q) {
+
+		BigInteger s = bigCoefficients[degree];
+		BigInteger qPower = BigInteger.ONE;
+		for (int i = degree - 1; i >= 0; i--) {
+			qPower = qPower.multiply (q);
+			s = s.multiply (p).add (bigCoefficients[i].multiply (qPower));
+		}
+		result.setValue (s, bigDenominator.multiply (qPower));
+	}
+
+	/**
+	 * Copy value, converting decimals to reduced fractions.
+	 */
+	private static void reduced (
+		KNumRegister value,
+		KNumRegister result) {
+
+		result.copy (value);
+		if (result.profile == KProfile.LONG_DECIMAL) {
+			result.setValue (result.numerator, result.denominator);
+		}
+	}
+
+}
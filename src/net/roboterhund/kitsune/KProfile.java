@@ -78,6 +78,19 @@ abstract class KProfile {
 	 */
 	static final int INT_INTEGER = 5;
 
+	/**
+	 * Number profile:
+	 * decimal
+	 * stored in long,
+	 * with denominator {@code 10^scale}.
+	 * <p>
+	 * The fraction is not necessarily reduced,
+	 * and its value may be integer (like {@code 1.00}).
+	 *
+	 * @see KNumRegister#scale
+	 */
+	static final int LONG_DECIMAL = 6;
+
 	/* */
 
 	// calculator routes
@@ -151,6 +164,33 @@ abstract class KProfile {
 	 */
 	static final int _INT__INT_ = 9;
 
+	/**
+	 * Calculator route:
+	 * decimal operands,
+	 * check long overflow before each step.
+	 * <p>
+	 * If not handled, same as {@link #_LONG_RAT_}.
+	 */
+	static final int _DEC__DEC_ = 10;
+
+	/**
+	 * Calculator route:
+	 * operand 1 integer, operand 2 decimal,
+	 * check long overflow before each step.
+	 * <p>
+	 * If not handled, same as {@link #_LONG_INT1}.
+	 */
+	static final int _DEC__INT1 = 11;
+
+	/**
+	 * Calculator route:
+	 * operand 1 decimal, operand 2 integer,
+	 * check long overflow before each step.
+	 * <p>
+	 * If not handled, same as {@link #_LONG_INT2}.
+	 */
+	static final int _DEC__INT2 = 12;
+
 	/* */
 
 	/**
@@ -172,19 +212,21 @@ abstract class KProfile {
 	static final int[][] route = {
 		// columns: operand 2
 		// rows: operand 1
-		// big rat.   big int.  long rat.  long int.   int rat.   int int.
+		// big rat.   big int.  long rat.  long int.   int rat.   int int.   long dec.
 		// big rat.
-		{_BIG__RAT_, _BIG__INT2, _BIG__RAT_, _BIG__INT2, _BIG__RAT_, _BIG__INT2},
+		{_BIG__RAT_, _BIG__INT2, _BIG__RAT_, _BIG__INT2, _BIG__RAT_, _BIG__INT2, _BIG__RAT_},
 		// big int.
-		{_BIG__INT1, _BIG__INT_, _BIG__INT1, _BIG__INT_, _BIG__INT1, _BIG__INT_},
+		{_BIG__INT1, _BIG__INT_, _BIG__INT1, _BIG__INT_, _BIG__INT1, _BIG__INT_, _BIG__INT1},
 		// long rat.
-		{_BIG__RAT_, _BIG__INT2, _LONG_RAT_, _LONG_INT2, _LONG_RAT_, _LONG_INT2},
+		{_BIG__RAT_, _BIG__INT2, _LONG_RAT_, _LONG_INT2, _LONG_RAT_, _LONG_INT2, _LONG_RAT_},
 		// long int.
-		{_BIG__INT1, _BIG__INT_, _LONG_INT1, _LONG_INT_, _LONG_INT1, _LONG_INT_},
+		{_BIG__INT1, _BIG__INT_, _LONG_INT1, _LONG_INT_, _LONG_INT1, _LONG_INT_, _DEC__INT1},
 		// int rat.
-		{_BIG__RAT_, _BIG__INT2, _LONG_RAT_, _LONG_INT2, _INT__RAT_, _INT__RAT_},
+		{_BIG__RAT_, _BIG__INT2, _LONG_RAT_, _LONG_INT2, _INT__RAT_, _INT__RAT_, _LONG_RAT_},
 		// int int.
-		{_BIG__INT1, _BIG__INT_, _LONG_INT1, _LONG_INT_, _INT__RAT_, _INT__INT_}
+		{_BIG__INT1, _BIG__INT_, _LONG_INT1, _LONG_INT_, _INT__RAT_, _INT__INT_, _DEC__INT1},
+		// long dec.
+		{_BIG__RAT_, _BIG__INT2, _LONG_RAT_, _DEC__INT2, _LONG_RAT_, _DEC__INT2, _DEC__DEC_}
 	};
 
 }
@@ -0,0 +1,596 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import java.util.Arrays;
+
+/**
+ * Sort, partial sort and selection of rational numbers,
+ * in ascending order.
+ * <p>
+ * Works with arrays of {@link KNumRegister}
+ * and with {@link KNumColumn} instances.
+ * <p>
+ * Sorting is done in three steps:
+ * <ol>
+ * <li>A {@code double} approximation of each number is computed.</li>
+ * <li>The approximations are radix-sorted on their bits.</li>
+ * <li>Runs of approximations that are too close
+ * to guarantee the order are sorted again,
+ * using exact comparison.</li>
+ * </ol>
+ * Exact comparisons (which may allocate objects for big numbers)
+ * are only needed for equal or almost equal values.
+ * <p>
+ * The sorter keeps its work arrays between calls,
+ * to avoid allocating them again.
+ * It is not thread-safe.
+ */
+public class KSorter {
+
+	/**
+	 * Below this number of elements,
+	 * merge sort is used instead of radix sort.
+	 */
+	private static final int RADIX_THRESHOLD = 64;
+
+	/**
+	 * Relative distance below which two approximations
+	 * do not determine the order of the exact values
+	 * (twice the error bound of each approximation).
+	 */
+	private static final double NEAR = 2 * CCompare.APPROX_ERROR;
+
+	/**
+	 * Magnitude below which approximations lose relative precision.
+	 */
+	private static final double TINY = 0x1p-960;
+
+	/**
+	 * Calculator used for exact comparisons.
+	 */
+	private final KCalculator calc;
+
+	/**
+	 * Approximation of each element.
+	 */
+	private double[] keys = new double[0];
+
+	/**
+	 * Sortable bits of each approximation.
+	 */
+	private long[] bits = new long[0];
+
+	/**
+	 * Radix sort buffer.
+	 */
+	private long[] bitsBuffer = new long[0];
+
+	/**
+	 * Element positions, relative to {@link #from},
+	 * in current order.
+	 */
+	private int[] order = new int[0];
+
+	/**
+	 * Sort buffer.
+	 */
+	private int[] orderBuffer = new int[0];
+
+	/**
+	 * Array being sorted, if any.
+	 */
+	private KNumRegister[] array;
+
+	/**
+	 * Column being sorted, if any.
+	 */
+	private KNumColumn column;
+
+	/**
+	 * Start of range being sorted.
+	 */
+	private int from;
+
+	/**
+	 * Registers to compare column elements.
+	 */
+	private final KNumRegister scratch_1 = new KNumRegister ();
+	private final KNumRegister scratch_2 = new KNumRegister ();
+
+	/**
+	 * Get new sorter.
+	 *
+	 * @param calc calculator used for exact comparisons.
+	 */
+	public KSorter (KCalculator calc) {
+		this.calc = calc;
+	}
+
+	/**
+	 * Sort array.
+	 *
+	 * @param array the numbers.
+	 */
+	public void sort (KNumRegister[] array) {
+		sort (array, 0, array.length);
+	}
+
+	/**
+	 * Sort range of array.
+	 *
+	 * @param array the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 */
+	public void sort (
+		KNumRegister[] array,
+		int from,
+		int to) {
+
+		begin (array, null, from, to);
+		sortAll (to - from);
+		end (to - from);
+	}
+
+	/**
+	 * Sort column.
+	 *
+	 * @param column the numbers.
+	 */
+	public void sort (KNumColumn column) {
+		sort (column, 0, column.length);
+	}
+
+	/**
+	 * Sort range of column.
+	 *
+	 * @param column the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 */
+	public void sort (
+		KNumColumn column,
+		int from,
+		int to) {
+
+		begin (null, column, from, to);
+		sortAll (to - from);
+		end (to - from);
+	}
+
+	/**
+	 * Move the smallest numbers of a range, in order,
+	 * to the start of the range.
+	 * <p>
+	 * The order of the rest of the range is undefined.
+	 *
+	 * @param array the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 * @param count number of smallest numbers to sort.
+	 */
+	public void partialSort (
+		KNumRegister[] array,
+		int from,
+		int to,
+		int count) {
+
+		begin (array, null, from, to);
+		partialSortAll (to - from, count);
+		end (to - from);
+	}
+
+	/**
+	 * Move the smallest numbers of a range, in order,
+	 * to the start of the range.
+	 * <p>
+	 * The order of the rest of the range is undefined.
+	 *
+	 * @param column the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 * @param count number of smallest numbers to sort.
+	 */
+	public void partialSort (
+		KNumColumn column,
+		int from,
+		int to,
+		int count) {
+
+		begin (null, column, from, to);
+		partialSortAll (to - from, count);
+		end (to - from);
+	}
+
+	/**
+	 * Move the number that belongs at {@code index}
+	 * in sorted order to that position.
+	 * <p>
+	 * After the call, no number before {@code index} is greater,
+	 * and no number after {@code index} is smaller.
+	 *
+	 * @param array the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 * @param index position to select, between {@code from}
+	 * (inclusive) and {@code to} (exclusive).
+	 */
+	public void select (
+		KNumRegister[] array,
+		int from,
+		int to,
+		int index) {
+
+		begin (array, null, from, to);
+		select (0, to - from, index - from);
+		end (to - from);
+	}
+
+	/**
+	 * Move the number that belongs at {@code index}
+	 * in sorted order to that position.
+	 * <p>
+	 * After the call, no number before {@code index} is greater,
+	 * and no number after {@code index} is smaller.
+	 *
+	 * @param column the numbers.
+	 * @param from first position (inclusive).
+	 * @param to last position (exclusive).
+	 * @param index position to select, between {@code from}
+	 * (inclusive) and {@code to} (exclusive).
+	 */
+	public void select (
+		KNumColumn column,
+		int from,
+		int to,
+		int index) {
+
+		begin (null, column, from, to);
+		select (0, to - from, index - from);
+		end (to - from);
+	}
+
+	/**
+	 * Prepare work arrays and compute approximations.
+	 */
+	private void begin (
+		KNumRegister[] array,
+		KNumColumn column,
+		int from,
+		int to) {
+
+		int count = to - from;
+		if (from < 0 || count < 0
+			|| to > (array != null ? array.length : column.length)) {
+			throw new IndexOutOfBoundsException (
+				"Range: [" + from + ", " + to + ").");
+		}
+
+		this.array = array;
+		this.column = column;
+		this.from = from;
+
+		if (keys.length < count) {
+			keys = new double[count];
+			bits = new long[count];
+			bitsBuffer = new long[count];
+			order = new int[count];
+			orderBuffer = new int[count];
+		}
+
+		for (int i = 0; i < count; i++) {
+			double key = array != null ?
+				CCompare.approximate (array[from + i]) :
+				column.approximate (from + i);
+			keys[i] = key;
+			order[i] = i;
+		}
+	}
+
+	/**
+	 * Apply order in place and release references.
+	 */
+	private void end (int count) {
+		if (array != null) {
+			// follow the cycles of the permutation,
+			// marking visited positions in the order buffer
+			Arrays.fill (orderBuffer, 0, count, 0);
+			for (int start = 0; start < count; start++) {
+				if (orderBuffer[start] != 0 || order[start] == start) {
+					continue;
+				}
+				KNumRegister first = array[from + start];
+				int i = start;
+				while (true) {
+					orderBuffer[i] = 1;
+					int next = order[i];
+					if (next == start) {
+						break;
+					}
+					array[from + i] = array[from + next];
+					i = next;
+				}
+				array[from + i] = first;
+			}
+
+		} else {
+			column.permute (from, order, orderBuffer, count);
+		}
+
+		array = null;
+		column = null;
+	}
+
+	/**
+	 * Sort all elements.
+	 */
+	private void sortAll (int count) {
+		if (count < RADIX_THRESHOLD) {
+			mergeSort (0, count);
+			return;
+		}
+
+		radixSort (count);
+
+		// sort runs of approximations too close to each other
+		int start = 0;
+		for (int i = 1; i <= count; i++) {
+			if (i == count || !near (keys[order[i - 1]], keys[order[i]])) {
+				if (i - start > 1) {
+					mergeSort (start, i);
+				}
+				start = i;
+			}
+		}
+	}
+
+	/**
+	 * Sort the smallest elements.
+	 */
+	private void partialSortAll (
+		int count,
+		int sorted) {
+
+		if (sorted < 0 || sorted > count) {
+			throw new IndexOutOfBoundsException (
+				"Count: " + sorted + ".");
+		}
+
+		if (sorted < count) {
+			select (0, count, sorted);
+		}
+		mergeSort (0, sorted);
+	}
+
+	/**
+	 * Radix sort by approximation.
+	 */
+	private void radixSort (int count) {
+		for (int i = 0; i < count; i++) {
+			// + 0.0 turns -0.0 into 0.0
+			long keyBits = Double.doubleToLongBits (keys[i] + 0.0);
+			// unsigned order of bits = numeric order
+			bits[i] = keyBits ^ ((keyBits >> 63) | Long.MIN_VALUE);
+		}
+
+		int[] counts = new int[256];
+		for (int shift = 0; shift < Long.SIZE; shift += 8) {
+			Arrays.fill (counts, 0);
+			for (int i = 0; i < count; i++) {
+				counts[(int) (bits[i] >>> shift) & 0xFF]++;
+			}
+			if (counts[(int) (bits[0] >>> shift) & 0xFF] == count) {
+				// same digit in all elements
+				continue;
+			}
+
+			int position = 0;
+			for (int digit = 0; digit < 256; digit++) {
+				int digitCount = counts[digit];
+				counts[digit] = position;
+				position += digitCount;
+			}
+
+			for (int i = 0; i < count; i++) {
+				int target = counts[(int) (bits[i] >>> shift) & 0xFF]++;
+				bitsBuffer[target] = bits[i];
+				orderBuffer[target] = order[i];
+			}
+
+			long[] swapBits = bits;
+			bits = bitsBuffer;
+			bitsBuffer = swapBits;
+
+			int[] swapOrder = order;
+			order = orderBuffer;
+			orderBuffer = swapOrder;
+		}
+	}
+
+	/**
+	 * Merge sort range of {@link #order}.
+	 */
+	private void mergeSort (
+		int start,
+		int end) {
+
+		if (end - start < 8) {
+			// insertion sort
+			for (int i = start + 1; i < end; i++) {
+				int element = order[i];
+				int j = i - 1;
+				while (j >= start && compare (order[j], element) > 0) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = element;
+			}
+			return;
+		}
+
+		int middle = (start + end) >>> 1;
+		mergeSort (start, middle);
+		mergeSort (middle, end);
+
+		if (compare (order[middle - 1], order[middle]) <= 0) {
+			// already in order
+			return;
+		}
+
+		System.arraycopy (order, start, orderBuffer, start, end - start);
+		int left = start;
+		int right = middle;
+		for (int i = start; i < end; i++) {
+			if (right == end
+				|| left < middle
+				&& compare (orderBuffer[left], orderBuffer[right]) <= 0) {
+				order[i] = orderBuffer[left++];
+			} else {
+				order[i] = orderBuffer[right++];
+			}
+		}
+	}
+
+	/**
+	 * Partition {@link #order} until the element at {@code index}
+	 * is in its sorted position.
+	 */
+	private void select (
+		int start,
+		int end,
+		int index) {
+
+		if (index < start || index >= end) {
+			throw new IndexOutOfBoundsException (
+				"Index: " + (from + index) + ".");
+		}
+
+		while (end - start > 8) {
+			// median of three
+			int middle = (start + end) >>> 1;
+			if (compare (order[middle], order[start]) < 0) {
+				swap (middle, start);
+			}
+			if (compare (order[end - 1], order[start]) < 0) {
+				swap (end - 1, start);
+			}
+			if (compare (order[end - 1], order[middle]) < 0) {
+				swap (end - 1, middle);
+			}
+			int pivot = order[middle];
+
+			// Hoare partition
+			int i = start;
+			int j = end - 1;
+			while (i <= j) {
+				while (compare (order[i], pivot) < 0) {
+					i++;
+				}
+				while (compare (order[j], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap (i, j);
+					i++;
+					j--;
+				}
+			}
+
+			if (index <= j) {
+				end = j + 1;
+			} else if (index >= i) {
+				start = i;
+			} else {
+				// between partitions: equal to pivot
+				return;
+			}
+		}
+
+		mergeSort (start, end);
+	}
+
+	/**
+	 * Swap elements of {@link #order}.
+	 */
+	private void swap (
+		int i,
+		int j) {
+
+		int element = order[i];
+		order[i] = order[j];
+		order[j] = element;
+	}
+
+	/**
+	 * Compare elements, given their relative positions.
+	 * <p>
+	 * The approximations are used if they determine the order.
+	 * Otherwise, the exact values are compared.
+	 */
+	private long compare (
+		int element_1,
+		int element_2) {
+
+		double key_1 = keys[element_1];
+		double key_2 = keys[element_2];
+
+		if (key_1 < key_2) {
+			if (!near (key_1, key_2)) {
+				return -1;
+			}
+		} else if (key_1 > key_2) {
+			if (!near (key_2, key_1)) {
+				return 1;
+			}
+		}
+
+		if (array != null) {
+			return CCompare.compare (
+				calc,
+				array[from + element_1],
+				array[from + element_2]
+			);
+		}
+
+		column.get (from + element_1, scratch_1);
+		column.get (from + element_2, scratch_2);
+		return CCompare.compare (calc, scratch_1, scratch_2);
+	}
+
+	/**
+	 * Check whether two approximations are too close
+	 * to determine the order of the exact values.
+	 *
+	 * @param key_1 smaller approximation.
+	 * @param key_2 larger approximation.
+	 */
+	private static boolean near (
+		double key_1,
+		double key_2) {
+
+		if (key_1 == key_2) {
+			return true;
+		}
+
+		double magnitude = Math.max (Math.abs (key_1), Math.abs (key_2));
+
+		// infinite magnitude: true for any difference
+		return key_2 - key_1 <= NEAR * magnitude
+			|| magnitude < TINY;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CGcdTest {
+
+	@Test
+	public void testReduce () throws Exception {
+		Random random = new Random (37);
+
+		// around the thresholds
+		int[] sizes = {
+			64,
+			CGcd.LEHMER_THRESHOLD - 1,
+			CGcd.LEHMER_THRESHOLD,
+			1000,
+			10000,
+			CGcd.HALF_GCD_THRESHOLD + 1000
+		};
+
+		for (int size : sizes) {
+			int count = size > 20000 ? 2 : 30;
+			for (int i = 0; i < count; i++) {
+				BigInteger gcd = new BigInteger (
+					random.nextInt (size / 2) + 1, random).add (BigInteger.ONE);
+				BigInteger a = new BigInteger (size, random).multiply (gcd);
+				BigInteger b;
+				switch (i % 4) {
+				case 0:
+					// close values
+					b = a.add (gcd);
+					break;
+				case 1:
+					// multiple
+					b = a.multiply (BigInteger.valueOf (3));
+					break;
+				case 2:
+					// unbalanced
+					b = new BigInteger (size / 3 + 1, random).multiply (gcd);
+					break;
+				default:
+					b = new BigInteger (size, random).multiply (gcd);
+					break;
+				}
+				if (random.nextBoolean ()) {
+					a = a.negate ();
+				}
+
+				assertReduced (a, b);
+				assertReduced (b, a);
+			}
+		}
+	}
+
+	@Test
+	public void testSetValue () throws Exception {
+		BigInteger three = BigInteger.valueOf (3);
+		BigInteger seven = BigInteger.valueOf (7);
+
+		// 3^1000 / (3^990 * 7) = 3^10 / 7
+		KNumRegister register = new KNumRegister ();
+		register.setValue (
+			three.pow (1000),
+			three.pow (990).multiply (seven).negate ()
+		);
+		assertEquals (KProfile.INT_RATIONAL, register.profile);
+		assertEquals (-59049, register.numerator);
+		assertEquals (7, register.denominator);
+
+		// coprime
+		register.setValue (three.pow (2000), seven.pow (1000));
+		assertEquals (KProfile.BIG_RATIONAL, register.profile);
+		assertEquals (three.pow (2000), register.bigNumerator);
+		assertEquals (seven.pow (1000), register.bigDenominator);
+	}
+
+	// compare with BigInteger.gcd
+	private static void assertReduced (BigInteger a, BigInteger b) {
+		BigInteger gcd = a.gcd (b);
+		BigInteger[] reduced = CGcd.reduce (a, b);
+		assertEquals (a.divide (gcd), reduced[0]);
+		assertEquals (b.divide (gcd), reduced[1]);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.util.Random;
+
+import static net.roboterhund.kitsune.CommonTest.out;
+import static org.junit.Assert.assertEquals;
+
+// time CGcd against BigInteger.gcd and two divisions
+public class CGcdTest_random {
+
+	// operand sizes, in bits
+	// the last one uses half-gcd
+	private static final int[] SIZES = {
+		1000,
+		10000,
+		100000,
+		CGcd.HALF_GCD_THRESHOLD + 50000
+	};
+
+	// fractions per size
+	private static final int[] COUNTS = {
+		4000,
+		400,
+		10,
+		3
+	};
+
+	// rounds per size, the first ones are warm-up
+	private static final int ROUNDS = 5;
+
+	@Test
+	public void testTiming () {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean ();
+		Random random = new Random ();
+
+		out.printf ("%10s %8s %12s %12s %8s\n",
+			"bits", "factor", "reduce us", "gcd us", "ratio");
+
+		for (int t = 0; t < SIZES.length * 2; t++) {
+			int s = t / 2;
+			// without common factor, random operands are mostly coprime
+			boolean commonFactor = t % 2 == 1;
+			int size = SIZES[s];
+			int count = COUNTS[s];
+
+			BigInteger[] numerators = new BigInteger[count];
+			BigInteger[] denominators = new BigInteger[count];
+			for (int i = 0; i < count; i++) {
+				// random common factor, up to a quarter of the size
+				BigInteger factor = !commonFactor ? BigInteger.ONE
+					: new BigInteger (
+						random.nextInt (size / 4) + 1, random).add (BigInteger.ONE);
+				int bits = size - factor.bitLength ();
+				numerators[i] = new BigInteger (bits, random).multiply (factor);
+				denominators[i] = new BigInteger (bits, random)
+					.add (BigInteger.ONE).multiply (factor);
+			}
+
+			long reduceTime = 0;
+			long gcdTime = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				BigInteger[][] reduced = new BigInteger[count][];
+				BigInteger[][] divided = new BigInteger[count][2];
+
+				long start = threadMXBean.getCurrentThreadCpuTime ();
+				for (int i = 0; i < count; i++) {
+					reduced[i] = CGcd.reduce (numerators[i], denominators[i]);
+				}
+				long middle = threadMXBean.getCurrentThreadCpuTime ();
+				for (int i = 0; i < count; i++) {
+					BigInteger gcd = numerators[i].gcd (denominators[i]);
+					divided[i][0] = numerators[i].divide (gcd);
+					divided[i][1] = denominators[i].divide (gcd);
+				}
+				long end = threadMXBean.getCurrentThreadCpuTime ();
+
+				for (int i = 0; i < count; i++) {
+					assertEquals (divided[i][0], reduced[i][0]);
+					assertEquals (divided[i][1], reduced[i][1]);
+				}
+
+				if (round == ROUNDS - 1) {
+					reduceTime = middle - start;
+					gcdTime = end - middle;
+				}
+			}
+
+			out.printf ("%10d %8s %12.1f %12.1f %8.2f\n",
+				size,
+				commonFactor ? "yes" : "no",
+				reduceTime / 1000.0 / count,
+				gcdTime / 1000.0 / count,
+				(double) gcdTime / reduceTime);
+		}
+	}
+
+}
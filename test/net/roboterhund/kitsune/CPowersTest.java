@@ -0,0 +1,100 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CPowersTest {
+
+	@Test
+	public void testLongPower () throws Exception {
+		for (int base = 2; base <= CPowers.MAX_BASE; base++) {
+			BigInteger bigBase = BigInteger.valueOf (base);
+			int maxExponent = CPowers.maxLongExponent (base);
+
+			for (int exponent = 0; exponent <= maxExponent; exponent++) {
+				assertEquals (
+					bigBase.pow (exponent).longValue (),
+					CPowers.longPower (base, exponent)
+				);
+			}
+			// next power does not fit
+			assertTrue (
+				bigBase.pow (maxExponent + 1).bitLength () >= Long.SIZE
+			);
+		}
+
+		assertEquals (KConverter.MAX_DECIMALS + 1, CPowers.TENS.length);
+	}
+
+	@Test
+	public void testBigPower () throws Exception {
+		for (int base = 2; base <= CPowers.MAX_BASE; base++) {
+			BigInteger bigBase = BigInteger.valueOf (base);
+
+			// grows table in several steps
+			for (int exponent : new int[] {0, 5, 70, 71, 300, 1024, 1025, 2000}) {
+				assertEquals (
+					bigBase.pow (exponent),
+					CPowers.bigPower (base, exponent)
+				);
+			}
+			for (int exponent = 0; exponent <= 200; exponent++) {
+				assertEquals (
+					bigBase.pow (exponent),
+					CPowers.bigPower (base, exponent)
+				);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentGrowth () throws Exception {
+		final AtomicInteger errors = new AtomicInteger ();
+
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread (new Runnable () {
+				@Override
+				public void run () {
+					// large exponents first: each thread grows the table
+					for (int exponent = 1000; exponent >= 0; exponent -= 1 + offset) {
+						if (!BigInteger.valueOf (13).pow (exponent).equals (
+							CPowers.bigPower (13, exponent))) {
+							errors.incrementAndGet ();
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start ();
+		}
+		for (Thread thread : threads) {
+			thread.join ();
+		}
+
+		assertEquals (0, errors.get ());
+	}
+
+}
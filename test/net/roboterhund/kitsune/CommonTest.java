@@ -17,6 +17,8 @@ package net.roboterhund.kitsune;
 
 import java.io.PrintStream;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -51,6 +53,64 @@ public abstract class CommonTest {
 		assertEquals ("denominator", denominator, testedNumber.denominator);
 	}
 
+	// check profile and value of number
+	// (and internal values, if compact)
+	public static void assertRegisterEquals (
+		KNumRegister expected,
+		KNumRegister actual) {
+
+		assertEquals (expected, actual);
+		assertEquals ("profile", expected.profile, actual.profile);
+		if (expected.profile > KProfile.BIG_INTEGER) {
+			assertEquals ("numerator", expected.numerator, actual.numerator);
+			assertEquals ("denominator", expected.denominator, actual.denominator);
+		}
+		if (expected.profile == KProfile.LONG_DECIMAL) {
+			assertEquals ("scale", expected.scale, actual.scale);
+		}
+	}
+
+	// random values, cycling through all profiles
+	public static KNumRegister[] randomNumbers (
+		Random random,
+		int count) {
+
+		KNumRegister[] numbers = new KNumRegister[count];
+		for (int i = 0; i < count; i++) {
+			KNumRegister number = new KNumRegister ();
+			switch (i % 6) {
+			case 0:
+				number.setValue (random.nextInt ());
+				break;
+
+			case 1:
+				number.setValue (random.nextLong (), random.nextLong ());
+				break;
+
+			case 2:
+				number.setDecimal (random.nextLong (), 1 + random.nextInt (18));
+				break;
+
+			case 3:
+				number.setValue (new BigInteger (100, random).negate ());
+				break;
+
+			case 4:
+				number.setValue (
+					new BigInteger (90, random),
+					new BigInteger (80, random).add (BigInteger.ONE)
+				);
+				break;
+
+			default:
+				number.setValue (random.nextInt (), 1 + random.nextInt (1000));
+				break;
+			}
+			numbers[i] = number;
+		}
+		return numbers;
+	}
+
 	public static void validate (BigDecimal expected, KNumRegister number) {
 		// TODO deal with the BigDecimal.stripTrailingZeros () bug in other places
 		expected = stripTrailingZeros (expected);
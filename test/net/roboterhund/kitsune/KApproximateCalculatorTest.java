@@ -0,0 +1,102 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KApproximateCalculatorTest {
+
+	@Test
+	public void testBound () throws Exception {
+		KApproximateCalculator calculator =
+			new KApproximateCalculator (new KNumRegisterPool (), 8, 8);
+		KNumRegister result = new KNumRegister ();
+		KNumRegister error = new KNumRegister ();
+
+		// fits: exact
+		calculator.add (
+			result,
+			new KNumRegister (1, 3),
+			new KNumRegister (1, 5)
+		);
+		assertEquals (new KNumRegister (8, 15), result);
+		calculator.getError (error);
+		assertEquals (0, CCompare.getSign (error));
+
+		// 1/255 + 1/254 == 509/64770
+		// 1/127 and 2/255 equally close: smallest denominator
+		calculator.add (
+			result,
+			new KNumRegister (1, 255),
+			new KNumRegister (1, 254)
+		);
+		assertEquals (new KNumRegister (1, 127), result);
+		calculator.getError (error);
+		assertEquals (new KNumRegister (1, 64770), error);
+
+		// saturated numerator
+		calculator.multiply (
+			result,
+			new KNumRegister (100),
+			new KNumRegister (3)
+		);
+		assertEquals (new KNumRegister (255), result);
+
+		calculator.resetError ();
+		calculator.getError (error);
+		assertEquals (0, CCompare.getSign (error));
+	}
+
+	@Test
+	public void testIterate () throws Exception {
+		// logistic map: x = 3.7 * x * (1 - x)
+		KApproximateCalculator approximate =
+			new KApproximateCalculator (new KNumRegisterPool (), 31, 31);
+		KCalculator exact = new KCalculator (new KNumRegisterPool ());
+
+		KNumRegister r = new KNumRegister (37, 10);
+		KNumRegister one = new KNumRegister (1);
+		KNumRegister x_a = new KNumRegister (1, 3);
+		KNumRegister x_e = new KNumRegister (1, 3);
+		KNumRegister temp = new KNumRegister ();
+
+		for (int i = 0; i < 10; i++) {
+			approximate.subtract (temp, one, x_a);
+			approximate.multiply (temp, temp, x_a);
+			approximate.multiply (x_a, temp, r);
+			assertTrue (x_a.profile > KProfile.BIG_INTEGER);
+
+			exact.subtract (temp, one, x_e);
+			exact.multiply (temp, temp, x_e);
+			exact.multiply (x_e, temp, r);
+		}
+		assertEquals (KProfile.BIG_RATIONAL, x_e.profile);
+
+		KNumRegister error = new KNumRegister ();
+		approximate.getError (error);
+		assertTrue (CCompare.getSign (error) > 0);
+		assertTrue (error.profile > KProfile.BIG_INTEGER);
+
+		exact.subtract (temp, x_a, x_e);
+		exact.abs (temp, temp);
+		// small, although errors propagate
+		assertTrue (CCompare.approximate (temp) < 1e-6);
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class KBinaryCodecTest {
+
+	KConverter converter = CommonTest.converter;
+
+	@Test
+	public void testRoundTrip () throws Exception {
+		KNumRegister[] numbers = testNumbers ();
+
+		// all values in one stream
+		int size = 0;
+		for (KNumRegister number : numbers) {
+			size += KBinaryCodec.encodedSize (number);
+		}
+		byte[] array = new byte[size];
+		ByteBuffer buffer = ByteBuffer.allocateDirect (size);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		DataOutputStream output = new DataOutputStream (bytes);
+
+		int offset = 0;
+		for (KNumRegister number : numbers) {
+			int next = KBinaryCodec.encode (number, array, offset);
+			assertEquals (KBinaryCodec.encodedSize (number), next - offset);
+			assertArrayEquals (
+				KBinaryCodec.encode (number),
+				Arrays.copyOfRange (array, offset, next)
+			);
+			offset = next;
+
+			KBinaryCodec.encode (number, buffer);
+			KBinaryCodec.encode (number, output);
+		}
+		assertEquals (size, offset);
+		assertEquals (size, buffer.position ());
+		assertArrayEquals (array, bytes.toByteArray ());
+
+		buffer.flip ();
+		DataInputStream input = new DataInputStream (
+			new ByteArrayInputStream (array));
+		KNumRegister decoded = new KNumRegister ();
+
+		offset = 0;
+		for (KNumRegister number : numbers) {
+			offset = KBinaryCodec.decode (decoded, array, offset);
+			assertDecoded (number, decoded);
+
+			KBinaryCodec.decode (decoded, buffer);
+			assertDecoded (number, decoded);
+
+			KBinaryCodec.decode (decoded, input);
+			assertDecoded (number, decoded);
+		}
+		assertEquals (size, offset);
+		assertEquals (0, buffer.remaining ());
+	}
+
+	@Test
+	public void testSize () throws Exception {
+		KNumRegister number = new KNumRegister ();
+
+		// tag and one byte
+		number.setValue (-64);
+		assertEquals (2, KBinaryCodec.encodedSize (number));
+		number.setValue (64);
+		assertEquals (3, KBinaryCodec.encodedSize (number));
+
+		// 1/3: tag, numerator, denominator
+		number.setValue (1, 3);
+		assertEquals (3, KBinaryCodec.encodedSize (number));
+
+		// 1.5: tag, unscaled value, scale
+		converter.fromDecimal (number, "1.5");
+		assertEquals (3, KBinaryCodec.encodedSize (number));
+
+		number.setValue (Long.MAX_VALUE, Long.MAX_VALUE - 1);
+		assertEquals (
+			KBinaryCodec.MAX_COMPACT_SIZE,
+			KBinaryCodec.encodedSize (number)
+		);
+	}
+
+	@Test
+	public void testInvalid () throws Exception {
+		KNumRegister result = new KNumRegister ();
+
+		assertInvalid (new byte[] {7, 0}, KBinaryCodec.ERR_MSG_INVALID_TAG);
+		assertInvalid (new byte[] {-1, 0}, KBinaryCodec.ERR_MSG_INVALID_TAG);
+
+		// overlong
+		assertInvalid (
+			new byte[] {KProfile.INT_INTEGER, (byte) 0x81, 0},
+			KBinaryCodec.ERR_MSG_INVALID_VARINT
+		);
+		// more than 64 bits
+		byte[] tooLong = new byte[12];
+		Arrays.fill (tooLong, (byte) 0xFF);
+		tooLong[0] = KProfile.LONG_INTEGER;
+		tooLong[10] = 0x02;
+		assertInvalid (tooLong, KBinaryCodec.ERR_MSG_INVALID_VARINT);
+
+		// denominator 1
+		assertInvalid (
+			new byte[] {KProfile.INT_RATIONAL, 2, 1},
+			KBinaryCodec.ERR_MSG_INVALID_FRACTION
+		);
+		// big length beyond end
+		assertInvalid (
+			new byte[] {KProfile.BIG_INTEGER, 10, 1},
+			KBinaryCodec.ERR_MSG_INVALID_LENGTH
+		);
+
+		// truncated
+		try {
+			KBinaryCodec.decode (
+				result,
+				ByteBuffer.wrap (new byte[] {KProfile.INT_RATIONAL, 2}));
+			fail ("truncated");
+		} catch (java.nio.BufferUnderflowException e) {
+			// expected
+		}
+	}
+
+	// decoded value and profile
+	private static void assertDecoded (
+		KNumRegister expected,
+		KNumRegister decoded) {
+
+		assertEquals (expected, decoded);
+		assertEquals (expected.profile, decoded.profile);
+		if (expected.profile == KProfile.LONG_DECIMAL) {
+			assertEquals (expected.scale, decoded.scale);
+		}
+	}
+
+	// decoding fails with message
+	private static void assertInvalid (
+		byte[] bytes,
+		String message) {
+
+		try {
+			KBinaryCodec.decode (new KNumRegister (), bytes, 0);
+			fail (message);
+		} catch (IllegalArgumentException e) {
+			assertEquals (message, e.getMessage ());
+		}
+	}
+
+	// one or more values of each profile
+	private KNumRegister[] testNumbers () {
+		String[] strings = {
+			"0", "1", "-1", "63", "-64", "2147483647", "-2147483648",
+			"9223372036854775807", "-9223372036854775807",
+			"9223372036854775808", "-9223372036854775808",
+			"-123456789012345678901234567890123456789",
+			"0.5", "-2.25", "1/3", "-7/9223372036854775807",
+			"9223372036854775807/2",
+			"1/9223372036854775808",
+			"-123456789012345678901234567890/7"
+		};
+
+		KNumRegister[] numbers = new KNumRegister[strings.length + 4];
+		for (int i = 0; i < strings.length; i++) {
+			numbers[i] = new KNumRegister ();
+			String[] parts = strings[i].split ("/");
+			if (parts.length == 2) {
+				numbers[i].setValue (
+					new BigInteger (parts[0]),
+					new BigInteger (parts[1])
+				);
+			} else {
+				converter.fromString (numbers[i], strings[i]);
+			}
+		}
+
+		String[] decimals = {"1.50", "-0.000000000000000001", "922337203685477.5807", "-1.0"};
+		for (int i = 0; i < decimals.length; i++) {
+			numbers[strings.length + i] = new KNumRegister ();
+			converter.fromDecimal (numbers[strings.length + i], decimals[i]);
+		}
+		return numbers;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class KCalculatorTest_approximate extends KCalculatorTest {
+
+	@Test
+	public void testLimitDenominator () throws Exception {
+		reset ();
+
+		/* * * * * */
+		converter.fromString (a, "3.14159265358979");
+		calculator.approximate (result, a, 1000);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			355,
+			113,
+			null
+		);
+
+		calculator.approximate (result, a, 100);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			311,
+			99,
+			null
+		);
+
+		calculator.approximate (result, a, 1);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			3,
+			1,
+			null
+		);
+
+		/* * * * * */
+		a.setValue (-1, 3);
+		calculator.approximate (result, a, 2);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			-1,
+			2,
+			null
+		);
+
+		// denominator small enough
+		calculator.approximate (result, a, 3);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			-1,
+			3,
+			null
+		);
+
+		/* * * * * */
+		// big value back to long profile
+		a.setValue (
+			BigInteger.ONE.shiftLeft (100).add (BigInteger.ONE),
+			BigInteger.ONE.shiftLeft (100).multiply (BigInteger.valueOf (3))
+		);
+		assertEquals (KProfile.BIG_RATIONAL, a.profile);
+		calculator.approximate (result, a, 1000000);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			1,
+			3,
+			null
+		);
+	}
+
+	@Test
+	public void testLimitError () throws Exception {
+		reset ();
+
+		/* * * * * */
+		converter.fromString (a, "3.14159265358979");
+		b.setValue (1, 100);
+		calculator.approximate (result, a, b);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			22,
+			7,
+			null
+		);
+
+		b.setValue (1, 1000000);
+		calculator.approximate (result, a, b);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			355,
+			113,
+			null
+		);
+
+		/* * * * * */
+		converter.fromString (a, "-0.333");
+		b.setValue (1, 1000);
+		calculator.approximate (result, a, b);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			-1,
+			3,
+			null
+		);
+
+		// interval contains zero
+		b.setValue (1);
+		calculator.approximate (result, a, b);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			0,
+			1,
+			null
+		);
+
+		// interval contains integer
+		a.setValue (49, 10);
+		b.setValue (1, 10);
+		calculator.approximate (result, a, b);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			5,
+			1,
+			null
+		);
+	}
+
+}
@@ -94,6 +94,119 @@ public class KCalculatorTest_compare extends KCalculatorTest {
 		);
 	}
 
+	@Test
+	public void testCompareLong () throws Exception {
+		reset ();
+
+		String max = String.valueOf (Long.MAX_VALUE);
+		String min = String.valueOf (-Long.MAX_VALUE);
+
+		// difference overflows
+		assertCompareCorrect (max, min);
+
+		// products overflow
+		assertCompareCorrect (
+			"922337203685477580.7",
+			"922337203685477580.6"
+		);
+
+		assertCompareCorrect (
+			"-92233720368547758.07",
+			"-922337203685477580.7"
+		);
+
+		assertCompareCorrect (
+			"92233720368.54775807",
+			"92233720368.54775807"
+		);
+
+		assertCompareCorrect (
+			"922337203685477580.7",
+			"922337203685477580"
+		);
+
+		assertCompareCorrect (
+			"-922337203685477580",
+			"-922337203685477580.7"
+		);
+
+		assertCompareCorrect (
+			max,
+			"9223372036854775.807"
+		);
+
+		a.setValue (Long.MAX_VALUE, Long.MAX_VALUE - 1);
+		b.setValue (Long.MAX_VALUE - 1, Long.MAX_VALUE - 2);
+		assertEquals (-1, compare (a, b));
+		assertEquals (1, compare (b, a));
+		assertEquals (0, compare (a, a));
+	}
+
+	@Test
+	public void testCompareBig () throws Exception {
+		reset ();
+
+		// different magnitude
+		assertCompareCorrect (
+			"123456789012345678901234567890.1",
+			"0.000000000000000000000000000001"
+		);
+
+		assertCompareCorrect (
+			"-123456789012345678901234567890.1",
+			"-0.000000000000000000000000000001"
+		);
+
+		// same magnitude, different value
+		assertCompareCorrect (
+			"123456789012345678901234567890.1",
+			"123456789012345678901234567891.1"
+		);
+
+		assertCompareCorrect (
+			"-123456789012345678901234567890.1",
+			"-223456789012345678901234567890.1"
+		);
+
+		// too close for double approximation
+		assertCompareCorrect (
+			"1.00000000000000000000000000000000000000000000000001",
+			"1.00000000000000000000000000000000000000000000000002"
+		);
+
+		assertCompareCorrect (
+			"-1.00000000000000000000000000000000000000000000000001",
+			"-1.00000000000000000000000000000000000000000000000001"
+		);
+
+		// too large for double
+		StringBuilder digits = new StringBuilder ("1");
+		for (int i = 0; i < 400; i++) {
+			digits.append ("0");
+		}
+		assertCompareCorrect (
+			digits + ".5",
+			digits + ".25"
+		);
+
+		assertCompareCorrect (
+			"-" + digits + ".5",
+			"-0." + digits + "1"
+		);
+
+		assertCompareCorrect (
+			"0." + digits + "1",
+			"0." + digits + "2"
+		);
+
+		// power of 2 boundaries
+		BigInteger power = BigInteger.ONE.shiftLeft (200);
+		assertCompareCorrect (
+			"-" + power,
+			"-" + power.subtract (BigInteger.ONE) + ".5"
+		);
+	}
+
 	// test inversion operations
 	void assertCompareCorrect (String string_1, String string_2) {
 		BigDecimal big_1 = new BigDecimal (string_1);
@@ -0,0 +1,221 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import net.roboterhund.kitsune.KConverter.KConversionStatus;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KCalculatorTest_decimal extends KCalculatorTest {
+
+	@Test
+	public void testDecimal () throws Exception {
+		reset ();
+
+		/* * * * * */
+		// same scale: stays decimal
+		a.setDecimal (125, 2);
+		b.setDecimal (250, 2);
+		calculator.add (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			375,
+			100,
+			new BigDecimal ("3.75")
+		);
+
+		calculator.subtract (result, b, a);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			125,
+			100,
+			new BigDecimal ("1.25")
+		);
+
+		/* * * * * */
+		// different scales: larger scale kept
+		a.setDecimal (15, 1);
+		b.setDecimal (25, 2);
+		calculator.add (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			175,
+			100,
+			new BigDecimal ("1.75")
+		);
+
+		calculator.subtract (result, b, a);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			-125,
+			100,
+			new BigDecimal ("-1.25")
+		);
+
+		// scales added
+		calculator.multiply (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			375,
+			1000,
+			new BigDecimal ("0.375")
+		);
+
+		/* * * * * */
+		// decimal and integer
+		a.setDecimal (125, 2);
+		b.setValue (3);
+		calculator.add (result, b, a);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			425,
+			100,
+			new BigDecimal ("4.25")
+		);
+
+		calculator.multiply (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			375,
+			100,
+			new BigDecimal ("3.75")
+		);
+
+		/* * * * * */
+		// division gives reduced rational
+		a.setDecimal (250, 2);
+		b.setDecimal (125, 2);
+		calculator.divide (result, a, b);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			2,
+			1,
+			null
+		);
+
+		b.setDecimal (75, 2);
+		calculator.modulo (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			25,
+			100,
+			new BigDecimal ("0.25")
+		);
+
+		assertTrue (calculator.compare (a, b) > 0);
+		b.setDecimal (25, 1);
+		assertEquals (0, calculator.compare (a, b));
+		assertEquals (a, b);
+		assertEquals (a.hashCode (), b.hashCode ());
+
+		b.setValue (5, 2);
+		assertEquals (a, b);
+		assertEquals (a.hashCode (), b.hashCode ());
+
+		/* * * * * */
+		// rounding
+		a.setDecimal (-100, 2);
+		calculator.floor (result, a);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			-1,
+			1,
+			null
+		);
+
+		a.setDecimal (-50, 2);
+		calculator.floor (result, a);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			-1,
+			1,
+			null
+		);
+
+		calculator.ceiling (result, a);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			0,
+			1,
+			null
+		);
+
+		/* * * * * */
+		calculator.negate (result, a);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			50,
+			100,
+			new BigDecimal ("0.50")
+		);
+
+		calculator.inverse (result, a);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			-2,
+			1,
+			null
+		);
+
+		/* * * * * */
+		// overflow: computed as rational
+		a.setDecimal (Long.MAX_VALUE, 2);
+		b.setDecimal (1, 2);
+		calculator.add (result, a, b);
+		assertResultEquals (
+			KProfile.LONG_RATIONAL,
+			2305843009213693952L,
+			25,
+			new BigDecimal ("92233720368547758.08")
+		);
+	}
+
+	@Test
+	public void testDecimalConversion () throws Exception {
+		reset ();
+
+		converter.fromDecimal (a, "1.50");
+		assertEquals (KProfile.LONG_DECIMAL, a.profile);
+		assertEquals ("1.50", converter.toString (a));
+
+		converter.fromDecimal (a, "-0.05");
+		assertEquals (KProfile.LONG_DECIMAL, a.profile);
+		assertEquals ("-0.05", converter.toString (a));
+
+		converter.fromDecimal (a, "12");
+		assertEquals (KProfile.INT_INTEGER, a.profile);
+
+		converter.fromDecimal (a, "2.00");
+		assertEquals (2, converter.toInt (a));
+		assertEquals (KConversionStatus.OK, converter.lastConversionStatus);
+
+		converter.fromDecimal (a, "99999999999999999999.5");
+		assertEquals ("99999999999999999999.5", converter.toString (a));
+
+		converter.fromDecimal (a, new BigDecimal ("3.000"));
+		assertEquals (KProfile.LONG_DECIMAL, a.profile);
+		assertEquals ("3.000", converter.toString (a));
+
+		// fromString still reduces
+		converter.fromString (a, "1.50");
+		assertEquals (KProfile.INT_RATIONAL, a.profile);
+	}
+
+}
@@ -18,6 +18,8 @@ package net.roboterhund.kitsune;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -236,4 +238,184 @@ public class KCalculatorTest_modulo extends KCalculatorTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testRoutes () throws Exception {
+		reset ();
+
+		Random random = new Random (47);
+		KNumRegister quotient = new KNumRegister ();
+		KNumRegister remainder = new KNumRegister ();
+		KNumRegister expected = new KNumRegister ();
+
+		// every pair of profiles, both signs
+		for (int t = 0; t < 20000; t++) {
+			randomValue (random, a, t % 7);
+			randomValue (random, b, (t / 7) % 7);
+			if (calculator.compare (b, new KNumRegister ()) == 0) {
+				continue;
+			}
+
+			a.setBigIntegers ();
+			b.setBigIntegers ();
+			BigInteger x = a.bigNumerator.multiply (b.bigDenominator);
+			BigInteger y = b.bigNumerator.multiply (a.bigDenominator);
+			BigInteger[] division = x.divideAndRemainder (y);
+			String operands = converter.toString (a) + " / " + converter.toString (b);
+
+			calculator.modulo (result, a, b);
+			expected.setValue (division[1], a.bigDenominator.multiply (b.bigDenominator));
+			assertEquals (operands, 0, calculator.compare (expected, result));
+
+			calculator.divide (quotient, remainder, a, b);
+			assertEquals (operands, 0, calculator.compare (expected, remainder));
+			expected.setValue (division[0]);
+			assertEquals (operands, 0, calculator.compare (expected, quotient));
+
+			// remainder overwrites dividend
+			calculator.divide (quotient, a, a, b);
+			assertEquals (operands, 0, calculator.compare (expected, quotient));
+		}
+
+		/* * * * * */
+		// big integers, negative divisor
+		converter.fromString (a, "1100000000000000000000");
+		converter.fromString (b, "-300000000000000000000");
+		calculator.modulo (result, a, b);
+		assertEquals ("200000000000000000000", converter.toString (result));
+
+		/* * * * * */
+		// quotient does not fit in long
+		a.setValue (-(1L << 62));
+		b.setValue (-1, 2);
+		calculator.divide (result, remainder, a, b);
+		assertEquals ("9223372036854775808", converter.toString (result));
+		assertEquals (0, calculator.compare (remainder, new KNumRegister ()));
+	}
+
+	@Test
+	public void testFloorAndEuclidean () throws Exception {
+		reset ();
+
+		Random random = new Random (48);
+		KNumRegister expected = new KNumRegister ();
+
+		/* * * * * */
+		a.setValue (-7);
+		b.setValue (2);
+		calculator.floorDiv (result, a, b);
+		assertEquals ("-4", converter.toString (result));
+		calculator.floorMod (result, a, b);
+		assertEquals ("1", converter.toString (result));
+		calculator.euclideanMod (result, a, b);
+		assertEquals ("1", converter.toString (result));
+
+		b.setValue (-2);
+		calculator.floorDiv (result, a, b);
+		assertEquals ("3", converter.toString (result));
+		calculator.floorMod (result, a, b);
+		assertEquals ("-1", converter.toString (result));
+		calculator.euclideanMod (result, a, b);
+		assertEquals ("1", converter.toString (result));
+
+		/* * * * * */
+		converter.fromString (a, "-1.25");
+		converter.fromString (b, "0.5");
+		assertFalse (calculator.isDivisibleBy (a, b));
+		calculator.floorMod (result, a, b);
+		assertEquals ("0.25", converter.toString (result));
+		converter.fromString (a, "-1.5");
+		assertTrue (calculator.isDivisibleBy (a, b));
+
+		/* * * * * */
+		// every pair of profiles, both signs
+		for (int t = 0; t < 20000; t++) {
+			randomValue (random, a, t % 7);
+			randomValue (random, b, (t / 7) % 7);
+			if (calculator.compare (b, new KNumRegister ()) == 0) {
+				continue;
+			}
+
+			a.setBigIntegers ();
+			b.setBigIntegers ();
+			BigInteger x = a.bigNumerator.multiply (b.bigDenominator);
+			BigInteger y = b.bigNumerator.multiply (a.bigDenominator);
+			BigInteger denominator = a.bigDenominator.multiply (b.bigDenominator);
+			BigInteger euclidean = x.mod (y.abs ());
+			BigInteger floor = y.signum () < 0 && euclidean.signum () != 0
+				? euclidean.add (y) : euclidean;
+			String operands = converter.toString (a) + " / " + converter.toString (b);
+
+			calculator.euclideanMod (result, a, b);
+			expected.setValue (euclidean, denominator);
+			assertEquals (operands, 0, calculator.compare (expected, result));
+
+			calculator.floorMod (result, a, b);
+			expected.setValue (floor, denominator);
+			assertEquals (operands, 0, calculator.compare (expected, result));
+
+			calculator.floorDiv (result, a, b);
+			expected.setValue (x.subtract (floor).divide (y));
+			assertEquals (operands, 0, calculator.compare (expected, result));
+
+			assertEquals (operands, euclidean.signum () == 0,
+				calculator.isDivisibleBy (a, b));
+			calculator.multiply (expected, result, b);
+			assertTrue (operands, calculator.isDivisibleBy (expected, b));
+		}
+
+		/* * * * * */
+		try {
+			a.setValue (1);
+			b.setValue (0);
+			calculator.isDivisibleBy (a, b);
+			fail ("division by zero");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+	}
+
+	// value with given profile
+	private void randomValue (
+		Random random,
+		KNumRegister value,
+		int profile) {
+
+		long sign = random.nextBoolean () ? 1 : -1;
+		switch (profile) {
+		case KProfile.BIG_RATIONAL:
+			value.setValue (
+				new BigInteger (70 + random.nextInt (30), random).negate (),
+				new BigInteger (66, random).setBit (65)
+			);
+			break;
+
+		case KProfile.BIG_INTEGER:
+			value.setValue (new BigInteger (64 + random.nextInt (40), random).setBit (64)
+				.multiply (BigInteger.valueOf (sign)));
+			break;
+
+		case KProfile.LONG_RATIONAL:
+			value.setValue (sign * (random.nextLong () >>> (1 + random.nextInt (30))),
+				(random.nextLong () >>> (1 + random.nextInt (60))) | (1L << 33));
+			break;
+
+		case KProfile.LONG_INTEGER:
+			value.setValue (sign * (random.nextLong () >>> (1 + random.nextInt (30))));
+			break;
+
+		case KProfile.INT_RATIONAL:
+			value.setValue (sign * random.nextInt (1000), 1 + random.nextInt (1000));
+			break;
+
+		case KProfile.INT_INTEGER:
+			value.setValue (sign * random.nextInt (1000));
+			break;
+
+		default:
+			value.setDecimal (sign * (random.nextLong () >>> (1 + random.nextInt (63))),
+				random.nextInt (KConverter.MAX_DECIMALS + 1));
+			break;
+		}
+	}
+
+}
@@ -18,8 +18,10 @@ package net.roboterhund.kitsune;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class KCalculatorTest_multiply extends KCalculatorTest {
 
@@ -27,6 +29,105 @@ public class KCalculatorTest_multiply extends KCalculatorTest {
 
 	KNumRegister maxError;
 
+	@Test
+	public void testIntegerPower () throws Exception {
+		reset ();
+
+		maxError = new KNumRegister ();
+		maxError.setValue (1, 1000);
+
+		KNumRegister expected = new KNumRegister ();
+
+		String[] bases = {
+			"0", "1", "-1", "2", "-2", "3", "-7", "1024", "-3037000499",
+			"2/3", "-1/2", "-5/4", "9223372036854775807/2",
+			"0.5", "-1.25", "0.001", "12.34",
+			"123456789012345678901234567890",
+			"-1/123456789012345678901234567890"
+		};
+
+		for (String string : bases) {
+			if (string.contains ("/")) {
+				String[] parts = string.split ("/");
+				a.setValue (
+					new BigInteger (parts[0]),
+					new BigInteger (parts[1])
+				);
+			} else if (string.contains (".")) {
+				converter.fromDecimal (a, string);
+			} else {
+				a.setValue (new BigInteger (string));
+			}
+			a.setBigIntegers ();
+			BigInteger gcd = a.bigNumerator.gcd (a.bigDenominator);
+			BigInteger numerator = a.bigNumerator.divide (gcd);
+			BigInteger denominator = a.bigDenominator.divide (gcd);
+
+			for (int exp = -70; exp <= 70; exp++) {
+				b.setValue (exp);
+
+				if (exp < 0 && numerator.signum () == 0) {
+					try {
+						calculator.power (result, a, b, maxError);
+						fail ("0 ^ " + exp);
+					} catch (ArithmeticException e) {
+						assertEquals (
+							CMultiply.ERR_MSG_ZERO_NEGATIVE_EXPONENT,
+							e.getMessage ()
+						);
+					}
+					continue;
+				}
+
+				if (exp < 0) {
+					expected.setValue (
+						denominator.pow (-exp),
+						numerator.pow (-exp)
+					);
+				} else {
+					expected.setValue (
+						numerator.pow (exp),
+						denominator.pow (exp)
+					);
+				}
+
+				calculator.power (result, a, b, maxError);
+				assertEquals (string + " ^ " + exp, expected, result);
+				if (result.profile == KProfile.LONG_DECIMAL) {
+					// decimal kept
+					assertEquals (a.scale * exp, result.scale);
+				} else {
+					assertEquals (
+						string + " ^ " + exp,
+						expected.profile,
+						result.profile
+					);
+				}
+			}
+		}
+
+		/* * * * * */
+		b.setValue (new BigInteger ("100000000000000000001"));
+		a.setValue (-1);
+		calculator.power (result, a, b, maxError);
+		assertResultEquals (KProfile.INT_INTEGER, -1, 1, null);
+
+		a.setZeroValue ();
+		calculator.power (result, a, b, maxError);
+		assertResultEquals (KProfile.INT_INTEGER, 0, 1, null);
+
+		a.setValue (2);
+		try {
+			calculator.power (result, a, b, maxError);
+			fail ("2 ^ (10^20 + 1)");
+		} catch (ArithmeticException e) {
+			assertEquals (
+				CMultiply.ERR_MSG_EXPONENT_TOO_LARGE,
+				e.getMessage ()
+			);
+		}
+	}
+
 	@Test
 	public void testMultiply () throws Exception {
 		reset ();
@@ -0,0 +1,241 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class KCalculatorTest_round extends KCalculatorTest {
+
+	@Test
+	public void testRoundToScale () throws Exception {
+		reset ();
+
+		/* * * * * */
+		// price to cents
+		a.setDecimal (12345, 3);
+		calculator.roundToScale (result, a, 2, RoundingMode.HALF_EVEN);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			1234,
+			100,
+			new BigDecimal ("12.34")
+		);
+
+		calculator.roundToScale (result, a, 2, RoundingMode.HALF_UP);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			1235,
+			100,
+			new BigDecimal ("12.35")
+		);
+
+		/* * * * * */
+		// rational
+		a.setValue (-2, 3);
+		calculator.roundToScale (result, a, 3, RoundingMode.HALF_UP);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			-667,
+			1000,
+			new BigDecimal ("-0.667")
+		);
+
+		calculator.roundToScale (result, a, 0, RoundingMode.FLOOR);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			-1,
+			1,
+			null
+		);
+
+		/* * * * * */
+		// negative scale
+		a.setValue (1250);
+		calculator.roundToScale (result, a, -2, RoundingMode.HALF_EVEN);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			1200,
+			1,
+			null
+		);
+
+		/* * * * * */
+		for (String value : new String[] {
+			"5.5", "2.5", "1.6", "1.1", "1.0", "-1.0", "-1.1", "-1.6", "-2.5", "-5.5",
+			"123456789012345678901234567890.123456789",
+			"-0.00000000000000000000000000000123456"
+		}) {
+			for (RoundingMode roundingMode : RoundingMode.values ()) {
+				for (int scale = -2; scale <= 20; scale += 2) {
+					assertRoundCorrect (value, scale, roundingMode);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRoundToMultiple () throws Exception {
+		reset ();
+
+		/* * * * * */
+		a.setValue (7);
+		b.setValue (1, 4);
+		calculator.roundToMultiple (result, a, b, RoundingMode.UNNECESSARY);
+		assertResultEquals (
+			KProfile.INT_INTEGER,
+			7,
+			1,
+			null
+		);
+
+		a.setValue (10, 3);
+		calculator.roundToMultiple (result, a, b, RoundingMode.HALF_UP);
+		assertResultEquals (
+			KProfile.INT_RATIONAL,
+			13,
+			4,
+			null
+		);
+
+		/* * * * * */
+		// decimal step keeps scale
+		a.setDecimal (1237, 2);
+		b.setDecimal (5, 2);
+		calculator.roundToMultiple (result, a, b, RoundingMode.HALF_EVEN);
+		assertResultEquals (
+			KProfile.LONG_DECIMAL,
+			1235,
+			100,
+			new BigDecimal ("12.35")
+		);
+
+		/* * * * * */
+		// big
+		converter.fromString (a, "100000000000000000000.3");
+		b.setValue (1, 3);
+		calculator.roundToMultiple (result, a, b, RoundingMode.CEILING);
+		KNumRegister expected = new KNumRegister ();
+		expected.setValue (
+			new BigInteger ("300000000000000000001"),
+			BigInteger.valueOf (3)
+		);
+		assertEquals (expected, result);
+	}
+
+	@Test
+	public void testTruncateFloorCeiling () throws Exception {
+		reset ();
+
+		/* * * * * */
+		// between -1 and 1
+		a.setValue (-1, 2);
+		calculator.floor (result, a);
+		assertEquals ("-1", converter.toString (result));
+		calculator.ceiling (result, a);
+		assertEquals ("0", converter.toString (result));
+		calculator.truncate (result, a);
+		assertEquals ("0", converter.toString (result));
+
+		a.setValue (1, 2);
+		calculator.floor (result, a);
+		assertEquals ("0", converter.toString (result));
+		calculator.ceiling (result, a);
+		assertEquals ("1", converter.toString (result));
+
+		/* * * * * */
+		// compact and big fractions, small and large quotients
+		Random random = new Random (49);
+		BigInteger[][] fractions = new BigInteger[4000][];
+		for (int i = 0; i < fractions.length; i++) {
+			int denominatorBits = 1 + random.nextInt (i % 2 == 0 ? 30 : 100);
+			int numeratorBits = denominatorBits + random.nextInt (90) - 20;
+			BigInteger numerator = new BigInteger (Math.max (1, numeratorBits), random);
+			if (random.nextBoolean ()) {
+				numerator = numerator.negate ();
+			}
+			fractions[i] = new BigInteger[] {
+				numerator,
+				new BigInteger (denominatorBits, random).add (BigInteger.ONE)
+			};
+		}
+
+		for (BigInteger[] fraction : fractions) {
+			BigInteger numerator = fraction[0];
+			BigInteger denominator = fraction[1];
+			BigInteger floor = numerator.subtract (numerator.mod (denominator))
+				.divide (denominator);
+			BigInteger ceiling = numerator.mod (denominator).signum () == 0
+				? floor : floor.add (BigInteger.ONE);
+			BigInteger truncated = numerator.divide (denominator);
+
+			a.setValue (numerator, denominator);
+			String value = numerator + "/" + denominator;
+
+			calculator.floor (result, a);
+			assertEquals (value, floor.toString (), converter.toString (result));
+			calculator.ceiling (result, a);
+			assertEquals (value, ceiling.toString (), converter.toString (result));
+			calculator.truncate (result, a);
+			assertEquals (value, truncated.toString (), converter.toString (result));
+
+			// result aliases number
+			calculator.floor (a, a);
+			assertEquals (value, floor.toString (), converter.toString (a));
+		}
+	}
+
+	// compare with BigDecimal.setScale
+	private void assertRoundCorrect (
+		String value,
+		int scale,
+		RoundingMode roundingMode) {
+
+		BigDecimal bigDecimal = new BigDecimal (value);
+		String expected;
+		try {
+			expected = CommonTest.stripTrailingZeros (
+				bigDecimal.setScale (scale, roundingMode)
+			).toPlainString ();
+		} catch (ArithmeticException e) {
+			expected = e.getMessage ();
+		}
+
+		converter.fromString (a, value);
+		String actual;
+		try {
+			calculator.roundToScale (result, a, scale, roundingMode);
+			actual = CommonTest.stripTrailingZeros (
+				converter.toBigDecimal (result)
+			).toPlainString ();
+		} catch (ArithmeticException e) {
+			actual = e.getMessage ();
+		}
+
+		assertEquals (
+			value + ", " + scale + ", " + roundingMode,
+			expected,
+			actual
+		);
+	}
+
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Random;
 
 import static net.roboterhund.kitsune.CommonTest.assertNumberEquals;
 import static org.junit.Assert.assertEquals;
@@ -190,6 +191,75 @@ public class KConverterTest {
 	}
 
 	// test register value
+	// direct BigDecimal conversions, compared with exact fractions
+	@Test
+	public void testConvert_bigDecimal () {
+		converter = new KConverter ();
+		register = new KNumRegister ();
+		KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+		KNumRegister expected = new KNumRegister ();
+		Random random = new Random (50);
+
+		/* * * * * */
+		// no string of 301 digits
+		converter.fromBigDecimal (register, new BigDecimal ("1E+300"));
+		assertEquals (BigInteger.TEN.pow (300), register.bigNumerator);
+		converter.fromBigDecimal (register, new BigDecimal ("-2.50E-300"));
+		expected.setValue (BigInteger.valueOf (-5), BigInteger.TEN.pow (300).shiftLeft (1));
+		assertEquals (0, calculator.compare (expected, register));
+
+		/* * * * * */
+		// from BigDecimal
+		for (int i = 0; i < 5000; i++) {
+			BigInteger unscaledValue = new BigInteger (1 + random.nextInt (i % 2 == 0 ? 60 : 200), random);
+			if (random.nextBoolean ()) {
+				unscaledValue = unscaledValue.negate ();
+			}
+			int scale = random.nextInt (60) - 30;
+			BigDecimal value = new BigDecimal (unscaledValue, scale);
+
+			converter.fromBigDecimal (register, value);
+			if (scale <= 0) {
+				expected.setValue (unscaledValue.multiply (BigInteger.TEN.pow (-scale)));
+			} else {
+				expected.setValue (unscaledValue, BigInteger.TEN.pow (scale));
+			}
+			assertEquals (value.toString (), expected, register);
+		}
+
+		/* * * * * */
+		// to BigDecimal: terminating and infinite expansions
+		for (int i = 0; i < 5000; i++) {
+			BigInteger numerator = new BigInteger (1 + random.nextInt (i % 2 == 0 ? 40 : 200), random);
+			if (random.nextBoolean ()) {
+				numerator = numerator.negate ();
+			}
+			int twos = random.nextInt (i % 2 == 0 ? 40 : 300);
+			int fives = random.nextInt (i % 2 == 0 ? 20 : 300);
+			BigInteger denominator = BigInteger.valueOf (5).pow (fives).shiftLeft (twos);
+			if (i % 3 == 0) {
+				denominator = denominator.multiply (BigInteger.valueOf (3 + 4 * random.nextInt (5)));
+			}
+
+			register.setValue (numerator, denominator);
+			BigDecimal value = converter.toBigDecimal (register);
+
+			register.setBigIntegers ();
+			BigDecimal exact = new BigDecimal (register.bigNumerator);
+			BigDecimal divisor = new BigDecimal (register.bigDenominator);
+			try {
+				assertEquals (0, exact.divide (divisor).compareTo (value));
+				assertConversionStatusEquals (KConversionStatus.OK);
+			} catch (ArithmeticException e) {
+				assertEquals (
+					0,
+					exact.divide (divisor, converter.inexactMathContext).compareTo (value)
+				);
+				assertConversionStatusEquals (KConversionStatus.INEXACT);
+			}
+		}
+	}
+
 	private void assertRegisterEquals (
 		int profile,
 		BigDecimal bigDecimal) {
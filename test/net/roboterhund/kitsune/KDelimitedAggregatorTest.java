@@ -0,0 +1,167 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class KDelimitedAggregatorTest {
+
+	KConverter converter = CommonTest.converter;
+
+	@Test
+	public void testAggregate () throws Exception {
+		Random random = new Random (45);
+
+		Map<String, BigDecimal> sums = new LinkedHashMap<> ();
+		Map<String, Long> counts = new LinkedHashMap<> ();
+		long rejected = 0;
+
+		File file = File.createTempFile ("kitsune", ".csv");
+		try {
+			// about 3 MB: several ranges
+			try (Writer writer = new BufferedWriter (new OutputStreamWriter (
+				new FileOutputStream (file), StandardCharsets.UTF_8))) {
+
+				writer.write ("id,group,amount\n");
+				for (int line = 0; line < 120000; line++) {
+					String group = "g\u00E9" + random.nextInt (500);
+					String amount;
+					switch (random.nextInt (10)) {
+					case 0:
+						amount = "-" + random.nextInt (1000) + "." + random.nextInt (100);
+						break;
+
+					case 1:
+						amount = new BigDecimal (
+							new java.math.BigInteger (80, random), 3).toPlainString ();
+						break;
+
+					case 2:
+						amount = random.nextInt (50) == 0 ? "n/a" : "7";
+						break;
+
+					default:
+						amount = Integer.toString (random.nextInt (100000));
+						break;
+					}
+
+					if (amount.equals ("n/a")) {
+						rejected++;
+					} else {
+						BigDecimal sum = sums.get (group);
+						sums.put (
+							group,
+							sum == null ?
+								new BigDecimal (amount) :
+								sum.add (new BigDecimal (amount))
+						);
+						Long count = counts.get (group);
+						counts.put (group, count == null ? 1 : count + 1);
+					}
+
+					writer.write (line + "," + group + "," + amount
+						+ (line % 3 == 0 ? "\r\n" : "\n"));
+					if (line % 1000 == 0) {
+						// ignored
+						writer.write ("\n");
+					}
+				}
+				// missing field, no line feed at end
+				writer.write ("1,g0");
+				rejected++;
+			}
+
+			KDelimitedAggregator aggregator =
+				new KDelimitedAggregator (',', 1, 2, true);
+			KNumRegister sum = new KNumRegister ();
+
+			for (int threads : new int[] {1, 4}) {
+				aggregator.aggregate (file, threads);
+
+				assertEquals (rejected, aggregator.rejectedLines ());
+				assertEquals (sums.size (), aggregator.groupCount ());
+
+				int index = 0;
+				for (Map.Entry<String, BigDecimal> entry : sums.entrySet ()) {
+					// order of first appearance
+					assertEquals (entry.getKey (), aggregator.getGroup (index));
+					aggregator.getSum (index, sum);
+					assertEquals (
+						0,
+						entry.getValue ().compareTo (converter.toBigDecimal (sum))
+					);
+					assertEquals (
+						(long) counts.get (entry.getKey ()),
+						aggregator.getCount (index)
+					);
+					index++;
+				}
+
+				CommonTest.out.printf (
+					"aggregate, %d threads: %.1f MB/s\n",
+					threads,
+					aggregator.throughput ()
+				);
+			}
+
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete ();
+		}
+	}
+
+	@Test
+	public void testFromDecimalBytes () throws Exception {
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		for (String string : new String[] {
+			"0", "-1.50", "+12", "9223372036854775807", "-9223372036854775808",
+			"12345678901234567890.123", "0.0000000000000000000001"}) {
+
+			byte[] bytes = ("x" + string + "y").getBytes (StandardCharsets.US_ASCII);
+			converter.fromDecimal (expected, string);
+			converter.fromDecimal (actual, bytes, 1, bytes.length - 1);
+			assertEquals (expected, actual);
+			assertEquals (expected.profile, actual.profile);
+			assertEquals (expected.scale, actual.scale);
+		}
+
+		for (String string : new String[] {"", "-", "1.", ".5", "1e5", "1,5"}) {
+			byte[] bytes = string.getBytes (StandardCharsets.US_ASCII);
+			try {
+				converter.fromDecimal (actual, bytes, 0, bytes.length);
+				throw new AssertionError (string);
+			} catch (NumberFormatException e) {
+				assertEquals (string, e.getMessage ());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,354 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class KExpressionTest {
+
+	@Test
+	public void testEvaluate () throws Exception {
+		KConverter converter = new KConverter ();
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister a = new KNumRegister ();
+		KNumRegister b = new KNumRegister ();
+		KNumRegister c = new KNumRegister ();
+		KNumRegister result = new KNumRegister ();
+
+		converter.fromString (a, "17.5");
+		converter.fromString (b, "-4");
+		converter.fromString (c, "123456789012345678901234567890");
+
+		Object[][] cases = {
+			{ "a - trunc(a / b) * b", "1.5" },
+			{ "a % b", "1.5" },
+			{ "-a + +b", "-21.5" },
+			{ "2 ^ 3 ^ 2", "512" },
+			{ "-2 ^ 2", "-4" },
+			{ "b ^ -2", "0.0625" },
+			{ "(a + b) * (a - b) / 2", "145.125" },
+			{ "abs(b) * inv(4) + floor(a) - ceil(-a)", "35" },
+			{ "neg(trunc(-a))", "17" },
+			{ "c * c / c - c", "0" },
+			{ "c + 0.5 * 2", "123456789012345678901234567891" },
+			{ "a", "17.5" },
+			{ "3", "3" },
+		};
+
+		for (Object[] testCase : cases) {
+			KExpression expression = KExpression.compile (
+				(String) testCase[0], "a", "b", "c");
+			// evaluate twice: the expression is reusable
+			for (int i = 0; i < 2; i++) {
+				expression.evaluate (calc, result, a, b, c);
+				assertEquals (
+					0,
+					new BigDecimal ((String) testCase[1]).compareTo (
+						converter.toBigDecimal (result))
+				);
+			}
+		}
+
+		// inputs unchanged
+		assertEquals ("17.5", converter.toBigDecimal (a).toPlainString ());
+		assertEquals ("-4", converter.toBigDecimal (b).toPlainString ());
+	}
+
+	@Test
+	public void testAliasing () throws Exception {
+		KConverter converter = new KConverter ();
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister a = new KNumRegister ();
+		KNumRegister b = new KNumRegister ();
+
+		// the problematic example from the README
+		KExpression expression = KExpression.compile (
+			"a - trunc(a / b) * b", "a", "b");
+
+		converter.fromString (a, "17.5");
+		converter.fromString (b, "4");
+		expression.evaluate (calc, a, a, b);
+		assertEquals ("1.5", converter.toBigDecimal (a).toPlainString ());
+
+		converter.fromString (a, "17.5");
+		converter.fromString (b, "4");
+		expression.evaluate (calc, b, a, b);
+		assertEquals ("1.5", converter.toBigDecimal (b).toPlainString ());
+
+		converter.fromString (a, "3");
+		expression.evaluate (calc, a, a, a);
+		assertEquals ("0", converter.toBigDecimal (a).toPlainString ());
+	}
+
+	@Test
+	public void testErrors () throws Exception {
+		String[] formulas = {
+			"",
+			"a +",
+			"(a",
+			"a)",
+			"a b",
+			"x",
+			"sqrt(a)",
+			"a $ a",
+		};
+
+		for (String formula : formulas) {
+			try {
+				KExpression.compile (formula, "a");
+				fail (formula);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister a = new KNumRegister ();
+		a.setValue (1, 2);
+		try {
+			KExpression.compile ("2 ^ a", "a").evaluate (calc, a, a);
+			fail ();
+		} catch (IllegalArgumentException e) {
+			assertEquals (KExpression.ERR_MSG_RATIONAL_EXPONENT, e.getMessage ());
+		}
+
+		// division by zero: interpreted and after deoptimizing a trace
+		KNumRegister b = new KNumRegister ();
+		KNumRegister result = new KNumRegister ();
+		for (String formula : new String[] {"a / b", "inv(b) + a"}) {
+			KExpression expression = KExpression.compile (formula, "a", "b");
+			expression.setTraceThreshold (2);
+			for (int i = 0; i < 10; i++) {
+				a.setValue (i + 1);
+				b.setValue (i % 3);
+				try {
+					expression.evaluate (calc, result, a, b);
+					assertEquals (formula, true, i % 3 != 0);
+				} catch (ArithmeticException e) {
+					assertEquals (formula, 0, i % 3);
+				}
+			}
+		}
+		b.setValue (0);
+		try {
+			KExpression.compile ("a / b", "a", "b").evaluate (calc, result, a, b);
+			fail ();
+		} catch (ArithmeticException e) {
+			assertEquals (KExpression.ERR_MSG_DIVISION_BY_ZERO, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testTrace () throws Exception {
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		Random random = new Random (31);
+
+		String[] formulas = {
+			"a - trunc(a / b) * b",
+			"a % b + b % a",
+			"(a + b) * (a - b) / 2",
+			"abs(a) * inv(b) - neg(trunc(a)) + trunc(b)",
+			"floor(a / b) + ceil(b / a) - floor(a / 3)",
+			"a ^ 3 - 2 * a ^ 2 + 0.5",
+			"a * a * a * a * b * b * b * b",
+		};
+
+		KNumRegister a = new KNumRegister ();
+		KNumRegister b = new KNumRegister ();
+		KNumRegister traced = new KNumRegister ();
+		KNumRegister interpreted = new KNumRegister ();
+
+		for (String formula : formulas) {
+			KExpression expression = KExpression.compile (formula, "a", "b");
+			expression.setTraceThreshold (1);
+			KExpression reference = KExpression.compile (formula, "a", "b");
+			reference.setTraceThreshold (0);
+
+			for (int i = 0; i < 2000; i++) {
+				// mostly small integers, sometimes fractions or large values
+				long scale = i % 100 == 99 ? Long.MAX_VALUE / 3 : 1000;
+				a.setValue (
+					random.nextLong () % scale,
+					i % 7 == 6 ? 1 + random.nextInt (50) : 1
+				);
+				b.setValue (
+					random.nextLong () % scale,
+					i % 5 == 4 ? 1 + random.nextInt (50) : 1
+				);
+
+				Exception expected = null;
+				try {
+					reference.evaluate (calc, interpreted, a, b);
+				} catch (ArithmeticException e) {
+					expected = e;
+				}
+				try {
+					expression.evaluate (calc, traced, a, b);
+					assertNull (formula, expected);
+					assertEquals (formula, interpreted, traced);
+				} catch (ArithmeticException e) {
+					assertNotNull (formula, expected);
+				}
+			}
+			if (formula.startsWith ("a * a")) {
+				// overflows too often: discarded
+				assertNull (formula, expression.trace);
+			} else {
+				assertNotNull (formula, expression.trace);
+			}
+		}
+
+		// result aliases input
+		KExpression expression = KExpression.compile ("a - trunc(a / b) * b", "a", "b");
+		expression.setTraceThreshold (1);
+		for (int i = 0; i < 4; i++) {
+			a.setValue (35, 2);
+			b.setValue (4);
+			expression.evaluate (calc, a, a, b);
+			assertEquals (new KNumRegister (3, 2), a);
+		}
+		assertNotNull (expression.trace);
+	}
+
+	@Test
+	public void testShared () throws Exception {
+		KConverter converter = new KConverter ();
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+
+		// (1 + r) ^ n is computed once
+		KExpression expression = KExpression.compile (
+			new String[] {
+				"p * (1 + r) ^ n",
+				"(1 + r) ^ n - 1",
+				"p / (r + 1) ^ n",
+			},
+			"p", "r", "n"
+		);
+		assertEquals (3, expression.getResultCount ());
+		// add, power, multiply, subtract, divide, 3 copies
+		assertEquals (8, expression.getInstructionCount ());
+
+		KNumRegister p = new KNumRegister ();
+		KNumRegister r = new KNumRegister ();
+		KNumRegister n = new KNumRegister ();
+		converter.fromString (p, "1000");
+		converter.fromString (r, "0.05");
+		converter.fromString (n, "3");
+
+		// results alias inputs
+		expression.evaluate (calc, new KNumRegister[] { n, p, r }, p, r, n);
+		assertEquals ("1157.625", converter.toBigDecimal (n).toPlainString ());
+		assertEquals ("0.157625", converter.toBigDecimal (p).toPlainString ());
+		assertEquals (
+			new KNumRegister (8000000, 9261),
+			r
+		);
+
+		// swap
+		expression = KExpression.compile (new String[] { "b", "a" }, "a", "b");
+		KNumRegister a = new KNumRegister (1);
+		KNumRegister b = new KNumRegister (2);
+		expression.evaluate (calc, new KNumRegister[] { a, b }, a, b);
+		assertEquals (new KNumRegister (2), a);
+		assertEquals (new KNumRegister (1), b);
+	}
+
+	@Test
+	public void testFold () throws Exception {
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KNumRegister a = new KNumRegister (7);
+		KNumRegister result = new KNumRegister ();
+
+		Object[][] cases = {
+			// formula, instructions, result
+			{ "(2 + 3) * (3 + 2)", 1, new KNumRegister (25) },
+			{ "2 * 3 + a", 1, new KNumRegister (13) },
+			{ "a * 2 ^ -1", 1, new KNumRegister (7, 2) },
+			{ "a * a + a * a", 2, new KNumRegister (98) },
+			{ "a * 3 + 3 * a", 2, new KNumRegister (42) },
+			{ "abs(-a) - abs(neg(a))", 3, new KNumRegister (0) },
+		};
+
+		for (Object[] testCase : cases) {
+			String formula = (String) testCase[0];
+			KExpression expression = KExpression.compile (formula, "a");
+			assertEquals (
+				formula,
+				(int) (Integer) testCase[1],
+				expression.getInstructionCount ()
+			);
+			expression.evaluate (calc, result, a);
+			assertEquals (formula, testCase[2], result);
+		}
+
+		// errors are left for evaluation
+		KExpression expression = KExpression.compile ("a + 2 ^ 0.5", "a");
+		assertEquals (2, expression.getInstructionCount ());
+		try {
+			expression.evaluate (calc, result, a);
+			fail ();
+		} catch (IllegalArgumentException e) {
+			assertEquals (KExpression.ERR_MSG_RATIONAL_EXPONENT, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testColumns () throws Exception {
+		KCalculator calc = new KCalculator (new KNumRegisterPool ());
+		KExpression expression = KExpression.compile (
+			new String[] { "a + b", "a * b" },
+			"a", "b"
+		);
+
+		int length = 1000;
+		KNumColumn a = new KNumColumn (length);
+		KNumColumn b = new KNumColumn (length);
+		KNumColumn sum = new KNumColumn (length);
+		KNumRegister value = new KNumRegister ();
+		for (int i = 0; i < length; i++) {
+			value.setValue (i, 3);
+			a.set (i, value);
+			value.setValue (Long.MAX_VALUE - i);
+			b.set (i, value);
+		}
+
+		// second result overwrites input
+		expression.evaluate (calc, new KNumColumn[] { sum, b }, a, b);
+
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister x = new KNumRegister ();
+		KNumRegister y = new KNumRegister ();
+		for (int i = 0; i < length; i++) {
+			x.setValue (i, 3);
+			y.setValue (Long.MAX_VALUE - i);
+			calc.add (expected, x, y);
+			sum.get (i, value);
+			assertEquals (expected, value);
+			calc.multiply (expected, x, y);
+			b.get (i, value);
+			assertEquals (expected, value);
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KMatrixTest {
+
+	KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+	KConverter converter = CommonTest.converter;
+
+	@Test
+	public void testDeterminant () throws Exception {
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		/* * * * * */
+		// [[1/2, 1/3], [0.25, 4]] => 2 - 1/12
+		KMatrix matrix = matrix (2, 2, "1/2", "1/3", "0.25", "4");
+		matrix.determinant (actual);
+		expected.setValue (23, 12);
+		assertEquals (expected, actual);
+
+		/* * * * * */
+		// row swap needed
+		matrix = matrix (3, 3, "0", "1", "0", "1", "0", "0", "0", "0", "5");
+		matrix.determinant (actual);
+		expected.setValue (-5);
+		assertEquals (expected, actual);
+
+		/* * * * * */
+		// singular
+		matrix = matrix (2, 2, "1", "2", "2", "4");
+		matrix.determinant (actual);
+		assertEquals (0, calculator.compare (actual, new KNumRegister ()));
+
+		/* * * * * */
+		// random, compared with rational elimination
+		Random random = new Random (46);
+		for (int n : new int[] {1, 2, 5, 12, 40}) {
+			matrix = randomMatrix (random, n, n);
+			matrix.determinant (actual);
+			gaussDeterminant (matrix, expected);
+			assertEquals ("n = " + n, expected, actual);
+		}
+
+		try {
+			new KMatrix (2, 3).determinant (actual);
+			fail ("not square");
+		} catch (IllegalArgumentException e) {
+			assertEquals (KMatrix.ERR_MSG_NOT_SQUARE, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testRank () throws Exception {
+		KMatrix matrix = matrix (3, 4,
+			"1", "2", "3", "4",
+			"2", "4", "6", "8",
+			"0", "1", "1/2", "0");
+		assertEquals (2, matrix.rank ());
+
+		assertEquals (0, new KMatrix (3, 3).rank ());
+
+		Random random = new Random (47);
+		matrix = randomMatrix (random, 6, 9);
+		assertEquals (6, matrix.rank ());
+
+		// last row = first row - second row
+		KNumRegister a = new KNumRegister ();
+		KNumRegister b = new KNumRegister ();
+		for (int j = 0; j < 9; j++) {
+			matrix.get (0, j, a);
+			matrix.get (1, j, b);
+			calculator.subtract (a, a, b);
+			matrix.set (5, j, a);
+		}
+		assertEquals (5, matrix.rank ());
+	}
+
+	@Test
+	public void testSolve () throws Exception {
+		Random random = new Random (48);
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		// large enough for parallel row updates
+		for (int n : new int[] {1, 3, 10, 80}) {
+			KMatrix matrix = randomMatrix (random, n, n);
+			KMatrix rightHandSide = randomMatrix (random, n, 2);
+			KMatrix solution = matrix.solve (rightHandSide);
+
+			assertEquals (n, solution.rows ());
+			assertEquals (2, solution.columns ());
+
+			// A X = B
+			KNumRegister product = new KNumRegister ();
+			KNumRegister a = new KNumRegister ();
+			KNumRegister x = new KNumRegister ();
+			for (int i = 0; i < n; i++) {
+				for (int c = 0; c < 2; c++) {
+					actual.setZeroValue ();
+					for (int j = 0; j < n; j++) {
+						matrix.get (i, j, a);
+						solution.get (j, c, x);
+						calculator.multiply (product, a, x);
+						calculator.add (actual, actual, product);
+					}
+					rightHandSide.get (i, c, expected);
+					assertEquals ("n = " + n, expected, actual);
+				}
+			}
+		}
+
+		try {
+			matrix (2, 2, "1", "2", "2", "4").solve (matrix (2, 1, "1", "1"));
+			fail ("singular");
+		} catch (ArithmeticException e) {
+			assertEquals (KMatrix.ERR_MSG_SINGULAR, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testMultiply () throws Exception {
+		Random random = new Random (45);
+		KNumRegister value = new KNumRegister ();
+
+		// several tiles and blocks, parallel tiles
+		int[][] sizes = {{1, 1, 1}, {3, 4, 2}, {70, 300, 130}};
+		for (int[] size : sizes) {
+			KMatrix a = randomMatrix (random, size[0], size[1]);
+			KMatrix b = randomMatrix (random, size[1], size[2]);
+			assertMatrixEquals (naiveProduct (a, b), a.multiply (b));
+		}
+
+		// long overflows and big entries
+		KMatrix a = randomMatrix (random, 5, 6);
+		KMatrix b = randomMatrix (random, 6, 4);
+		value.setValue (Long.MAX_VALUE);
+		a.set (0, 0, value);
+		a.set (0, 1, value);
+		b.set (0, 0, value);
+		b.set (1, 0, value);
+		value.setValue (Long.MAX_VALUE, 3);
+		a.set (1, 2, value);
+		value.setValue (BigInteger.ONE.shiftLeft (100).negate ());
+		b.set (2, 1, value);
+		value.setValue (BigInteger.ONE, BigInteger.ONE.shiftLeft (90).add (BigInteger.ONE));
+		a.set (2, 3, value);
+		assertMatrixEquals (naiveProduct (a, b), a.multiply (b));
+
+		try {
+			a.multiply (a);
+			fail ("dimensions");
+		} catch (IllegalArgumentException e) {
+			assertEquals (KMatrix.ERR_MSG_DIMENSIONS, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testPower () throws Exception {
+		// transition matrix
+		KMatrix transition = matrix (3, 3,
+			"1/2", "1/3", "1/6",
+			"0.25", "0.5", "0.25",
+			"0", "1/7", "6/7");
+
+		KMatrix expected = KMatrix.identity (3);
+		assertMatrixEquals (expected, transition.power (0));
+		for (int k = 1; k <= 9; k++) {
+			expected = naiveProduct (expected, transition);
+			assertMatrixEquals (expected, transition.power (k));
+		}
+		assertTrue (transition.power (1) != transition);
+
+		// rows still sum to one
+		KMatrix power = transition.power (40);
+		KNumRegister value = new KNumRegister ();
+		KNumRegister sum = new KNumRegister ();
+		KNumRegister one = new KNumRegister ();
+		one.setValue (1);
+		for (int i = 0; i < 3; i++) {
+			sum.setZeroValue ();
+			for (int j = 0; j < 3; j++) {
+				power.get (i, j, value);
+				calculator.add (sum, sum, value);
+			}
+			assertEquals (0, calculator.compare (sum, one));
+		}
+
+		// negative exponent: inverse
+		KMatrix matrix = matrix (2, 2, "2", "1", "1", "1");
+		assertMatrixEquals (matrix (2, 2, "5", "-8", "-8", "13"), matrix.power (-3));
+		assertMatrixEquals (KMatrix.identity (2),
+			matrix.power (-5).multiply (matrix.power (5)));
+
+		try {
+			new KMatrix (2, 3).power (2);
+			fail ("not square");
+		} catch (IllegalArgumentException e) {
+			assertEquals (KMatrix.ERR_MSG_NOT_SQUARE, e.getMessage ());
+		}
+	}
+
+	// matrix from values, row by row
+	private KMatrix matrix (
+		int rows,
+		int columns,
+		String... values) {
+
+		KMatrix matrix = new KMatrix (rows, columns);
+		KNumRegister value = new KNumRegister ();
+		for (int i = 0; i < values.length; i++) {
+			String[] parts = values[i].split ("/");
+			if (parts.length == 2) {
+				value.setValue (
+					Long.parseLong (parts[0]),
+					Long.parseLong (parts[1])
+				);
+			} else {
+				converter.fromDecimal (value, values[i]);
+			}
+			matrix.set (i / columns, i % columns, value);
+		}
+		return matrix;
+	}
+
+	// small integers, fractions and decimals
+	private KMatrix randomMatrix (
+		Random random,
+		int rows,
+		int columns) {
+
+		KMatrix matrix = new KMatrix (rows, columns);
+		KNumRegister value = new KNumRegister ();
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				switch (random.nextInt (3)) {
+				case 0:
+					value.setValue (random.nextInt (201) - 100);
+					break;
+
+				case 1:
+					value.setValue (random.nextInt (201) - 100, 1 + random.nextInt (12));
+					break;
+
+				default:
+					value.setDecimal (random.nextInt (20001) - 10000, 2);
+					break;
+				}
+				matrix.set (i, j, value);
+			}
+		}
+		return matrix;
+	}
+
+	// triple loop with rational arithmetic
+	private KMatrix naiveProduct (
+		KMatrix a,
+		KMatrix b) {
+
+		KMatrix product = new KMatrix (a.rows (), b.columns ());
+		KNumRegister sum = new KNumRegister ();
+		KNumRegister x = new KNumRegister ();
+		KNumRegister y = new KNumRegister ();
+		for (int i = 0; i < a.rows (); i++) {
+			for (int j = 0; j < b.columns (); j++) {
+				sum.setZeroValue ();
+				for (int k = 0; k < a.columns (); k++) {
+					a.get (i, k, x);
+					b.get (k, j, y);
+					calculator.multiply (x, x, y);
+					calculator.add (sum, sum, x);
+				}
+				product.set (i, j, sum);
+			}
+		}
+		return product;
+	}
+
+	private void assertMatrixEquals (
+		KMatrix expected,
+		KMatrix actual) {
+
+		assertEquals (expected.rows (), actual.rows ());
+		assertEquals (expected.columns (), actual.columns ());
+		KNumRegister x = new KNumRegister ();
+		KNumRegister y = new KNumRegister ();
+		for (int i = 0; i < expected.rows (); i++) {
+			for (int j = 0; j < expected.columns (); j++) {
+				expected.get (i, j, x);
+				actual.get (i, j, y);
+				assertEquals ("(" + i + ", " + j + ")", 0, calculator.compare (x, y));
+			}
+		}
+	}
+
+	// Gaussian elimination with rational arithmetic
+	private void gaussDeterminant (
+		KMatrix matrix,
+		KNumRegister result) {
+
+		int n = matrix.rows ();
+		KNumRegister[][] a = new KNumRegister[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				a[i][j] = new KNumRegister ();
+				matrix.get (i, j, a[i][j]);
+			}
+		}
+
+		KNumRegister factor = new KNumRegister ();
+		KNumRegister product = new KNumRegister ();
+		result.setValue (1);
+		for (int k = 0; k < n; k++) {
+			int pivot = k;
+			while (pivot < n && calculator.compare (a[pivot][k], new KNumRegister ()) == 0) {
+				pivot++;
+			}
+			if (pivot == n) {
+				result.setZeroValue ();
+				return;
+			}
+			if (pivot != k) {
+				KNumRegister[] swap = a[pivot];
+				a[pivot] = a[k];
+				a[k] = swap;
+				calculator.negate (result, result);
+			}
+			calculator.multiply (result, result, a[k][k]);
+			for (int i = k + 1; i < n; i++) {
+				calculator.divide (factor, a[i][k], a[k][k]);
+				for (int j = k; j < n; j++) {
+					calculator.multiply (product, factor, a[k][j]);
+					calculator.subtract (a[i][j], a[i][j], product);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static net.roboterhund.kitsune.CommonTest.assertRegisterEquals;
+import static net.roboterhund.kitsune.CommonTest.randomNumbers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class KNumColumnFileTest {
+
+	@Test
+	public void testWriteRead () throws Exception {
+		int count = 1003;
+		KNumColumn column = randomColumn (new Random (41), count);
+
+		File file = File.createTempFile ("kitsune", ".knum");
+		try {
+			KNumColumnFile.write (column, file);
+
+			KNumRegister expected = new KNumRegister ();
+			KNumRegister actual = new KNumRegister ();
+
+			try (KNumColumnFile columnFile = new KNumColumnFile (file)) {
+				assertEquals (count, columnFile.length ());
+
+				// lazy reads
+				for (int i = 0; i < count; i++) {
+					column.get (i, expected);
+					columnFile.get (i, actual);
+					assertRegisterEquals (expected, actual);
+				}
+
+				// bulk load
+				KNumColumn loaded = columnFile.load ();
+				for (int i = 0; i < count; i++) {
+					column.get (i, expected);
+					loaded.get (i, actual);
+					assertRegisterEquals (expected, actual);
+				}
+
+				// partial load over big values
+				KNumColumn part = randomColumn (new Random (42), 100);
+				columnFile.load (500, part, 10, 80);
+				for (int i = 0; i < 80; i++) {
+					column.get (500 + i, expected);
+					part.get (10 + i, actual);
+					assertRegisterEquals (expected, actual);
+					if (expected.profile > KProfile.BIG_INTEGER) {
+						assertNull (part.bigNumerators[10 + i]);
+					}
+				}
+
+				try {
+					columnFile.load (count - 10, part, 0, 11);
+					fail ("out of bounds");
+				} catch (IndexOutOfBoundsException e) {
+					// expected
+				}
+			}
+
+			// compact values only
+			KNumColumn compact = new KNumColumn (3);
+			expected.setValue (-5, 7);
+			compact.set (1, expected);
+			KNumColumnFile.write (compact, file);
+			try (KNumColumnFile columnFile = new KNumColumnFile (file)) {
+				columnFile.get (1, actual);
+				assertRegisterEquals (expected, actual);
+				columnFile.get (2, actual);
+				assertEquals (KProfile.INT_INTEGER, actual.profile);
+				assertEquals (0, actual.numerator);
+			}
+
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete ();
+		}
+	}
+
+	@Test
+	public void testInvalidFile () throws Exception {
+		File file = File.createTempFile ("kitsune", ".knum");
+		try {
+			try (FileOutputStream output = new FileOutputStream (file)) {
+				output.write ("not a column file at all".getBytes ("UTF-8"));
+			}
+			try {
+				new KNumColumnFile (file).close ();
+				fail ("invalid file");
+			} catch (IOException e) {
+				assertEquals (KNumColumnFile.ERR_MSG_INVALID_FILE, e.getMessage ());
+			}
+
+		} finally {
+			//noinspection ResultOfMethodCallIgnored
+			file.delete ();
+		}
+	}
+
+	// values of all profiles
+	private static KNumColumn randomColumn (
+		Random random,
+		int count) {
+
+		KNumRegister[] numbers = randomNumbers (random, count);
+		KNumColumn column = new KNumColumn (count);
+		for (int i = 0; i < count; i++) {
+			column.set (i, numbers[i]);
+		}
+		return column;
+	}
+
+}
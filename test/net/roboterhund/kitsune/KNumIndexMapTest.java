@@ -0,0 +1,141 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class KNumIndexMapTest {
+
+	@Test
+	public void testPutGet () throws Exception {
+		KConverter converter = new KConverter ();
+		KNumIndexMap map = new KNumIndexMap (2);
+		KNumRegister key = new KNumRegister ();
+
+		String[] keys = {
+			"0",
+			"-1",
+			"0.5",
+			"12345678901",
+			"-0.0000000001",
+			"123456789012345678901234567890",
+			"-0.123456789012345678901234567890"
+		};
+
+		for (int i = 0; i < keys.length; i++) {
+			converter.fromString (key, keys[i]);
+			assertEquals (-1, map.get (key));
+			assertEquals (i, map.put (key));
+			assertEquals (i + 1, map.size ());
+		}
+
+		for (int i = 0; i < keys.length; i++) {
+			converter.fromString (key, keys[i]);
+			assertEquals (i, map.get (key));
+			assertEquals (i, map.put (key));
+
+			map.getKey (i, key);
+			assertEquals (
+				new BigDecimal (keys[i]).compareTo (converter.toBigDecimal (key)),
+				0
+			);
+		}
+		assertEquals (keys.length, map.size ());
+
+		// same values, different representation
+		key.setValue (2, 4);
+		assertEquals (2, map.get (key));
+		key.setIrreducibleValue (
+			BigInteger.ONE.negate (),
+			BigInteger.ONE,
+			false
+		);
+		assertEquals (KProfile.BIG_INTEGER, key.profile);
+		assertEquals (1, map.get (key));
+
+		map.clear ();
+		assertEquals (0, map.size ());
+		assertEquals (-1, map.get (key));
+
+		// big stored key, unreduced decimal probe
+		key.setIrreducibleValue (
+			BigInteger.ONE,
+			BigInteger.valueOf (2),
+			false
+		);
+		assertEquals (KProfile.BIG_RATIONAL, key.profile);
+		assertEquals (0, map.put (key));
+		key.setDecimal (50, 2);
+		assertEquals (0, map.get (key));
+
+		try {
+			new KNumIndexMap (KNumIndexMap.MAX_CAPACITY + 1);
+			fail ("capacity");
+		} catch (IllegalArgumentException e) {
+			assertEquals (KNumIndexMap.ERR_MSG_CAPACITY, e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testGroupBy () throws Exception {
+		KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+		KNumIndexMap map = new KNumIndexMap ();
+		KNumRegister key = new KNumRegister ();
+		KNumRegister[] sums = new KNumRegister[1000];
+		HashMap<BigDecimal, Integer> expected = new HashMap<BigDecimal, Integer> ();
+		Random random = new Random (26);
+
+		for (int i = 0; i < 100000; i++) {
+			int numerator = random.nextInt (1000);
+			key.setValue (numerator, 8);
+
+			int index = map.put (key);
+			if (sums[index] == null) {
+				sums[index] = new KNumRegister ();
+			}
+			calculator.add (sums[index], sums[index], key);
+
+			BigDecimal decimalKey = new BigDecimal (numerator)
+				.divide (new BigDecimal (8));
+			Integer count = expected.get (decimalKey);
+			expected.put (decimalKey, count == null ? 1 : count + 1);
+		}
+
+		assertEquals (expected.size (), map.size ());
+
+		KConverter converter = new KConverter ();
+		for (int index = 0; index < map.size (); index++) {
+			map.getKey (index, key);
+			BigDecimal decimalKey = converter.toBigDecimal (key);
+			BigDecimal sum = converter.toBigDecimal (sums[index]);
+			assertEquals (
+				0,
+				decimalKey.multiply (
+					new BigDecimal (expected.get (decimalKey))
+				).compareTo (sum)
+			);
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static net.roboterhund.kitsune.CommonTest.assertRegisterEquals;
+import static net.roboterhund.kitsune.CommonTest.randomNumbers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class KNumRegisterFileTest {
+
+	@Test
+	public void testSetGet () throws Exception {
+		// more than one page
+		int length = 70000;
+		KNumRegisterFile file = new KNumRegisterFile (length);
+		assertEquals (length, file.length ());
+
+		KNumRegister[] numbers = randomNumbers (new Random (43), length);
+		KNumRegister register = new KNumRegister ();
+
+		// initially zero
+		file.get (length - 1, register);
+		assertEquals (KProfile.INT_INTEGER, register.profile);
+		assertEquals (0, register.numerator);
+		assertEquals (1, register.denominator);
+
+		for (int i = 0; i < length; i++) {
+			file.set (i, numbers[i]);
+		}
+		for (int i = 0; i < length; i++) {
+			file.get (i, register);
+			assertRegisterEquals (numbers[i], register);
+		}
+
+		// overwrite big with compact and compact with big
+		for (int i = 0; i < length; i++) {
+			file.set (i, numbers[length - 1 - i]);
+		}
+		for (int i = 0; i < length; i++) {
+			file.get (i, register);
+			assertRegisterEquals (numbers[length - 1 - i], register);
+		}
+
+		try {
+			file.get (length, register);
+			fail ("out of bounds");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCalculator () throws Exception {
+		int length = 200;
+		KNumRegister[] numbers = randomNumbers (new Random (44), length);
+		KNumRegisterFile file = new KNumRegisterFile (length * 5);
+		for (int i = 0; i < length; i++) {
+			file.set (i, numbers[i]);
+		}
+
+		KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		for (int i = 0; i < length; i++) {
+			int j = (i * 7 + 3) % length;
+
+			calculator.add (file, length + i, i, j);
+			calculator.subtract (file, 2 * length + i, i, j);
+			calculator.multiply (file, 3 * length + i, i, j);
+			if (calculator.compare (numbers[j], new KNumRegister ()) != 0) {
+				calculator.divide (file, 4 * length + i, i, j);
+			}
+
+			calculator.add (expected, numbers[i], numbers[j]);
+			file.get (length + i, actual);
+			assertRegisterEquals (expected, actual);
+
+			calculator.subtract (expected, numbers[i], numbers[j]);
+			file.get (2 * length + i, actual);
+			assertRegisterEquals (expected, actual);
+
+			calculator.multiply (expected, numbers[i], numbers[j]);
+			file.get (3 * length + i, actual);
+			assertRegisterEquals (expected, actual);
+
+			if (calculator.compare (numbers[j], new KNumRegister ()) != 0) {
+				calculator.divide (expected, numbers[i], numbers[j]);
+				file.get (4 * length + i, actual);
+				assertRegisterEquals (expected, actual);
+			}
+		}
+
+		// result in operand slot
+		file.get (0, expected);
+		calculator.add (expected, expected, expected);
+		calculator.add (file, 0, 0, 0);
+		file.get (0, actual);
+		assertRegisterEquals (expected, actual);
+	}
+
+}
@@ -22,6 +22,8 @@ import java.math.BigInteger;
 
 import static net.roboterhund.kitsune.CommonTest.assertNumberEquals;
 import static net.roboterhund.kitsune.CommonTest.converter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 // test KNumber in isolation
 public class KNumRegisterTest {
@@ -300,6 +302,53 @@ public class KNumRegisterTest {
 
 	}
 
+	@Test
+	public void testEquals () throws Exception {
+		KNumRegister other = new KNumRegister ();
+
+		/* * * * * */
+		testedNumber = new KNumRegister (1, 2);
+		other.setValue (1000, 2000);
+		assertEquals (testedNumber, other);
+		assertEquals (testedNumber.hashCode (), other.hashCode ());
+
+		/* * * * * */
+		testedNumber = new KNumRegister (Integer.MAX_VALUE);
+		other.setValue (Integer.MAX_VALUE + 1L);
+		assertFalse (testedNumber.equals (other));
+		other.setValue (BigInteger.valueOf (Integer.MAX_VALUE));
+		assertEquals (testedNumber, other);
+		assertEquals (testedNumber.hashCode (), other.hashCode ());
+
+		/* * * * * */
+		// same value, stored as LONG and as BIG
+		testedNumber = new KNumRegister (Long.MAX_VALUE, 3);
+		other.setIrreducibleValue (
+			KEdges.MAX_LONG,
+			BigInteger.valueOf (3),
+			false
+		);
+		assertEquals (KProfile.LONG_RATIONAL, testedNumber.profile);
+		assertEquals (KProfile.BIG_RATIONAL, other.profile);
+		assertEquals (testedNumber, other);
+		assertEquals (other, testedNumber);
+		assertEquals (testedNumber.hashCode (), other.hashCode ());
+
+		/* * * * * */
+		testedNumber = new KNumRegister (
+			KEdges.MAX_LONG.multiply (KEdges.MAX_LONG),
+			BigInteger.valueOf (7)
+		);
+		other.setValue (
+			KEdges.MAX_LONG.multiply (KEdges.MAX_LONG).multiply (BigInteger.TEN),
+			BigInteger.valueOf (70)
+		);
+		assertEquals (testedNumber, other);
+		assertEquals (testedNumber.hashCode (), other.hashCode ());
+		other.setValue (KEdges.MAX_LONG.multiply (KEdges.MAX_LONG));
+		assertFalse (testedNumber.equals (other));
+	}
+
 	// check internal values of number
 	private void assertTestedNumberEquals (
 		int profile,
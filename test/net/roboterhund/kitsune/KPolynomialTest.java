@@ -0,0 +1,204 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class KPolynomialTest {
+
+	KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+	KConverter converter = CommonTest.converter;
+
+	@Test
+	public void testEvaluate () throws Exception {
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		/* * * * * */
+		// 1/2 - 0.25 x + 2/3 x^2, at 3/2 => 1/2 - 3/8 + 3/2
+		KPolynomial polynomial = polynomial ("1/2", "-0.25", "2/3", "0");
+		assertEquals (2, polynomial.degree ());
+		polynomial.evaluate (actual, register ("3/2"));
+		expected.setValue (13, 8);
+		assertEquals (expected, actual);
+
+		// integer result
+		polynomial.evaluate (actual, register ("0"));
+		expected.setValue (1, 2);
+		assertEquals (expected, actual);
+
+		/* * * * * */
+		// zero polynomial
+		polynomial = polynomial ("0", "0");
+		assertEquals (-1, polynomial.degree ());
+		polynomial.evaluate (actual, register ("7"));
+		assertEquals (0, calculator.compare (actual, register ("0")));
+
+		/* * * * * */
+		// random coefficients and points, compared with chained operations
+		Random random = new Random (46);
+		for (int t = 0; t < 300; t++) {
+			KNumRegister[] coefficients = new KNumRegister[1 + random.nextInt (9)];
+			for (int i = 0; i < coefficients.length; i++) {
+				coefficients[i] = randomValue (random);
+			}
+			polynomial = new KPolynomial (coefficients);
+
+			for (int p = 0; p < 10; p++) {
+				KNumRegister point = randomValue (random);
+				naiveEvaluate (expected, coefficients, point);
+				polynomial.evaluate (actual, point);
+				assertEquals (0, calculator.compare (expected, actual));
+			}
+		}
+	}
+
+	@Test
+	public void testLongBound () throws Exception {
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		// values around the limit of long arithmetic
+		for (int bits = 1; bits < 64; bits++) {
+			long large = Long.MAX_VALUE >>> (63 - bits);
+			KNumRegister[] coefficients = {
+				register (Long.toString (-large)),
+				register ("1/3"),
+				register (Long.toString (large))
+			};
+			KPolynomial polynomial = new KPolynomial (coefficients);
+
+			for (long pointValue : new long[] {large, -large, 1, -1, 3}) {
+				KNumRegister point = new KNumRegister ();
+				point.setValue (pointValue);
+				naiveEvaluate (expected, coefficients, point);
+				polynomial.evaluate (actual, point);
+				assertEquals ("bits = " + bits, 0, calculator.compare (expected, actual));
+
+				point.setValue (pointValue, 7);
+				naiveEvaluate (expected, coefficients, point);
+				polynomial.evaluate (actual, point);
+				assertEquals ("bits = " + bits, 0, calculator.compare (expected, actual));
+			}
+		}
+	}
+
+	@Test
+	public void testBatch () throws Exception {
+		KPolynomial polynomial = polynomial ("1", "-2", "0.5", "1/9");
+		KNumRegister expected = new KNumRegister ();
+		KNumRegister actual = new KNumRegister ();
+
+		Random random = new Random (460);
+		int n = 100;
+		KNumRegister[] points = new KNumRegister[n];
+		KNumRegister[] results = new KNumRegister[n];
+		KNumColumn pointColumn = new KNumColumn (n);
+		KNumColumn resultColumn = new KNumColumn (n);
+		for (int i = 0; i < n; i++) {
+			points[i] = randomValue (random);
+			results[i] = new KNumRegister ();
+			pointColumn.set (i, points[i]);
+		}
+
+		polynomial.evaluate (results, points);
+		polynomial.evaluate (resultColumn, pointColumn);
+		for (int i = 0; i < n; i++) {
+			polynomial.evaluate (expected, points[i]);
+			assertEquals (0, calculator.compare (expected, results[i]));
+			resultColumn.get (i, actual);
+			assertEquals (0, calculator.compare (expected, actual));
+		}
+
+		try {
+			polynomial.evaluate (new KNumRegister[1], points);
+			fail ("lengths");
+		} catch (IllegalArgumentException e) {
+			assertEquals (KPolynomial.ERR_MSG_LENGTHS, e.getMessage ());
+		}
+	}
+
+	// chained multiply and add
+	private void naiveEvaluate (
+		KNumRegister result,
+		KNumRegister[] coefficients,
+		KNumRegister point) {
+
+		result.setZeroValue ();
+		for (int i = coefficients.length - 1; i >= 0; i--) {
+			calculator.multiply (result, result, point);
+			calculator.add (result, result, coefficients[i]);
+		}
+	}
+
+	private KPolynomial polynomial (String... coefficients) {
+		KNumRegister[] registers = new KNumRegister[coefficients.length];
+		for (int i = 0; i < coefficients.length; i++) {
+			registers[i] = register (coefficients[i]);
+		}
+		return new KPolynomial (registers);
+	}
+
+	// fraction or decimal
+	private KNumRegister register (String value) {
+		KNumRegister register = new KNumRegister ();
+		String[] parts = value.split ("/");
+		if (parts.length == 2) {
+			register.setValue (
+				Long.parseLong (parts[0]),
+				Long.parseLong (parts[1])
+			);
+		} else {
+			converter.fromDecimal (register, value);
+		}
+		return register;
+	}
+
+	// small and large integers, fractions and decimals
+	private KNumRegister randomValue (Random random) {
+		KNumRegister value = new KNumRegister ();
+		switch (random.nextInt (5)) {
+		case 0:
+			value.setValue (random.nextInt (201) - 100);
+			break;
+
+		case 1:
+			value.setValue (random.nextInt (201) - 100, 1 + random.nextInt (12));
+			break;
+
+		case 2:
+			value.setDecimal (random.nextInt (20001) - 10000, 2);
+			break;
+
+		case 3:
+			value.setValue (random.nextLong () >> random.nextInt (64),
+				1 + (random.nextLong () >>> (1 + random.nextInt (63))));
+			break;
+
+		default:
+			value.setValue (new BigInteger (100, random), BigInteger.valueOf (3));
+			break;
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ Copyright 2015 RoboterHund87
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package net.roboterhund.kitsune;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KSorterTest {
+
+	KCalculator calculator = new KCalculator (new KNumRegisterPool ());
+	// precise enough to tell apart the test numbers
+	KConverter converter = new KConverter (400);
+	KSorter sorter = new KSorter (calculator);
+
+	@Test
+	public void testSortArray () throws Exception {
+		for (int count : new int[] {0, 1, 2, 10, 63, 64, 1000, 20000}) {
+			KNumRegister[] array = randomNumbers (new Random (count), count);
+			BigDecimal[] expected = toBigDecimal (array, 0, count);
+			Arrays.sort (expected);
+
+			sorter.sort (array);
+			assertSorted (expected, toBigDecimal (array, 0, count));
+		}
+	}
+
+	@Test
+	public void testSortColumn () throws Exception {
+		int count = 5000;
+		KNumRegister[] array = randomNumbers (new Random (29), count);
+		KNumColumn column = new KNumColumn (count + 2);
+		for (int i = 0; i < count; i++) {
+			column.set (i + 1, array[i]);
+		}
+		BigDecimal[] expected = toBigDecimal (array, 0, count);
+		Arrays.sort (expected);
+
+		// sort range, leave borders untouched
+		sorter.sort (column, 1, count + 1);
+
+		KNumRegister register = new KNumRegister ();
+		for (int i = 0; i < count; i++) {
+			column.get (i + 1, register);
+			assertEquals (
+				0,
+				expected[i].compareTo (converter.toBigDecimal (register))
+			);
+		}
+		column.get (0, register);
+		assertEquals (0, converter.toInt (register));
+		column.get (count + 1, register);
+		assertEquals (0, converter.toInt (register));
+	}
+
+	@Test
+	public void testSortColumnTwice () throws Exception {
+		// big and decimal entries, sorted in place by the same sorter
+		int count = 3000;
+		Random random = new Random (32);
+		KNumRegister[] big = randomNumbers (random, count);
+		KNumColumn column = new KNumColumn (count);
+		KNumRegister register = new KNumRegister ();
+
+		for (int round = 0; round < 2; round++) {
+			BigDecimal[] expected = new BigDecimal[count];
+			for (int i = 0; i < count; i++) {
+				KNumRegister number = big[(i + round) % count];
+				if (i % 3 == 0) {
+					number = register;
+					converter.fromDecimal (
+						number,
+						(random.nextInt (2000) - 1000) + "." + (100 + random.nextInt (900))
+					);
+				}
+				column.set (i, number);
+				expected[i] = converter.toBigDecimal (number);
+			}
+			Arrays.sort (expected);
+
+			sorter.sort (column);
+
+			int decimals = 0;
+			for (int i = 0; i < count; i++) {
+				column.get (i, register);
+				assertEquals (
+					0,
+					expected[i].compareTo (converter.toBigDecimal (register))
+				);
+				if (register.profile == KProfile.LONG_DECIMAL) {
+					assertEquals (3, register.scale);
+					decimals++;
+				}
+			}
+			assertEquals (count / 3, decimals);
+		}
+	}
+
+	@Test
+	public void testPartialSort () throws Exception {
+		int count = 3000;
+		KNumRegister[] array = randomNumbers (new Random (30), count);
+		BigDecimal[] expected = toBigDecimal (array, 0, count);
+		Arrays.sort (expected);
+
+		for (int sorted : new int[] {0, 1, 10, 100, count}) {
+			KNumRegister[] copy = array.clone ();
+			sorter.partialSort (copy, 0, count, sorted);
+			assertSorted (
+				Arrays.copyOf (expected, sorted),
+				toBigDecimal (copy, 0, sorted)
+			);
+		}
+	}
+
+	@Test
+	public void testSelect () throws Exception {
+		int count = 3000;
+		KNumRegister[] array = randomNumbers (new Random (31), count);
+		BigDecimal[] expected = toBigDecimal (array, 0, count);
+		Arrays.sort (expected);
+
+		for (int index : new int[] {0, 1, 1500, count - 1}) {
+			sorter.select (array, 0, count, index);
+			BigDecimal selected = converter.toBigDecimal (array[index]);
+			assertEquals (0, expected[index].compareTo (selected));
+
+			for (int i = 0; i < count; i++) {
+				int comparison =
+					converter.toBigDecimal (array[i]).compareTo (selected);
+				assertTrue (i < index ? comparison <= 0 : comparison >= 0);
+			}
+		}
+
+		KNumColumn column = new KNumColumn (count);
+		for (int i = 0; i < count; i++) {
+			column.set (i, array[i]);
+		}
+		KNumRegister register = new KNumRegister ();
+		sorter.select (column, 0, count, 42);
+		column.get (42, register);
+		assertEquals (
+			0,
+			expected[42].compareTo (converter.toBigDecimal (register))
+		);
+	}
+
+	// numbers of all profiles, including equal and almost equal values
+	KNumRegister[] randomNumbers (Random random, int count) {
+		KNumRegister[] array = new KNumRegister[count];
+		BigInteger big = BigInteger.ONE.shiftLeft (1100);
+
+		for (int i = 0; i < count; i++) {
+			KNumRegister number = new KNumRegister ();
+			switch (random.nextInt (8)) {
+			case 0:
+				number.setValue (random.nextInt (100) - 50);
+				break;
+
+			case 1:
+				number.setValue (random.nextInt (), 1 + random.nextInt (1000));
+				break;
+
+			case 2:
+				number.setValue (random.nextLong ());
+				break;
+
+			case 3:
+				number.setValue (random.nextLong (), random.nextLong ());
+				break;
+
+			case 4:
+				// almost equal to 1/3
+				number.setValue (
+					BigInteger.TEN.pow (40).add (BigInteger.valueOf (random.nextInt (3) - 1)),
+					BigInteger.TEN.pow (40).multiply (BigInteger.valueOf (3))
+				);
+				break;
+
+			case 5:
+				// too large for double
+				number.setValue (
+					big.add (BigInteger.valueOf (random.nextInt (5)))
+						.multiply (BigInteger.valueOf (random.nextBoolean () ? 1 : -1)),
+					BigInteger.valueOf (1 + random.nextInt (3))
+				);
+				break;
+
+			case 6:
+				// too small for double
+				number.setValue (
+					BigInteger.valueOf (random.nextInt (5) - 2),
+					big.add (BigInteger.valueOf (random.nextInt (5)))
+				);
+				break;
+
+			default:
+				converter.fromString (
+					number,
+					(random.nextBoolean () ? "-" : "")
+						+ new BigInteger (100, random)
+						+ "." + random.nextInt (1000)
+				);
+				break;
+			}
+			array[i] = number;
+		}
+
+		return array;
+	}
+
+	BigDecimal[] toBigDecimal (KNumRegister[] array, int from, int to) {
+		BigDecimal[] decimals = new BigDecimal[to - from];
+		for (int i = from; i < to; i++) {
+			decimals[i - from] = converter.toBigDecimal (array[i]);
+		}
+		return decimals;
+	}
+
+	void assertSorted (BigDecimal[] expected, BigDecimal[] actual) {
+		assertEquals (expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals (
+				"position " + i,
+				0,
+				expected[i].compareTo (actual[i])
+			);
+		}
+	}
+
+}